@@ -1,7 +1,15 @@
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Application configuration and settings storage.
@@ -10,6 +18,15 @@ import java.util.Set;
  * - Emergency sound classifications
  * - Per-sound notification colors
  * - Network broadcast settings
+ *
+ * All settings live in one immutable ConfigSnapshot, published through a
+ * single volatile reference. Setters (FX thread, SettingsStore) copy the
+ * current snapshot, change the copy and publish it; readers (mic thread,
+ * broadcast listener) never lock and always see a complete snapshot.
+ *
+ * SettingsStore saves to disk whenever a saved setting changes (see
+ * getModificationCount()). Calibrated thresholds are part of the snapshot
+ * but not of the file, so setting them doesn't cause a save.
  */
 public final class AppConfig {
 
@@ -17,79 +34,133 @@ public final class AppConfig {
     private AppConfig() {
     }
 
-    // ============ GLOBAL NOTIFICATION SETTINGS ============
-
     /**
-     * Whether to play a sound when notifications appear.
-     * User can toggle this in settings.
+     * The settings currently in force. Replaced (never modified) on every change.
      */
-    public static volatile boolean playSound = true;
+    private static volatile ConfigSnapshot current = ConfigSnapshot.defaults();
 
     /**
-     * Whether to flash the screen red for emergency sounds.
-     * User can toggle this in settings.
+     * Changes to settings that are saved to disk (written under the update lock).
      */
-    public static volatile boolean flashEmergency = true;
+    private static volatile long modificationCount;
 
     /**
-     * Minimum confidence score (0.0 to 1.0) required to trigger notifications.
-     * Lower = more sensitive (more notifications).
-     * Higher = less sensitive (only high-confidence detections).
-     * Default is 0.20 (20% confidence).
+     * Get the settings currently in force.
+     * Hot-path code should call this once per frame/packet and use the result.
+     *
+     * @return Current immutable snapshot
      */
-    public static volatile double notifyThreshold = 0.20;
+    public static ConfigSnapshot current() {
+        return current;
+    }
 
     /**
-     * Sound file to play for normal notifications.
-     * Example: "System beep"
+     * Apply a change: copy the current snapshot, edit the copy, publish it.
+     * Writers are serialized; readers are never blocked.
+     *
+     * @param change Edits to make on the working copy
      */
-    public static volatile String notificationSound = "System beep";
+    private static void update(Consumer<ConfigSnapshot.Builder> change) {
+        update(change, true);
+    }
 
     /**
-     * Sound file to play for emergency notifications (louder/different).
-     * Example: "Alarm pulse"
+     * @param change Edits to make on the working copy
+     * @param saved  False if the change is to a field that isn't saved to disk
      */
-    public static volatile String emergencyNotificationSound = "Alarm pulse";
+    private static synchronized void update(Consumer<ConfigSnapshot.Builder> change, boolean saved) {
+        ConfigSnapshot old = current;
+        ConfigSnapshot.Builder b = old.toBuilder();
+        change.accept(b);
+        current = b.build(old.getVersion() + 1);
+        if (saved) {
+            modificationCount++;
+        }
+    }
 
     /**
-     * Emoji to show in macOS notification titles.
-     * Example: "🔵"
+     * Tell AppConfig which labels the model uses (class id = array index).
+     * Called once at startup so lookups for those labels are array reads.
+     *
+     * @param allLabels All labels known to the model
      */
-    public static volatile String notificationEmoji = "🔵";
+    public static void registerLabels(String[] allLabels) {
+        if (allLabels == null) {
+            return;
+        }
+        update(b -> b.setClassLabels(allLabels));
+    }
 
-    // ============ NETWORK BROADCAST SETTINGS ============
+    // ============ GLOBAL SETTING SETTERS ============
 
-    /**
-     * List of sound labels that should be broadcast to other devices.
-     * When this device detects these sounds, it sends them over the network.
-     */
-    private static final List<String> broadcastSendLabels = new ArrayList<>();
+    public static void setPlaySound(boolean value) {
+        update(b -> b.playSound = value);
+    }
 
-    /**
-     * List of sound labels that we want to receive from other devices.
-     * When another device broadcasts these sounds, we show notifications.
-     */
-    private static final List<String> broadcastListenLabels = new ArrayList<>();
+    public static void setFlashEmergency(boolean value) {
+        update(b -> b.flashEmergency = value);
+    }
+
+    public static void setNotifyThreshold(double value) {
+        update(b -> b.notifyThreshold = value);
+    }
+
+    public static void setNotificationSound(String value) {
+        if (value != null) {
+            update(b -> b.notificationSound = value);
+        }
+    }
+
+    public static void setEmergencyNotificationSound(String value) {
+        if (value != null) {
+            update(b -> b.emergencyNotificationSound = value);
+        }
+    }
+
+    public static void setNotificationEmoji(String value) {
+        if (value != null) {
+            update(b -> b.notificationEmoji = value);
+        }
+    }
+
+    public static void setNotificationBackend(String value) {
+        if (value != null) {
+            update(b -> b.notificationBackend = value);
+        }
+    }
 
-    // ============ PER-SOUND SETTINGS ============
+    public static void setTtsVoice(String value) {
+        if (value != null) {
+            update(b -> b.ttsVoice = value);
+        }
+    }
+
+    public static void setSaveClips(boolean value) {
+        update(b -> b.saveClips = value);
+    }
 
     /**
-     * Custom notification colors for each sound.
-     * Maps sound label (lowercase) to CSS color string like "#FF5252".
-     * If a sound isn't in this map, it uses a default color.
+     * Replace all per-sound thresholds learned from feedback, in one step.
+     * They are not saved with the settings (ThresholdCalibrator rebuilds them
+     * from the journal at startup), so this doesn't count as a modification.
+     *
+     * @param thresholds Threshold by label (sounds not in the map use the global one)
      */
-    private static final java.util.Map<String, String> notificationColors = new java.util.HashMap<>();
+    public static void setCalibratedThresholds(Map<String, Float> thresholds) {
+        Map<String, Float> copy = Collections.unmodifiableMap(new HashMap<>(thresholds));
+        update(b -> b.calibratedThresholds = copy, false);
+    }
 
     /**
-     * Set of sounds that should trigger emergency alerts.
-     * Emergency sounds cause:
-     * - Screen flash (red, 10 seconds)
-     * - Louder/different notification sound
-     * 
-     * This includes both auto-detected emergencies (fire, smoke, alarm, etc.)
-     * and user-selected custom emergency sounds.
+     * Get the number of changes made so far to settings that are saved.
+     * Used by SettingsStore to detect unsaved changes. Unlike the snapshot
+     * version, calibrated thresholds don't move it.
+     *
+     * @return Modification counter
      */
-    private static final Set<String> emergencyLabels = new HashSet<>();
+    public static long getModificationCount() {
+        return modificationCount;
+    }
 
     // ============ HELPER METHODS ============
 
@@ -110,7 +181,7 @@ public final class AppConfig {
             return null;
         }
 
-        return trimmed.toLowerCase();
+        return trimmed.toLowerCase(Locale.ROOT);
     }
 
     // ============ EMERGENCY SOUND MANAGEMENT ============
@@ -123,13 +194,9 @@ public final class AppConfig {
      * @param emergency Whether this sound is an emergency
      */
     public static void seedEmergencyLabel(String label, boolean emergency) {
-        if (!emergency) {
-            return; // Only seed positives
-        }
-
         String key = normalizeLabel(label);
-        if (key != null) {
-            emergencyLabels.add(key);
+        if (emergency && key != null) {
+            update(b -> b.emergency.add(key));
         }
     }
 
@@ -146,39 +213,25 @@ public final class AppConfig {
             return;
         }
 
-        if (emergency) {
-            emergencyLabels.add(key);
-        } else {
-            emergencyLabels.remove(key);
-        }
+        update(b -> {
+            if (emergency) {
+                b.emergency.add(key);
+            } else {
+                b.emergency.remove(key);
+            }
+        });
     }
 
     /**
      * Check if a sound should trigger emergency alerts.
-     * First checks user-selected emergency sounds, then falls back to heuristics.
+     * Uses the emergency list; keyword rules only apply to labels the model
+     * doesn't know. Never modifies anything.
      * 
      * @param label The sound label
      * @return True if this is an emergency sound
      */
     public static boolean isEmergencyLabel(String label) {
-        String key = normalizeLabel(label);
-        if (key == null) {
-            return false;
-        }
-
-        // Check if user manually marked this as emergency
-        if (emergencyLabels.contains(key)) {
-            return true;
-        }
-
-        // Check automatic detection heuristics
-        if (isEmergencyHeuristic(key)) {
-            // Auto-add so future checks are faster
-            emergencyLabels.add(key);
-            return true;
-        }
-
-        return false;
+        return current.isEmergency(label);
     }
 
     /**
@@ -187,59 +240,63 @@ public final class AppConfig {
      * @return Unmodifiable set of emergency sound labels (lowercase)
      */
     public static Set<String> getEmergencyLabels() {
-        return java.util.Collections.unmodifiableSet(new HashSet<>(emergencyLabels));
+        return current.getEmergencyLabels();
     }
 
     /**
-     * Check if a label matches emergency heuristics (before normalization).
+     * Check if a label matches the emergency keyword rules.
      * 
      * @param label The sound label (any case)
      * @return True if this looks like an emergency sound
      */
     public static boolean isEmergencyHeuristic(String label) {
-        String key = normalizeLabel(label);
-        if (key == null) {
-            return false;
+        return current.matchesEmergencyKeywords(label);
+    }
+
+    // ============ MONITORED / NOTIFY MANAGEMENT ============
+
+    /**
+     * Set whether Taptic should pay attention to a sound.
+     *
+     * @param label     The sound label
+     * @param monitored True to monitor, false to ignore
+     */
+    public static void setMonitored(String label, boolean monitored) {
+        if (label != null) {
+            update(b -> setMember(b.monitored, label, monitored));
         }
-        return isEmergencyHeuristicNormalized(key);
     }
 
     /**
-     * Check if a normalized label matches emergency keywords.
-     * Emergency keywords include: fire, smoke, siren, alarm, glass, gunshot,
-     * explosion, emergency, screaming, crying, baby.
-     * 
-     * @param normalizedLabel The sound label (already lowercase)
-     * @return True if contains emergency keywords
-     */
-    private static boolean isEmergencyHeuristicNormalized(String normalizedLabel) {
-        String s = normalizedLabel.toLowerCase();
-
-        // Check for emergency-related keywords
-        if (s.contains("fire"))
-            return true;
-        if (s.contains("smoke"))
-            return true;
-        if (s.contains("siren"))
-            return true;
-        if (s.contains("alarm"))
-            return true;
-        if (s.contains("glass"))
-            return true;
-        if (s.contains("gunshot"))
-            return true;
-        if (s.contains("explosion"))
-            return true;
-        if (s.contains("emergency"))
-            return true;
-        if (s.contains("screaming"))
-            return true;
-        if (s.contains("crying"))
-            return true;
-        if (s.contains("baby"))
-            return true;
-
-        return false;
+     * Check if Taptic pays attention to a sound.
+     *
+     * @param label The sound label
+     * @return True if the sound is monitored
+     */
+    public static boolean isMonitored(String label) {
+        return current.isMonitored(label);
+    }
+
+    /**
+     * Set whether a sound should trigger notifications.
+     *
+     * @param label   The sound label
+     * @param enabled True to notify, false to stay quiet
+     */
+    public static void setNotifyEnabled(String label, boolean enabled) {
+        if (label != null) {
+            update(b -> setMember(b.notify, label, enabled));
+        }
+    }
+
+    /**
+     * Check if a sound should trigger notifications.
+     *
+     * @param label The sound label
+     * @return True if notifications are enabled for this sound
+     */
+    public static boolean isNotifyEnabled(String label) {
+        return current.isNotifyEnabled(label);
     }
 
     // ============ BROADCAST SEND MANAGEMENT ============
@@ -251,14 +308,8 @@ public final class AppConfig {
      * @param enabled True to broadcast, false to not broadcast
      */
     public static void setBroadcastSendEnabled(String label, boolean enabled) {
-        if (label == null) {
-            return;
-        }
-
-        if (enabled) {
-            addToListIfMissing(broadcastSendLabels, label);
-        } else {
-            broadcastSendLabels.remove(label);
+        if (label != null) {
+            update(b -> setMember(b.broadcastSend, label, enabled));
         }
     }
 
@@ -269,10 +320,7 @@ public final class AppConfig {
      * @return True if broadcasting is enabled for this sound
      */
     public static boolean isBroadcastSendEnabled(String label) {
-        if (label == null) {
-            return false;
-        }
-        return broadcastSendLabels.contains(label);
+        return current.isBroadcastSendEnabled(label);
     }
 
     // ============ BROADCAST LISTEN MANAGEMENT ============
@@ -284,14 +332,8 @@ public final class AppConfig {
      * @param enabled True to listen, false to ignore
      */
     public static void setBroadcastListenEnabled(String label, boolean enabled) {
-        if (label == null) {
-            return;
-        }
-
-        if (enabled) {
-            addToListIfMissing(broadcastListenLabels, label);
-        } else {
-            broadcastListenLabels.remove(label);
+        if (label != null) {
+            update(b -> setMember(b.broadcastListen, label, enabled));
         }
     }
 
@@ -302,10 +344,7 @@ public final class AppConfig {
      * @return True if listening is enabled for this sound
      */
     public static boolean isBroadcastListenEnabled(String label) {
-        if (label == null) {
-            return false;
-        }
-        return broadcastListenLabels.contains(label);
+        return current.isBroadcastListenEnabled(label);
     }
 
     // ============ NOTIFICATION COLOR MANAGEMENT ============
@@ -318,13 +357,13 @@ public final class AppConfig {
      * @param cssColor CSS color string like "#FF5252"
      */
     public static void setNotificationColor(String label, String cssColor) {
-        if (label == null || cssColor == null || cssColor.isEmpty()) {
+        if (cssColor == null || cssColor.isEmpty()) {
             return;
         }
 
         String key = normalizeLabel(label);
-        if (key != null) {
-            notificationColors.put(key, cssColor);
+        if (key != null && !cssColor.equals(current.getNotificationColors().get(key))) {
+            update(b -> b.colors.put(key, cssColor));
         }
     }
 
@@ -337,38 +376,260 @@ public final class AppConfig {
      * @return CSS color string like "#8AB4FF"
      */
     public static String getNotificationColor(String label) {
-        String key = normalizeLabel(label);
-        if (key == null) {
-            return "#8AB4FF"; // Default blue
+        return current.getNotificationColor(label);
+    }
+
+    // ============ DEFAULTS ============
+
+    /**
+     * Turn on the default settings for every interesting sound:
+     * monitored, notify, broadcast send/listen, and emergency keyword rules.
+     * Used on first start, when there are no saved settings yet.
+     *
+     * @param allLabels All labels known to the model
+     */
+    public static void applyDefaults(String[] allLabels) {
+        if (allLabels == null) {
+            return;
         }
+        update(b -> {
+            for (String label : allLabels) {
+                if (label == null) {
+                    continue;
+                }
+                int flags = b.keywordRules.classify(label);
+                if ((flags & KeywordRules.INTERESTING) == 0) {
+                    continue;
+                }
+                b.monitored.add(label);
+                b.notify.add(label);
+                b.broadcastSend.add(label);
+                b.broadcastListen.add(label);
+                if ((flags & KeywordRules.EMERGENCY) != 0) {
+                    b.emergency.add(normalizeLabel(label));
+                }
+            }
+        });
+    }
+
+    /**
+     * Decide if a label is useful enough to show and monitor by default.
+     *
+     * @param label The sound label
+     * @return True for sounds people usually want alerts for
+     */
+    public static boolean isInterestingLabel(String label) {
+        return current.isInteresting(label);
+    }
+
+    // ============ KEYWORD RULES ============
+
+    public static KeywordRules getKeywordRules() {
+        return current.getKeywordRules();
+    }
 
-        // Check if user set a custom color
-        String customColor = notificationColors.get(key);
-        if (customColor != null) {
-            return customColor;
+    /**
+     * Replace the keyword rules and re-classify every label.
+     * Labels whose emergency keyword match changed are ticked or unticked in
+     * the emergency list; manual choices for other labels are kept.
+     *
+     * @param rules New rule set
+     */
+    public static void setKeywordRules(KeywordRules rules) {
+        if (rules == null || rules.sameKeywords(current.getKeywordRules())) {
+            return;
         }
+        update(b -> {
+            byte[] before = b.keywordFlags();
+            b.setKeywordRules(rules);
+            byte[] after = b.keywordFlags();
+            for (int i = 0; i < after.length; i++) {
+                boolean was = (before[i] & KeywordRules.EMERGENCY) != 0;
+                boolean now = (after[i] & KeywordRules.EMERGENCY) != 0;
+                String key = normalizeLabel(b.classLabels[i]);
+                if (key == null || was == now) {
+                    continue;
+                }
+                if (now) {
+                    b.emergency.add(key);
+                } else {
+                    b.emergency.remove(key);
+                }
+            }
+        });
+    }
 
-        // Use default colors based on emergency status
-        boolean isEmergency = isEmergencyLabel(label);
-        if (isEmergency) {
-            return "#FF5252"; // Red for emergencies
-        } else {
-            return "#8AB4FF"; // Blue for normal sounds
+    // ============ SAVE / LOAD ============
+
+    /**
+     * Export all settings as JSON (used by SettingsStore).
+     *
+     * @return Settings object (without the store's schema/revision fields)
+     */
+    public static JSONObject toJson() {
+        return toJson(current);
+    }
+
+    /**
+     * Export what a session recording needs to reproduce decisions: the
+     * settings plus the calibrated thresholds in force (which the settings
+     * file doesn't have).
+     *
+     * @param c Snapshot to export
+     * @return Settings object with "calibratedThresholds"
+     */
+    public static JSONObject toSessionJson(ConfigSnapshot c) {
+        JSONObject json = toJson(c);
+        json.put("calibratedThresholds", new JSONObject(c.getCalibratedThresholds()));
+        return json;
+    }
+
+    /**
+     * Export the saved settings of one snapshot as JSON.
+     *
+     * @param c Snapshot to export
+     * @return Settings object
+     */
+    public static JSONObject toJson(ConfigSnapshot c) {
+        JSONObject json = new JSONObject();
+        json.put("playSound", c.isPlaySound());
+        json.put("flashEmergency", c.isFlashEmergency());
+        json.put("notifyThreshold", c.getNotifyThreshold());
+        json.put("notificationSound", c.getNotificationSound());
+        json.put("emergencyNotificationSound", c.getEmergencyNotificationSound());
+        json.put("notificationEmoji", c.getNotificationEmoji());
+        json.put("notificationBackend", c.getNotificationBackend());
+        json.put("ttsVoice", c.getTtsVoice());
+        json.put("saveClips", c.isSaveClips());
+        json.put("monitored", new JSONArray(c.getMonitoredLabels()));
+        json.put("notify", new JSONArray(c.getNotifyLabels()));
+        json.put("emergency", new JSONArray(c.getEmergencyLabels()));
+        json.put("broadcastSend", new JSONArray(c.getBroadcastSendLabels()));
+        json.put("broadcastListen", new JSONArray(c.getBroadcastListenLabels()));
+        json.put("colors", new JSONObject(c.getNotificationColors()));
+        json.put("keywordRules", c.getKeywordRules().toJson());
+        return json;
+    }
+
+    /**
+     * Replace all settings with values from JSON (used by SettingsStore).
+     * Missing fields keep their current value. Published as one snapshot.
+     *
+     * @param json Settings object
+     */
+    public static void loadJson(JSONObject json) {
+        update(b -> applyJson(b, json));
+    }
+
+    /**
+     * Build settings from JSON without putting them in force
+     * (used to evaluate a candidate configuration).
+     * Missing fields keep the value from the current settings.
+     *
+     * @param json Settings object
+     * @return New snapshot (not published)
+     */
+    public static ConfigSnapshot snapshotFromJson(JSONObject json) {
+        ConfigSnapshot base = current;
+        ConfigSnapshot.Builder b = base.toBuilder();
+        applyJson(b, json);
+        return b.build(base.getVersion());
+    }
+
+    /**
+     * Copy the fields found in JSON onto a working copy.
+     */
+    private static void applyJson(ConfigSnapshot.Builder b, JSONObject json) {
+        b.playSound = json.optBoolean("playSound", b.playSound);
+        b.flashEmergency = json.optBoolean("flashEmergency", b.flashEmergency);
+        b.notifyThreshold = json.optDouble("notifyThreshold", b.notifyThreshold);
+        b.notificationSound = json.optString("notificationSound", b.notificationSound);
+        b.emergencyNotificationSound = json.optString("emergencyNotificationSound",
+                b.emergencyNotificationSound);
+        b.notificationEmoji = json.optString("notificationEmoji", b.notificationEmoji);
+        b.notificationBackend = json.optString("notificationBackend", b.notificationBackend);
+        b.ttsVoice = json.optString("ttsVoice", b.ttsVoice);
+        b.saveClips = json.optBoolean("saveClips", b.saveClips);
+
+        replaceAll(b.monitored, json.optJSONArray("monitored"), false);
+        replaceAll(b.notify, json.optJSONArray("notify"), false);
+        replaceAll(b.emergency, json.optJSONArray("emergency"), true);
+        replaceAll(b.broadcastSend, json.optJSONArray("broadcastSend"), false);
+        replaceAll(b.broadcastListen, json.optJSONArray("broadcastListen"), false);
+
+        b.setKeywordRules(KeywordRules.fromJson(json.optJSONObject("keywordRules"), b.keywordRules));
+
+        JSONObject colors = json.optJSONObject("colors");
+        if (colors != null) {
+            b.colors.clear();
+            for (String key : colors.keySet()) {
+                String normalized = normalizeLabel(key);
+                if (normalized != null) {
+                    b.colors.put(normalized, colors.getString(key));
+                }
+            }
+        }
+
+        // Only in session recordings (see toSessionJson); the settings file keeps the current ones
+        JSONObject calibrated = json.optJSONObject("calibratedThresholds");
+        if (calibrated != null) {
+            Map<String, Float> thresholds = new HashMap<>();
+            for (String key : calibrated.keySet()) {
+                thresholds.put(key, (float) calibrated.optDouble(key, b.notifyThreshold));
+            }
+            b.calibratedThresholds = Collections.unmodifiableMap(thresholds);
+        }
+    }
+
+    /**
+     * Replace the contents of a collection with the strings in a JSON array.
+     * Does nothing if the array is missing.
+     */
+    private static void replaceAll(Collection<String> target, JSONArray values, boolean normalize) {
+        if (values == null) {
+            return;
+        }
+        target.clear();
+        for (int i = 0; i < values.length(); i++) {
+            String v = values.optString(i, null);
+            if (normalize) {
+                v = normalizeLabel(v);
+            }
+            if (v != null) {
+                target.add(v);
+            }
         }
     }
 
     // ============ UTILITY METHODS ============
 
     /**
-     * Add a value to a list only if it's not already present.
-     * Prevents duplicates.
-     * 
-     * @param list  The list to add to
-     * @param value The value to add
+     * Get the folder where Taptic keeps its files (logs, settings, recordings).
+     * Defaults to ~/.taptic-desktop, and can be moved with the
+     * "taptic.dataDir" system property.
+     *
+     * @return Data directory path (may not exist yet)
      */
-    private static void addToListIfMissing(List<String> list, String value) {
-        if (!list.contains(value)) {
-            list.add(value);
+    public static Path getDataDirectory() {
+        String custom = System.getProperty("taptic.dataDir");
+        if (custom != null && !custom.isBlank()) {
+            return Paths.get(custom);
+        }
+        return Paths.get(System.getProperty("user.home", "."), ".taptic-desktop");
+    }
+
+    /**
+     * Add or remove a value from a set.
+     *
+     * @param set     The set to change
+     * @param value   The value
+     * @param present True to add, false to remove
+     */
+    private static void setMember(Set<String> set, String value, boolean present) {
+        if (present) {
+            set.add(value);
+        } else {
+            set.remove(value);
         }
     }
 }
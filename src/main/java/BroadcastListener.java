@@ -1,32 +1,154 @@
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Listens for sound detection broadcasts from other Taptic Desktop devices.
  * Runs in a background thread continuously listening for UDP messages.
- * 
+ *
  * When a message is received, it:
- * 1. Checks if it's from this device (and ignores it if so)
- * 2. Passes the JSON to Interpreter for processing
+ * 1. Checks if it's from this device by comparing the node id at the start
+ *    of the message with ours (one long compare, no DNS, no decoding).
+ *    A heartbeat with our id from an address that isn't ours means another
+ *    computer has the same id (a cloned disk image); that is logged.
+ * 2. Decodes binary WireEvent records, or splits old-style JSON into lines
+ * 3. Passes each event to Interpreter for processing
+ *
+ * Receiving and processing are separate so a burst of packets can't back
+ * up into the kernel socket buffer while rules and UI work run:
+ * - run() (the "BroadcastListener" thread) waits on a Selector with a
+ *   non-blocking DatagramChannel, reads packets into pooled direct buffers
+ *   and puts them in a bounded queue
+ * - the "BroadcastProcessor" thread decodes them and calls the Interpreter
+ * If the queue or the pool is full, packets are dropped and counted.
+ *
+ * The one channel also receives multicast: BroadcastTransport joins the
+ * group on every interface when multicast is used, and the receiving
+ * thread has it check again every INTERFACE_REFRESH_MS, so an interface
+ * that comes up later (Wi-Fi reconnect, VPN, docking) is joined too.
+ *
+ * Reliable (emergency) records are acknowledged straight back to the
+ * sender's address on our port, and every binary event is checked against
+ * a DedupWindow so retries and copies from other interfaces are shown once.
+ * ACKs for our own events are passed to the BroadcastSender.
+ *
+ * Heartbeats from other computers keep the PeerTable up to date; the
+ * processing thread also moves its expiry wheel forward once a second.
+ *
+ * Events go through EventFusion before the Interpreter, so one sound heard
+ * by several computers becomes one notification naming the computer that
+ * heard it best.
+ *
+ * Each sender address (as reported by the socket, not the node id in the
+ * packet) has a budget of
+ * RATE_PER_SECOND datagrams per second with bursts of RATE_BURST (see
+ * SourceRateLimiter). Datagrams over budget are dropped by the receiving
+ * thread before they are decoded, so one flooding peer can't crowd out the
+ * others or keep every computer beeping.
+ *
+ * Datagrams from other subnets arrive through a RelayClient, which calls
+ * receiveRelayed() from its own thread. They go through the same checks
+ * and queue as UDP packets. ACKs for them are sent back through the relay.
  */
 public class BroadcastListener implements Closeable, Runnable {
 
-    private final int port;
+    // Pooled receive buffers (also the most packets waiting to be processed)
+    private static final int POOL_SIZE = 64;
+    // Larger than any datagram we send (1400 bytes)
+    private static final int BUFFER_SIZE = 2048;
+    // Kernel receive buffer, to ride out short bursts
+    private static final int SOCKET_RECEIVE_BUFFER = 256 * 1024;
+    // Per-sender budget: a peer normally sends a heartbeat every 10 s and a few events
+    private static final int RATE_PER_SECOND = 20;
+    private static final int RATE_BURST = 50;
+    private static final int RATE_SOURCES = 1024;
+
+    private final BroadcastTransport transport;
+    private final long localNodeId;
     private volatile boolean running = true;
-    private DatagramSocket socket;
+    private DatagramChannel channel;
+    private Selector selector;
+    private final Map<String, MembershipKey> memberships = new HashMap<>(); // receiving thread only
+
+    private final BlockingQueue<Packet> freePackets = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Packet> received = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+    private static final Packet STOP = new Packet();
+    private final ByteBuffer discard = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final SourceRateLimiter limiter = new SourceRateLimiter(RATE_SOURCES, RATE_PER_SECOND, RATE_BURST);
+
+    // Processing thread only
+    private final DedupWindow dedup = new DedupWindow(256);
+    private final ByteBuffer ackBuffer = ByteBuffer.allocateDirect(WireEvent.ACK_SIZE);
+    private volatile BroadcastSender ackReceiver; // gets ACKs for our own events
+    private volatile RelayClient relay; // sends ACKs for relayed events
+    private final PeerTable peers = new PeerTable();
+    private final EventFusion fusion = EventFusion.fromProperties(peers, Interpreter::handleRemoteEvent);
+
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong ownCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong malformedCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private final AtomicLong acksSentCount = new AtomicLong();
+    private final AtomicLong relayedCount = new AtomicLong();
+    private final AtomicLong duplicateIdCount = new AtomicLong();
+
+    // Heartbeats carrying our own id (receiving and relay threads, guarded by the lock)
+    private static final long DUPLICATE_ID_WARN_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private final Object duplicateIdLock = new Object();
+    private final Set<InetAddress> ownAddresses = new HashSet<>();
+    private final Map<InetAddress, Long> duplicateIdWarned = new HashMap<>();
 
     /**
-     * Create a listener on the specified port.
-     * 
-     * @param port UDP port number (typically 9876)
+     * Create a listener for a transport's port (and multicast group).
+     *
+     * @param transport   Port and groups to listen on
+     * @param localNodeId This computer's node id (its own messages are ignored)
      */
-    public BroadcastListener(int port) {
-        this.port = port;
+    public BroadcastListener(BroadcastTransport transport, long localNodeId) {
+        this.transport = transport;
+        this.localNodeId = localNodeId;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            freePackets.add(new Packet());
+        }
+    }
+
+    /**
+     * Pass ACKs for this computer's reliable events to its sender.
+     *
+     * @param sender Sender, or null to ignore ACKs
+     */
+    public void setAckReceiver(BroadcastSender sender) {
+        ackReceiver = sender;
+    }
+
+    /**
+     * Send ACKs for events that came through a relay hub back through it.
+     *
+     * @param client Connection to the hub, or null
+     */
+    public void setRelay(RelayClient client) {
+        relay = client;
     }
 
     /**
@@ -36,7 +158,7 @@ public class BroadcastListener implements Closeable, Runnable {
     public void run() {
         try {
             start();
-        } catch (SocketException e) {
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
@@ -44,72 +166,420 @@ public class BroadcastListener implements Closeable, Runnable {
     /**
      * Start listening for broadcast messages.
      * This method blocks until stopListening() is called.
-     * 
-     * @throws SocketException If the socket can't be created
+     *
+     * @throws IOException If the channel can't be opened
      */
-    public void start() throws SocketException {
-        socket = new DatagramSocket(port);
-        socket.setReuseAddress(true);
-        byte[] buffer = new byte[2048];
+    public void start() throws IOException {
+        channel = transport.openReceiveChannel(SOCKET_RECEIVE_BUFFER, memberships);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        Thread processor = new Thread(this::processLoop, "BroadcastProcessor");
+        processor.setDaemon(true);
+        processor.start();
 
         // Keep receiving packets until stopped
-        while (running) {
-            try {
-                // Wait for a packet
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
-
-                // Convert packet data to string
-                String jsonText = new String(
-                        packet.getData(),
-                        packet.getOffset(),
-                        packet.getLength(),
-                        StandardCharsets.UTF_8);
-
-                // Ignore messages from this computer (don't notify ourselves)
-                if (jsonText.contains(getHostName())) {
+        long refreshNanos = TimeUnit.MILLISECONDS.toNanos(BroadcastTransport.INTERFACE_REFRESH_MS);
+        long nextRefresh = System.nanoTime() + refreshNanos;
+        try {
+            while (running) {
+                long wait = nextRefresh - System.nanoTime();
+                if (wait <= 0) {
+                    transport.refreshMemberships(channel, memberships);
+                    nextRefresh = System.nanoTime() + refreshNanos;
                     continue;
                 }
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    keys.next();
+                    keys.remove();
+                    receiveAll();
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[Listener] " + e.getMessage());
+            }
+        } finally {
+            received.offer(STOP);
+            closeChannel();
+        }
+    }
 
-                // Pass to Interpreter for processing
-                Interpreter.handleBroadcastJson(jsonText);
+    /**
+     * Read every packet waiting on the channel (it never blocks).
+     */
+    private void receiveAll() throws IOException {
+        while (true) {
+            Packet p = freePackets.poll();
+            ByteBuffer buf = p != null ? p.buf : discard;
+            buf.clear();
+            SocketAddress from = channel.receive(buf);
+            if (from == null) {
+                if (p != null) {
+                    freePackets.offer(p);
+                }
+                return;
+            }
+            receivedCount.incrementAndGet();
+            if (p == null) {
+                droppedCount.incrementAndGet(); // Processing is behind: every buffer is in use
+                continue;
+            }
+            buf.flip();
+            p.relayed = false;
+            accept(p, from);
+        }
+    }
 
-            } catch (IOException e) {
-                if (running) {
-                    System.err.println("[Listener] " + e.getMessage());
+    /**
+     * Hand over a datagram that came through the relay hub (called by the
+     * RelayClient thread). The bytes are copied, so the caller can reuse them.
+     *
+     * @param src    Buffer holding the datagram
+     * @param offset Where the datagram starts in src
+     * @param length Length of the datagram
+     * @param origin Address of the computer that sent it (null if unknown)
+     */
+    public void receiveRelayed(ByteBuffer src, int offset, int length, InetSocketAddress origin) {
+        receivedCount.incrementAndGet();
+        relayedCount.incrementAndGet();
+        Packet p = freePackets.poll();
+        if (p == null || length > BUFFER_SIZE) {
+            droppedCount.incrementAndGet();
+            if (p != null) {
+                freePackets.offer(p);
+            }
+            return;
+        }
+        p.buf.clear();
+        p.buf.put(0, src, offset, length);
+        p.buf.limit(length);
+        p.relayed = true;
+        accept(p, origin);
+    }
+
+    /**
+     * Filter a received packet and queue it for processing.
+     * Called by the receiving thread and the relay thread.
+     */
+    private void accept(Packet p, SocketAddress from) {
+        ByteBuffer buf = p.buf;
+        // Ignore messages from this computer before anything else is done with them
+        int length = buf.limit();
+        long node = WireEvent.recordLength(buf, 0, length) > 0
+                ? WireEvent.peekNodeId(buf, 0)
+                : WireEvent.peekJsonNodeId(buf, 0, length);
+        if (node == localNodeId) {
+            ownCount.incrementAndGet();
+            if (WireEvent.recordLength(buf, 0, length) > 0
+                    && (WireEvent.peekFlags(buf, 0) & WireEvent.FLAG_HEARTBEAT) != 0) {
+                checkDuplicateId(from, p.relayed);
+            }
+            freePackets.offer(p);
+            return;
+        }
+
+        // Per-address budget, checked before anything is decoded (the node id is only for reports)
+        InetSocketAddress inet = from instanceof InetSocketAddress a ? a : null;
+        if (!limiter.allow(inet, node, System.nanoTime())) {
+            throttledCount.incrementAndGet();
+            freePackets.offer(p);
+            return;
+        }
+
+        p.from = from;
+        if (!received.offer(p)) {
+            droppedCount.incrementAndGet();
+            freePackets.offer(p);
+        }
+    }
+
+    /**
+     * A heartbeat with our node id arrived. Over UDP that is normally our
+     * own broadcast coming back; from any other address (or through the
+     * relay hub, which never sends us our own datagrams) another computer
+     * is using our id and the two would ignore each other's events.
+     */
+    private void checkDuplicateId(SocketAddress from, boolean relayed) {
+        InetAddress address = from instanceof InetSocketAddress inet ? inet.getAddress() : null;
+        synchronized (duplicateIdLock) {
+            if (!relayed && (address == null || ownAddresses.contains(address))) {
+                return;
+            }
+            if (!relayed && isLocalAddress(address)) {
+                ownAddresses.add(address);
+                return;
+            }
+            long now = System.nanoTime();
+            Long last = duplicateIdWarned.get(address);
+            if (last != null && now - last < DUPLICATE_ID_WARN_NANOS) {
+                return;
+            }
+            if (duplicateIdWarned.size() >= 256) {
+                duplicateIdWarned.clear();
+            }
+            duplicateIdWarned.put(address, now);
+        }
+        duplicateIdCount.incrementAndGet();
+        System.err.println("[Listener] Another computer (" + (address != null ? address.getHostAddress() : "via relay")
+                + ") uses our node id " + NodeIdentity.toHex(localNodeId) + "; each ignores the other's events."
+                + " If it was cloned from this one, delete " + NodeIdentity.FILE_NAME
+                + " in its data folder and restart it.");
+    }
+
+    private static boolean isLocalAddress(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isAnyLocalAddress()) {
+            return true;
+        }
+        try {
+            return NetworkInterface.getByInetAddress(address) != null;
+        } catch (SocketException e) {
+            return true; // Can't tell: don't warn
+        }
+    }
+
+    // ============ PROCESSING THREAD ============
+
+    private void processLoop() {
+        WireEvent event = new WireEvent();
+        while (true) {
+            Packet p;
+            long wait = fusion != null
+                    ? Math.min(PeerTable.TICK_MS, fusion.millisUntilDue(System.nanoTime() / 1_000_000))
+                    : PeerTable.TICK_MS;
+            try {
+                p = received.poll(wait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long nowNanos = System.nanoTime();
+            peers.advance(nowNanos);
+            if (fusion != null) {
+                fusion.expire(nowNanos / 1_000_000);
+            }
+            if (p == null) {
+                continue;
+            }
+            if (p == STOP) {
+                return;
+            }
+            try {
+                if (!handlePacket(p, event)) {
+                    malformedCount.incrementAndGet();
                 }
+            } catch (RuntimeException e) {
+                malformedCount.incrementAndGet();
+                System.err.println("[Listener] " + e);
+            } finally {
+                p.from = null;
+                freePackets.offer(p);
             }
         }
     }
 
+    /**
+     * Decode one datagram and hand its events to the Interpreter.
+     *
+     * @param p     Received packet
+     * @param event Reusable holder for one decoded binary record
+     * @return False if (part of) the datagram couldn't be read
+     */
+    private boolean handlePacket(Packet p, WireEvent event) {
+        ByteBuffer buf = p.buf;
+        int end = buf.limit();
+        String sender = p.from instanceof InetSocketAddress inet && inet.getAddress() != null
+                ? inet.getAddress().getHostAddress()
+                : "remote";
+
+        // Binary records (current format)
+        if (WireEvent.recordLength(buf, 0, end) > 0) {
+            return handleBinary(buf, end, event, p, sender);
+        }
+
+        // JSON: one datagram may carry several events, one JSON object per line
+        String jsonText = StandardCharsets.UTF_8.decode(buf).toString();
+        boolean ok = true;
+        int start = 0;
+        while (start < jsonText.length()) {
+            int lineEnd = jsonText.indexOf('\n', start);
+            if (lineEnd < 0) {
+                lineEnd = jsonText.length();
+            }
+            if (lineEnd > start) {
+                ok &= Interpreter.handleBroadcastJson(jsonText.substring(start, lineEnd));
+            }
+            start = lineEnd + 1;
+        }
+        return ok;
+    }
+
+    /**
+     * Decode every binary record in a datagram and hand it to the Interpreter.
+     *
+     * @param buf    Received bytes (starting at 0)
+     * @param end    Number of bytes received
+     * @param event  Reusable holder for one decoded record
+     * @param p      The packet (where ACKs go)
+     * @param sender Address of the sending device as text
+     * @return False if a record was out of range or the datagram had trailing bytes
+     */
+    private boolean handleBinary(ByteBuffer buf, int end, WireEvent event, Packet p, String sender) {
+        boolean ok = true;
+        int offset = 0;
+        int length;
+        while ((length = WireEvent.recordLength(buf, offset, end)) > 0) {
+            if (!event.decode(buf, offset, length)) {
+                ok = false;
+            } else if (event.isHeartbeat()) {
+                peers.heard(event, event.readName(buf), sender, System.nanoTime());
+            } else if (event.isAck()) {
+                BroadcastSender receiver = ackReceiver;
+                if (event.targetNodeId == localNodeId && receiver != null) {
+                    receiver.onAck(event.nodeId, event.seq);
+                }
+            } else {
+                // Acknowledge every copy (the ACK for an earlier one may have been lost)
+                if ((event.flags & WireEvent.FLAG_RELIABLE) != 0) {
+                    sendAck(event, p);
+                }
+                if (!dedup.firstTime(event.nodeId, event.seq)) {
+                    duplicateCount.incrementAndGet();
+                } else if (fusion != null) {
+                    fusion.onEvent(event, sender, System.nanoTime() / 1_000_000);
+                } else {
+                    Interpreter.handleBroadcastEvent(event, sender);
+                }
+            }
+            offset += length;
+        }
+        return ok && offset == end;
+    }
+
+    /**
+     * Send an ACK for a reliable event back to its sender's listener
+     * (through the relay hub if that is how the event came).
+     */
+    private void sendAck(WireEvent event, Packet p) {
+        ackBuffer.clear();
+        WireEvent.encodeAck(ackBuffer, localNodeId, event.nodeId, event.seq, System.currentTimeMillis());
+        ackBuffer.flip();
+        if (p.relayed) {
+            RelayClient client = relay;
+            if (client != null && client.send(ackBuffer)) {
+                acksSentCount.incrementAndGet();
+            }
+            return;
+        }
+        if (!(p.from instanceof InetSocketAddress inet) || inet.getAddress() == null) {
+            return;
+        }
+        try {
+            channel.send(ackBuffer, new InetSocketAddress(inet.getAddress(), transport.getPort()));
+            acksSentCount.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("[Listener] ACK failed: " + e.getMessage());
+        }
+    }
+
+    // ============ STATUS ============
+
+    /**
+     * @return Computers heard from through heartbeats
+     */
+    public PeerTable getPeers() {
+        return peers;
+    }
+
+    /**
+     * @return Datagrams read from the channel (including dropped and own ones)
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * @return Datagrams dropped because processing was behind
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return Datagrams dropped because their sender was over its budget
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * @return Datagrams that were not valid binary or JSON events
+     */
+    public long getMalformedCount() {
+        return malformedCount.get();
+    }
+
+    /**
+     * @return One-line summary for the log
+     */
+    public String getStatsSummary() {
+        String summary = String.format(
+                "%d received (%d relayed), %d own, %d dropped, %d throttled, %d malformed, %d duplicates, "
+                + "%d ACKs sent, %d peers",
+                receivedCount.get(), relayedCount.get(), ownCount.get(), droppedCount.get(), throttledCount.get(),
+                malformedCount.get(), duplicateCount.get(), acksSentCount.get(), peers.size());
+        if (fusion != null) {
+            summary += "; fusion: " + fusion.getStatsSummary();
+        }
+        if (duplicateIdCount.get() > 0) {
+            summary += "; " + duplicateIdCount.get() + " warnings about another computer with our node id";
+        }
+        if (limiter.getThrottledSources() == 0) {
+            return summary;
+        }
+        return summary + "; throttled sources: " + limiter.describeOffenders(5);
+    }
+
     /**
      * Stop listening for broadcasts.
      */
     public void stopListening() {
         running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
     }
 
     /**
      * Close the listener and release resources.
+     * The receiving thread closes the channel itself once it wakes up.
      */
     @Override
     public void close() {
-        running = false;
-        if (socket != null) {
-            socket.close();
+        stopListening();
+    }
+
+    private void closeChannel() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            System.err.println("[Listener] " + e.getMessage());
         }
     }
 
     /**
-     * Get this computer's hostname.
-     * 
-     * @return Hostname, or "unknown" if it can't be determined
+     * One pooled receive buffer and where its datagram came from.
      */
-    private static String getHostName() {
-        try {
-            return InetAddress.getLocalHost().getHostName();
-        } catch (Exception e) {
-            return "unknown";
-        }
+    private static final class Packet {
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        SocketAddress from;
+        boolean relayed; // came through the relay hub
     }
 }
@@ -1,76 +1,677 @@
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Sends sound detection events to other Taptic Desktop devices on the network.
  * Uses UDP broadcast so all devices on the local network can receive the
  * message.
- * 
- * When this device detects a sound that's marked for broadcasting,
- * it sends a JSON message containing:
+ *
+ * When this device detects a sound that's marked for broadcasting, it sends
+ * a compact binary record (see WireEvent) with the class id, real score,
+ * detection time, a sequence number and this computer's node id.
+ *
+ * For networks with older versions, -Dtaptic.broadcastFormat=json sends the
+ * old JSON message instead:
+ * - node: This computer's node id (first, so it can be read without parsing)
  * - type: The sound label (e.g., "Knock", "Door")
  * - time: When it was detected (HH:mm:ss format)
  * - host: This computer's hostname
+ * - score: The confidence score (ignored by older versions)
+ *
+ * sendEvent() only puts the event in a small queue, so the mic thread never
+ * waits for the network. The "BroadcastSender" thread owns one long-lived
+ * DatagramChannel and a direct send buffer. Events that arrive within a few
+ * milliseconds of each other go out in one datagram (binary records back to
+ * back, or one JSON object per line; older listeners read the first line).
+ *
+ * Where datagrams go (all-ones broadcast, per-interface directed broadcast
+ * or multicast) is decided by a BroadcastTransport. With a RelayClient set,
+ * every datagram is also handed to the relay hub for other subnets.
+ *
+ * Emergency sounds are sent reliably (binary format only; turn off with
+ * -Dtaptic.reliableEmergency=false): the record asks for an ACK, and it is
+ * sent again after 100, 200, 400, 800 and 1600 ms until every computer in
+ * the PeerTable that announces CAP_RELIABLE has acknowledged it. The list
+ * is taken when the emergency is first sent, so computers that have gone
+ * quiet (and were dropped from the table) aren't waited for, and there is
+ * no limit on how many are tracked. Until the first heartbeats arrive the
+ * table is empty, and then the first ACK is enough. Listeners ignore
+ * repeats (see DedupWindow). ACK delays and retry counts are in
+ * getStatsSummary().
+ *
+ * The sender thread also sends an 80-byte heartbeat every 10 seconds (with
+ * a little random jitter so 200 computers don't all send at once), which
+ * other computers use to keep their PeerTable. Heartbeats are sent at the
+ * same rate no matter how many peers there are, and never in reply to
+ * anything. They are not sent in JSON mode (older versions can't read them).
  */
-public final class BroadcastSender {
+public final class BroadcastSender implements AutoCloseable {
+
+    // Events waiting to be sent; more are dropped (and counted)
+    private static final int QUEUE_CAPACITY = 64;
+    // ACKs waiting for the sender thread (their own pool, so a burst of ACKs
+    // can't use up the slots local events need)
+    private static final int ACK_QUEUE_CAPACITY = 64;
+    // How long to wait for more events to put in the same datagram
+    private static final long COALESCE_MS = 5;
+    // Stay below a typical Ethernet MTU so datagrams are never fragmented
+    private static final int MAX_DATAGRAM = 1400;
+
+    // System property choosing the wire format: "binary" (default) or "json"
+    public static final String FORMAT_PROPERTY = "taptic.broadcastFormat";
+
+    // How often to look at the network interfaces again (Wi-Fi, VPN come and go)
+    private static final long TARGET_REFRESH_MS = BroadcastTransport.INTERFACE_REFRESH_MS;
+
+    // System property: "false" sends emergencies once, like other sounds
+    public static final String RELIABLE_PROPERTY = "taptic.reliableEmergency";
+    // Emergencies waiting for ACKs (the oldest gives up when more arrive)
+    private static final int MAX_PENDING = 16;
+    // First send plus 5 retries (about 3 s in total)
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long RETRY_BASE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // ACK delay histogram: bucket i counts delays below 2^i ms
+    private static final int LATENCY_BUCKETS = 16;
+
+    // Time between heartbeats (each one is moved by up to 10% at random)
+    public static final int HEARTBEAT_INTERVAL_MS = 10_000;
 
-    private final int port;
     private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
 
+    private final BroadcastTransport transport;
+    private final DatagramChannel channel;
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+    private final ByteBuffer heartbeatBuffer = ByteBuffer.allocateDirect(WireEvent.HEARTBEAT_SIZE);
+    private volatile int capabilities;
+    private volatile RelayClient relay;
+    private volatile PeerTable peerTable;
+    private final boolean json;
+    private final boolean reliable;
+    private final long nodeId;
+
+    // Reusable events and ACKs: taken by the caller, given back by the sender thread
+    private final BlockingQueue<Event> freeEvents = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Event> freeAcks = new ArrayBlockingQueue<>(ACK_QUEUE_CAPACITY);
+    private final BlockingQueue<Event> toSend = new ArrayBlockingQueue<>(QUEUE_CAPACITY + ACK_QUEUE_CAPACITY + 1);
+    private static final Event STOP = new Event();
+
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong datagramCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong reliableCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong ackCount = new AtomicLong();
+    private final AtomicLong droppedAckCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong partialCount = new AtomicLong();
+    private final AtomicLong unackedCount = new AtomicLong();
+    private final AtomicLongArray ackLatency = new AtomicLongArray(LATENCY_BUCKETS);
+
+    // Sender thread only: emergencies waiting for ACKs
+    private final Pending[] pending = new Pending[MAX_PENDING];
+
+    private final Thread sender;
+    private String hostName; // sender thread only, resolved once
+    private String jsonPrefix; // sender thread only: {"node":"<id>",
+    private int seq; // sender thread only
+    private List<BroadcastTransport.Target> targets; // sender thread only
+    private long targetsTime; // sender thread only
+    private byte[] heartbeatName; // sender thread only
+    private int heartbeatSeq; // sender thread only
+    private long nextHeartbeatNanos; // sender thread only
+
     /**
      * Create a broadcaster that sends on the specified port.
-     * 
-     * @param port UDP port number (typically 9876)
+     *
+     * @param transport Where to send (port, broadcast or multicast)
+     * @param nodeId    This computer's id (see NodeIdentity)
+     * @throws IOException If the channel can't be opened
      */
-    public BroadcastSender(int port) {
-        this.port = port;
+    public BroadcastSender(BroadcastTransport transport, long nodeId) throws IOException {
+        this.transport = transport;
+        this.channel = transport.openSendChannel();
+        this.json = "json".equalsIgnoreCase(System.getProperty(FORMAT_PROPERTY, "binary"));
+        this.reliable = !json && !"false".equalsIgnoreCase(System.getProperty(RELIABLE_PROPERTY));
+        this.nodeId = nodeId;
+
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            freeEvents.add(new Event());
+        }
+        for (int i = 0; i < ACK_QUEUE_CAPACITY; i++) {
+            Event ack = new Event();
+            ack.ack = true;
+            freeAcks.add(ack);
+        }
+        for (int i = 0; i < MAX_PENDING; i++) {
+            pending[i] = new Pending();
+        }
+        setCapabilities(0);
+
+        sender = new Thread(this::sendLoop, "BroadcastSender");
+        sender.setDaemon(true);
+        sender.start();
     }
 
     /**
-     * Broadcast a sound detection event to the network.
-     * 
+     * Queue a sound detection event for broadcasting. Never blocks.
+     *
+     * @param classId    Class id of the sound (index into the model's labels)
      * @param eventLabel The sound that was detected
-     * @throws IOException If network sending fails
+     * @param score      Confidence score (0.0 to 1.0)
+     * @param emergency  True for emergency sounds
+     * @return False if the queue was full and the event was dropped
+     */
+    public boolean sendEvent(int classId, String eventLabel, double score, boolean emergency) {
+        Event e = freeEvents.poll();
+        if (e == null) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        e.classId = classId;
+        e.label = eventLabel;
+        e.score = (float) score;
+        e.flags = emergency ? WireEvent.FLAG_EMERGENCY : 0;
+        e.timeMillis = System.currentTimeMillis();
+        toSend.offer(e); // Never full: there are only QUEUE_CAPACITY events and ACK_QUEUE_CAPACITY ACKs
+        return true;
+    }
+
+    /**
+     * A peer acknowledged one of our reliable events (called by BroadcastListener).
+     * Never blocks; the sender thread does the bookkeeping.
+     *
+     * @param peerNodeId Node id of the acknowledging computer
+     * @param ackedSeq   Sequence number it acknowledged
      */
-    public void sendEvent(String eventLabel) throws IOException {
-        // Create JSON message with event details
-        JSONObject json = new JSONObject();
-        json.put("type", eventLabel);
-        json.put("time", LocalDateTime.now().format(TIME_FORMAT));
-        json.put("host", getHostName());
+    public void onAck(long peerNodeId, int ackedSeq) {
+        Event e = freeAcks.poll();
+        if (e == null) {
+            droppedAckCount.incrementAndGet(); // The event will be sent again and acknowledged again
+            return;
+        }
+        e.peerNodeId = peerNodeId;
+        e.seq = ackedSeq;
+        toSend.offer(e);
+    }
 
-        // Convert to bytes
-        byte[] payload = json.toString().getBytes(StandardCharsets.UTF_8);
+    // ============ SENDER THREAD ============
 
-        // Send UDP broadcast
-        DatagramSocket sock = new DatagramSocket();
-        try {
-            sock.setBroadcast(true);
-            InetAddress broadcastAddress = InetAddress.getByName("255.255.255.255");
-            DatagramPacket packet = new DatagramPacket(payload, payload.length, broadcastAddress, port);
-            sock.send(packet);
-        } finally {
-            sock.close();
+    private void sendLoop() {
+        hostName = resolveHostName();
+        jsonPrefix = WireEvent.JSON_NODE_PREFIX + NodeIdentity.toHex(nodeId) + "\",";
+        // Random start, so a restarted sender isn't mistaken for repeats of its old events
+        seq = ThreadLocalRandom.current().nextInt();
+        heartbeatName = truncateUtf8(hostName, WireEvent.MAX_NAME_BYTES);
+        nextHeartbeatNanos = System.nanoTime(); // Say hello right away
+        while (true) {
+            // Wake up for the next retry or heartbeat even when nothing new arrives
+            long now = System.nanoTime();
+            if (!json && now - nextHeartbeatNanos >= 0) {
+                sendHeartbeat(now);
+            }
+            long idle = nextRetryNanos(now);
+            if (!json) {
+                long heartbeatWait = Math.max(0, nextHeartbeatNanos - now);
+                idle = idle < 0 ? heartbeatWait : Math.min(idle, heartbeatWait);
+            }
+            Event first;
+            try {
+                first = idle < 0 ? toSend.take() : toSend.poll(idle, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (first == STOP) {
+                break;
+            }
+
+            // Collect what arrives in the next few milliseconds into the same datagram
+            sendBuffer.clear();
+            boolean stop = first != null && append(first);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COALESCE_MS);
+            while (!stop && sendBuffer.position() > 0) {
+                long wait = deadline - System.nanoTime();
+                Event next;
+                try {
+                    next = wait > 0 ? toSend.poll(wait, TimeUnit.NANOSECONDS) : toSend.poll();
+                } catch (InterruptedException e) {
+                    stop = true;
+                    break;
+                }
+                if (next == null) {
+                    break;
+                }
+                stop = append(next);
+            }
+            resendDue(System.nanoTime());
+            flush();
+            if (stop) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Add one event to the datagram being built (sending it first if full).
+     *
+     * @return True if this was the STOP marker
+     */
+    private boolean append(Event e) {
+        if (e == STOP) {
+            return true;
+        }
+        if (e.ack) {
+            handleAck(e.peerNodeId, e.seq);
+            freeAcks.offer(e);
+            return false;
+        }
+        eventCount.incrementAndGet();
+        if (!json) {
+            // Binary: a fixed-size record, written straight into the direct buffer
+            if (sendBuffer.remaining() < WireEvent.SIZE) {
+                flush();
+            }
+            int eventSeq = seq++;
+            int flags = e.flags;
+            if (reliable && (flags & WireEvent.FLAG_EMERGENCY) != 0) {
+                flags |= WireEvent.FLAG_RELIABLE;
+                track(eventSeq, e, flags);
+            }
+            WireEvent.encode(sendBuffer, nodeId, eventSeq, e.timeMillis, e.classId, e.score, flags);
+            freeEvents.offer(e);
+            return false;
+        }
+
+        JSONObject obj = new JSONObject();
+        obj.put("type", e.label);
+        obj.put("time", TIME_FORMAT.format(Instant.ofEpochMilli(e.timeMillis).atZone(ZoneId.systemDefault())));
+        obj.put("host", hostName);
+        obj.put("score", Math.round(e.score * 1000.0) / 1000.0);
+        // Node id goes first so listeners can drop their own messages without parsing
+        String text = obj.toString();
+        byte[] line = (jsonPrefix + text.substring(1)).getBytes(StandardCharsets.UTF_8);
+        freeEvents.offer(e);
+
+        int need = line.length + (sendBuffer.position() > 0 ? 1 : 0);
+        if (need > sendBuffer.remaining()) {
+            flush();
+            need = line.length;
+        }
+        if (need > sendBuffer.remaining()) {
+            droppedCount.incrementAndGet(); // A single event larger than a datagram
+            return false;
+        }
+        if (sendBuffer.position() > 0) {
+            sendBuffer.put((byte) '\n');
+        }
+        sendBuffer.put(line);
+        return false;
+    }
+
+    /**
+     * Send the datagram being built, if any, to every target.
+     */
+    private void flush() {
+        if (sendBuffer.position() == 0) {
+            return;
+        }
+        sendToTargets(sendBuffer);
+        datagramCount.incrementAndGet();
+        sendBuffer.clear();
+    }
+
+    /**
+     * Send a buffer's contents (position 0 up to its position) to every target.
+     */
+    private void sendToTargets(ByteBuffer buf) {
+        long now = System.currentTimeMillis();
+        if (targets == null || now - targetsTime >= TARGET_REFRESH_MS) {
+            targets = transport.targets();
+            targetsTime = now;
+        }
+        buf.flip();
+        for (int i = 0; i < targets.size(); i++) {
+            BroadcastTransport.Target t = targets.get(i);
+            buf.rewind();
+            try {
+                if (t.networkInterface != null) {
+                    channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, t.networkInterface);
+                }
+                channel.send(buf, t.address);
+            } catch (IOException e) {
+                errorCount.incrementAndGet();
+                System.err.println("Broadcast error (" + t.address + "): " + e.getMessage());
+                targetsTime = 0; // An interface may have gone away; look again next time
+            }
+        }
+        RelayClient client = relay;
+        if (client != null) {
+            buf.rewind();
+            client.send(buf);
+        }
+    }
+
+    // ============ HEARTBEATS ============
+
+    /**
+     * Send one heartbeat and pick the time of the next one.
+     */
+    private void sendHeartbeat(long nowNanos) {
+        heartbeatBuffer.clear();
+        WireEvent.encodeHeartbeat(heartbeatBuffer, nodeId, heartbeatSeq++, System.currentTimeMillis(),
+                loadPerCpu(), capabilities, HEARTBEAT_INTERVAL_MS, heartbeatName);
+        sendToTargets(heartbeatBuffer);
+        long jitter = ThreadLocalRandom.current().nextLong(-HEARTBEAT_INTERVAL_MS / 10, HEARTBEAT_INTERVAL_MS / 10 + 1);
+        nextHeartbeatNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_INTERVAL_MS + jitter);
+    }
+
+    /**
+     * @return System load average divided by the number of CPUs, or -1 if unknown
+     */
+    private static float loadPerCpu() {
+        double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        return load < 0 ? -1.0f : (float) (load / Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Cut a text to at most maxBytes of UTF-8 without splitting a character.
+     */
+    private static byte[] truncateUtf8(String text, int maxBytes) {
+        String t = text;
+        byte[] bytes = t.getBytes(StandardCharsets.UTF_8);
+        while (bytes.length > maxBytes) {
+            t = t.substring(0, t.length() - 1);
+            bytes = t.getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    // ============ RELIABLE EMERGENCIES ============
+
+    /**
+     * Start waiting for ACKs for an emergency that is about to be sent.
+     */
+    private void track(int eventSeq, Event e, int flags) {
+        Pending slot = null;
+        for (Pending p : pending) {
+            if (!p.active) {
+                slot = p;
+                break;
+            }
+            if (slot == null || p.firstSentNanos < slot.firstSentNanos) {
+                slot = p;
+            }
+        }
+        if (slot.active) {
+            finish(slot); // Too many at once: the oldest stops waiting
+        }
+        slot.active = true;
+        slot.seq = eventSeq;
+        slot.classId = e.classId;
+        slot.score = e.score;
+        slot.flags = flags;
+        slot.timeMillis = e.timeMillis;
+        slot.attempts = 1;
+        PeerTable table = peerTable;
+        slot.expectedCount = table != null ? table.copyNodeIds(WireEvent.CAP_RELIABLE, slot.expected) : 0;
+        Arrays.sort(slot.expected, 0, slot.expectedCount);
+        slot.acked.clear();
+        slot.ackedCount = 0;
+        slot.anyAck = false;
+        slot.firstSentNanos = System.nanoTime();
+        slot.nextRetryNanos = slot.firstSentNanos + RETRY_BASE_NANOS;
+        reliableCount.incrementAndGet();
+    }
+
+    /**
+     * Record one peer's ACK; the event is done once every expected peer has sent one.
+     */
+    private void handleAck(long peer, int ackedSeq) {
+        for (Pending p : pending) {
+            if (!p.active || p.seq != ackedSeq) {
+                continue;
+            }
+            int index = Arrays.binarySearch(p.expected, 0, p.expectedCount, peer);
+            if (index >= 0) {
+                if (p.acked.get(index)) {
+                    return; // Repeat ACK for a retry
+                }
+                p.acked.set(index);
+                p.ackedCount++;
+            }
+            // ACKs from computers not in the table yet count for the statistics only
+            p.anyAck = true;
+            ackCount.incrementAndGet();
+            recordLatency(System.nanoTime() - p.firstSentNanos);
+            if (p.ackedCount == p.expectedCount) {
+                finish(p);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Add the datagrams that are due for a retry to the buffer being built.
+     */
+    private void resendDue(long now) {
+        for (Pending p : pending) {
+            if (!p.active || p.nextRetryNanos > now) {
+                continue;
+            }
+            if (p.attempts >= MAX_ATTEMPTS) {
+                finish(p);
+                continue;
+            }
+            if (sendBuffer.remaining() < WireEvent.SIZE) {
+                flush();
+            }
+            WireEvent.encode(sendBuffer, nodeId, p.seq, p.timeMillis, p.classId, p.score, p.flags);
+            retryCount.incrementAndGet();
+            p.nextRetryNanos = now + (RETRY_BASE_NANOS << p.attempts);
+            p.attempts++;
+        }
+    }
+
+    /**
+     * @return Nanoseconds until the next retry (0 if overdue), or -1 if none are waiting
+     */
+    private long nextRetryNanos(long now) {
+        long wait = -1;
+        for (Pending p : pending) {
+            if (p.active) {
+                long w = Math.max(0, p.nextRetryNanos - now);
+                if (wait < 0 || w < wait) {
+                    wait = w;
+                }
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Stop waiting for ACKs for an event and count how it went.
+     */
+    private void finish(Pending p) {
+        p.active = false;
+        if (!p.anyAck) {
+            unackedCount.incrementAndGet();
+            if (p.expectedCount > 0) {
+                System.err.println("[Broadcast] Emergency " + p.seq + " was not acknowledged by any of "
+                        + p.expectedCount + " peers");
+            }
+        } else if (p.ackedCount == p.expectedCount) {
+            deliveredCount.incrementAndGet();
+        } else {
+            partialCount.incrementAndGet();
+            System.err.println("[Broadcast] Emergency " + p.seq + " was acknowledged by " + p.ackedCount
+                    + " of " + p.expectedCount + " peers");
         }
     }
 
+    private void recordLatency(long nanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ms));
+        ackLatency.incrementAndGet(bucket);
+    }
+
     /**
-     * Get this computer's hostname.
-     * 
+     * @param fraction 0.5 for the median, 0.99 for the 99th percentile
+     * @return Upper bound of the ACK delay in ms (0 if there were no ACKs)
+     */
+    private long latencyPercentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            total += ackLatency.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += ackLatency.get(i);
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * Get this computer's hostname (may do a DNS lookup, so only on the sender thread).
+     *
      * @return Hostname, or "unknown" if it can't be determined
      */
-    private static String getHostName() {
+    private static String resolveHostName() {
         try {
             return InetAddress.getLocalHost().getHostName();
         } catch (Exception e) {
             return "unknown";
         }
     }
+
+    // ============ STATUS ============
+
+    /**
+     * Set what this computer can do, as announced in heartbeats.
+     *
+     * @param caps WireEvent.CAP_* bits
+     */
+    public void setCapabilities(int caps) {
+        capabilities = caps | (reliable ? WireEvent.CAP_RELIABLE : 0);
+    }
+
+    /**
+     * Wait for ACKs from the computers in this table that announce
+     * CAP_RELIABLE (normally the listener's table).
+     *
+     * @param peers Table of other computers, or null to count on the first ACK only
+     */
+    public void setPeers(PeerTable peers) {
+        peerTable = peers;
+    }
+
+    /**
+     * Also send every datagram through a relay hub.
+     *
+     * @param client Connection to the hub, or null for UDP only
+     */
+    public void setRelay(RelayClient client) {
+        relay = client;
+    }
+
+    /**
+     * @return Id of this computer in binary messages
+     */
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return One-line summary for the log
+     */
+    public String getStatsSummary() {
+        String summary = String.format("%d events in %d datagrams, %d dropped, %d errors",
+                eventCount.get(), datagramCount.get(), droppedCount.get(), errorCount.get());
+        if (reliableCount.get() == 0) {
+            return summary;
+        }
+        return summary + String.format("; emergencies: %d sent reliably, %d delivered, %d partly, %d unacknowledged, "
+                + "%d retries, %d ACKs (%d dropped), ACK delay p50 < %d ms, p90 < %d ms, p99 < %d ms",
+                reliableCount.get(), deliveredCount.get(), partialCount.get(), unackedCount.get(),
+                retryCount.get(), ackCount.get(), droppedAckCount.get(),
+                latencyPercentile(0.5), latencyPercentile(0.9), latencyPercentile(0.99));
+    }
+
+    /**
+     * Send what is queued and close the channel.
+     */
+    @Override
+    public void close() {
+        toSend.offer(STOP);
+        try {
+            sender.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Broadcast close error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One reusable queued event.
+     */
+    private static final class Event {
+        boolean ack; // true = an ACK from a peer (from freeAcks), not an event to send
+        long peerNodeId;
+        int seq;
+        int classId;
+        String label;
+        float score;
+        int flags;
+        long timeMillis;
+    }
+
+    /**
+     * One emergency waiting for ACKs (reused).
+     */
+    private static final class Pending {
+        boolean active;
+        int seq;
+        int classId;
+        float score;
+        int flags;
+        long timeMillis;
+        int attempts;
+        // Peers expected to ACK, sorted (taken from the PeerTable when first sent)
+        final long[] expected = new long[PeerTable.MAX_PEERS];
+        int expectedCount;
+        final BitSet acked = new BitSet(); // bit i = expected[i] acknowledged
+        int ackedCount;
+        boolean anyAck;
+        long firstSentNanos;
+        long nextRetryNanos;
+    }
 }
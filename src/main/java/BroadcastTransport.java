@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How broadcast events get to the other computers: which addresses the
+ * sender uses and which groups the listener joins.
+ *
+ * Chosen with system properties:
+ * - taptic.transport=broadcast (default): one datagram to 255.255.255.255,
+ *   on whichever network the operating system picks
+ * - taptic.transport=directed: one datagram per network interface, to that
+ *   network's own broadcast address (for Wi-Fi + wired + VPN machines)
+ * - taptic.transport=multicast: one datagram per interface to a multicast
+ *   group; the listener joins the group on every interface, and checks
+ *   again every INTERFACE_REFRESH_MS for interfaces that came or went
+ * - taptic.multicastGroup: IPv4 or IPv6 group (default 239.255.84.80)
+ * - taptic.multicastTtl: how many routers multicast may cross (default 1,
+ *   i.e. only this network)
+ *
+ * Sender and listener must use the same mode (broadcast and directed can be
+ * mixed, since the listener receives both).
+ */
+public final class BroadcastTransport {
+
+    public static final String MODE_PROPERTY = "taptic.transport";
+    public static final String GROUP_PROPERTY = "taptic.multicastGroup";
+    public static final String TTL_PROPERTY = "taptic.multicastTtl";
+
+    public static final String DEFAULT_GROUP = "239.255.84.80";
+    public static final int DEFAULT_TTL = 1;
+
+    // How often the sender's targets and the listener's groups follow interface changes
+    public static final long INTERFACE_REFRESH_MS = 30_000;
+
+    public enum Mode {
+        BROADCAST, DIRECTED, MULTICAST
+    }
+
+    private final Mode mode;
+    private final int port;
+    private final InetAddress group; // multicast only
+    private final int ttl;
+
+    /**
+     * @param mode  How to send
+     * @param port  UDP port
+     * @param group Multicast group (null unless mode is MULTICAST)
+     * @param ttl   Multicast time-to-live
+     */
+    public BroadcastTransport(Mode mode, int port, InetAddress group, int ttl) {
+        if (mode == Mode.MULTICAST && (group == null || !group.isMulticastAddress())) {
+            throw new IllegalArgumentException("Not a multicast group: " + group);
+        }
+        this.mode = mode;
+        this.port = port;
+        this.group = group;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Read the transport settings from system properties.
+     *
+     * @param port UDP port
+     * @return Transport (plain broadcast if the properties are missing or invalid)
+     */
+    public static BroadcastTransport fromProperties(int port) {
+        String name = System.getProperty(MODE_PROPERTY, "broadcast").trim().toUpperCase();
+        Mode mode;
+        try {
+            mode = Mode.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[Transport] Unknown " + MODE_PROPERTY + " \"" + name + "\", using broadcast");
+            return new BroadcastTransport(Mode.BROADCAST, port, null, DEFAULT_TTL);
+        }
+        if (mode != Mode.MULTICAST) {
+            return new BroadcastTransport(mode, port, null, DEFAULT_TTL);
+        }
+        try {
+            InetAddress group = InetAddress.getByName(System.getProperty(GROUP_PROPERTY, DEFAULT_GROUP));
+            int ttl = Integer.getInteger(TTL_PROPERTY, DEFAULT_TTL);
+            return new BroadcastTransport(mode, port, group, Math.max(0, Math.min(255, ttl)));
+        } catch (UnknownHostException | IllegalArgumentException e) {
+            System.err.println("[Transport] Bad multicast group, using broadcast: " + e.getMessage());
+            return new BroadcastTransport(Mode.BROADCAST, port, null, DEFAULT_TTL);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return IPv6 for an IPv6 multicast group, otherwise IPv4
+     */
+    private ProtocolFamily family() {
+        return group instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+    }
+
+    // ============ SENDING ============
+
+    /**
+     * Open the channel the sender keeps for its whole life.
+     */
+    public DatagramChannel openSendChannel() throws IOException {
+        DatagramChannel channel = DatagramChannel.open(family());
+        if (mode == Mode.MULTICAST) {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+        } else {
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+        }
+        return channel;
+    }
+
+    /**
+     * Work out where each datagram goes. Interfaces come and go (Wi-Fi,
+     * VPN), so the sender calls this again every so often.
+     *
+     * @return Targets (may be empty if no interface is up)
+     */
+    public List<Target> targets() {
+        List<Target> targets = new ArrayList<>();
+        try {
+            if (mode == Mode.BROADCAST) {
+                InetAddress all = InetAddress.getByAddress(new byte[] { -1, -1, -1, -1 });
+                targets.add(new Target(new InetSocketAddress(all, port), null));
+            } else if (mode == Mode.DIRECTED) {
+                for (NetworkInterface ni : usableInterfaces(false)) {
+                    for (InterfaceAddress ia : ni.getInterfaceAddresses()) {
+                        if (ia.getBroadcast() != null) {
+                            targets.add(new Target(new InetSocketAddress(ia.getBroadcast(), port), null));
+                        }
+                    }
+                }
+            } else {
+                InetSocketAddress address = new InetSocketAddress(group, port);
+                for (NetworkInterface ni : usableInterfaces(true)) {
+                    targets.add(new Target(address, ni));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[Transport] Could not list interfaces: " + e.getMessage());
+        }
+        return targets;
+    }
+
+    // ============ RECEIVING ============
+
+    /**
+     * Open and bind the listener's channel, joining the multicast group on
+     * every interface in multicast mode. Broadcasts to the port are received
+     * in every mode.
+     *
+     * @param receiveBuffer Kernel receive buffer size
+     * @param memberships   Filled with the groups joined; pass it to
+     *                      refreshMemberships() later
+     */
+    public DatagramChannel openReceiveChannel(int receiveBuffer, Map<String, MembershipKey> memberships)
+            throws IOException {
+        DatagramChannel channel = DatagramChannel.open(family());
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBuffer);
+        channel.bind(new InetSocketAddress(port));
+        if (mode == Mode.MULTICAST) {
+            int joined = refreshMemberships(channel, memberships);
+            System.out.println("[Transport] Joined " + group.getHostAddress() + " on " + joined + " interface(s)");
+        }
+        return channel;
+    }
+
+    /**
+     * Bring the multicast memberships up to date with the interfaces that
+     * are up now: join on new ones (Wi-Fi reconnected, VPN started, laptop
+     * docked), join again where the interface was re-created (new index),
+     * retry ones that failed before, and leave interfaces that are gone.
+     * Joining an interface we are already a member of is skipped, so calling
+     * this often costs only the interface listing. The listener calls it
+     * every INTERFACE_REFRESH_MS, the same interval the sender uses for its
+     * targets. Does nothing outside multicast mode.
+     *
+     * @param channel     Listener's channel
+     * @param memberships Memberships by interface name (null value = join
+     *                    failed before); kept by the caller between calls
+     * @return Number of interfaces joined in this call
+     */
+    public int refreshMemberships(DatagramChannel channel, Map<String, MembershipKey> memberships) {
+        if (mode != Mode.MULTICAST) {
+            return 0;
+        }
+        List<NetworkInterface> usable;
+        try {
+            usable = usableInterfaces(true);
+        } catch (SocketException e) {
+            System.err.println("[Transport] Could not list interfaces: " + e.getMessage());
+            return 0;
+        }
+
+        Set<String> present = new HashSet<>();
+        int joined = 0;
+        for (NetworkInterface ni : usable) {
+            present.add(ni.getName());
+            boolean known = memberships.containsKey(ni.getName());
+            MembershipKey key = memberships.get(ni.getName());
+            if (key != null && key.isValid() && key.networkInterface().getIndex() == ni.getIndex()) {
+                continue; // Still a member
+            }
+            if (key != null) {
+                key.drop(); // Interface was re-created; the old membership is gone with it
+            }
+            try {
+                memberships.put(ni.getName(), channel.join(group, ni));
+                joined++;
+                if (known) {
+                    System.out.println("[Transport] Joined " + group.getHostAddress() + " again on " + ni.getName());
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                if (!known) {
+                    // Logged once; retried quietly at every refresh
+                    System.err.println("[Transport] Could not join " + group.getHostAddress() + " on "
+                            + ni.getName() + ": " + e.getMessage());
+                }
+                memberships.put(ni.getName(), null);
+            }
+        }
+
+        Iterator<Map.Entry<String, MembershipKey>> it = memberships.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, MembershipKey> e = it.next();
+            if (!present.contains(e.getKey())) {
+                if (e.getValue() != null) {
+                    e.getValue().drop();
+                    System.out.println("[Transport] Left " + group.getHostAddress() + " on " + e.getKey()
+                            + " (interface gone)");
+                }
+                it.remove();
+            }
+        }
+        return joined;
+    }
+
+    /**
+     * Interfaces that are up and not loopback; for multicast also ones that
+     * support it and have an address of the group's kind (IPv4 / IPv6).
+     */
+    private List<NetworkInterface> usableInterfaces(boolean multicast) throws SocketException {
+        List<NetworkInterface> result = new ArrayList<>();
+        for (NetworkInterface ni : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!ni.isUp() || ni.isLoopback()) {
+                continue;
+            }
+            if (multicast && (!ni.supportsMulticast() || !hasAddressFor(ni))) {
+                continue;
+            }
+            result.add(ni);
+        }
+        return result;
+    }
+
+    private boolean hasAddressFor(NetworkInterface ni) {
+        for (InterfaceAddress ia : ni.getInterfaceAddresses()) {
+            InetAddress a = ia.getAddress();
+            if (group instanceof Inet6Address ? a instanceof Inet6Address : a instanceof Inet4Address) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.MULTICAST
+                ? "multicast " + group.getHostAddress() + ":" + port + " ttl " + ttl
+                : mode.name().toLowerCase() + " :" + port;
+    }
+
+    /**
+     * One destination: an address, and for multicast the interface to send it out of.
+     */
+    public static final class Target {
+        final InetSocketAddress address;
+        final NetworkInterface networkInterface; // null = let the system choose
+
+        Target(InetSocketAddress address, NetworkInterface networkInterface) {
+            this.address = address;
+            this.networkInterface = networkInterface;
+        }
+    }
+}
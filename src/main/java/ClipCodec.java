@@ -0,0 +1,440 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Small lossless codec for 16-bit mono audio clips, in the style of FLAC.
+ *
+ * The audio is cut into blocks of 4096 samples. For each block the best of
+ * five fixed linear predictors (order 0 to 4) is chosen, and only the
+ * prediction errors (residuals) are stored, Rice-coded in 8 partitions with
+ * their own parameter. Blocks that don't compress are stored as-is.
+ *
+ * A seek table of block offsets follows the header, so any range of samples
+ * can be decoded without decoding the whole clip.
+ *
+ * Layout (header little-endian, blocks are a big-endian bit stream):
+ *   0  "TPC1"
+ *   4  int  sample rate
+ *   8  int  total samples
+ *   12 int  block size
+ *   16 int  block count
+ *   20 int  block offsets (block count entries, from the start of the block data)
+ *   .. blocks, each starting on a byte boundary
+ */
+public final class ClipCodec {
+
+    private static final int MAGIC = 0x31435054; // "TPC1" read little-endian
+    private static final int HEADER_SIZE = 20;
+    private static final int BLOCK_SIZE = 4096;
+    private static final int PARTITIONS = 8;
+    private static final int MAX_ORDER = 4;
+    private static final int VERBATIM = 0xFF;
+
+    // Rice escape: this many 1 bits means "raw 32-bit value follows"
+    private static final int ESCAPE = 24;
+    private static final int K_BITS = 5;
+
+    // Private constructor - only static methods
+    private ClipCodec() {
+    }
+
+    // ============ ENCODING ============
+
+    /**
+     * Compress a clip.
+     *
+     * @param pcm        16-bit little-endian mono samples
+     * @param len        Number of bytes to use from pcm
+     * @param sampleRate Sample rate (stored, not used for coding)
+     * @return Encoded clip
+     */
+    public static byte[] encode(byte[] pcm, int len, int sampleRate) {
+        int total = len / 2;
+        int[] samples = new int[total];
+        for (int i = 0; i < total; i++) {
+            samples[i] = (short) ((pcm[2 * i] & 0xFF) | (pcm[2 * i + 1] << 8));
+        }
+
+        int blocks = (total + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] offsets = new int[blocks];
+        BitWriter bits = new BitWriter(len / 2 + 64);
+        int[] residual = new int[BLOCK_SIZE];
+
+        for (int b = 0; b < blocks; b++) {
+            offsets[b] = bits.bytePosition();
+            int start = b * BLOCK_SIZE;
+            int n = Math.min(BLOCK_SIZE, total - start);
+            encodeBlock(samples, start, n, residual, bits);
+        }
+
+        byte[] data = bits.toByteArray();
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + 4 * blocks + data.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(sampleRate).putInt(total).putInt(BLOCK_SIZE).putInt(blocks);
+        for (int off : offsets) {
+            out.putInt(off);
+        }
+        out.put(data);
+        return out.array();
+    }
+
+    private static void encodeBlock(int[] x, int start, int n, int[] residual, BitWriter bits) {
+        // Pick the predictor with the smallest total error
+        int bestOrder = 0;
+        long bestSum = Long.MAX_VALUE;
+        for (int order = 0; order <= MAX_ORDER && order < n; order++) {
+            long sum = 0;
+            for (int i = start + order; i < start + n; i++) {
+                sum += Math.abs(x[i] - predict(x, i, order));
+            }
+            if (sum < bestSum) {
+                bestSum = sum;
+                bestOrder = order;
+            }
+        }
+
+        int order = bestOrder;
+        int count = n - order;
+        for (int i = 0; i < count; i++) {
+            int idx = start + order + i;
+            residual[i] = zigzag(x[idx] - predict(x, idx, order));
+        }
+
+        // Choose the Rice parameters and work out the exact size
+        int[] ks = new int[PARTITIONS];
+        long size = 8 + 16L * order;
+        int partSize = (count + PARTITIONS - 1) / PARTITIONS;
+        for (int p = 0; p < PARTITIONS; p++) {
+            int from = Math.min(count, p * partSize);
+            int to = Math.min(count, from + partSize);
+            ks[p] = bestRiceParameter(residual, from, to);
+            size += K_BITS + riceCost(residual, from, to, ks[p]);
+        }
+
+        if (size > 8 + 16L * n) {
+            // Worse than raw: store the block verbatim instead
+            bits.write(VERBATIM, 8);
+            for (int i = 0; i < n; i++) {
+                bits.write(x[start + i] & 0xFFFF, 16);
+            }
+        } else {
+            bits.write(order, 8);
+            for (int i = 0; i < order; i++) {
+                bits.write(x[start + i] & 0xFFFF, 16);
+            }
+            writePartitions(residual, count, ks, bits);
+        }
+        bits.alignToByte();
+    }
+
+    private static void writePartitions(int[] u, int count, int[] ks, BitWriter bits) {
+        int partSize = (count + PARTITIONS - 1) / PARTITIONS;
+        for (int p = 0; p < PARTITIONS; p++) {
+            int from = Math.min(count, p * partSize);
+            int to = Math.min(count, from + partSize);
+            int k = ks[p];
+            bits.write(k, K_BITS);
+            for (int i = from; i < to; i++) {
+                int q = u[i] >>> k;
+                if (q < ESCAPE) {
+                    bits.writeOnes(q);
+                    bits.write(0, 1);
+                    if (k > 0) {
+                        bits.write(u[i] & ((1 << k) - 1), k);
+                    }
+                } else {
+                    bits.writeOnes(ESCAPE);
+                    bits.write(u[i], 32);
+                }
+            }
+        }
+    }
+
+    /**
+     * Choose the Rice parameter with the fewest bits for a partition.
+     */
+    private static int bestRiceParameter(int[] u, int from, int to) {
+        int n = to - from;
+        if (n == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += u[i] & 0xFFFFFFFFL;
+        }
+        long mean = sum / n;
+        int guess = mean > 0 ? 63 - Long.numberOfLeadingZeros(mean) : 0;
+
+        int best = 0;
+        long bestCost = Long.MAX_VALUE;
+        for (int k = Math.max(0, guess - 1); k <= Math.min(30, guess + 1); k++) {
+            long cost = riceCost(u, from, to, k);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Number of bits needed to Rice-code a partition with parameter k.
+     */
+    private static long riceCost(int[] u, int from, int to, int k) {
+        long cost = 0;
+        for (int i = from; i < to; i++) {
+            long q = (u[i] & 0xFFFFFFFFL) >>> k;
+            cost += q < ESCAPE ? q + 1 + k : ESCAPE + 32;
+        }
+        return cost;
+    }
+
+    // ============ DECODING ============
+
+    /**
+     * @param data Encoded clip
+     * @return Number of samples in the clip
+     */
+    public static int getSampleCount(byte[] data) {
+        return header(data).getInt(8);
+    }
+
+    /**
+     * @param data Encoded clip
+     * @return Sample rate of the clip
+     */
+    public static int getSampleRate(byte[] data) {
+        return header(data).getInt(4);
+    }
+
+    /**
+     * Decode part of a clip. Only the blocks covering the range are decoded.
+     *
+     * @param data       Encoded clip
+     * @param fromSample First sample to decode
+     * @param out        Destination for the samples
+     * @param outOff     Start offset in out
+     * @param count      Number of samples (clipped to the end of the clip)
+     * @return Number of samples written
+     */
+    public static int decode(byte[] data, int fromSample, short[] out, int outOff, int count) {
+        ByteBuffer h = header(data);
+        int total = h.getInt(8);
+        int blockSize = h.getInt(12);
+        int blocks = h.getInt(16);
+        int dataStart = HEADER_SIZE + 4 * blocks;
+
+        int end = Math.min(total, fromSample + count);
+        if (fromSample < 0 || fromSample >= end) {
+            return 0;
+        }
+
+        int[] block = new int[blockSize];
+        int written = 0;
+        for (int b = fromSample / blockSize; b * blockSize < end; b++) {
+            int start = b * blockSize;
+            int n = Math.min(blockSize, total - start);
+            BitReader bits = new BitReader(data, dataStart + h.getInt(HEADER_SIZE + 4 * b));
+            decodeBlock(bits, block, n);
+
+            int from = Math.max(fromSample, start) - start;
+            int to = Math.min(end, start + n) - start;
+            for (int i = from; i < to; i++) {
+                out[outOff + written++] = (short) block[i];
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Decode a whole clip back to 16-bit little-endian PCM.
+     *
+     * @param data Encoded clip
+     * @return PCM bytes
+     */
+    public static byte[] decodeToPcm(byte[] data) {
+        int total = getSampleCount(data);
+        short[] samples = new short[total];
+        decode(data, 0, samples, 0, total);
+        byte[] pcm = new byte[total * 2];
+        for (int i = 0; i < total; i++) {
+            pcm[2 * i] = (byte) samples[i];
+            pcm[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        return pcm;
+    }
+
+    private static void decodeBlock(BitReader bits, int[] x, int n) {
+        int order = bits.read(8);
+        if (order == VERBATIM) {
+            for (int i = 0; i < n; i++) {
+                x[i] = (short) bits.read(16);
+            }
+            return;
+        }
+        for (int i = 0; i < order; i++) {
+            x[i] = (short) bits.read(16);
+        }
+
+        int count = n - order;
+        int partSize = (count + PARTITIONS - 1) / PARTITIONS;
+        for (int p = 0; p < PARTITIONS; p++) {
+            int from = Math.min(count, p * partSize);
+            int to = Math.min(count, from + partSize);
+            int k = bits.read(K_BITS);
+            for (int i = from; i < to; i++) {
+                int q = bits.countOnes(ESCAPE);
+                int u;
+                if (q < ESCAPE) {
+                    u = (q << k) | (k > 0 ? bits.read(k) : 0);
+                } else {
+                    u = bits.read(32);
+                }
+                int idx = order + i;
+                x[idx] = unzigzag(u) + predict(x, idx, order);
+            }
+        }
+    }
+
+    private static ByteBuffer header(byte[] data) {
+        ByteBuffer h = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.length < HEADER_SIZE || h.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an encoded clip");
+        }
+        return h;
+    }
+
+    // ============ HELPERS ============
+
+    /**
+     * Fixed polynomial predictors (same as FLAC's "fixed" subframes).
+     */
+    private static int predict(int[] x, int i, int order) {
+        switch (order) {
+            case 0:
+                return 0;
+            case 1:
+                return x[i - 1];
+            case 2:
+                return 2 * x[i - 1] - x[i - 2];
+            case 3:
+                return 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+            default:
+                return 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+        }
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int u) {
+        return (u >>> 1) ^ -(u & 1);
+    }
+
+    /**
+     * Appends bits (most significant first) to a growing byte array.
+     */
+    private static final class BitWriter {
+        private byte[] buf;
+        private long bitPos;
+
+        BitWriter(int initialBytes) {
+            buf = new byte[Math.max(64, initialBytes)];
+        }
+
+        /**
+         * Write the lowest count bits of value (count up to 32).
+         */
+        void write(int value, int count) {
+            ensureRoom(count);
+            while (count > 0) {
+                int idx = (int) (bitPos >>> 3);
+                int space = 8 - (int) (bitPos & 7);
+                int take = Math.min(space, count);
+                int chunk = (int) ((value & 0xFFFFFFFFL) >>> (count - take)) & ((1 << take) - 1);
+                buf[idx] |= (byte) (chunk << (space - take));
+                count -= take;
+                bitPos += take;
+            }
+        }
+
+        void writeOnes(int count) {
+            while (count > 0) {
+                int c = Math.min(30, count);
+                write((1 << c) - 1, c);
+                count -= c;
+            }
+        }
+
+        private void ensureRoom(int bits) {
+            int needed = (int) ((bitPos + bits + 7) >>> 3);
+            if (needed > buf.length) {
+                byte[] bigger = new byte[Math.max(needed, buf.length * 2)];
+                System.arraycopy(buf, 0, bigger, 0, buf.length);
+                buf = bigger;
+            }
+        }
+
+        int bytePosition() {
+            return (int) ((bitPos + 7) >>> 3);
+        }
+
+        void alignToByte() {
+            bitPos = (bitPos + 7) & ~7L;
+        }
+
+        byte[] toByteArray() {
+            byte[] out = new byte[bytePosition()];
+            System.arraycopy(buf, 0, out, 0, out.length);
+            return out;
+        }
+    }
+
+    /**
+     * Reads bits (most significant first) from a byte array.
+     */
+    private static final class BitReader {
+        private final byte[] buf;
+        private long bitPos;
+
+        BitReader(byte[] buf, int byteOffset) {
+            this.buf = buf;
+            this.bitPos = (long) byteOffset << 3;
+        }
+
+        /**
+         * Read count bits (up to 32) as an unsigned value.
+         */
+        int read(int count) {
+            int v = 0;
+            while (count > 0) {
+                int idx = (int) (bitPos >>> 3);
+                int avail = 8 - (int) (bitPos & 7);
+                int take = Math.min(avail, count);
+                int chunk = ((buf[idx] & 0xFF) >>> (avail - take)) & ((1 << take) - 1);
+                v = (v << take) | chunk;
+                count -= take;
+                bitPos += take;
+            }
+            return v;
+        }
+
+        /**
+         * Count 1 bits up to a 0 bit (which is consumed) or until max ones were read.
+         */
+        int countOnes(int max) {
+            int n = 0;
+            while (n < max) {
+                int b = buf[(int) (bitPos >>> 3)];
+                int bit = (b >>> (7 - (int) (bitPos & 7))) & 1;
+                bitPos++;
+                if (bit == 0) {
+                    return n;
+                }
+                n++;
+            }
+            return n;
+        }
+    }
+}
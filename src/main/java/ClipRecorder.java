@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves a short audio clip around every local notification, so caregivers
+ * can listen to what was actually heard.
+ *
+ * The mic thread keeps the last few seconds of audio in an off-heap PcmRing.
+ * When a notification fires, the clip is cut out of the ring once the
+ * post-roll has been recorded, copied into one of a few reusable buffers
+ * and handed to the "ClipWriter" thread, which compresses it losslessly with
+ * ClipCodec and writes the file. If all buffers are busy the clip is dropped,
+ * so capture and inference never wait for the disk.
+ *
+ * Clips are named after the journal event id, so the UI can open the clip
+ * for an event directly. When the folder grows past its quota, the least
+ * recently used clips are deleted.
+ */
+public final class ClipRecorder implements AutoCloseable {
+
+    public static final int SAMPLE_RATE = 16000;
+    private static final int BYTES_PER_SECOND = SAMPLE_RATE * 2;
+
+    // Clips waiting for their post-roll at the same time
+    private static final int MAX_PENDING = 8;
+    // Clip buffers (and so the length of the writer queue)
+    private static final int WRITER_BUFFERS = 4;
+
+    private static final String PREFIX = "clip-";
+    private static final String SUFFIX = ".tpc";
+
+    private final Path dir;
+    private final long quotaBytes;
+    private final int preBytes;
+    private final int postBytes;
+    private final PcmRing ring;
+
+    // Clips waiting for post-roll audio (mic thread only)
+    private final long[] pendingIds = new long[MAX_PENDING];
+    private final long[] pendingTriggers = new long[MAX_PENDING];
+    private int pendingCount;
+
+    // Reusable buffers: taken by the mic thread, given back by the writer
+    private final BlockingQueue<Clip> freeClips = new ArrayBlockingQueue<>(WRITER_BUFFERS);
+    private final BlockingQueue<Clip> toWrite = new ArrayBlockingQueue<>(WRITER_BUFFERS + 1);
+    private static final Clip STOP = new Clip(0);
+
+    // Clips on disk (event id -> size), least recently used first
+    private final LinkedHashMap<Long, Long> files = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong savedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    private final Thread writer;
+
+    /**
+     * @param dir        Folder for the clips
+     * @param preSeconds Seconds of audio to keep before the event
+     * @param postSeconds Seconds of audio to keep after the event
+     * @param quotaBytes Maximum total size of the folder
+     * @throws IOException If the folder can't be created or listed
+     */
+    public ClipRecorder(Path dir, int preSeconds, int postSeconds, long quotaBytes) throws IOException {
+        this.dir = dir;
+        this.quotaBytes = quotaBytes;
+        this.preBytes = preSeconds * BYTES_PER_SECOND;
+        this.postBytes = postSeconds * BYTES_PER_SECOND;
+        // Room for pre + post plus two seconds of slack for the hop size
+        this.ring = new PcmRing(preBytes + postBytes + 2 * BYTES_PER_SECOND);
+
+        for (int i = 0; i < WRITER_BUFFERS; i++) {
+            freeClips.add(new Clip(preBytes + postBytes));
+        }
+
+        Files.createDirectories(dir);
+        loadExisting();
+
+        writer = new Thread(this::writeLoop, "ClipWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Create a recorder in the data folder. Lengths and quota can be changed with
+     * the taptic.clipPreSeconds, taptic.clipPostSeconds and taptic.clipQuotaMB
+     * system properties.
+     *
+     * @return New recorder
+     * @throws IOException If the clips folder can't be used
+     */
+    public static ClipRecorder createDefault() throws IOException {
+        int pre = Integer.getInteger("taptic.clipPreSeconds", 5);
+        int post = Integer.getInteger("taptic.clipPostSeconds", 5);
+        long quotaMb = Long.getLong("taptic.clipQuotaMB", 512);
+        return new ClipRecorder(AppConfig.getDataDirectory().resolve("clips"),
+                pre, post, quotaMb * 1024 * 1024);
+    }
+
+    // ============ MIC THREAD ============
+
+    /**
+     * Feed captured audio. Called by YamnetMic for every hop.
+     *
+     * @param pcm 16-bit little-endian mono samples at 16 kHz
+     * @param len Number of bytes
+     */
+    public void onAudio(byte[] pcm, int len) {
+        ring.write(pcm, 0, len);
+
+        long pos = ring.getPosition();
+        for (int i = pendingCount - 1; i >= 0; i--) {
+            if (pos >= pendingTriggers[i] + postBytes) {
+                finish(pendingIds[i], pendingTriggers[i]);
+                // Remove by moving the last one into this slot
+                pendingCount--;
+                pendingIds[i] = pendingIds[pendingCount];
+                pendingTriggers[i] = pendingTriggers[pendingCount];
+            }
+        }
+    }
+
+    /**
+     * Save a clip around "now". Must be called on the mic thread
+     * (Interpreter does this from onFrame).
+     *
+     * @param eventId Journal event id the clip belongs to
+     */
+    public void capture(long eventId) {
+        if (pendingCount == MAX_PENDING) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        pendingIds[pendingCount] = eventId;
+        pendingTriggers[pendingCount] = ring.getPosition();
+        pendingCount++;
+    }
+
+    /**
+     * Cut a finished clip out of the ring and queue it for writing.
+     */
+    private void finish(long eventId, long trigger) {
+        Clip clip = freeClips.poll();
+        if (clip == null) {
+            droppedCount.incrementAndGet(); // Writer is behind
+            return;
+        }
+        long from = Math.max(ring.getOldestPosition(), trigger - preBytes);
+        int len = (int) (trigger + postBytes - from);
+        if (!ring.read(from, clip.pcm, 0, len)) {
+            freeClips.offer(clip);
+            droppedCount.incrementAndGet();
+            return;
+        }
+        clip.eventId = eventId;
+        clip.length = len;
+        toWrite.offer(clip); // Never full: there are only WRITER_BUFFERS clips
+    }
+
+    // ============ WRITER THREAD ============
+
+    private void writeLoop() {
+        while (true) {
+            Clip clip;
+            try {
+                clip = toWrite.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (clip == STOP) {
+                break;
+            }
+            try {
+                write(clip);
+                savedCount.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("[Clips] Could not save clip " + clip.eventId + ": " + e.getMessage());
+            } finally {
+                freeClips.offer(clip);
+            }
+        }
+    }
+
+    private void write(Clip clip) throws IOException {
+        byte[] encoded = ClipCodec.encode(clip.pcm, clip.length, SAMPLE_RATE);
+        long size = encoded.length;
+        makeRoom(size);
+
+        Path target = pathFor(clip.eventId);
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        Files.write(tmp, encoded);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (files) {
+            files.put(clip.eventId, size);
+            totalBytes += size;
+        }
+    }
+
+    /**
+     * Delete least recently used clips until a new one of this size fits.
+     */
+    private void makeRoom(long needed) {
+        List<Long> victims = new ArrayList<>();
+        synchronized (files) {
+            Iterator<Map.Entry<Long, Long>> it = files.entrySet().iterator();
+            while (totalBytes + needed > quotaBytes && it.hasNext()) {
+                Map.Entry<Long, Long> e = it.next();
+                totalBytes -= e.getValue();
+                victims.add(e.getKey());
+                it.remove();
+            }
+        }
+        for (long id : victims) {
+            try {
+                Files.deleteIfExists(pathFor(id));
+                evictedCount.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("[Clips] Could not delete clip " + id + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // ============ LOOKUP ============
+
+    /**
+     * Find the clip for an event and mark it as recently used.
+     *
+     * @param eventId Journal event id
+     * @return Encoded clip file, or null if there is no clip (not saved, or evicted)
+     */
+    public Path findClip(long eventId) {
+        synchronized (files) {
+            if (files.get(eventId) == null) {
+                return null;
+            }
+        }
+        Path p = pathFor(eventId);
+        try {
+            // Keeps the LRU order across restarts
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            return null;
+        }
+        return p;
+    }
+
+    /**
+     * Load the clip for an event. Decode parts of it with ClipCodec.decode().
+     *
+     * @param eventId Journal event id
+     * @return Encoded clip, or null if there is no clip
+     */
+    public byte[] loadClip(long eventId) {
+        Path p = findClip(eventId);
+        if (p == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(p);
+        } catch (IOException e) {
+            System.err.println("[Clips] Could not read clip " + eventId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Export the clip for an event as a WAV file (for other audio players).
+     *
+     * @param eventId Journal event id
+     * @param target  WAV file to write
+     * @return True if the clip existed and was written
+     * @throws IOException If the file can't be written
+     */
+    public boolean exportWav(long eventId, Path target) throws IOException {
+        byte[] encoded = loadClip(eventId);
+        if (encoded == null) {
+            return false;
+        }
+        byte[] pcm = ClipCodec.decodeToPcm(encoded);
+        try (OutputStream out = Files.newOutputStream(target)) {
+            out.write(wavHeader(pcm.length));
+            out.write(pcm);
+        }
+        return true;
+    }
+
+    private static byte[] wavHeader(int dataBytes) {
+        ByteBuffer h = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        h.put(new byte[] { 'R', 'I', 'F', 'F' }).putInt(36 + dataBytes);
+        h.put(new byte[] { 'W', 'A', 'V', 'E' });
+        h.put(new byte[] { 'f', 'm', 't', ' ' }).putInt(16);
+        h.putShort((short) 1); // PCM
+        h.putShort((short) 1); // mono
+        h.putInt(SAMPLE_RATE);
+        h.putInt(BYTES_PER_SECOND);
+        h.putShort((short) 2); // block align
+        h.putShort((short) 16); // bits per sample
+        h.put(new byte[] { 'd', 'a', 't', 'a' }).putInt(dataBytes);
+        return h.array();
+    }
+
+    private Path pathFor(long eventId) {
+        return dir.resolve(PREFIX + eventId + SUFFIX);
+    }
+
+    /**
+     * Register clips saved by earlier runs, oldest use first.
+     */
+    private void loadExisting() throws IOException {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) {
+                found.add(p);
+            }
+        }
+        found.sort((a, b) -> {
+            try {
+                return Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b));
+            } catch (IOException e) {
+                return 0;
+            }
+        });
+        for (Path p : found) {
+            String name = p.getFileName().toString();
+            try {
+                long id = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                long size = Files.size(p);
+                files.put(id, size);
+                totalBytes += size;
+            } catch (NumberFormatException | IOException e) {
+                // Not one of ours
+            }
+        }
+    }
+
+    /**
+     * Get a one-line summary of the clip statistics for logs.
+     *
+     * @return Statistics summary
+     */
+    public String getStatsSummary() {
+        long kept;
+        long bytes;
+        synchronized (files) {
+            kept = files.size();
+            bytes = totalBytes;
+        }
+        return String.format(Locale.ROOT, "clips: %d saved, %d dropped, %d evicted, %d kept (%.1f MB)",
+                savedCount.get(), droppedCount.get(), evictedCount.get(), kept, bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Write the clips already queued and stop the writer thread.
+     * Clips still waiting for their post-roll are discarded.
+     */
+    @Override
+    public void close() {
+        toWrite.offer(STOP);
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One reusable clip buffer.
+     */
+    private static final class Clip {
+        final byte[] pcm;
+        long eventId;
+        int length;
+
+        Clip(int capacity) {
+            this.pcm = new byte[capacity];
+        }
+    }
+}
@@ -0,0 +1,518 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One immutable, versioned copy of all settings.
+ *
+ * AppConfig publishes the current snapshot through a single volatile field
+ * and builds a new one whenever something changes. Readers on the mic and
+ * network threads grab the reference once and get a consistent view with
+ * no locks.
+ *
+ * For the model's own labels the per-sound settings are also flattened into
+ * arrays indexed by class id, so a hot-path lookup is one HashMap get on the
+ * (already hashed) label string plus an array read, with no allocation.
+ * The keyword rules are evaluated against every label once, when the rules
+ * (or the label table) change, and kept in the same kind of array.
+ */
+public final class ConfigSnapshot {
+
+    // Bits in classFlags
+    static final int FLAG_MONITORED = 1;
+    static final int FLAG_NOTIFY = 1 << 1;
+    static final int FLAG_EMERGENCY = 1 << 2;
+    static final int FLAG_SEND = 1 << 3;
+    static final int FLAG_LISTEN = 1 << 4;
+
+    static final String DEFAULT_COLOR = "#8AB4FF";
+    static final String EMERGENCY_COLOR = "#FF5252";
+
+    private final long version;
+
+    // Global settings
+    private final boolean playSound;
+    private final boolean flashEmergency;
+    private final double notifyThreshold;
+    private final String notificationSound;
+    private final String emergencyNotificationSound;
+    private final String notificationEmoji;
+    private final String notificationBackend;
+    private final String ttsVoice;
+    private final boolean saveClips;
+
+    // Per-sound settings as sets (source of truth, also used for unknown labels)
+    private final Set<String> monitored;
+    private final Set<String> notify;
+    private final Set<String> emergency; // lowercase keys
+    private final Set<String> broadcastSend;
+    private final Set<String> broadcastListen;
+    private final Map<String, String> colors; // lowercase keys
+
+    private final KeywordRules keywordRules;
+    private final Map<String, Float> calibratedThresholds; // from user feedback, not saved
+
+    // Flattened per-class view for known labels
+    private final String[] classLabels;
+    private final Map<String, Integer> classIndex;
+    private final byte[] classFlags;
+    private final String[] classColors;
+    private final byte[] classKeywordFlags; // KeywordRules.classify() per class
+    private final float[] classThresholds; // effective notify threshold per class
+
+    private ConfigSnapshot(Builder b, long version) {
+        this.version = version;
+        this.playSound = b.playSound;
+        this.flashEmergency = b.flashEmergency;
+        this.notifyThreshold = b.notifyThreshold;
+        this.notificationSound = b.notificationSound;
+        this.emergencyNotificationSound = b.emergencyNotificationSound;
+        this.notificationEmoji = b.notificationEmoji;
+        this.notificationBackend = b.notificationBackend;
+        this.ttsVoice = b.ttsVoice;
+        this.saveClips = b.saveClips;
+
+        // The builder made fresh copies, so wrapping them is enough
+        this.monitored = Collections.unmodifiableSet(b.monitored);
+        this.notify = Collections.unmodifiableSet(b.notify);
+        this.emergency = Collections.unmodifiableSet(b.emergency);
+        this.broadcastSend = Collections.unmodifiableSet(b.broadcastSend);
+        this.broadcastListen = Collections.unmodifiableSet(b.broadcastListen);
+        this.colors = Collections.unmodifiableMap(b.colors);
+
+        this.keywordRules = b.keywordRules;
+        this.calibratedThresholds = b.calibratedThresholds;
+        this.classLabels = b.classLabels;
+        this.classIndex = b.classIndex;
+        // Only re-classified when the rules or the label table changed
+        this.classKeywordFlags = b.keywordFlags();
+        int n = classLabels.length;
+        this.classFlags = new byte[n];
+        this.classColors = new String[n];
+        this.classThresholds = new float[n];
+        for (int i = 0; i < n; i++) {
+            String label = classLabels[i];
+            String key = label.trim().toLowerCase(Locale.ROOT);
+            int flags = 0;
+            if (monitored.contains(label)) flags |= FLAG_MONITORED;
+            if (notify.contains(label)) flags |= FLAG_NOTIFY;
+            if (emergency.contains(key)) flags |= FLAG_EMERGENCY;
+            if (broadcastSend.contains(label)) flags |= FLAG_SEND;
+            if (broadcastListen.contains(label)) flags |= FLAG_LISTEN;
+            classFlags[i] = (byte) flags;
+
+            String color = colors.get(key);
+            if (color == null) {
+                color = (flags & FLAG_EMERGENCY) != 0 ? EMERGENCY_COLOR : DEFAULT_COLOR;
+            }
+            classColors[i] = color;
+
+            // Calibration can only make a sound stricter than the global threshold
+            Float calibrated = calibratedThresholds.get(label);
+            classThresholds[i] = (float) (calibrated != null
+                    ? Math.max(notifyThreshold, calibrated) : notifyThreshold);
+        }
+    }
+
+    /**
+     * The settings used before anything is loaded.
+     *
+     * @return Default snapshot (version 0, no labels)
+     */
+    static ConfigSnapshot defaults() {
+        return new ConfigSnapshot(new Builder(), 0);
+    }
+
+    /**
+     * Start a modified copy of this snapshot.
+     *
+     * @return Builder holding copies of all values
+     */
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    // ============ GLOBAL SETTINGS ============
+
+    /** Version number; grows by one for every change. */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isPlaySound() {
+        return playSound;
+    }
+
+    public boolean isFlashEmergency() {
+        return flashEmergency;
+    }
+
+    public double getNotifyThreshold() {
+        return notifyThreshold;
+    }
+
+    public String getNotificationSound() {
+        return notificationSound;
+    }
+
+    public String getEmergencyNotificationSound() {
+        return emergencyNotificationSound;
+    }
+
+    public String getNotificationEmoji() {
+        return notificationEmoji;
+    }
+
+    public String getNotificationBackend() {
+        return notificationBackend;
+    }
+
+    public String getTtsVoice() {
+        return ttsVoice;
+    }
+
+    public boolean isSaveClips() {
+        return saveClips;
+    }
+
+    public KeywordRules getKeywordRules() {
+        return keywordRules;
+    }
+
+    // ============ PER-SOUND LOOKUPS ============
+
+    /**
+     * Get the class id of a model label.
+     *
+     * @param label The sound label (exact spelling)
+     * @return Class id, or -1 if this isn't one of the model's labels
+     */
+    public int classIndexOf(String label) {
+        if (label == null) {
+            return -1;
+        }
+        Integer idx = classIndex.get(label);
+        return idx != null ? idx : -1;
+    }
+
+    /**
+     * Get all per-sound flags for a class id.
+     *
+     * @param classId Class id from classIndexOf()
+     * @return Bit set of FLAG_* values
+     */
+    public int flagsOf(int classId) {
+        return classFlags[classId];
+    }
+
+    /**
+     * Get all per-sound flags for any label, including ones the model
+     * doesn't know (e.g. from a newer peer's JSON message).
+     *
+     * @param label The sound label
+     * @return Bit set of FLAG_* values
+     */
+    public int flagsOf(String label) {
+        int idx = classIndexOf(label);
+        if (idx >= 0) {
+            return classFlags[idx];
+        }
+        if (label == null) {
+            return 0;
+        }
+        int flags = 0;
+        if (monitored.contains(label)) flags |= FLAG_MONITORED;
+        if (notify.contains(label)) flags |= FLAG_NOTIFY;
+        if (isEmergency(label)) flags |= FLAG_EMERGENCY;
+        if (broadcastSend.contains(label)) flags |= FLAG_SEND;
+        if (broadcastListen.contains(label)) flags |= FLAG_LISTEN;
+        return flags;
+    }
+
+    /**
+     * @return Number of model labels (valid class ids are 0 to this - 1)
+     */
+    public int getClassCount() {
+        return classLabels.length;
+    }
+
+    /**
+     * Get the notify threshold for a class id (one array read).
+     *
+     * @param classId Class id below getClassCount()
+     * @return Minimum score for a notification
+     */
+    public double getNotifyThreshold(int classId) {
+        return classThresholds[classId];
+    }
+
+    /**
+     * Get the notify threshold for one sound: the global threshold, or a
+     * stricter one learned from the user's feedback (see ThresholdCalibrator).
+     *
+     * @param label The sound label
+     * @return Minimum score for a notification
+     */
+    public double getNotifyThreshold(String label) {
+        int idx = classIndexOf(label);
+        return idx >= 0 ? classThresholds[idx] : notifyThreshold;
+    }
+
+    /**
+     * @return Calibrated thresholds by label (only sounds that have one)
+     */
+    public Map<String, Float> getCalibratedThresholds() {
+        return calibratedThresholds;
+    }
+
+    public boolean isMonitored(String label) {
+        int idx = classIndexOf(label);
+        if (idx >= 0) {
+            return (classFlags[idx] & FLAG_MONITORED) != 0;
+        }
+        return label != null && monitored.contains(label);
+    }
+
+    public boolean isNotifyEnabled(String label) {
+        int idx = classIndexOf(label);
+        if (idx >= 0) {
+            return (classFlags[idx] & FLAG_NOTIFY) != 0;
+        }
+        return label != null && notify.contains(label);
+    }
+
+    public boolean isBroadcastSendEnabled(String label) {
+        int idx = classIndexOf(label);
+        if (idx >= 0) {
+            return (classFlags[idx] & FLAG_SEND) != 0;
+        }
+        return label != null && broadcastSend.contains(label);
+    }
+
+    public boolean isBroadcastListenEnabled(String label) {
+        int idx = classIndexOf(label);
+        if (idx >= 0) {
+            return (classFlags[idx] & FLAG_LISTEN) != 0;
+        }
+        return label != null && broadcastListen.contains(label);
+    }
+
+    /**
+     * Check if a sound is an emergency.
+     * Model labels use the user's list. Labels the model doesn't know
+     * (e.g. from a newer peer) fall back to the keyword heuristics.
+     *
+     * @param label The sound label
+     * @return True if this is an emergency sound
+     */
+    public boolean isEmergency(String label) {
+        int idx = classIndexOf(label);
+        if (idx >= 0) {
+            return (classFlags[idx] & FLAG_EMERGENCY) != 0;
+        }
+        if (label == null) {
+            return false;
+        }
+        String key = label.trim().toLowerCase(Locale.ROOT);
+        return emergency.contains(key) || (keywordRules.classify(key) & KeywordRules.EMERGENCY) != 0;
+    }
+
+    /**
+     * Check a label against the keyword rules.
+     *
+     * @param label The sound label
+     * @return KeywordRules.EMERGENCY and/or KeywordRules.INTERESTING bits
+     */
+    public int keywordFlagsOf(String label) {
+        int idx = classIndexOf(label);
+        if (idx >= 0) {
+            return classKeywordFlags[idx];
+        }
+        return label != null ? keywordRules.classify(label) : 0;
+    }
+
+    /**
+     * Check if a label matches the emergency keywords.
+     *
+     * @param label The sound label
+     * @return True if an emergency keyword is in the label
+     */
+    public boolean matchesEmergencyKeywords(String label) {
+        return (keywordFlagsOf(label) & KeywordRules.EMERGENCY) != 0;
+    }
+
+    /**
+     * Check if a label is one people usually want alerts for
+     * (shown and monitored by default).
+     *
+     * @param label The sound label
+     * @return True if an interesting keyword (and no ignore keyword) is in the label
+     */
+    public boolean isInteresting(String label) {
+        return (keywordFlagsOf(label) & KeywordRules.INTERESTING) != 0;
+    }
+
+    /**
+     * Get the notification color for a sound (custom, or the red/blue default).
+     *
+     * @param label The sound label
+     * @return CSS color string like "#8AB4FF"
+     */
+    public String getNotificationColor(String label) {
+        int idx = classIndexOf(label);
+        if (idx >= 0) {
+            return classColors[idx];
+        }
+        if (label == null || label.isBlank()) {
+            return DEFAULT_COLOR;
+        }
+        String custom = colors.get(label.trim().toLowerCase(Locale.ROOT));
+        if (custom != null) {
+            return custom;
+        }
+        return isEmergency(label) ? EMERGENCY_COLOR : DEFAULT_COLOR;
+    }
+
+    // ============ RAW SETS (for saving and the settings UI) ============
+
+    public Set<String> getMonitoredLabels() {
+        return monitored;
+    }
+
+    public Set<String> getNotifyLabels() {
+        return notify;
+    }
+
+    public Set<String> getEmergencyLabels() {
+        return emergency;
+    }
+
+    public Set<String> getBroadcastSendLabels() {
+        return broadcastSend;
+    }
+
+    public Set<String> getBroadcastListenLabels() {
+        return broadcastListen;
+    }
+
+    public Map<String, String> getNotificationColors() {
+        return colors;
+    }
+
+    /**
+     * Mutable working copy used by AppConfig to build the next snapshot.
+     * Never shared between threads.
+     */
+    static final class Builder {
+        boolean playSound = true;
+        boolean flashEmergency = true;
+        double notifyThreshold = 0.20;
+        String notificationSound = "System beep";
+        String emergencyNotificationSound = "Alarm pulse";
+        String notificationEmoji = "🔵";
+        String notificationBackend = NotificationDispatcher.BACKEND_AUTO;
+        String ttsVoice = "";
+        boolean saveClips = true;
+
+        final Set<String> monitored;
+        final Set<String> notify;
+        final Set<String> emergency;
+        final Set<String> broadcastSend;
+        final Set<String> broadcastListen;
+        final Map<String, String> colors;
+
+        KeywordRules keywordRules = KeywordRules.defaults();
+        Map<String, Float> calibratedThresholds = Collections.emptyMap(); // replaced, never modified
+
+        String[] classLabels = new String[0];
+        Map<String, Integer> classIndex = Collections.emptyMap();
+        byte[] classKeywordFlags; // null = classify again in build()
+
+        Builder() {
+            monitored = new HashSet<>();
+            notify = new HashSet<>();
+            emergency = new HashSet<>();
+            broadcastSend = new LinkedHashSet<>();
+            broadcastListen = new LinkedHashSet<>();
+            colors = new HashMap<>();
+        }
+
+        Builder(ConfigSnapshot s) {
+            playSound = s.playSound;
+            flashEmergency = s.flashEmergency;
+            notifyThreshold = s.notifyThreshold;
+            notificationSound = s.notificationSound;
+            emergencyNotificationSound = s.emergencyNotificationSound;
+            notificationEmoji = s.notificationEmoji;
+            notificationBackend = s.notificationBackend;
+            ttsVoice = s.ttsVoice;
+            saveClips = s.saveClips;
+
+            monitored = new HashSet<>(s.monitored);
+            notify = new HashSet<>(s.notify);
+            emergency = new HashSet<>(s.emergency);
+            broadcastSend = new LinkedHashSet<>(s.broadcastSend);
+            broadcastListen = new LinkedHashSet<>(s.broadcastListen);
+            colors = new HashMap<>(s.colors);
+
+            // These are never modified, only replaced, so they are shared
+            keywordRules = s.keywordRules;
+            calibratedThresholds = s.calibratedThresholds;
+            classLabels = s.classLabels;
+            classIndex = s.classIndex;
+            classKeywordFlags = s.classKeywordFlags;
+        }
+
+        /**
+         * Set the model's labels (class id = array index).
+         *
+         * @param labels All labels known to the model
+         */
+        void setClassLabels(String[] labels) {
+            String[] copy = labels.clone();
+            Map<String, Integer> index = new HashMap<>(copy.length * 2);
+            for (int i = 0; i < copy.length; i++) {
+                if (copy[i] == null) {
+                    copy[i] = "";
+                }
+                index.putIfAbsent(copy[i], i);
+            }
+            classLabels = copy;
+            classIndex = Collections.unmodifiableMap(index);
+            classKeywordFlags = null;
+        }
+
+        /**
+         * Replace the keyword rules. The labels are classified again in build().
+         *
+         * @param rules New rule set
+         */
+        void setKeywordRules(KeywordRules rules) {
+            if (rules == keywordRules) {
+                return;
+            }
+            keywordRules = rules;
+            classKeywordFlags = null;
+        }
+
+        /**
+         * Classify the label table with the current rules now (if needed).
+         *
+         * @return KeywordRules.classify() result per class id
+         */
+        byte[] keywordFlags() {
+            if (classKeywordFlags == null) {
+                classKeywordFlags = keywordRules.classifyAll(classLabels);
+            }
+            return classKeywordFlags;
+        }
+
+        ConfigSnapshot build(long version) {
+            return new ConfigSnapshot(this, version);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Remembers which sequence numbers were already seen from each sender, so an
+ * event that arrives twice (a retransmission whose ACK got lost, or the same
+ * datagram on two network interfaces) is only shown once.
+ *
+ * For each node it keeps the highest sequence number and a 64-bit mask of
+ * the 64 numbers below it, in plain arrays (open addressing on the node id).
+ * Not thread-safe: used by the broadcast processing thread only.
+ */
+public final class DedupWindow {
+
+    // Sequence numbers this far below the highest are treated as repeats
+    public static final int WINDOW = 64;
+    // Further back than this means the sender restarted
+    private static final int RESET_DISTANCE = 4096;
+    // How many slots to try before replacing a node
+    private static final int MAX_PROBE = 8;
+
+    private final long[] nodes; // 0 = empty (node ids are never 0)
+    private final int[] highest;
+    private final long[] seen; // bit i = (highest - i) was seen
+    private final int mask;
+
+    /**
+     * @param capacity Number of senders to remember (rounded up to a power of two)
+     */
+    public DedupWindow(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        nodes = new long[size];
+        highest = new int[size];
+        seen = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Record a sequence number from a node.
+     *
+     * @param node Sender's node id
+     * @param seq  Sequence number of the event
+     * @return True the first time this (node, seq) is seen
+     */
+    public boolean firstTime(long node, int seq) {
+        int home = (int) (mix(node) & mask);
+        int slot = -1;
+        for (int i = 0; i < MAX_PROBE; i++) {
+            int s = (home + i) & mask;
+            if (nodes[s] == node) {
+                return check(s, seq);
+            }
+            if (nodes[s] == 0 && slot < 0) {
+                slot = s;
+            }
+        }
+        // New node (replaces the one in its home slot if the table is crowded)
+        if (slot < 0) {
+            slot = home;
+        }
+        nodes[slot] = node;
+        highest[slot] = seq;
+        seen[slot] = 1L;
+        return true;
+    }
+
+    private boolean check(int s, int seq) {
+        int ahead = seq - highest[s]; // wraps around correctly
+        if (ahead > 0) {
+            seen[s] = ahead >= WINDOW ? 1L : (seen[s] << ahead) | 1L;
+            highest[s] = seq;
+            return true;
+        }
+        int back = -ahead;
+        if (back >= RESET_DISTANCE) {
+            // Much older than anything recent: the sender started over
+            highest[s] = seq;
+            seen[s] = 1L;
+            return true;
+        }
+        if (back >= WINDOW) {
+            return false;
+        }
+        long bit = 1L << back;
+        if ((seen[s] & bit) != 0) {
+            return false;
+        }
+        seen[s] |= bit;
+        return true;
+    }
+
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        return x;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * One detection that led to a notification, as stored in the DetectionJournal.
+ * Immutable.
+ */
+public final class DetectionEvent {
+
+    // Bits in getFlags()
+    public static final int FLAG_EMERGENCY = 1;
+    public static final int FLAG_REMOTE = 1 << 1;
+    public static final int FLAG_BROADCAST = 1 << 2;
+    // User feedback from the history drawer (at most one is set)
+    public static final int FLAG_CORRECT = 1 << 3;
+    public static final int FLAG_WRONG = 1 << 4;
+    public static final int VERDICT_MASK = FLAG_CORRECT | FLAG_WRONG;
+
+    private final long eventId;
+    private final long timeMillis;
+    private final String label;
+    private final String host;
+    private final float score;
+    private final int flags;
+
+    /**
+     * @param eventId    Journal id (1, 2, 3, ... never reused)
+     * @param timeMillis When it happened (epoch milliseconds)
+     * @param label      The sound label
+     * @param host       Device that heard it, or null for this computer
+     * @param score      Model confidence (0.0 to 1.0)
+     * @param flags      FLAG_* bits
+     */
+    public DetectionEvent(long eventId, long timeMillis, String label, String host, float score, int flags) {
+        this.eventId = eventId;
+        this.timeMillis = timeMillis;
+        this.label = label;
+        this.host = host;
+        this.score = score;
+        this.flags = flags;
+    }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean isEmergency() {
+        return (flags & FLAG_EMERGENCY) != 0;
+    }
+
+    public boolean isRemote() {
+        return (flags & FLAG_REMOTE) != 0;
+    }
+
+    /**
+     * @return FLAG_CORRECT, FLAG_WRONG, or 0 if the user gave no feedback
+     */
+    public int getVerdict() {
+        return flags & VERDICT_MASK;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + eventId + " " + timeMillis + " " + label
+                + (host != null ? " @" + host : "")
+                + " " + score + (isEmergency() ? " EMERGENCY" : "");
+    }
+}
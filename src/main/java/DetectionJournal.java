@@ -0,0 +1,714 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only journal of every detection that led to a notification.
+ *
+ * Events are stored as fixed-size 32-byte binary records in segment files
+ * that are memory-mapped, so appending is a few writes into memory. A
+ * background "JournalCommit" thread forces new records to disk in batches
+ * (group commit) instead of once per event.
+ *
+ * A segment is closed and a new one started when it is full or a day old.
+ * Segments older than the retention period are deleted. Labels and host
+ * names are stored once in small name tables; records only hold their ids.
+ *
+ * Record layout (little-endian):
+ *   0  long  event id (starts at 1; 0 marks an empty slot)
+ *   8  long  time (epoch milliseconds)
+ *   16 float score
+ *   20 int   label id
+ *   24 int   host id (0 = this computer)
+ *   28 int   flags (DetectionEvent.FLAG_*)
+ */
+public final class DetectionJournal implements AutoCloseable {
+
+    public static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 18; // 8 MB files
+    public static final long DEFAULT_SEGMENT_MAX_AGE_MS = TimeUnit.DAYS.toMillis(1);
+    public static final long DEFAULT_RETENTION_MS = TimeUnit.DAYS.toMillis(90);
+
+    /** Host name to pass to query() to match this computer's own detections. */
+    public static final String LOCAL_HOST = "";
+
+    static final int RECORD_SIZE = 32;
+
+    // Segment header
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 0x54504A31; // "TPJ1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_RECORD_SIZE = 8;
+    private static final int H_CAPACITY = 12;
+    private static final int H_FIRST_ID = 16;
+    private static final int H_START_MS = 24;
+    private static final int H_COMMITTED = 32;
+
+    // Record fields
+    private static final int R_ID = 0;
+    private static final int R_TIME = 8;
+    private static final int R_SCORE = 16;
+    private static final int R_LABEL = 20;
+    private static final int R_HOST = 24;
+    private static final int R_FLAGS = 28;
+
+    // Group commit: force at least this often, or sooner when this many are waiting
+    private static final long COMMIT_INTERVAL_MS = 250;
+    private static final int COMMIT_BATCH = 64;
+    private static final long RETENTION_CHECK_MS = 60_000;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".tpj";
+
+    private final Path dir;
+    private final int recordsPerSegment;
+    private final long segmentMaxAgeMillis;
+    private final long retentionMillis;
+
+    private final NameTable labels;
+    private final NameTable hosts;
+
+    // Guarded by "this"
+    private final List<Segment> segments = new ArrayList<>(); // oldest first, last = active
+    private final List<Segment> sealed = new ArrayList<>(); // full segments not yet forced
+    private long nextId = 1;
+    private int pending;
+    private boolean closed;
+
+    private final Thread committer;
+
+    /**
+     * Open (or create) a journal.
+     *
+     * @param dir                 Folder for the segment files
+     * @param recordsPerSegment   Records per segment file before a new one is started
+     * @param segmentMaxAgeMillis Start a new segment when the current one is this old
+     * @param retentionMillis     Delete segments whose newest event is older than this
+     * @throws IOException If the folder or existing segments can't be opened
+     */
+    public DetectionJournal(Path dir, int recordsPerSegment, long segmentMaxAgeMillis,
+            long retentionMillis) throws IOException {
+        this.dir = dir;
+        this.recordsPerSegment = recordsPerSegment;
+        this.segmentMaxAgeMillis = segmentMaxAgeMillis;
+        this.retentionMillis = retentionMillis;
+
+        Files.createDirectories(dir);
+        labels = new NameTable(dir.resolve("labels.txt"));
+        hosts = new NameTable(dir.resolve("hosts.txt"));
+        hosts.idOf(LOCAL_HOST); // id 0 = this computer
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : ds) {
+                files.add(p);
+            }
+        }
+        files.sort(null); // Names hold the zero-padded first id
+        for (Path p : files) {
+            try {
+                segments.add(Segment.open(p, labels.size(), hosts.size()));
+            } catch (IOException e) {
+                System.err.println("[Journal] Skipping unreadable segment " + p + ": " + e.getMessage());
+            }
+        }
+        if (!segments.isEmpty()) {
+            Segment last = segments.get(segments.size() - 1);
+            nextId = last.firstId + last.count;
+        }
+
+        committer = new Thread(this::commitLoop, "JournalCommit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Open the journal with the default segment size and retention.
+     *
+     * @param dir Folder for the segment files
+     * @return Open journal
+     * @throws IOException If the folder can't be used
+     */
+    public static DetectionJournal open(Path dir) throws IOException {
+        return new DetectionJournal(dir, DEFAULT_RECORDS_PER_SEGMENT,
+                DEFAULT_SEGMENT_MAX_AGE_MS, DEFAULT_RETENTION_MS);
+    }
+
+    // ============ WRITING ============
+
+    /**
+     * Add an event. Only writes to mapped memory; the commit thread makes it durable.
+     *
+     * @param timeMillis When it happened (epoch milliseconds)
+     * @param label      The sound label
+     * @param host       Device that heard it, or null for this computer
+     * @param score      Model confidence
+     * @param flags      DetectionEvent.FLAG_* bits
+     * @return The new event id, or 0 if the journal is closed or couldn't write
+     */
+    public synchronized long append(long timeMillis, String label, String host, float score, int flags) {
+        if (closed || label == null) {
+            return 0;
+        }
+        Segment seg;
+        try {
+            seg = activeSegment(timeMillis);
+        } catch (IOException e) {
+            System.err.println("[Journal] Could not start a new segment: " + e.getMessage());
+            return 0;
+        }
+
+        long id = nextId++;
+        int labelId = labels.idOf(label);
+        int hostId = host == null ? 0 : hosts.idOf(host);
+        seg.write(id, timeMillis, score, labelId, hostId, flags);
+
+        if (++pending >= COMMIT_BATCH) {
+            LockSupport.unpark(committer);
+        }
+        return id;
+    }
+
+    /**
+     * Store the user's verdict on an event (records have a fixed size, so this
+     * rewrites the flags in place and forces just that record to disk).
+     *
+     * @param eventId Event to update
+     * @param verdict DetectionEvent.FLAG_CORRECT, FLAG_WRONG, or 0 to clear
+     * @return False if the event is no longer (or not yet) in the journal
+     */
+    public synchronized boolean setVerdict(long eventId, int verdict) {
+        if (closed) {
+            return false;
+        }
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Segment seg = segments.get(s);
+            if (eventId < seg.firstId) {
+                continue;
+            }
+            long index = eventId - seg.firstId;
+            if (index >= seg.count) {
+                return false;
+            }
+            int off = HEADER_SIZE + (int) index * RECORD_SIZE;
+            int flags = seg.buf.getInt(off + R_FLAGS);
+            flags = (flags & ~DetectionEvent.VERDICT_MASK) | (verdict & DetectionEvent.VERDICT_MASK);
+            seg.buf.putInt(off + R_FLAGS, flags);
+            seg.buf.force(off, RECORD_SIZE);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the segment to append to, starting a new one when needed.
+     */
+    private Segment activeSegment(long timeMillis) throws IOException {
+        Segment seg = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (seg != null && seg.count < seg.capacity
+                && timeMillis - seg.startMillis < segmentMaxAgeMillis) {
+            return seg;
+        }
+        if (seg != null) {
+            sealed.add(seg);
+        }
+        Path file = dir.resolve(String.format("%s%016x%s", SEGMENT_PREFIX, nextId, SEGMENT_SUFFIX));
+        Segment fresh = Segment.create(file, nextId, timeMillis, recordsPerSegment);
+        segments.add(fresh);
+        return fresh;
+    }
+
+    // ============ QUERIES ============
+
+    /**
+     * Find events, oldest first. Segments outside the time range are skipped;
+     * the others are scanned front to back.
+     *
+     * @param fromMillis    Start of the range (inclusive)
+     * @param toMillis      End of the range (exclusive)
+     * @param label         Only this label (any case), or null for all
+     * @param host          Only this host (LOCAL_HOST for this computer), or null for all
+     * @param requiredFlags Only events with all of these DetectionEvent.FLAG_* bits
+     * @param limit         Maximum number of events to return
+     * @return Matching events
+     */
+    public List<DetectionEvent> query(long fromMillis, long toMillis, String label, String host,
+            int requiredFlags, int limit) {
+        List<DetectionEvent> out = new ArrayList<>();
+        scan(fromMillis, toMillis, label, host, requiredFlags, 0, limit, out);
+        return out;
+    }
+
+    /**
+     * Find events the user marked correct or wrong, oldest first.
+     *
+     * @param fromMillis Start of the range (inclusive)
+     * @param toMillis   End of the range (exclusive)
+     * @param host       Only this host (LOCAL_HOST for this computer), or null for all
+     * @param limit      Maximum number of events to return
+     * @return Events with a verdict
+     */
+    public List<DetectionEvent> queryVerdicts(long fromMillis, long toMillis, String host, int limit) {
+        List<DetectionEvent> out = new ArrayList<>();
+        scan(fromMillis, toMillis, null, host, 0, DetectionEvent.VERDICT_MASK, limit, out);
+        return out;
+    }
+
+    /**
+     * Count events without building them.
+     * Takes the same filters as query().
+     *
+     * @return Number of matching events
+     */
+    public long count(long fromMillis, long toMillis, String label, String host, int requiredFlags) {
+        return scan(fromMillis, toMillis, label, host, requiredFlags, 0, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Get the most recent events, newest first (e.g. to refill the history after a restart).
+     *
+     * @param limit Maximum number of events
+     * @return Newest events
+     */
+    public List<DetectionEvent> latest(int limit) {
+        List<DetectionEvent> out = new ArrayList<>();
+        Segment[] segs;
+        int[] counts;
+        synchronized (this) {
+            segs = segments.toArray(new Segment[0]);
+            counts = countsOf(segs);
+        }
+        for (int s = segs.length - 1; s >= 0 && out.size() < limit; s--) {
+            for (int i = counts[s] - 1; i >= 0 && out.size() < limit; i--) {
+                out.add(segs[s].read(i, labels, hosts));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Shared scan loop for query(), queryVerdicts() and count().
+     *
+     * @param anyFlags Only events with at least one of these bits (0 = no filter)
+     * @param out      List to add events to, or null to only count
+     * @return Number of matching events
+     */
+    private long scan(long fromMillis, long toMillis, String label, String host,
+            int requiredFlags, int anyFlags, long limit, List<DetectionEvent> out) {
+        // Resolve names to ids once; an unknown name can't match anything
+        int labelId = -1;
+        if (label != null) {
+            labelId = labels.find(label);
+            if (labelId < 0) {
+                return 0;
+            }
+        }
+        int hostId = -1;
+        if (host != null) {
+            hostId = hosts.find(host);
+            if (hostId < 0) {
+                return 0;
+            }
+        }
+
+        Segment[] segs;
+        int[] counts;
+        long[] lastMillis;
+        synchronized (this) {
+            segs = segments.toArray(new Segment[0]);
+            counts = countsOf(segs);
+            lastMillis = new long[segs.length];
+            for (int i = 0; i < segs.length; i++) {
+                lastMillis[i] = segs[i].lastMillis;
+            }
+        }
+
+        long found = 0;
+        for (int s = 0; s < segs.length && found < limit; s++) {
+            Segment seg = segs[s];
+            if (counts[s] == 0 || seg.startMillis >= toMillis || lastMillis[s] < fromMillis) {
+                continue;
+            }
+            MappedByteBuffer buf = seg.buf;
+            for (int i = 0, off = HEADER_SIZE; i < counts[s] && found < limit; i++, off += RECORD_SIZE) {
+                long t = buf.getLong(off + R_TIME);
+                if (t < fromMillis || t >= toMillis) {
+                    continue;
+                }
+                if (labelId >= 0 && buf.getInt(off + R_LABEL) != labelId) {
+                    continue;
+                }
+                if (hostId >= 0 && buf.getInt(off + R_HOST) != hostId) {
+                    continue;
+                }
+                int flags = buf.getInt(off + R_FLAGS);
+                if ((flags & requiredFlags) != requiredFlags) {
+                    continue;
+                }
+                if (anyFlags != 0 && (flags & anyFlags) == 0) {
+                    continue;
+                }
+                found++;
+                if (out != null) {
+                    out.add(seg.read(i, labels, hosts));
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int[] countsOf(Segment[] segs) {
+        int[] counts = new int[segs.length];
+        for (int i = 0; i < segs.length; i++) {
+            counts[i] = segs[i].count;
+        }
+        return counts;
+    }
+
+    /**
+     * Get the total number of events kept.
+     *
+     * @return Event count over all segments
+     */
+    public synchronized long getEventCount() {
+        long n = 0;
+        for (Segment s : segments) {
+            n += s.count;
+        }
+        return n;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    // ============ COMMIT / RETENTION ============
+
+    /**
+     * Main loop of the commit thread.
+     */
+    private void commitLoop() {
+        long lastRetention = 0;
+        while (true) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(COMMIT_INTERVAL_MS));
+            boolean stop;
+            synchronized (this) {
+                stop = closed;
+            }
+            commit();
+
+            long now = System.currentTimeMillis();
+            if (now - lastRetention >= RETENTION_CHECK_MS) {
+                lastRetention = now;
+                applyRetention(now);
+            }
+            if (stop) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Force everything appended so far to disk.
+     */
+    private void commit() {
+        List<Segment> toForce;
+        int activeCount;
+        Segment active;
+        synchronized (this) {
+            if (pending == 0 && sealed.isEmpty()) {
+                return;
+            }
+            toForce = new ArrayList<>(sealed);
+            sealed.clear();
+            active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            activeCount = active != null ? active.count : 0;
+            pending = 0;
+        }
+
+        // Names first, so every committed record can be resolved
+        labels.writePending();
+        hosts.writePending();
+
+        for (Segment s : toForce) {
+            s.commit(s.count);
+        }
+        if (active != null) {
+            active.commit(activeCount);
+        }
+    }
+
+    /**
+     * Delete segments that fell out of the retention period.
+     * The segment being written is always kept.
+     */
+    private void applyRetention(long now) {
+        List<Segment> expired = new ArrayList<>();
+        synchronized (this) {
+            while (segments.size() > 1 && now - segments.get(0).lastMillis > retentionMillis) {
+                expired.add(segments.remove(0));
+            }
+        }
+        for (Segment s : expired) {
+            try {
+                Files.deleteIfExists(s.file);
+                System.out.println("[Journal] Deleted expired segment " + s.file.getFileName());
+            } catch (IOException e) {
+                System.err.println("[Journal] Could not delete " + s.file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Commit everything and stop the commit thread.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        LockSupport.unpark(committer);
+        try {
+            committer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ============ SEGMENT FILE ============
+
+    /**
+     * One memory-mapped segment file.
+     * count/lastMillis are changed under the journal lock; committed only by the commit thread.
+     */
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer buf;
+        final long firstId;
+        final long startMillis;
+        final int capacity;
+        int count;
+        long lastMillis;
+        int committed;
+
+        private Segment(Path file, MappedByteBuffer buf) {
+            this.file = file;
+            this.buf = buf;
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            this.capacity = buf.getInt(H_CAPACITY);
+            this.firstId = buf.getLong(H_FIRST_ID);
+            this.startMillis = buf.getLong(H_START_MS);
+        }
+
+        static Segment create(Path file, long firstId, long startMillis, int capacity) throws IOException {
+            long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+            MappedByteBuffer buf;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(H_MAGIC, MAGIC);
+            buf.putInt(H_VERSION, FORMAT_VERSION);
+            buf.putInt(H_RECORD_SIZE, RECORD_SIZE);
+            buf.putInt(H_CAPACITY, capacity);
+            buf.putLong(H_FIRST_ID, firstId);
+            buf.putLong(H_START_MS, startMillis);
+            buf.putInt(H_COMMITTED, 0);
+            buf.force(0, HEADER_SIZE);
+
+            Segment s = new Segment(file, buf);
+            s.lastMillis = startMillis;
+            return s;
+        }
+
+        /**
+         * Open an existing segment and find where its records end.
+         *
+         * @param labelCount Labels in the name table (ids below this can be resolved)
+         * @param hostCount  Hosts in the name table
+         */
+        static Segment open(Path file, int labelCount, int hostCount) throws IOException {
+            MappedByteBuffer buf;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (ch.size() < HEADER_SIZE) {
+                    throw new IOException("file too short");
+                }
+                buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            }
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.getInt(H_MAGIC) != MAGIC || buf.getInt(H_RECORD_SIZE) != RECORD_SIZE) {
+                throw new IOException("not a journal segment");
+            }
+            Segment s = new Segment(file, buf);
+            if (HEADER_SIZE + (long) s.capacity * RECORD_SIZE > buf.capacity()) {
+                throw new IOException("truncated segment");
+            }
+
+            // Records after the last commit may still have reached the disk, but
+            // their names may not have (names are written at commit time)
+            int n = Math.max(0, Math.min(buf.getInt(H_COMMITTED), s.capacity));
+            while (n < s.capacity && buf.getLong(HEADER_SIZE + n * RECORD_SIZE + R_ID) != 0
+                    && buf.getInt(HEADER_SIZE + n * RECORD_SIZE + R_LABEL) < labelCount
+                    && buf.getInt(HEADER_SIZE + n * RECORD_SIZE + R_HOST) < hostCount) {
+                n++;
+            }
+            // Drop the rest, so they aren't picked up after the next crash
+            int end = n;
+            while (end < s.capacity && buf.getLong(HEADER_SIZE + end * RECORD_SIZE + R_ID) != 0) {
+                buf.putLong(HEADER_SIZE + end * RECORD_SIZE + R_ID, 0);
+                end++;
+            }
+            if (end > n) {
+                buf.force(HEADER_SIZE + n * RECORD_SIZE, (end - n) * RECORD_SIZE);
+                System.err.println("[Journal] Dropped " + (end - n) + " uncommitted records from "
+                        + file.getFileName() + " (their names were never saved)");
+            }
+            s.count = n;
+            s.committed = n;
+            s.lastMillis = n > 0 ? buf.getLong(HEADER_SIZE + (n - 1) * RECORD_SIZE + R_TIME) : s.startMillis;
+            return s;
+        }
+
+        void write(long id, long timeMillis, float score, int labelId, int hostId, int flags) {
+            int off = HEADER_SIZE + count * RECORD_SIZE;
+            buf.putLong(off + R_TIME, timeMillis);
+            buf.putFloat(off + R_SCORE, score);
+            buf.putInt(off + R_LABEL, labelId);
+            buf.putInt(off + R_HOST, hostId);
+            buf.putInt(off + R_FLAGS, flags);
+            buf.putLong(off + R_ID, id); // Last: a non-zero id marks the record complete
+            count++;
+            lastMillis = Math.max(lastMillis, timeMillis);
+        }
+
+        DetectionEvent read(int index, NameTable labels, NameTable hosts) {
+            int off = HEADER_SIZE + index * RECORD_SIZE;
+            int hostId = buf.getInt(off + R_HOST);
+            return new DetectionEvent(
+                    buf.getLong(off + R_ID),
+                    buf.getLong(off + R_TIME),
+                    labels.nameOf(buf.getInt(off + R_LABEL)),
+                    hostId == 0 ? null : hosts.nameOf(hostId),
+                    buf.getFloat(off + R_SCORE),
+                    buf.getInt(off + R_FLAGS));
+        }
+
+        /**
+         * Force records up to upTo to disk, then record the new count in the header.
+         */
+        void commit(int upTo) {
+            if (upTo <= committed) {
+                return;
+            }
+            buf.force(HEADER_SIZE + committed * RECORD_SIZE, (upTo - committed) * RECORD_SIZE);
+            buf.putInt(H_COMMITTED, upTo);
+            buf.force(0, HEADER_SIZE);
+            committed = upTo;
+        }
+    }
+
+    // ============ NAME TABLE ============
+
+    /**
+     * Maps names (labels, hosts) to small ids, stored one per line in a text file.
+     * The id is the line number. New names are written by the commit thread.
+     */
+    private static final class NameTable {
+        private final Path file;
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int written;
+
+        NameTable(Path file) throws IOException {
+            this.file = file;
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    ids.putIfAbsent(line, names.size());
+                    names.add(line);
+                }
+            } catch (NoSuchFileException e) {
+                // New journal
+            }
+            written = names.size();
+        }
+
+        synchronized int idOf(String name) {
+            String clean = name.replace('\n', ' ').replace('\r', ' ');
+            Integer id = ids.get(clean);
+            if (id == null) {
+                id = names.size();
+                names.add(clean);
+                ids.put(clean, id);
+            }
+            return id;
+        }
+
+        /**
+         * Find a name, trying the exact spelling first and then ignoring case.
+         *
+         * @return Id, or -1 if the name was never stored
+         */
+        synchronized int find(String name) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            for (int i = 0; i < names.size(); i++) {
+                if (names.get(i).equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return Number of names (ids below this are known)
+         */
+        synchronized int size() {
+            return names.size();
+        }
+
+        synchronized String nameOf(int id) {
+            return id >= 0 && id < names.size() ? names.get(id) : "class_" + id;
+        }
+
+        /**
+         * Append names added since the last call and force them to disk.
+         */
+        synchronized void writePending() {
+            if (written == names.size()) {
+                return;
+            }
+            try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE,
+                    StandardOpenOption.DSYNC)) {
+                for (int i = written; i < names.size(); i++) {
+                    w.write(names.get(i));
+                    w.write('\n');
+                }
+                written = names.size();
+            } catch (IOException e) {
+                System.err.println("[Journal] Could not write " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Receives what the Interpreter decides: live scores, history entries and
+ * notifications.
+ *
+ * MainViewController is the normal sink (it shows everything in the window).
+ * Other sinks can run without JavaFX, for example when replaying a recorded
+ * session. Methods are called from the mic thread or the broadcast listener
+ * thread, never from the FX thread.
+ */
+public interface DetectionSink {
+
+    /**
+     * Called once at startup with every label the model knows.
+     *
+     * @param allLabels All sound labels
+     */
+    void initMonitoredLists(String[] allLabels);
+
+    /**
+     * @param level Audio level for the meter (0.0 to 1.0)
+     */
+    void updateSoundLevel(double level);
+
+    /**
+     * Show the three highest scoring sounds of the current frame.
+     * Labels may be null when the model returned fewer than three scores.
+     */
+    void updateTop3(String l1, double s1, String l2, double s2, String l3, double s3);
+
+    /**
+     * Add one sound to the history.
+     *
+     * @param label     Sound label
+     * @param score     Confidence score (0.0 to 1.0)
+     * @param emergency True for emergency sounds
+     * @param local     True if heard by this computer's mic
+     * @param host      Sending computer for remote sounds (null if local)
+     * @param important True if a notification was sent for it
+     * @param eventId   Journal event id of the notification (0 if not journaled)
+     */
+    void addHistory(String label, double score, boolean emergency, boolean local, String host, boolean important,
+            long eventId);
+
+    /**
+     * A notification for a sound heard by this computer.
+     */
+    void handleNotification(String label, double score, boolean emergency);
+
+    /**
+     * A notification for a sound received from another computer.
+     */
+    void handleRemoteNotification(String label, String host, boolean emergency);
+
+    /**
+     * The microphone could not be opened or stopped working.
+     *
+     * @param msg Error message
+     */
+    void showMicError(String msg);
+}
@@ -0,0 +1,48 @@
+import java.io.IOException;
+
+/**
+ * Linux text-to-speech using espeak-ng.
+ *
+ * espeak-ng has no server mode, so each uncached utterance runs one short
+ * process that writes WAV to stdout. Used when Piper is not installed;
+ * SpeechService caches the result so repeated replies don't run it again.
+ */
+public final class EspeakTtsEngine implements TtsEngine {
+
+    // Words per minute, roughly matching "say -r 240" on macOS
+    private static final String RATE = "200";
+
+    @Override
+    public String getName() {
+        return "eSpeak NG";
+    }
+
+    @Override
+    public SpeechAudio synthesize(String text, String voice) throws IOException {
+        ProcessBuilder pb;
+        if (voice != null && !voice.isBlank()) {
+            pb = new ProcessBuilder("espeak-ng", "--stdout", "-s", RATE, "-v", voice, "--", text);
+        } else {
+            pb = new ProcessBuilder("espeak-ng", "--stdout", "-s", RATE, "--", text);
+        }
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        Process p = pb.start();
+        byte[] wav = p.getInputStream().readAllBytes();
+        try {
+            if (p.waitFor() != 0) {
+                throw new IOException("espeak-ng exited with " + p.exitValue());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            p.destroy();
+            throw new IOException("Interrupted while running espeak-ng", e);
+        }
+        return SpeechAudio.fromWavBytes(wav);
+    }
+
+    @Override
+    public void close() {
+        // No long-lived process
+    }
+}
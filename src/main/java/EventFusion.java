@@ -0,0 +1,261 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns reports of the same sound from several computers into one
+ * notification. When a fire alarm goes off, three or four computers hear
+ * it within a second and each broadcasts it; without this, the first
+ * report would win and name whichever computer happened to be fastest.
+ *
+ * Reports of one sound class are collected for a short window (default
+ * 1 second, -Dtaptic.fusionWindowMs, 0 = off). When the window closes, one
+ * event is passed on, naming the computer with the highest score as the
+ * likely location, with the number of computers that heard it. The name is
+ * passed on plain (it is the host in the journal and history), and the
+ * count separately, so the notification can say "kitchen-pc (loudest of 3)".
+ *
+ * Emergencies are never held back: the first report is passed on at once,
+ * and later ones in the window only update the logged location.
+ *
+ * -Dtaptic.fusionQuorum=N asks for N computers to agree before an ordinary
+ * sound is shown: at least N different computers must report it in the
+ * window. If fewer than N computers with microphones are online (see
+ * PeerTable), all of them must agree. The default of 1 means no quorum.
+ *
+ * Windows run on a monotonic clock (System.nanoTime() in ms), never on the
+ * wall clock: if the wall clock stepped back, the oldest open window would
+ * stay open until it caught up, and every window behind it with it.
+ *
+ * State is bounded: one reusable group per sound class, a fixed list of
+ * reporting computers per group, and a FIFO of open groups. All windows
+ * are the same length, so the FIFO is in closing order and each report
+ * costs a fixed amount of work.
+ *
+ * Used by the broadcast processing thread only (binary events; JSON
+ * events from older versions are passed on unchanged).
+ */
+public final class EventFusion {
+
+    public static final String WINDOW_PROPERTY = "taptic.fusionWindowMs";
+    public static final String QUORUM_PROPERTY = "taptic.fusionQuorum";
+    public static final int DEFAULT_WINDOW_MS = 1000;
+
+    // Class ids at or above this are passed on unchanged (the model has 521)
+    private static final int MAX_CLASSES = 1024;
+    // Computers remembered per group (more still count towards the best score)
+    private static final int MAX_NODES = 16;
+
+    /**
+     * Where fused events go (normally the Interpreter).
+     */
+    public interface Output {
+        /**
+         * @param classId   Class id of the sound
+         * @param score     Highest score reported
+         * @param where     Name of the computer that heard it best
+         * @param reporters Computers that reported it (1 if only one did)
+         */
+        void emit(int classId, float score, String where, int reporters);
+    }
+
+    private final long windowMillis;
+    private final int quorum;
+    private final PeerTable peers;
+    private final Output output;
+
+    private final Group[] groups = new Group[MAX_CLASSES];
+    // Open groups by class id, oldest first (a ring; each class is in it at most once)
+    private final int[] open = new int[MAX_CLASSES];
+    private int openHead;
+    private int openCount;
+
+    private final AtomicLong reportCount = new AtomicLong();
+    private final AtomicLong emittedCount = new AtomicLong();
+    private final AtomicLong fusedCount = new AtomicLong();
+    private final AtomicLong belowQuorumCount = new AtomicLong();
+
+    /**
+     * @param windowMillis How long reports of one sound are collected
+     * @param quorum       Computers that must agree on an ordinary sound (1 = no quorum)
+     * @param peers        Names and microphone count of other computers
+     * @param output       Gets the fused events
+     */
+    public EventFusion(long windowMillis, int quorum, PeerTable peers, Output output) {
+        this.windowMillis = windowMillis;
+        this.quorum = Math.max(1, quorum);
+        this.peers = peers;
+        this.output = output;
+    }
+
+    /**
+     * Create from -Dtaptic.fusionWindowMs and -Dtaptic.fusionQuorum.
+     *
+     * @return Fusion stage, or null if the window is 0 (every report is shown)
+     */
+    public static EventFusion fromProperties(PeerTable peers, Output output) {
+        int window = Integer.getInteger(WINDOW_PROPERTY, DEFAULT_WINDOW_MS);
+        if (window <= 0) {
+            return null;
+        }
+        int quorum = Integer.getInteger(QUORUM_PROPERTY, 1);
+        if (quorum > 1) {
+            System.out.println("[Fusion] Ordinary sounds need " + quorum + " computers to agree within "
+                    + window + " ms");
+        }
+        return new EventFusion(window, quorum, peers, output);
+    }
+
+    /**
+     * Add one report from another computer.
+     *
+     * @param event     Decoded event (only valid during this call)
+     * @param address   Sender's address, used if its name isn't known
+     * @param nowMillis System.nanoTime() / 1_000_000 (not the wall clock)
+     */
+    public void onEvent(WireEvent event, String address, long nowMillis) {
+        expire(nowMillis);
+        reportCount.incrementAndGet();
+        int classId = event.classId;
+        if (classId < 0 || classId >= MAX_CLASSES) {
+            emittedCount.incrementAndGet();
+            output.emit(classId, event.score, nameOf(event.nodeId, address), 1);
+            return;
+        }
+
+        Group g = groups[classId];
+        if (g == null) {
+            g = new Group(classId);
+            groups[classId] = g;
+        }
+        if (!g.open) {
+            g.start(nowMillis);
+            open[(openHead + openCount) % MAX_CLASSES] = classId;
+            openCount++;
+        } else {
+            fusedCount.incrementAndGet();
+        }
+        g.add(event.nodeId);
+        if (event.score > g.bestScore) {
+            g.bestScore = event.score;
+            g.bestNode = event.nodeId;
+            g.bestAddress = address;
+        }
+
+        // Emergencies go out with the first report
+        if ((event.flags & WireEvent.FLAG_EMERGENCY) != 0 && !g.emitted) {
+            g.emergency = true;
+            g.emitted = true;
+            g.firstNode = event.nodeId;
+            emittedCount.incrementAndGet();
+            output.emit(classId, event.score, nameOf(event.nodeId, address), 1);
+        }
+    }
+
+    /**
+     * Close the groups whose window has ended and pass their events on.
+     *
+     * @param nowMillis System.nanoTime() / 1_000_000 (not the wall clock)
+     */
+    public void expire(long nowMillis) {
+        while (openCount > 0) {
+            Group g = groups[open[openHead]];
+            if (nowMillis - g.startMillis < windowMillis) {
+                return;
+            }
+            openHead = (openHead + 1) % MAX_CLASSES;
+            openCount--;
+            close(g);
+        }
+    }
+
+    /**
+     * @param nowMillis System.nanoTime() / 1_000_000 (not the wall clock)
+     * @return Milliseconds until the next group closes (Long.MAX_VALUE if none is open)
+     */
+    public long millisUntilDue(long nowMillis) {
+        if (openCount == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, groups[open[openHead]].startMillis + windowMillis - nowMillis);
+    }
+
+    private void close(Group g) {
+        g.open = false;
+        String where = nameOf(g.bestNode, g.bestAddress);
+        if (g.emitted) {
+            if (g.emergency && g.nodeCount > 1 && g.bestNode != g.firstNode) {
+                System.out.println("[Fusion] Emergency (class " + g.classId + ") heard best at " + where
+                        + " (" + g.nodeCount + " computers)");
+            }
+            return;
+        }
+        int needed = Math.min(quorum, Math.max(1, peers.getMicrophoneCount()));
+        if (g.nodeCount < needed) {
+            belowQuorumCount.incrementAndGet();
+            return;
+        }
+        emittedCount.incrementAndGet();
+        output.emit(g.classId, g.bestScore, where, g.nodeCount);
+    }
+
+    private String nameOf(long nodeId, String address) {
+        String name = peers.nameOf(nodeId);
+        return name != null ? name : address;
+    }
+
+    // ============ STATUS ============
+
+    /**
+     * @return One-line summary for the log
+     */
+    public String getStatsSummary() {
+        return String.format("%d reports, %d shown, %d merged, %d without quorum",
+                reportCount.get(), emittedCount.get(), fusedCount.get(), belowQuorumCount.get());
+    }
+
+    /**
+     * Reports of one sound class within one window (reused for the next window).
+     */
+    private static final class Group {
+        final int classId;
+        final long[] nodes = new long[MAX_NODES];
+        int nodeCount;
+        boolean open;
+        boolean emitted;
+        boolean emergency;
+        long startMillis;
+        float bestScore;
+        long bestNode;
+        long firstNode;
+        String bestAddress;
+
+        Group(int classId) {
+            this.classId = classId;
+        }
+
+        void start(long nowMillis) {
+            open = true;
+            emitted = false;
+            emergency = false;
+            startMillis = nowMillis;
+            nodeCount = 0;
+            bestScore = -1;
+            bestNode = 0;
+            firstNode = 0;
+            bestAddress = null;
+        }
+
+        /**
+         * Count a computer once per window.
+         */
+        void add(long node) {
+            for (int i = 0; i < nodeCount; i++) {
+                if (nodes[i] == node) {
+                    return;
+                }
+            }
+            if (nodeCount < MAX_NODES) {
+                nodes[nodeCount++] = node;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point for servers without a display.
+ *
+ * Runs the same listening pipeline as the desktop app (microphone, model,
+ * notification rules, LAN broadcast, journal) but never loads JavaFX.
+ * Notifications are written as JSON Lines to stdout or to a file.
+ *
+ * Usage: java -cp taptic-desktop.jar HeadlessMain [--out events.jsonl]
+ * (or build with "mvn -Pheadless package" to make this the jar's main class)
+ *
+ * When events go to stdout, log messages go to stderr so stdout stays
+ * valid JSON Lines. Stop with Ctrl+C or SIGTERM.
+ *
+ * With the network on, a "peers" line lists the other computers heard
+ * every PEERS_INTERVAL_SECONDS, so coverage can be watched from the log.
+ *
+ * A headless server is a good place for the relay hub that connects
+ * computers on different subnets: add -Dtaptic.relayHub=50001 (see RelayHub).
+ */
+public final class HeadlessMain {
+
+    // How often the peer table is written
+    private static final long PEERS_INTERVAL_SECONDS = 60;
+
+    // Private constructor - only static methods
+    private HeadlessMain() {
+    }
+
+    /**
+     * Main entry point for headless mode.
+     *
+     * @param args Optional "--out FILE" ("-" = stdout, the default)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String target = "-";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--out") && i + 1 < args.length) {
+                target = args[++i];
+            } else {
+                System.err.println("Usage: HeadlessMain [--out FILE]");
+                System.exit(2);
+            }
+        }
+
+        // Keep stdout for events only
+        PrintStream stdout = System.out;
+        if (target.equals("-")) {
+            System.setOut(System.err);
+        }
+
+        long started = System.nanoTime();
+        SettingsStore.load(YamnetMic.getLabels());
+        SettingsStore.start();
+
+        JsonLinesSink sink = JsonLinesSink.open(target, stdout);
+        TapticServices services = TapticServices.start(sink);
+
+        ScheduledExecutorService peerTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "HeadlessPeers");
+            t.setDaemon(true);
+            return t;
+        });
+        PeerTable peers = services.getPeers();
+        if (peers != null) {
+            peerTimer.scheduleAtFixedRate(() -> sink.writePeers(peers.snapshot()),
+                    PEERS_INTERVAL_SECONDS, PEERS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            peerTimer.shutdownNow();
+            services.close();
+            SettingsStore.close();
+            sink.write("stop", new JSONObject());
+            try {
+                sink.close();
+            } catch (IOException e) {
+                System.err.println("[Headless] " + e.getMessage());
+            }
+            stopped.countDown();
+        }, "HeadlessShutdown"));
+
+        sink.write("start", new JSONObject()
+                .put("listening", services.isListening())
+                .put("journal", services.getJournal() != null)
+                .put("startupMillis", (System.nanoTime() - started) / 1_000_000));
+        System.out.println("[Headless] Running; stop with Ctrl+C");
+
+        // All work happens on daemon threads; wait here until shutdown
+        stopped.await();
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for backends that talk to one long-lived helper process.
+ *
+ * The helper is started once and reads notifications from its stdin,
+ * one per line in the form "urgency TAB title TAB message".
+ * Posting a notification is then just a write + flush on an open pipe.
+ * If the helper dies, it is restarted on the next post.
+ */
+public abstract class HelperProcessNotificationBackend implements NotificationBackend {
+
+    // How long close() waits for the helper to exit after EOF
+    private static final long CLOSE_TIMEOUT_MS = 2_000;
+
+    private Process helper;
+    private BufferedWriter helperInput;
+
+    /**
+     * Get the command line that starts the helper process.
+     *
+     * @return Command and arguments
+     */
+    protected abstract List<String> helperCommand();
+
+    @Override
+    public void open() throws IOException {
+        close();
+        ProcessBuilder pb = new ProcessBuilder(helperCommand());
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        helper = pb.start();
+        helperInput = new BufferedWriter(
+                new OutputStreamWriter(helper.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void post(String title, String message, boolean emergency) throws IOException {
+        if (helper == null || !helper.isAlive()) {
+            open();
+        }
+
+        helperInput.write(emergency ? "critical" : "normal");
+        helperInput.write('\t');
+        helperInput.write(sanitize(title));
+        helperInput.write('\t');
+        helperInput.write(sanitize(message));
+        helperInput.write('\n');
+        helperInput.flush();
+    }
+
+    @Override
+    public void close() {
+        if (helperInput != null) {
+            try {
+                helperInput.close(); // EOF makes the helper loop exit
+            } catch (IOException ignored) {
+            }
+            helperInput = null;
+        }
+        if (helper != null) {
+            // Give the helper a moment to finish the notification it is
+            // showing and exit on its own before forcing it down
+            try {
+                if (!helper.waitFor(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    helper.destroy();
+                }
+            } catch (InterruptedException e) {
+                helper.destroy();
+                Thread.currentThread().interrupt();
+            }
+            helper = null;
+        }
+    }
+
+    /**
+     * Remove characters that would break the line-based protocol.
+     *
+     * @param s Text to clean
+     * @return Text without tabs or line breaks
+     */
+    private static String sanitize(String s) {
+        if (s == null) {
+            return "";
+        }
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * One line in the history drawer.
+ *
+ * Notifications that were written to the DetectionJournal carry their event
+ * id, so the user can mark them correct or wrong from the list.
+ * The verdict is only changed on the FX thread.
+ */
+public final class HistoryEntry {
+
+    private final String text;
+    private final long eventId;
+    private final boolean important;
+    private final boolean remote;
+    private int verdict;
+
+    /**
+     * @param text      Line shown in the list
+     * @param eventId   Journal event id, or 0 if the sound wasn't journaled
+     * @param important True for sounds that caused a notification
+     * @param remote    True for sounds heard by another device
+     * @param verdict   DetectionEvent.FLAG_CORRECT, FLAG_WRONG, or 0
+     */
+    public HistoryEntry(String text, long eventId, boolean important, boolean remote, int verdict) {
+        this.text = text;
+        this.eventId = eventId;
+        this.important = important;
+        this.remote = remote;
+        this.verdict = verdict;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    public boolean isImportant() {
+        return important;
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+
+    /**
+     * @return True if the user can give feedback on this entry
+     */
+    public boolean canJudge() {
+        return eventId != 0;
+    }
+
+    public int getVerdict() {
+        return verdict;
+    }
+
+    public void setVerdict(int verdict) {
+        this.verdict = verdict;
+    }
+
+    /**
+     * @return Text with a mark for the user's verdict
+     */
+    @Override
+    public String toString() {
+        if (verdict == DetectionEvent.FLAG_CORRECT) {
+            return text + "  ✓";
+        }
+        if (verdict == DetectionEvent.FLAG_WRONG) {
+            return text + "  ✗";
+        }
+        return text;
+    }
+}
@@ -1,12 +1,13 @@
+import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
+import java.time.Clock;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Interpreter connects the audio model (YamnetMic), the UI
- * (MainViewController),
+ * (MainViewController, or any other DetectionSink),
  * and network broadcasting (BroadcastSender/Listener).
  * 
  * This class receives audio classification results and decides:
@@ -18,7 +19,10 @@ public final class Interpreter {
 
     // References to other components
     private static BroadcastSender sender;
-    private static MainViewController mainController;
+    private static DetectionSink sink; // normally the MainViewController
+    private static DetectionJournal journal; // null = don't record events
+    private static ClipRecorder clipRecorder; // null = no audio clips
+    private static String[] labels; // for class ids received from the network
 
     // Smoothing variables for UI progress bars (makes them less jumpy)
     // EMA = Exponential Moving Average
@@ -27,12 +31,21 @@ public final class Interpreter {
     private static double smooth2;
     private static double smooth3;
     private static final double ALPHA = 0.7; // Higher = more responsive, less smooth
+    private static final int[] top3 = new int[3]; // mic thread only
 
     // Notification cooldown: don't send same notification more than once per 5
     // seconds
-    private static final long COOLDOWN_MS = 5000;
+    static final long COOLDOWN_MS = 5000;
+
+    // Result bits of decide()
+    static final int DECISION_NOTIFY = 1;
+    static final int DECISION_EMERGENCY = 1 << 1;
+    static final int DECISION_BROADCAST = 1 << 2;
     private static final Map<String, Long> lastNotify = new HashMap<>();
 
+    // Time source for cooldowns (a ManualClock when replaying a session)
+    private static volatile Clock clock = Clock.systemUTC();
+
     // Private constructor - this class is only for static methods
     private Interpreter() {
     }
@@ -42,19 +55,60 @@ public final class Interpreter {
      * Called once from TapticFxApp when the application starts.
      * 
      * @param s         The broadcast sender for network communication
-     * @param c         The main view controller for UI updates
+     * @param c         Where results go (normally the main view controller)
      * @param allLabels All possible sound labels from the AI model
      */
-    public static void init(BroadcastSender s, MainViewController c, String[] allLabels) {
+    public static void init(BroadcastSender s, DetectionSink c, String[] allLabels) {
         sender = s;
-        mainController = c;
+        sink = c;
+        labels = allLabels;
 
         // Set up the monitored/notify checkboxes in the UI
-        if (mainController != null && allLabels != null) {
-            mainController.initMonitoredLists(allLabels);
+        if (sink != null && allLabels != null) {
+            sink.initMonitoredLists(allLabels);
         }
     }
 
+    /**
+     * Replace the clock used for cooldowns.
+     *
+     * @param c New clock (Clock.systemUTC() for live use)
+     */
+    public static void setClock(Clock c) {
+        clock = c;
+    }
+
+    /**
+     * Forget smoothing and cooldown state, as if the app had just started.
+     * Used before replaying a recorded session.
+     */
+    static void resetState() {
+        firstFrame = true;
+        smooth1 = 0;
+        smooth2 = 0;
+        smooth3 = 0;
+        lastNotify.clear();
+    }
+
+    /**
+     * Record every notification in a detection journal.
+     *
+     * @param j Open journal, or null to stop recording
+     */
+    public static void setJournal(DetectionJournal j) {
+        journal = j;
+    }
+
+    /**
+     * Save an audio clip for every local notification.
+     * The recorder must be the one YamnetMic feeds.
+     *
+     * @param recorder Clip recorder, or null to stop
+     */
+    public static void setClipRecorder(ClipRecorder recorder) {
+        clipRecorder = recorder;
+    }
+
     /**
      * Process one frame of audio results from the AI model.
      * Called continuously by YamnetMic as audio is processed.
@@ -65,12 +119,12 @@ public final class Interpreter {
      */
     public static void onFrame(float[] scores, String[] labels, double level) {
         // Safety check: need valid controller and scores
-        if (mainController == null || scores == null || scores.length == 0) {
+        if (sink == null || scores == null || scores.length == 0) {
             return;
         }
 
         // Update sound level meter in UI
-        mainController.updateSoundLevel(level);
+        sink.updateSoundLevel(level);
 
         int numScores = scores.length;
 
@@ -78,42 +132,25 @@ public final class Interpreter {
         if (numScores < 3) {
             String label = getLabelAt(labels, 0);
             double score = scores[0];
-            boolean emergency = isEmergency(label);
+            boolean emergency = isEmergency(AppConfig.current(), 0, label);
 
             // Add to history (not marked as important yet)
-            mainController.addHistory(label, score, emergency, true, null, false);
+            sink.addHistory(label, score, emergency, true, null, false, 0);
 
             // Update the top 3 display
-            mainController.updateTop3(label, score, null, 0.0, null, 0.0);
+            sink.updateTop3(label, score, null, 0.0, null, 0.0);
 
             // Check if we should notify
-            maybeNotify(label, score, true, null);
+            maybeNotify(0, label, score, true, null);
             return;
         }
 
         // Find the top 3 highest scoring sounds
-        // We do this manually to avoid sorting the entire array
-        int best1 = 0;
-        int best2 = 1;
-        int best3 = 2;
-
-        for (int i = 0; i < numScores; i++) {
-            float currentScore = scores[i];
-
-            if (currentScore > scores[best1]) {
-                // New best! Shift everything down
-                best3 = best2;
-                best2 = best1;
-                best1 = i;
-            } else if (i != best1 && currentScore > scores[best2]) {
-                // New second best
-                best3 = best2;
-                best2 = i;
-            } else if (i != best1 && i != best2 && currentScore > scores[best3]) {
-                // New third best
-                best3 = i;
-            }
-        }
+        int[] best = top3;
+        findTop3(scores, best);
+        int best1 = best[0];
+        int best2 = best[1];
+        int best3 = best[2];
 
         // Get the labels and scores for top 3
         String label1 = getLabelAt(labels, best1);
@@ -124,14 +161,16 @@ public final class Interpreter {
         double score2 = scores[best2];
         double score3 = scores[best3];
 
-        boolean emergency1 = isEmergency(label1);
-        boolean emergency2 = isEmergency(label2);
-        boolean emergency3 = isEmergency(label3);
+        // Class-indexed flags: one array read per sound
+        ConfigSnapshot cfg = AppConfig.current();
+        boolean emergency1 = isEmergency(cfg, best1, label1);
+        boolean emergency2 = isEmergency(cfg, best2, label2);
+        boolean emergency3 = isEmergency(cfg, best3, label3);
 
         // Add all top 3 sounds to history (not marked as important yet)
-        mainController.addHistory(label1, score1, emergency1, true, null, false);
-        mainController.addHistory(label2, score2, emergency2, true, null, false);
-        mainController.addHistory(label3, score3, emergency3, true, null, false);
+        sink.addHistory(label1, score1, emergency1, true, null, false, 0);
+        sink.addHistory(label2, score2, emergency2, true, null, false, 0);
+        sink.addHistory(label3, score3, emergency3, true, null, false, 0);
 
         // Apply smoothing to make the progress bars less jumpy
         if (firstFrame) {
@@ -148,12 +187,46 @@ public final class Interpreter {
         }
 
         // Update the UI with smoothed scores for display
-        mainController.updateTop3(label1, smooth1, label2, smooth2, label3, smooth3);
+        sink.updateTop3(label1, smooth1, label2, smooth2, label3, smooth3);
 
         // Check if we should send notifications (uses RAW scores, not smoothed)
-        maybeNotify(label1, score1, true, null);
-        maybeNotify(label2, score2, true, null);
-        maybeNotify(label3, score3, true, null);
+        maybeNotify(best1, label1, score1, true, null);
+        maybeNotify(best2, label2, score2, true, null);
+        maybeNotify(best3, label3, score3, true, null);
+    }
+
+    /**
+     * Find the three highest scores without sorting the whole array.
+     * Shared with WhatIfEvaluator so it picks exactly the same sounds.
+     *
+     * @param scores Scores (at least 3)
+     * @param best   Receives the class ids of the top 3, best first
+     */
+    static void findTop3(float[] scores, int[] best) {
+        int best1 = 0;
+        int best2 = 1;
+        int best3 = 2;
+
+        for (int i = 0; i < scores.length; i++) {
+            float currentScore = scores[i];
+
+            if (currentScore > scores[best1]) {
+                // New best! Shift everything down
+                best3 = best2;
+                best2 = best1;
+                best1 = i;
+            } else if (i != best1 && currentScore > scores[best2]) {
+                // New second best
+                best3 = best2;
+                best2 = i;
+            } else if (i != best1 && i != best2 && currentScore > scores[best3]) {
+                // New third best
+                best3 = i;
+            }
+        }
+        best[0] = best1;
+        best[1] = best2;
+        best[2] = best3;
     }
 
     /**
@@ -163,7 +236,7 @@ public final class Interpreter {
      * @param index  Index to get
      * @return The label, or a fallback like "class_0" if index is invalid
      */
-    private static String getLabelAt(String[] labels, int index) {
+    static String getLabelAt(String[] labels, int index) {
         // Check if index is valid
         if (labels == null || index < 0 || index >= labels.length) {
             return "class_" + index;
@@ -187,35 +260,39 @@ public final class Interpreter {
      * - Does the confidence score meet the threshold?
      * - Has enough time passed since the last notification?
      * 
+     * @param classId  Class id of the sound (index into the model's labels)
      * @param label    The sound label
      * @param rawScore The AI confidence score (0.0 to 1.0)
      * @param local    True if detected locally, false if received from network
      * @param host     The hostname if received from network (null if local)
      */
-    private static void maybeNotify(String label, double rawScore, boolean local, String host) {
-        // Safety checks
-        if (mainController == null || label == null) {
-            return;
-        }
-
-        // Check if this sound is being monitored
-        if (!mainController.isMonitored(label)) {
-            return;
-        }
+    private static void maybeNotify(int classId, String label, double rawScore, boolean local, String host) {
+        maybeNotify(classId, label, rawScore, local, host, 1);
+    }
 
-        // Check if notifications are enabled for this sound
-        if (!mainController.isNotifyEnabled(label)) {
+    /**
+     * Same as above, for a remote sound that several computers reported.
+     *
+     * @param reporters Computers that heard it; more than 1 is shown in the
+     *                  notification text only (the journal and history keep
+     *                  the plain host name)
+     */
+    private static void maybeNotify(int classId, String label, double rawScore, boolean local, String host,
+            int reporters) {
+        // Safety checks
+        if (sink == null || label == null) {
             return;
         }
 
-        // Check if confidence score meets the threshold
-        double threshold = AppConfig.notifyThreshold;
-        if (rawScore < threshold) {
+        // One consistent view of the settings for this whole decision
+        ConfigSnapshot cfg = AppConfig.current();
+        int decision = decide(cfg, classId, label, rawScore, local);
+        if ((decision & DECISION_NOTIFY) == 0) {
             return;
         }
 
         // Check cooldown: don't spam notifications
-        long now = System.currentTimeMillis();
+        long now = clock.millis();
         Long lastTime = lastNotify.get(label);
         if (lastTime != null) {
             long timeSinceLast = now - lastTime;
@@ -226,29 +303,90 @@ public final class Interpreter {
         lastNotify.put(label, now);
 
         // Determine if this is an emergency sound
-        boolean emergency = isEmergency(label);
+        boolean emergency = (decision & DECISION_EMERGENCY) != 0;
 
         // If this is a local detection and broadcasting is enabled, send to network
-        if (local && sender != null && AppConfig.isBroadcastSendEnabled(label)) {
-            try {
-                sender.sendEvent(label);
-            } catch (IOException e) {
-                System.err.println("Broadcast error: " + e.getMessage());
-            }
+        boolean broadcast = false;
+        if (sender != null && (decision & DECISION_BROADCAST) != 0) {
+            // Only queued here; the sender thread does the network work
+            broadcast = sender.sendEvent(classId, label, rawScore, emergency);
+        }
+
+        // Keep a permanent record (only a write into mapped memory)
+        long eventId = 0;
+        DetectionJournal j = journal;
+        if (j != null) {
+            int flags = (emergency ? DetectionEvent.FLAG_EMERGENCY : 0)
+                    | (local ? 0 : DetectionEvent.FLAG_REMOTE)
+                    | (broadcast ? DetectionEvent.FLAG_BROADCAST : 0);
+            eventId = j.append(now, label, local ? null : host, (float) rawScore, flags);
+        }
+
+        // Save the audio around a local detection (written later, off this thread)
+        ClipRecorder clips = clipRecorder;
+        if (local && clips != null && eventId != 0 && cfg.isSaveClips()) {
+            clips.capture(eventId);
         }
 
         // Trigger the notification in the UI
         if (local) {
             // Local detection
-            mainController.handleNotification(label, rawScore, emergency);
-            mainController.addHistory(label, rawScore, emergency, true, null, true);
+            sink.handleNotification(label, rawScore, emergency);
+            sink.addHistory(label, rawScore, emergency, true, null, true, eventId);
         } else {
             // Remote detection (received from network)
-            mainController.handleRemoteNotification(label, host, emergency);
-            mainController.addHistory(label, rawScore, emergency, false, host, true);
+            sink.handleRemoteNotification(label, reporters > 1 ? host + " (loudest of " + reporters + ")" : host,
+                    emergency);
+            sink.addHistory(label, rawScore, emergency, false, host, true, eventId);
         }
     }
 
+    /**
+     * The settings part of a notification decision (no cooldown, no side effects).
+     * Checks, in order:
+     * - Does the confidence score meet the threshold?
+     * - Is the sound being monitored?
+     * - Are notifications enabled for this sound?
+     * - For a sound from another device: is listening enabled for it?
+     * - Does the score meet this sound's calibrated threshold?
+     * Shared with WhatIfEvaluator so "what if" uses exactly the live rules.
+     *
+     * Model sounds are decided with one read of the class-indexed flags and
+     * thresholds; only JSON events (class id -1) look the label up.
+     *
+     * @param cfg      Settings to decide with
+     * @param classId  Class id of the sound, or -1 if only the label is known
+     * @param label    The sound label
+     * @param rawScore The AI confidence score (0.0 to 1.0)
+     * @param local    True if detected locally (only local sounds are broadcast,
+     *                 only remote ones need the listen setting)
+     * @return DECISION_* bits, 0 if no notification
+     */
+    static int decide(ConfigSnapshot cfg, int classId, String label, double rawScore, boolean local) {
+        if (rawScore < cfg.getNotifyThreshold()) {
+            return 0;
+        }
+        int idx = classId >= 0 && classId < cfg.getClassCount() ? classId : cfg.classIndexOf(label);
+        int flags = idx >= 0 ? cfg.flagsOf(idx) : cfg.flagsOf(label);
+        int needed = ConfigSnapshot.FLAG_MONITORED | ConfigSnapshot.FLAG_NOTIFY
+                | (local ? 0 : ConfigSnapshot.FLAG_LISTEN);
+        if ((flags & needed) != needed) {
+            return 0;
+        }
+        // Per-sound threshold learned from feedback (never below the global one)
+        if (idx >= 0 && rawScore < cfg.getNotifyThreshold(idx)) {
+            return 0;
+        }
+        int decision = DECISION_NOTIFY;
+        if ((flags & ConfigSnapshot.FLAG_EMERGENCY) != 0) {
+            decision |= DECISION_EMERGENCY;
+        }
+        if (local && (flags & ConfigSnapshot.FLAG_SEND) != 0) {
+            decision |= DECISION_BROADCAST;
+        }
+        return decision;
+    }
+
     /**
      * Check if a sound should be treated as an emergency.
      * Emergency sounds trigger special alerts (screen flash, louder notification
@@ -261,15 +399,26 @@ public final class Interpreter {
         return AppConfig.isEmergencyLabel(label);
     }
 
+    /**
+     * Same as isEmergency(label), with one array read for model sounds.
+     */
+    private static boolean isEmergency(ConfigSnapshot cfg, int classId, String label) {
+        if (classId >= 0 && classId < cfg.getClassCount()) {
+            return (cfg.flagsOf(classId) & ConfigSnapshot.FLAG_EMERGENCY) != 0;
+        }
+        return cfg.isEmergency(label);
+    }
+
     /**
      * Handle a sound detection broadcast from another device on the network.
      * Called by BroadcastListener when it receives a JSON message.
      * 
      * @param jsonText The JSON message from the network
+     * @return False if the message isn't a valid event (counted as malformed)
      */
-    public static void handleBroadcastJson(String jsonText) {
-        if (mainController == null || jsonText == null || jsonText.isEmpty()) {
-            return;
+    public static boolean handleBroadcastJson(String jsonText) {
+        if (jsonText == null || jsonText.isEmpty()) {
+            return false;
         }
 
         try {
@@ -277,17 +426,49 @@ public final class Interpreter {
             JSONObject obj = new JSONObject(jsonText);
             String label = obj.optString("type", null);
             String host = obj.optString("host", "remote");
+            // Older versions don't send a score: treat those as full-confidence detections
+            double score = obj.optDouble("score", 1.0);
 
             if (label == null || label.isEmpty()) {
-                return;
+                return false;
             }
 
-            // Treat remote events as full-confidence detections
-            maybeNotify(label, 1.0, false, host);
+            // maybeNotify() does nothing without a sink
+            maybeNotify(-1, label, score, false, host);
+            return true;
 
-        } catch (Exception e) {
-            System.err.println("Bad broadcast JSON: " + e.getMessage());
+        } catch (JSONException e) {
+            // Not logged: a flood of bad packets would flood the log (BroadcastListener counts them)
+            return false;
+        }
+    }
+
+    /**
+     * Handle a binary sound detection event from another device.
+     * Called by BroadcastListener for each WireEvent record it decodes.
+     *
+     * @param event Decoded event (only valid during this call)
+     * @param host  Address of the sending device
+     */
+    public static void handleBroadcastEvent(WireEvent event, String host) {
+        handleRemoteEvent(event.classId, event.score, host, 1);
+    }
+
+    /**
+     * Handle a sound reported by other devices, after EventFusion has
+     * merged the reports of several computers into one.
+     *
+     * @param classId   Class id of the sound
+     * @param score     Highest score reported
+     * @param where     Device that heard it best (the host in the journal and history)
+     * @param reporters Devices that reported it (added to the notification text if more than 1)
+     */
+    public static void handleRemoteEvent(int classId, float score, String where, int reporters) {
+        String[] known = labels;
+        if (sink == null || known == null || classId < 0 || classId >= known.length) {
+            return;
         }
+        maybeNotify(classId, getLabelAt(known, classId), score, false, where, reporters);
     }
 
     /**
@@ -297,8 +478,8 @@ public final class Interpreter {
      * @param msg The error message
      */
     public static void reportMicError(String msg) {
-        if (mainController != null) {
-            mainController.showMicError(msg);
+        if (sink != null) {
+            sink.showMicError(msg);
         }
     }
 }
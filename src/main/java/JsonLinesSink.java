@@ -0,0 +1,174 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A DetectionSink that writes one JSON object per line (JSON Lines), for
+ * headless servers. Each line is flushed right away, so tools like
+ * "tail -f | jq" or a log shipper see events as they happen.
+ *
+ * Lines:
+ * - {"event":"start", ...} once at startup
+ * - {"event":"notification","label":...,"score":...,"emergency":...,"local":true,"eventId":...}
+ * - {"event":"notification", ..., "local":false,"host":...} for sounds from other devices
+ * - {"event":"error","message":...} for microphone problems
+ * - {"event":"peers","count":...,"peers":[{"name":...,"address":...,"silentSeconds":...}, ...]}
+ *   every minute, the other computers heard on the network (see PeerTable)
+ * - {"event":"stop", ...} on shutdown
+ *
+ * Remote sounds are filtered exactly like the main window does (listen,
+ * monitored and notify settings).
+ */
+public final class JsonLinesSink implements DetectionSink, Closeable {
+
+    private final Writer out;
+    private final boolean closeOut;
+
+    /**
+     * @param out      Destination
+     * @param closeOut True to close the destination in close() (false for stdout)
+     */
+    public JsonLinesSink(Writer out, boolean closeOut) {
+        this.out = out;
+        this.closeOut = closeOut;
+    }
+
+    /**
+     * Open a sink for a file (appending) or "-" for standard output.
+     *
+     * @param target File path, or "-" / null for stdout
+     * @param stdout Stream to use for "-"
+     * @return New sink
+     * @throws IOException If the file can't be opened
+     */
+    public static JsonLinesSink open(String target, PrintStream stdout) throws IOException {
+        if (target == null || target.equals("-")) {
+            return new JsonLinesSink(new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8)), false);
+        }
+        Path file = Path.of(target);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return new JsonLinesSink(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), true);
+    }
+
+    /**
+     * Write one event line.
+     *
+     * @param type  Value of the "event" field
+     * @param event Other fields (may be modified)
+     */
+    public synchronized void write(String type, JSONObject event) {
+        long now = System.currentTimeMillis();
+        event.put("event", type);
+        event.put("timeMillis", now);
+        event.put("time", Instant.ofEpochMilli(now).toString());
+        try {
+            out.write(event.toString());
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("[JsonLines] Write failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the other computers currently heard on the network.
+     *
+     * @param peers Snapshot of the peer table
+     */
+    public void writePeers(List<PeerTable.Peer> peers) {
+        long now = System.nanoTime();
+        JSONArray list = new JSONArray();
+        for (PeerTable.Peer p : peers) {
+            list.put(new JSONObject()
+                    .put("node", NodeIdentity.toHex(p.getNodeId()))
+                    .put("name", p.getName())
+                    .put("address", p.getAddress())
+                    .put("protocol", p.getProtocolVersion())
+                    .put("microphone", (p.getCapabilities() & WireEvent.CAP_MICROPHONE) != 0)
+                    .put("reliable", (p.getCapabilities() & WireEvent.CAP_RELIABLE) != 0)
+                    .put("load", Math.round(p.getLoad() * 100.0) / 100.0)
+                    .put("intervalMillis", p.getIntervalMillis())
+                    .put("firstSeen", Instant.ofEpochMilli(p.getFirstSeenMillis()).toString())
+                    .put("silentSeconds", p.getSilentMillis(now) / 1000));
+        }
+        write("peers", new JSONObject().put("count", peers.size()).put("peers", list));
+    }
+
+    // ============ DETECTION SINK ============
+
+    @Override
+    public void initMonitoredLists(String[] allLabels) {
+        // Nothing to show
+    }
+
+    @Override
+    public void updateSoundLevel(double level) {
+        // Only notifications are written
+    }
+
+    @Override
+    public void updateTop3(String l1, double s1, String l2, double s2, String l3, double s3) {
+        // Only notifications are written
+    }
+
+    @Override
+    public void addHistory(String label, double score, boolean emergency, boolean local, String host,
+            boolean important, long eventId) {
+        // Notifications arrive here with their journal id, so they are written from here
+        if (!important) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("label", label);
+        json.put("score", Math.round(score * 1000.0) / 1000.0);
+        json.put("emergency", emergency);
+        json.put("local", local);
+        if (!local) {
+            json.put("host", host == null ? "remote" : host);
+        }
+        if (eventId != 0) {
+            json.put("eventId", eventId);
+        }
+        write("notification", json);
+    }
+
+    @Override
+    public void handleNotification(String label, double score, boolean emergency) {
+        // Written by addHistory (which also has the event id)
+    }
+
+    @Override
+    public void handleRemoteNotification(String label, String host, boolean emergency) {
+        // Written by addHistory (which also has the event id)
+    }
+
+    @Override
+    public void showMicError(String msg) {
+        write("error", new JSONObject().put("message", msg == null ? "unknown" : msg));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closeOut) {
+            out.close();
+        } else {
+            out.flush();
+        }
+    }
+}
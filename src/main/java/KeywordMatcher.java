@@ -0,0 +1,165 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Finds many keywords in a piece of text in one pass (Aho-Corasick).
+ *
+ * Every keyword carries a bit mask. match() walks the text once and returns
+ * the OR of the masks of every keyword found anywhere in it, no matter how
+ * many keywords there are. Matching ignores case and allocates nothing.
+ *
+ * The automaton is built once and is immutable, so one matcher can be
+ * shared by any number of threads.
+ */
+public final class KeywordMatcher {
+
+    // Number of symbols; symbol 0 stands for "a character no keyword uses"
+    private final int symbolCount;
+    // Symbol number for ASCII characters
+    private final int[] asciiSymbols = new int[128];
+    // Symbol numbers for other characters: sorted chars + matching symbols
+    private final char[] otherChars;
+    private final int[] otherSymbols;
+
+    // next[state * symbolCount + symbol] = state after reading that symbol
+    private final int[] next;
+    // Combined mask of every keyword that ends in a state
+    private final int[] output;
+
+    /**
+     * Build the automaton.
+     *
+     * @param keywords Keywords to look for (case is ignored, blanks are skipped)
+     * @param masks    Bit mask reported for each keyword (same order)
+     */
+    public KeywordMatcher(List<String> keywords, List<Integer> masks) {
+        if (keywords.size() != masks.size()) {
+            throw new IllegalArgumentException("Need one mask per keyword");
+        }
+
+        // Lowercase the keywords and collect the characters they use
+        List<String> words = new ArrayList<>(keywords.size());
+        TreeSet<Character> chars = new TreeSet<>();
+        for (String k : keywords) {
+            String w = k == null ? "" : k.trim().toLowerCase(Locale.ROOT);
+            words.add(w);
+            for (int i = 0; i < w.length(); i++) {
+                chars.add(w.charAt(i));
+            }
+        }
+
+        // Give every used character a symbol number (1..n)
+        List<Character> others = new ArrayList<>();
+        int symbol = 1;
+        for (char c : chars) {
+            if (c < 128) {
+                asciiSymbols[c] = symbol++;
+            } else {
+                others.add(c);
+            }
+        }
+        otherChars = new char[others.size()];
+        otherSymbols = new int[others.size()];
+        for (int i = 0; i < others.size(); i++) {
+            otherChars[i] = others.get(i);
+            otherSymbols[i] = symbol++;
+        }
+        symbolCount = symbol;
+
+        // 1. Build the keyword tree
+        List<Map<Integer, Integer>> children = new ArrayList<>();
+        List<Integer> out = new ArrayList<>();
+        children.add(new HashMap<>());
+        out.add(0);
+        for (int k = 0; k < words.size(); k++) {
+            String w = words.get(k);
+            if (w.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < w.length(); i++) {
+                int s = symbolOf(w.charAt(i));
+                Integer child = children.get(state).get(s);
+                if (child == null) {
+                    child = children.size();
+                    children.add(new HashMap<>());
+                    out.add(0);
+                    children.get(state).put(s, child);
+                }
+                state = child;
+            }
+            out.set(state, out.get(state) | masks.get(k));
+        }
+
+        // 2. Turn the tree into a full transition table, breadth first.
+        //    A missing edge goes where the longest matching suffix would go.
+        int states = children.size();
+        next = new int[states * symbolCount];
+        output = new int[states];
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+        for (int s = 0; s < symbolCount; s++) {
+            Integer child = children.get(0).get(s);
+            if (child != null) {
+                next[s] = child;
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        output[0] = out.get(0);
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            output[state] = out.get(state) | output[fail[state]];
+            int base = state * symbolCount;
+            int failBase = fail[state] * symbolCount;
+            for (int s = 0; s < symbolCount; s++) {
+                Integer child = children.get(state).get(s);
+                if (child != null) {
+                    next[base + s] = child;
+                    fail[child] = next[failBase + s];
+                    queue.add(child);
+                } else {
+                    next[base + s] = next[failBase + s];
+                }
+            }
+        }
+    }
+
+    /**
+     * Find all keywords in a text.
+     *
+     * @param text Text to search (any case)
+     * @return OR of the masks of every keyword found (0 if none)
+     */
+    public int match(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int state = 0;
+        int found = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = next[state * symbolCount + symbolOf(Character.toLowerCase(text.charAt(i)))];
+            found |= output[state];
+        }
+        return found;
+    }
+
+    /**
+     * Get the symbol number of a (lowercase) character.
+     */
+    private int symbolOf(char c) {
+        if (c < 128) {
+            return asciiSymbols[c];
+        }
+        int i = Arrays.binarySearch(otherChars, c);
+        return i >= 0 ? otherSymbols[i] : 0;
+    }
+}
@@ -0,0 +1,240 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * User-editable keyword rules that sort sound labels into groups:
+ * - Emergency keywords: labels containing one are emergency sounds by default
+ * - Interesting keywords: labels containing one are shown and monitored by default
+ * - Ignore keywords: labels containing one are never "interesting" (noise, silence...)
+ *
+ * All keywords are compiled into one KeywordMatcher, so classifying a label
+ * is a single pass over its characters. Rule sets are immutable; editing the
+ * rules means building a new KeywordRules.
+ */
+public final class KeywordRules {
+
+    // Bits returned by classify()
+    public static final int EMERGENCY = 1;
+    public static final int INTERESTING = 1 << 1;
+
+    // Extra bit only used inside the matcher
+    private static final int IGNORE = 1 << 2;
+
+    private static final List<String> DEFAULT_EMERGENCY = List.of(
+            "fire", "smoke", "siren", "alarm", "glass", "gunshot",
+            "explosion", "emergency", "screaming", "crying", "baby");
+
+    private static final List<String> DEFAULT_INTERESTING = List.of(
+            "alarm", "fire", "smoke", "siren",
+            "door", "doorbell", "door bell", "door knock", "knocking",
+            "door open", "door close",
+            "window", "glass", "glass breaking",
+            "phone", "telephone", "ring", "ringtone",
+            "baby", "infant", "cry", "crying",
+            "child", "kid",
+            "dog", "bark", "cat", "meow",
+            "microwave", "oven", "timer", "beep",
+            "washing machine", "laundry", "dryer",
+            "dishwasher",
+            "tap", "faucet", "running water",
+            "car horn", "car alarm", "horn", "engine", "motorcycle",
+            "gunshot", "explosion",
+            "footstep", "walking", "knock",
+            "shout", "scream", "yell",
+            "applause",
+            "cough", "sneeze",
+            "thunder");
+
+    private static final List<String> DEFAULT_IGNORE = List.of(
+            "silence", "quiet", "room tone", "noise", "static", "hum", "hiss",
+            "wind noise", "white noise", "pink noise",
+            "drip", "dripping", "raindrop");
+
+    private static final KeywordRules DEFAULTS =
+            new KeywordRules(DEFAULT_EMERGENCY, DEFAULT_INTERESTING, DEFAULT_IGNORE);
+
+    private final List<String> emergencyKeywords;
+    private final List<String> interestingKeywords;
+    private final List<String> ignoreKeywords;
+    private final KeywordMatcher matcher;
+
+    /**
+     * Build and compile a rule set.
+     * Keywords are trimmed and lowercased; blanks and duplicates are dropped.
+     *
+     * @param emergency   Emergency keywords
+     * @param interesting Interesting keywords
+     * @param ignore      Ignore keywords
+     */
+    public KeywordRules(Collection<String> emergency, Collection<String> interesting,
+            Collection<String> ignore) {
+        this.emergencyKeywords = clean(emergency);
+        this.interestingKeywords = clean(interesting);
+        this.ignoreKeywords = clean(ignore);
+
+        List<String> words = new ArrayList<>();
+        List<Integer> masks = new ArrayList<>();
+        addAll(words, masks, emergencyKeywords, EMERGENCY);
+        addAll(words, masks, interestingKeywords, INTERESTING);
+        addAll(words, masks, ignoreKeywords, IGNORE);
+        this.matcher = new KeywordMatcher(words, masks);
+    }
+
+    /**
+     * Get the built-in rules.
+     *
+     * @return Default rule set
+     */
+    public static KeywordRules defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Classify one label.
+     *
+     * @param label The sound label (any case)
+     * @return EMERGENCY and/or INTERESTING bits
+     */
+    public int classify(String label) {
+        int found = matcher.match(label);
+        int result = found & EMERGENCY;
+        if ((found & INTERESTING) != 0 && (found & IGNORE) == 0) {
+            result |= INTERESTING;
+        }
+        return result;
+    }
+
+    /**
+     * Classify a whole label table at once.
+     *
+     * @param labels All labels (class id = array index)
+     * @return classify() result for each label
+     */
+    public byte[] classifyAll(String[] labels) {
+        byte[] flags = new byte[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            flags[i] = (byte) classify(labels[i]);
+        }
+        return flags;
+    }
+
+    public List<String> getEmergencyKeywords() {
+        return emergencyKeywords;
+    }
+
+    public List<String> getInterestingKeywords() {
+        return interestingKeywords;
+    }
+
+    public List<String> getIgnoreKeywords() {
+        return ignoreKeywords;
+    }
+
+    // ============ SAVE / LOAD ============
+
+    /**
+     * Export the rules for the settings file.
+     *
+     * @return JSON object with "emergency", "interesting" and "ignore" arrays
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("emergency", new JSONArray(emergencyKeywords));
+        json.put("interesting", new JSONArray(interestingKeywords));
+        json.put("ignore", new JSONArray(ignoreKeywords));
+        return json;
+    }
+
+    /**
+     * Read rules from the settings file. Missing lists keep the fallback's keywords.
+     *
+     * @param json     JSON object written by toJson() (may be null)
+     * @param fallback Rules to take missing lists from
+     * @return Rule set (the fallback itself if nothing changed)
+     */
+    public static KeywordRules fromJson(JSONObject json, KeywordRules fallback) {
+        if (json == null) {
+            return fallback;
+        }
+        KeywordRules rules = new KeywordRules(
+                readList(json.optJSONArray("emergency"), fallback.emergencyKeywords),
+                readList(json.optJSONArray("interesting"), fallback.interestingKeywords),
+                readList(json.optJSONArray("ignore"), fallback.ignoreKeywords));
+        return rules.sameKeywords(fallback) ? fallback : rules;
+    }
+
+    /**
+     * Split user input into keywords (separated by commas or new lines).
+     *
+     * @param text Text from the settings screen
+     * @return Keywords in the order typed
+     */
+    public static List<String> parseList(String text) {
+        List<String> list = new ArrayList<>();
+        if (text == null) {
+            return list;
+        }
+        for (String part : text.split("[,\\n]")) {
+            if (!part.isBlank()) {
+                list.add(part.trim());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Check if two rule sets have exactly the same keywords.
+     *
+     * @param other Rule set to compare with
+     * @return True if nothing differs
+     */
+    public boolean sameKeywords(KeywordRules other) {
+        return other != null
+                && emergencyKeywords.equals(other.emergencyKeywords)
+                && interestingKeywords.equals(other.interestingKeywords)
+                && ignoreKeywords.equals(other.ignoreKeywords);
+    }
+
+    // ============ HELPERS ============
+
+    private static List<String> clean(Collection<String> keywords) {
+        Set<String> set = new LinkedHashSet<>();
+        if (keywords != null) {
+            for (String k : keywords) {
+                if (k != null && !k.isBlank()) {
+                    set.add(k.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(set));
+    }
+
+    private static void addAll(List<String> words, List<Integer> masks, List<String> keywords, int mask) {
+        for (String k : keywords) {
+            words.add(k);
+            masks.add(mask);
+        }
+    }
+
+    private static List<String> readList(JSONArray array, List<String> fallback) {
+        if (array == null) {
+            return fallback;
+        }
+        List<String> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            String v = array.optString(i, null);
+            if (v != null) {
+                list.add(v);
+            }
+        }
+        return list;
+    }
+}
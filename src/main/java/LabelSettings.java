@@ -0,0 +1,141 @@
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+import java.util.Locale;
+
+/**
+ * All per-sound settings for one YamNet label, as one table row.
+ *
+ * The properties are for the UI (TableView cells bind to them). Every change
+ * is written straight through to AppConfig, which is what the audio and
+ * network threads read.
+ */
+public final class LabelSettings {
+
+    private final String label;
+    private final String lowerLabel;
+
+    // Follows the keyword rules; not editable per row
+    private final ReadOnlyBooleanWrapper interesting = new ReadOnlyBooleanWrapper();
+
+    private final BooleanProperty monitored = new SimpleBooleanProperty();
+    private final BooleanProperty notify = new SimpleBooleanProperty();
+    private final BooleanProperty emergency = new SimpleBooleanProperty();
+    private final BooleanProperty broadcastSend = new SimpleBooleanProperty();
+    private final BooleanProperty broadcastListen = new SimpleBooleanProperty();
+    private final StringProperty color = new SimpleStringProperty();
+
+    // True while copying values from AppConfig, so they aren't written back
+    private boolean reloading;
+
+    /**
+     * Create a row for a label, reading its current values from AppConfig.
+     *
+     * @param label The sound label
+     */
+    public LabelSettings(String label) {
+        this.label = label;
+        this.lowerLabel = label.toLowerCase(Locale.ROOT);
+        reload();
+
+        monitored.addListener((obs, old, val) -> {
+            if (!reloading) {
+                AppConfig.setMonitored(label, val);
+            }
+        });
+        notify.addListener((obs, old, val) -> {
+            if (!reloading) {
+                AppConfig.setNotifyEnabled(label, val);
+            }
+        });
+        emergency.addListener((obs, old, val) -> {
+            if (!reloading) {
+                AppConfig.setEmergencyLabel(label, val);
+            }
+        });
+        broadcastSend.addListener((obs, old, val) -> {
+            if (!reloading) {
+                AppConfig.setBroadcastSendEnabled(label, val);
+            }
+        });
+        broadcastListen.addListener((obs, old, val) -> {
+            if (!reloading) {
+                AppConfig.setBroadcastListenEnabled(label, val);
+            }
+        });
+        color.addListener((obs, old, val) -> {
+            if (!reloading) {
+                AppConfig.setNotificationColor(label, val);
+            }
+        });
+    }
+
+    /**
+     * Copy the current values from AppConfig into the properties.
+     * Used after settings were changed outside the UI.
+     */
+    public void reload() {
+        reloading = true;
+        try {
+            monitored.set(AppConfig.isMonitored(label));
+            notify.set(AppConfig.isNotifyEnabled(label));
+            emergency.set(AppConfig.isEmergencyLabel(label));
+            broadcastSend.set(AppConfig.isBroadcastSendEnabled(label));
+            broadcastListen.set(AppConfig.isBroadcastListenEnabled(label));
+            color.set(AppConfig.getNotificationColor(label));
+            interesting.set(AppConfig.isInterestingLabel(label));
+        } finally {
+            reloading = false;
+        }
+    }
+
+    /**
+     * Check if this row matches a search query.
+     *
+     * @param lowerQuery Lowercase search text (empty matches everything)
+     * @return True if the label contains the query
+     */
+    public boolean matches(String lowerQuery) {
+        return lowerQuery.isEmpty() || lowerLabel.contains(lowerQuery);
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isInteresting() {
+        return interesting.get();
+    }
+
+    public ReadOnlyBooleanProperty interestingProperty() {
+        return interesting.getReadOnlyProperty();
+    }
+
+    public BooleanProperty monitoredProperty() {
+        return monitored;
+    }
+
+    public BooleanProperty notifyProperty() {
+        return notify;
+    }
+
+    public BooleanProperty emergencyProperty() {
+        return emergency;
+    }
+
+    public BooleanProperty broadcastSendProperty() {
+        return broadcastSend;
+    }
+
+    public BooleanProperty broadcastListenProperty() {
+        return broadcastListen;
+    }
+
+    public StringProperty colorProperty() {
+        return color;
+    }
+}
@@ -0,0 +1,125 @@
+import javafx.beans.Observable;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The one model behind every per-sound settings table.
+ *
+ * Holds one LabelSettings row per YamNet label (all 521). The values
+ * themselves live in AppConfig (loaded by SettingsStore at startup). Rows are plain
+ * objects; the UI shows them in virtualized TableViews, so only the visible
+ * rows ever get controls. Both the main view and the settings view share
+ * the same rows, so a change in one shows up in the other.
+ */
+public final class LabelSettingsModel {
+
+    private static LabelSettingsModel instance;
+
+    private final ObservableList<LabelSettings> rows;
+    private final Map<String, LabelSettings> byLabel = new HashMap<>();
+    private final Map<String, LabelSettings> byLowerLabel = new HashMap<>();
+
+    /**
+     * Build rows for all labels.
+     *
+     * @param allLabels All labels known to the model
+     */
+    private LabelSettingsModel(String[] allLabels) {
+        String[] sorted = allLabels.clone();
+        Arrays.sort(sorted, String.CASE_INSENSITIVE_ORDER);
+
+        List<LabelSettings> list = new ArrayList<>(sorted.length);
+        for (String label : sorted) {
+            if (label == null || label.isBlank() || byLabel.containsKey(label)) {
+                continue;
+            }
+            LabelSettings row = new LabelSettings(label);
+            byLabel.put(label, row);
+            byLowerLabel.putIfAbsent(label.toLowerCase(Locale.ROOT), row);
+            list.add(row);
+        }
+        // Views re-filter a row when its "interesting" flag changes (new keyword rules)
+        rows = FXCollections.observableArrayList(row -> new Observable[] { row.interestingProperty() });
+        rows.addAll(list);
+    }
+
+    /**
+     * Get the shared model, building it the first time.
+     *
+     * @return The label settings model
+     */
+    public static synchronized LabelSettingsModel getInstance() {
+        if (instance == null) {
+            String[] labels = YamnetMic.getLabels();
+            instance = new LabelSettingsModel(labels != null ? labels : new String[0]);
+        }
+        return instance;
+    }
+
+    /**
+     * Create a filterable view of the rows for one table.
+     * Starts by showing only the interesting sounds.
+     *
+     * @return New filtered view (each table gets its own)
+     */
+    public FilteredList<LabelSettings> createView() {
+        FilteredList<LabelSettings> view = new FilteredList<>(rows);
+        applyFilter(view, "", false);
+        return view;
+    }
+
+    /**
+     * Update a view for new search text.
+     *
+     * @param view    View created by createView()
+     * @param query   Search text (matched anywhere in the label, any case)
+     * @param showAll True to include all labels, false for interesting ones only
+     */
+    public static void applyFilter(FilteredList<LabelSettings> view, String query, boolean showAll) {
+        String lower = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        view.setPredicate(row -> (showAll || row.isInteresting()) && row.matches(lower));
+    }
+
+    /**
+     * Find the row for a label (exact match first, then ignoring case).
+     *
+     * @param label The sound label
+     * @return Row, or null if the label is unknown
+     */
+    public LabelSettings find(String label) {
+        if (label == null) {
+            return null;
+        }
+        LabelSettings row = byLabel.get(label);
+        if (row == null) {
+            row = byLowerLabel.get(label.trim().toLowerCase(Locale.ROOT));
+        }
+        return row;
+    }
+
+    /**
+     * Get every row, in display order.
+     *
+     * @return All rows (do not modify)
+     */
+    public ObservableList<LabelSettings> getRows() {
+        return rows;
+    }
+
+    /**
+     * Re-read every row from AppConfig (after settings changed outside the UI).
+     */
+    public void reloadAll() {
+        for (LabelSettings row : rows) {
+            row.reload();
+        }
+    }
+}
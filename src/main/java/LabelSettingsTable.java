@@ -0,0 +1,159 @@
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.transformation.FilteredList;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ColorPicker;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.control.cell.CheckBoxTableCell;
+import javafx.scene.paint.Color;
+
+import java.util.function.Function;
+
+/**
+ * Builds the columns for TableViews over LabelSettings rows.
+ *
+ * Cells are created only for visible rows and reused while scrolling,
+ * so the cost of a table doesn't grow with the number of labels.
+ */
+public final class LabelSettingsTable {
+
+    // Private constructor - only static methods
+    private LabelSettingsTable() {
+    }
+
+    /**
+     * Set up a table and its search field.
+     *
+     * @param table       Table to fill
+     * @param searchField Incremental search field (can be null)
+     * @param showAllBox  Checkbox to list all labels, not just interesting ones (can be null)
+     */
+    public static void bind(TableView<LabelSettings> table, TextField searchField, CheckBox showAllBox) {
+        FilteredList<LabelSettings> view = LabelSettingsModel.getInstance().createView();
+
+        table.setEditable(true);
+        table.setItems(view);
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        table.setPlaceholder(new Label("No matching sounds"));
+
+        Runnable refilter = () -> LabelSettingsModel.applyFilter(
+                view,
+                searchField != null ? searchField.getText() : "",
+                showAllBox != null && showAllBox.isSelected());
+
+        if (searchField != null) {
+            searchField.setPromptText("Search sounds…");
+            searchField.textProperty().addListener((obs, old, val) -> refilter.run());
+        }
+        if (showAllBox != null) {
+            showAllBox.selectedProperty().addListener((obs, old, val) -> refilter.run());
+        }
+        refilter.run();
+    }
+
+    /**
+     * Column showing the sound name.
+     *
+     * @return New column
+     */
+    public static TableColumn<LabelSettings, String> labelColumn() {
+        TableColumn<LabelSettings, String> col = new TableColumn<>("Sound");
+        col.setCellValueFactory(cd -> new ReadOnlyStringWrapper(cd.getValue().getLabel()));
+        col.setEditable(false);
+        col.setPrefWidth(220);
+        return col;
+    }
+
+    /**
+     * Column with an editable checkbox bound to one boolean setting.
+     *
+     * @param title    Column header
+     * @param tooltip  Header tooltip text
+     * @param property Which property of the row to show
+     * @return New column
+     */
+    public static TableColumn<LabelSettings, Boolean> checkBoxColumn(
+            String title, String tooltip, Function<LabelSettings, BooleanProperty> property) {
+        TableColumn<LabelSettings, Boolean> col = new TableColumn<>(title);
+        col.setCellValueFactory(cd -> property.apply(cd.getValue()));
+        col.setCellFactory(CheckBoxTableCell.forTableColumn(col));
+        col.setEditable(true);
+        col.setPrefWidth(80);
+        col.setSortable(false);
+        if (tooltip != null) {
+            Label header = new Label(title);
+            header.setTooltip(new Tooltip(tooltip));
+            col.setGraphic(header);
+            col.setText(null);
+        }
+        return col;
+    }
+
+    /**
+     * Column with a color picker for the notification color.
+     * One ColorPicker per visible cell, reused as rows scroll by.
+     *
+     * @return New column
+     */
+    public static TableColumn<LabelSettings, String> colorColumn() {
+        TableColumn<LabelSettings, String> col = new TableColumn<>("Color");
+        col.setCellValueFactory(cd -> cd.getValue().colorProperty());
+        col.setEditable(true);
+        col.setSortable(false);
+        col.setPrefWidth(130);
+        col.setCellFactory(c -> new TableCell<>() {
+            private final ColorPicker picker = new ColorPicker();
+            private boolean updating;
+
+            {
+                picker.setPrefWidth(120);
+                picker.setOnAction(e -> {
+                    if (updating) {
+                        return;
+                    }
+                    LabelSettings row = getTableRow() != null ? getTableRow().getItem() : null;
+                    if (row != null && picker.getValue() != null) {
+                        row.colorProperty().set(toCssColor(picker.getValue()));
+                    }
+                });
+            }
+
+            @Override
+            protected void updateItem(String item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setGraphic(null);
+                    return;
+                }
+                updating = true;
+                try {
+                    picker.setValue(Color.web(item));
+                } catch (IllegalArgumentException e) {
+                    picker.setValue(Color.web("#8AB4FF"));
+                } finally {
+                    updating = false;
+                }
+                setGraphic(picker);
+            }
+        });
+        return col;
+    }
+
+    /**
+     * Convert a JavaFX color to a CSS hex string.
+     *
+     * @param c The color
+     * @return String like "#FF5252"
+     */
+    static String toCssColor(Color c) {
+        int r = (int) Math.round(c.getRed() * 255);
+        int g = (int) Math.round(c.getGreen() * 255);
+        int b = (int) Math.round(c.getBlue() * 255);
+        return String.format("#%02X%02X%02X", r, g, b);
+    }
+}
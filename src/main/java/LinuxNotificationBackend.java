@@ -0,0 +1,61 @@
+import java.util.List;
+
+/**
+ * Desktop notifications on Linux (freedesktop notification daemon).
+ *
+ * A single helper stays alive for the whole session and reads notifications
+ * from its stdin, one line each. The JVM never forks per notification; it
+ * only writes one line to the pipe.
+ *
+ * The preferred helper is a small python3 script that opens one session
+ * D-Bus connection and calls org.freedesktop.Notifications.Notify for every
+ * line, so no process is started per notification at all.
+ *
+ * If python3 or its GObject bindings (gi) are not installed, the helper
+ * falls back to a shell loop that runs notify-send for every line. In that
+ * case one short-lived notify-send process IS still started per notification,
+ * just by the helper instead of by the JVM.
+ */
+public final class LinuxNotificationBackend extends HelperProcessNotificationBackend {
+
+    // Reads "urgency TAB title TAB message" lines and sends each one over a
+    // single D-Bus connection. Exits 0 on EOF, non-zero if D-Bus is unusable.
+    private static final String DBUS_HELPER =
+            "import sys\n"
+                    + "from gi.repository import Gio, GLib\n"
+                    + "bus = Gio.bus_get_sync(Gio.BusType.SESSION, None)\n"
+                    + "for line in iter(sys.stdin.readline, ''):\n"
+                    + "    parts = line.rstrip('\\n').split('\\t', 2)\n"
+                    + "    if len(parts) < 3:\n"
+                    + "        continue\n"
+                    + "    urgency, title, message = parts\n"
+                    + "    hints = {'urgency': GLib.Variant('y', 2 if urgency == 'critical' else 1)}\n"
+                    + "    args = GLib.Variant('(susssasa{sv}i)',\n"
+                    + "        ('Taptic Desktop', 0, '', title, message, [], hints, -1))\n"
+                    + "    try:\n"
+                    + "        bus.call_sync('org.freedesktop.Notifications',\n"
+                    + "            '/org/freedesktop/Notifications',\n"
+                    + "            'org.freedesktop.Notifications', 'Notify', args,\n"
+                    + "            None, Gio.DBusCallFlags.NONE, 5000, None)\n"
+                    + "    except GLib.Error:\n"
+                    + "        pass\n";
+
+    // Runs the D-Bus helper ($1) if it can start; otherwise (or if it fails
+    // before reading anything) falls back to one notify-send per line
+    private static final String HELPER_SCRIPT =
+            "python3 -c \"$1\" 2>/dev/null && exit 0; "
+                    + "while IFS='\t' read -r urgency title message; do "
+                    + "notify-send -a 'Taptic Desktop' -u \"$urgency\" -- \"$title\" \"$message\" "
+                    + ">/dev/null 2>&1; "
+                    + "done";
+
+    @Override
+    public String getName() {
+        return "Linux desktop";
+    }
+
+    @Override
+    protected List<String> helperCommand() {
+        return List.of("/bin/sh", "-c", HELPER_SCRIPT, "taptic-notify", DBUS_HELPER);
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes notifications to a plain text log file.
+ * Useful on machines without a desktop, or to keep a record of every alert.
+ *
+ * The file is opened once and kept open in append mode.
+ */
+public final class LogNotificationBackend implements NotificationBackend {
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Path file;
+    private BufferedWriter writer;
+
+    /**
+     * Create a backend that appends to the given file.
+     *
+     * @param file Log file (created if missing)
+     */
+    public LogNotificationBackend(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public String getName() {
+        return "Log file (" + file + ")";
+    }
+
+    @Override
+    public void open() throws IOException {
+        close();
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void post(String title, String message, boolean emergency) throws IOException {
+        if (writer == null) {
+            open();
+        }
+        writer.write(LocalDateTime.now().format(TIME_FORMAT));
+        writer.write(emergency ? " EMERGENCY " : " normal ");
+        writer.write(title);
+        writer.write(" - ");
+        writer.write(message);
+        writer.newLine();
+        writer.flush();
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+            writer = null;
+        }
+    }
+}
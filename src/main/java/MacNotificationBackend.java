@@ -0,0 +1,41 @@
+import java.util.List;
+
+/**
+ * Notification Center notifications on macOS.
+ *
+ * One osascript (JavaScript for Automation) helper is started per session.
+ * It reads notifications from stdin and shows them in-process, so we no longer
+ * start a new osascript process for every notification.
+ */
+public final class MacNotificationBackend extends HelperProcessNotificationBackend {
+
+    // Reads "urgency TAB title TAB message" lines until stdin is closed
+    private static final String HELPER_SCRIPT = String.join("\n",
+            "ObjC.import('Foundation');",
+            "var app = Application.currentApplication();",
+            "app.includeStandardAdditions = true;",
+            "var input = $.NSFileHandle.fileHandleWithStandardInput;",
+            "var pending = '';",
+            "while (true) {",
+            "  var data = input.availableData;",
+            "  if (data.length === 0) { break; }",
+            "  pending += $.NSString.alloc.initWithDataEncoding(data, $.NSUTF8StringEncoding).js;",
+            "  var lines = pending.split('\\n');",
+            "  pending = lines.pop();",
+            "  for (var i = 0; i < lines.length; i++) {",
+            "    var parts = lines[i].split('\\t');",
+            "    if (parts.length < 3) { continue; }",
+            "    app.displayNotification(parts[2], { withTitle: parts[1] });",
+            "  }",
+            "}");
+
+    @Override
+    public String getName() {
+        return "macOS Notification Center";
+    }
+
+    @Override
+    protected List<String> helperCommand() {
+        return List.of("osascript", "-l", "JavaScript", "-e", HELPER_SCRIPT);
+    }
+}
@@ -14,12 +14,12 @@ import javafx.scene.layout.VBox;
 import javafx.util.Duration;
 
 import java.util.*;
+import java.time.Instant;
 import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
-public class MainViewController {
+public class MainViewController implements DetectionSink {
 
     @FXML
     private StackPane rootStack;
@@ -50,17 +50,15 @@ public class MainViewController {
     @FXML
     private ProgressBar levelBar;
 
+    // Monitored / Notify table (virtualized, shared LabelSettingsModel)
     @FXML
-    private VBox monitoredBox;
+    private TableView<LabelSettings> labelTable;
     @FXML
-    private VBox notifyBox;
-
-    @FXML
-    private TabPane optionsTabPane;
+    private TextField labelSearchField;
 
     // History sidebar
     @FXML
-    private ListView<String> historyList;
+    private ListView<HistoryEntry> historyList;
     @FXML
     private ToggleButton historyToggle;
     @FXML
@@ -78,25 +76,32 @@ public class MainViewController {
     @FXML
     private Label micWarningLabel;
 
-    private final Map<String, CheckBox> monitoredMap = new HashMap<>();
-    private final Map<String, CheckBox> notifyMap = new HashMap<>();
+    // Nearby computers tab (from the broadcast listener's PeerTable)
+    @FXML
+    private Label peerCountLabel;
+    @FXML
+    private ListView<String> peerList;
+    private Timeline peerRefresh;
+    private PeerTable peers;
+
     private final Map<ProgressBar, Timeline> progressAnimations = new HashMap<>();
 
     private Timeline flashTimeline;
 
-    private final ExecutorService speechExecutor = Executors.newFixedThreadPool(2, r -> {
-        Thread t = new Thread(r, "TTS");
-        t.setDaemon(true);
-        return t;
-    });
-    private final Object sayLock = new Object();
-    private Process activeSayProcess;
+    // Text-to-speech for caption replies (cached, one long-lived engine)
+    private SpeechService speechService;
 
     // STT service (Google Cloud Speech)
     private SttService sttService;
 
+    // Stores correct / wrong feedback from the history (null = no journal)
+    private volatile ThresholdCalibrator calibrator;
+
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
 
+    // How often the Nearby computers tab is refreshed
+    private static final Duration PEER_REFRESH = Duration.seconds(5);
+
     @FXML
     private void initialize() {
         if (statusLabel != null) {
@@ -156,23 +161,26 @@ public class MainViewController {
 
         if (historyList != null) {
             historyList.setCellFactory(list -> new ListCell<>() {
+                private final ContextMenu feedbackMenu = createFeedbackMenu(this);
+
                 @Override
-                protected void updateItem(String item, boolean empty) {
+                protected void updateItem(HistoryEntry item, boolean empty) {
                     super.updateItem(item, empty);
                     if (empty || item == null) {
                         setText(null);
                         setStyle("");
+                        setContextMenu(null);
                     } else {
-                        setText(item);
-                        boolean important = item.startsWith("★");
-                        boolean remote = item.contains("[REMOTE]");
-                        if (important) {
+                        setText(item.toString());
+                        if (item.isImportant()) {
                             setStyle("-fx-text-fill: #FFC46B; -fx-font-weight: bold;");
-                        } else if (remote) {
+                        } else if (item.isRemote()) {
                             setStyle("-fx-text-fill: #8AB4FF;");
                         } else {
                             setStyle("-fx-text-fill: #E5E9F0;");
                         }
+                        // Journaled notifications can be marked correct / wrong
+                        setContextMenu(item.canJudge() ? feedbackMenu : null);
                     }
                 }
             });
@@ -187,6 +195,9 @@ public class MainViewController {
         }
 
         sttService = new SttService(this);
+
+        speechService = new SpeechService(SpeechService.createDefaultEngine());
+        speechService.prewarm(SpeechService.COMMON_REPLIES);
     }
 
     // ---------------------------------------------------------------------
@@ -197,80 +208,24 @@ public class MainViewController {
         if (allLabels == null)
             return;
 
-        List<String> interesting = new ArrayList<>();
-        for (String label : allLabels) {
-            if (label != null && isInterestingLabel(label)) {
-                interesting.add(label);
-            }
-        }
-        interesting.sort(String.CASE_INSENSITIVE_ORDER);
+        // Builds the shared model once, before audio starts
+        LabelSettingsModel.getInstance();
 
         Platform.runLater(() -> {
-            monitoredBox.getChildren().clear();
-            notifyBox.getChildren().clear();
-
-            monitoredMap.clear();
-            notifyMap.clear();
-
-            for (String label : interesting) {
-                // Monitored
-                CheckBox m = new CheckBox(label);
-                m.setSelected(true);
-                m.setTooltip(new Tooltip("If checked, Taptic will pay attention to this sound."));
-                monitoredMap.put(label, m);
-                monitoredBox.getChildren().add(m);
-
-                // Notify
-                CheckBox n = new CheckBox(label);
-                n.setSelected(true);
-                n.setTooltip(new Tooltip("If checked, you will get a notification for this sound."));
-                notifyMap.put(label, n);
-                notifyBox.getChildren().add(n);
-            }
+            if (labelTable == null)
+                return;
+            labelTable.getColumns().setAll(List.of(
+                    LabelSettingsTable.labelColumn(),
+                    LabelSettingsTable.checkBoxColumn("Monitored",
+                            "If checked, Taptic will pay attention to this sound.",
+                            LabelSettings::monitoredProperty),
+                    LabelSettingsTable.checkBoxColumn("Notify",
+                            "If checked, you will get a notification for this sound.",
+                            LabelSettings::notifyProperty)));
+            LabelSettingsTable.bind(labelTable, labelSearchField, null);
         });
     }
 
-    private boolean isInterestingLabel(String label) {
-        String lower = label.toLowerCase(Locale.ROOT);
-
-        String[] bad = {
-                "silence", "quiet", "room tone", "noise", "static", "hum", "hiss",
-                "wind noise", "white noise", "pink noise",
-                "drip", "dripping", "raindrop"
-        };
-        for (String b : bad) {
-            if (lower.contains(b))
-                return false;
-        }
-
-        String[] good = {
-                "alarm", "fire", "smoke", "siren",
-                "door", "doorbell", "door bell", "door knock", "knocking",
-                "door open", "door close",
-                "window", "glass", "glass breaking",
-                "phone", "telephone", "ring", "ringtone",
-                "baby", "infant", "cry", "crying",
-                "child", "kid",
-                "dog", "bark", "cat", "meow",
-                "microwave", "oven", "timer", "beep",
-                "washing machine", "laundry", "dryer",
-                "dishwasher",
-                "tap", "faucet", "running water",
-                "car horn", "car alarm", "horn", "engine", "motorcycle",
-                "gunshot", "explosion",
-                "footstep", "walking", "knock",
-                "shout", "scream", "yell",
-                "applause",
-                "cough", "sneeze",
-                "thunder"
-        };
-        for (String g : good) {
-            if (lower.contains(g))
-                return true;
-        }
-        return false;
-    }
-
     // ---------------------------------------------------------------------
     // Status / sound level / top-3
     // ---------------------------------------------------------------------
@@ -361,13 +316,11 @@ public class MainViewController {
     }
 
     public boolean isMonitored(String label) {
-        CheckBox cb = monitoredMap.get(label);
-        return cb != null && cb.isSelected();
+        return AppConfig.isMonitored(label);
     }
 
     public boolean isNotifyEnabled(String label) {
-        CheckBox cb = notifyMap.get(label);
-        return cb != null && cb.isSelected();
+        return AppConfig.isNotifyEnabled(label);
     }
 
     // ---------------------------------------------------------------------
@@ -385,15 +338,16 @@ public class MainViewController {
                 statusLabel.setStyle("-fx-text-fill: " + color + ";");
             }
 
-            if (AppConfig.playSound) {
+            ConfigSnapshot cfg = AppConfig.current();
+            if (cfg.isPlaySound()) {
                 if (emergency) {
-                    NotificationSoundPlayer.playEmergency(AppConfig.emergencyNotificationSound);
+                    NotificationSoundPlayer.playEmergency(cfg.getEmergencyNotificationSound());
                 } else {
-                    NotificationSoundPlayer.play(AppConfig.notificationSound);
+                    NotificationSoundPlayer.play(cfg.getNotificationSound());
                 }
             }
 
-            showMacNotification("This Mac", label, score);
+            showDesktopNotification("This Mac", label, score, emergency);
             NotificationPopup.show(
                     TapticFxApp.getInstance() != null ? TapticFxApp.getInstance().getPrimaryStage() : null,
                     "Taptic Desktop",
@@ -401,7 +355,7 @@ public class MainViewController {
                     color,
                     TapticFxApp.getInstance() != null ? TapticFxApp.getInstance().getAppIcon() : null);
 
-            if (emergency && AppConfig.flashEmergency) {
+            if (emergency && cfg.isFlashEmergency()) {
                 flashEmergency();
             }
         });
@@ -409,13 +363,7 @@ public class MainViewController {
 
     /** Remote notification from another machine (via broadcast). */
     public void handleRemoteNotification(String label, String host, boolean emergency) {
-        if (!AppConfig.isBroadcastListenEnabled(label))
-            return;
-        if (!isMonitored(label))
-            return;
-        if (!isNotifyEnabled(label))
-            return;
-
+        // Interpreter.decide() already checked the listen, monitored and notify settings
         final double score = 1.0;
 
         Platform.runLater(() -> {
@@ -434,15 +382,16 @@ public class MainViewController {
             updateRow(top2Label, top2Bar, null, 0.0);
             updateRow(top3Label, top3Bar, null, 0.0);
 
-            if (AppConfig.playSound) {
+            ConfigSnapshot cfg = AppConfig.current();
+            if (cfg.isPlaySound()) {
                 if (emergency) {
-                    NotificationSoundPlayer.playEmergency(AppConfig.emergencyNotificationSound);
+                    NotificationSoundPlayer.playEmergency(cfg.getEmergencyNotificationSound());
                 } else {
-                    NotificationSoundPlayer.play(AppConfig.notificationSound);
+                    NotificationSoundPlayer.play(cfg.getNotificationSound());
                 }
             }
 
-            showMacNotification("Remote: " + source, label, score);
+            showDesktopNotification("Remote: " + source, label, score, emergency);
             NotificationPopup.show(
                     TapticFxApp.getInstance() != null ? TapticFxApp.getInstance().getPrimaryStage() : null,
                     "Remote: " + source,
@@ -450,28 +399,23 @@ public class MainViewController {
                     color,
                     TapticFxApp.getInstance() != null ? TapticFxApp.getInstance().getAppIcon() : null);
 
-            if (emergency && AppConfig.flashEmergency) {
+            if (emergency && cfg.isFlashEmergency()) {
                 flashEmergency();
             }
         });
     }
 
-    private void showMacNotification(String prefix, String label, double score) {
-        String emoji = AppConfig.notificationEmoji != null ? AppConfig.notificationEmoji : "";
+    private void showDesktopNotification(String prefix, String label, double score, boolean emergency) {
+        String emoji = AppConfig.current().getNotificationEmoji();
+        if (emoji == null) {
+            emoji = "";
+        }
         String title = emoji.isBlank() ? "Taptic Desktop" : ("Taptic Desktop " + emoji);
         int pct = (int) Math.round(score * 100.0);
         String message = prefix + ": " + label + " (" + pct + "%)";
 
-        try {
-            String script = "display notification \"" + escapeForAppleScript(message) +
-                    "\" with title \"" + escapeForAppleScript(title) + "\"";
-            new ProcessBuilder("osascript", "-e", script).start();
-        } catch (Exception ignored) {
-        }
-    }
-
-    private String escapeForAppleScript(String s) {
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+        // Delivered by a long-lived backend on its own thread
+        NotificationDispatcher.post(title, message, emergency);
     }
 
     private void flashEmergency() {
@@ -558,7 +502,8 @@ public class MainViewController {
             boolean emergency,
             boolean local,
             String host,
-            boolean important) {
+            boolean important,
+            long eventId) {
         if (historyList == null || label == null)
             return;
         int pct = (int) Math.round(score * 100.0);
@@ -574,7 +519,31 @@ public class MainViewController {
         String time = TIME_FMT.format(LocalTime.now());
         String entry = String.format("%s%s %s – %s [%s] (%d%%)",
                 prefix, time, src, label, tag, pct);
+        addHistoryEntry(new HistoryEntry(entry, eventId, important, !local, 0));
+    }
+
+    /**
+     * Fill the history with notifications from before the last restart.
+     *
+     * @param events Journal events, newest first
+     */
+    public void showJournalHistory(List<DetectionEvent> events) {
+        if (historyList == null || events == null)
+            return;
+        for (int i = events.size() - 1; i >= 0; i--) {
+            DetectionEvent e = events.get(i);
+            int pct = Math.round(e.getScore() * 100f);
+            String src = e.isRemote() ? "[REMOTE " + e.getHost() + "]" : "[THIS MAC]";
+            String tag = e.isEmergency() ? "EMERGENCY" : "normal";
+            String time = TIME_FMT.format(Instant.ofEpochMilli(e.getTimeMillis())
+                    .atZone(ZoneId.systemDefault()).toLocalTime());
+            String text = String.format("★ %s %s – %s [%s] (%d%%)",
+                    time, src, e.getLabel(), tag, pct);
+            addHistoryEntry(new HistoryEntry(text, e.getEventId(), true, e.isRemote(), e.getVerdict()));
+        }
+    }
 
+    private void addHistoryEntry(HistoryEntry entry) {
         Platform.runLater(() -> {
             historyList.getItems().add(0, entry); // newest on top
             if (historyList.getItems().size() > 400) {
@@ -583,6 +552,99 @@ public class MainViewController {
         });
     }
 
+    /**
+     * Send "correct" / "wrong" feedback to a calibrator, which stores it in
+     * the journal and adjusts per-sound thresholds.
+     *
+     * @param c Calibrator, or null to ignore feedback
+     */
+    public void setCalibrator(ThresholdCalibrator c) {
+        calibrator = c;
+    }
+
+    /**
+     * Build the right-click menu for one history cell.
+     */
+    private ContextMenu createFeedbackMenu(ListCell<HistoryEntry> cell) {
+        MenuItem correct = new MenuItem("✓ Correct – this was the sound");
+        correct.setOnAction(e -> setVerdict(cell.getItem(), DetectionEvent.FLAG_CORRECT));
+        MenuItem wrong = new MenuItem("✗ Wrong – false alert");
+        wrong.setOnAction(e -> setVerdict(cell.getItem(), DetectionEvent.FLAG_WRONG));
+        MenuItem clear = new MenuItem("Clear feedback");
+        clear.setOnAction(e -> setVerdict(cell.getItem(), 0));
+        return new ContextMenu(correct, wrong, clear);
+    }
+
+    private void setVerdict(HistoryEntry entry, int verdict) {
+        if (entry == null || !entry.canJudge()) {
+            return;
+        }
+        entry.setVerdict(verdict);
+        historyList.refresh();
+        ThresholdCalibrator c = calibrator;
+        if (c != null) {
+            c.markVerdict(entry.getEventId(), verdict);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Nearby computers: other Taptic computers heard on the network
+    // ---------------------------------------------------------------------
+
+    /**
+     * Show the computers in a peer table, refreshed every few seconds.
+     * Call on the FX thread.
+     *
+     * @param table Peers heard by the broadcast listener, or null to stop
+     */
+    public void setPeers(PeerTable table) {
+        peers = table;
+        if (peerRefresh != null) {
+            peerRefresh.stop();
+            peerRefresh = null;
+        }
+        refreshPeers();
+        if (table != null) {
+            peerRefresh = new Timeline(new KeyFrame(PEER_REFRESH, e -> refreshPeers()));
+            peerRefresh.setCycleCount(Timeline.INDEFINITE);
+            peerRefresh.play();
+        }
+    }
+
+    /**
+     * Fill the peer list from a fresh snapshot (most recently heard first).
+     */
+    private void refreshPeers() {
+        PeerTable table = peers;
+        List<PeerTable.Peer> snapshot = table != null ? table.snapshot() : List.of();
+        if (peerCountLabel != null) {
+            if (table == null) {
+                peerCountLabel.setText("Network listening is off.");
+            } else if (snapshot.isEmpty()) {
+                peerCountLabel.setText("No other computers heard yet.");
+            } else {
+                peerCountLabel.setText(snapshot.size() == 1 ? "1 computer nearby"
+                        : snapshot.size() + " computers nearby");
+            }
+        }
+        if (peerList == null)
+            return;
+        long now = System.nanoTime();
+        List<String> rows = new ArrayList<>(snapshot.size());
+        for (PeerTable.Peer p : snapshot) {
+            String name = p.getName() == null || p.getName().isBlank() ? "(no name)" : p.getName();
+            StringBuilder sb = new StringBuilder(name);
+            sb.append("  ").append(p.getAddress());
+            sb.append("  • heard ").append(p.getSilentMillis(now) / 1000).append(" s ago");
+            sb.append((p.getCapabilities() & WireEvent.CAP_MICROPHONE) != 0 ? "  • mic" : "  • no mic");
+            if (p.getLoad() >= 0) {
+                sb.append("  • load ").append(Math.round(p.getLoad() * 100)).append('%');
+            }
+            rows.add(sb.toString());
+        }
+        peerList.getItems().setAll(rows);
+    }
+
     // ---------------------------------------------------------------------
     // Caption tab: text input + TTS for your replies
     // ---------------------------------------------------------------------
@@ -603,19 +665,18 @@ public class MainViewController {
     }
 
     private void speakText(String text) {
-        speechExecutor.submit(() -> {
-            synchronized (sayLock) {
-                if (activeSayProcess != null && activeSayProcess.isAlive()) {
-                    activeSayProcess.destroy();
-                }
-                try {
-                    activeSayProcess = new ProcessBuilder("say", "-r", "240", text).start();
-                } catch (Exception ignored) {
-                    // Ignore errors from the 'say' command.
-                    activeSayProcess = null;
-                }
-            }
-        });
+        if (speechService != null) {
+            speechService.speak(text);
+        }
+    }
+
+    /** Release background speech resources. Called when the app exits. */
+    public void shutdown() {
+        setPeers(null);
+        if (speechService != null) {
+            System.out.println("[TTS] " + speechService.getStatsSummary());
+            speechService.close();
+        }
     }
 
     @FXML
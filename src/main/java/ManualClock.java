@@ -0,0 +1,58 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock that only moves when told to.
+ *
+ * Used when replaying a recorded session: the replay sets the clock to the
+ * time each frame was recorded, so cooldowns behave exactly as they did live
+ * even though frames are processed much faster than real time.
+ */
+public final class ManualClock extends Clock {
+
+    private final ZoneId zone;
+    private volatile long millis;
+
+    /**
+     * @param startMillis Initial time (epoch milliseconds)
+     */
+    public ManualClock(long startMillis) {
+        this(startMillis, ZoneOffset.UTC);
+    }
+
+    private ManualClock(long startMillis, ZoneId zone) {
+        this.millis = startMillis;
+        this.zone = zone;
+    }
+
+    /**
+     * Move the clock (backwards is allowed).
+     *
+     * @param newMillis New time (epoch milliseconds)
+     */
+    public void setMillis(long newMillis) {
+        millis = newMillis;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId newZone) {
+        return new ManualClock(millis, newZone);
+    }
+}
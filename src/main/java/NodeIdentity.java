@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+
+/**
+ * A random 64-bit id for this computer, kept in the data folder so it stays
+ * the same across restarts.
+ *
+ * Every broadcast message carries it. A listener recognizes its own messages
+ * with one long comparison, instead of looking up and searching for its
+ * hostname in every packet (which also dropped peers whose name was part of
+ * ours). 0 is never used, so it can mean "no id".
+ *
+ * Computers set up from a cloned disk image share the file and so the id;
+ * BroadcastListener logs a warning when it hears a heartbeat with our id
+ * from another address.
+ */
+public final class NodeIdentity {
+
+    public static final String FILE_NAME = "node-id";
+
+    // Private constructor - only static methods
+    private NodeIdentity() {
+    }
+
+    /**
+     * Read the id from a file, or create and save a new one.
+     * If the file can't be written, a new id is used for this run only.
+     *
+     * @param file File holding the id as 16 hex digits
+     * @return Node id (never 0)
+     */
+    public static long load(Path file) {
+        try {
+            if (Files.exists(file)) {
+                String text = Files.readString(file, StandardCharsets.UTF_8).trim();
+                long id = Long.parseUnsignedLong(text, 16);
+                if (id != 0) {
+                    return id;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("[Node] Unreadable id, making a new one: " + e.getMessage());
+        }
+
+        long id = newId();
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, toHex(id) + "\n", StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            System.out.println("[Node] New node id " + toHex(id));
+        } catch (IOException e) {
+            System.err.println("[Node] Could not save node id: " + e.getMessage());
+        }
+        return id;
+    }
+
+    /**
+     * @return A random id (never 0)
+     */
+    public static long newId() {
+        SecureRandom random = new SecureRandom();
+        long id;
+        do {
+            id = random.nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    /**
+     * @param id Node id
+     * @return The id as 16 lowercase hex digits
+     */
+    public static String toHex(long id) {
+        String hex = Long.toHexString(id);
+        return "0".repeat(16 - hex.length()) + hex;
+    }
+}
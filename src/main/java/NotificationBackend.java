@@ -0,0 +1,46 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A destination for operating-system level notifications.
+ *
+ * Backends are created once and kept alive for the whole session, so that
+ * posting a notification only writes to an already-open channel (a helper
+ * process pipe, a log file, memory...) instead of starting a new process.
+ *
+ * Backends are only ever called from the NotificationDispatcher thread,
+ * so implementations do not need to be thread-safe.
+ */
+public interface NotificationBackend extends Closeable {
+
+    /**
+     * Get a short human-readable name for this backend.
+     *
+     * @return Backend name, e.g. "Linux desktop"
+     */
+    String getName();
+
+    /**
+     * Open the underlying channel (start the helper process, open the file...).
+     * Called once before the first post, and again after a failed post.
+     *
+     * @throws IOException If the backend can't be started
+     */
+    void open() throws IOException;
+
+    /**
+     * Post one notification.
+     *
+     * @param title     Notification title
+     * @param message   Notification body text
+     * @param emergency True for emergency sounds (backends may use a higher urgency)
+     * @throws IOException If writing to the channel failed
+     */
+    void post(String title, String message, boolean emergency) throws IOException;
+
+    /**
+     * Release the underlying channel. Safe to call more than once.
+     */
+    @Override
+    void close();
+}
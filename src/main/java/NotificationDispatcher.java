@@ -0,0 +1,328 @@
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers OS-level notifications through a pluggable NotificationBackend.
+ *
+ * Callers (usually the FX thread) only put the notification on a small
+ * queue. A single background thread owns the backend and writes to it,
+ * so a slow or broken backend never blocks the UI.
+ *
+ * Dispatch latency (time from post() until the backend accepted the
+ * notification) is measured for every notification.
+ *
+ * close() lets the queued notifications go out, stops the thread and
+ * closes the backend (ending its helper process). Later posts are ignored.
+ */
+public final class NotificationDispatcher {
+
+    // Backend choices shown in settings
+    public static final String BACKEND_AUTO = "Auto";
+    public static final String BACKEND_DESKTOP = "Desktop";
+    public static final String BACKEND_LOG = "Log file";
+    public static final String BACKEND_NONE = "None";
+
+    private static final int QUEUE_CAPACITY = 64;
+
+    private static final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    // Backend currently in use, only touched by the dispatch thread
+    private static NotificationBackend backend;
+    private static String backendChoice;
+
+    // Backend forced by code (tests, benchmarks). Overrides the user setting.
+    private static volatile NotificationBackend overrideBackend;
+
+    // Latency statistics
+    private static long dispatchedCount;
+    private static long droppedCount;
+    private static long failedCount;
+    private static long totalLatencyNanos;
+    private static long maxLatencyNanos;
+
+    private static Thread dispatchThread;
+    private static boolean closed; // guarded by the class lock
+
+    // Marker that tells the dispatch thread to stop
+    private static final Pending STOP = new Pending("", "", false, 0);
+
+    // Private constructor - only static methods
+    private NotificationDispatcher() {
+    }
+
+    /**
+     * Queue a notification for delivery. Never blocks.
+     * If the queue is full the notification is dropped and counted.
+     *
+     * @param title     Notification title
+     * @param message   Notification body text
+     * @param emergency True for emergency sounds
+     */
+    public static void post(String title, String message, boolean emergency) {
+        if (title == null || message == null || !ensureStarted()) {
+            return;
+        }
+
+        Pending p = new Pending(title, message, emergency, System.nanoTime());
+        if (!queue.offer(p)) {
+            synchronized (NotificationDispatcher.class) {
+                droppedCount++;
+            }
+        }
+    }
+
+    /**
+     * Force a specific backend (for example a RecordingNotificationBackend in tests).
+     * Pass null to go back to the backend chosen in settings.
+     *
+     * @param b Backend to use, or null
+     */
+    public static void setBackendOverride(NotificationBackend b) {
+        overrideBackend = b;
+    }
+
+    /**
+     * Get the number of notifications delivered so far.
+     *
+     * @return Delivered notification count
+     */
+    public static synchronized long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    /**
+     * Get the number of notifications dropped because the queue was full.
+     *
+     * @return Dropped notification count
+     */
+    public static synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Get the average time from post() until the backend accepted the notification.
+     *
+     * @return Average dispatch latency in microseconds (0 if nothing dispatched yet)
+     */
+    public static synchronized double getAverageLatencyMicros() {
+        if (dispatchedCount == 0) {
+            return 0.0;
+        }
+        return totalLatencyNanos / 1000.0 / dispatchedCount;
+    }
+
+    /**
+     * Get the worst dispatch latency seen so far.
+     *
+     * @return Maximum dispatch latency in microseconds
+     */
+    public static synchronized double getMaxLatencyMicros() {
+        return maxLatencyNanos / 1000.0;
+    }
+
+    /**
+     * Get a one-line summary of the dispatch statistics for logs.
+     *
+     * @return Statistics summary
+     */
+    public static synchronized String getStatsSummary() {
+        return String.format(Locale.ROOT,
+                "notifications: %d sent, %d dropped, %d failed, avg %.1f us, max %.1f us",
+                dispatchedCount, droppedCount, failedCount,
+                getAverageLatencyMicros(), getMaxLatencyMicros());
+    }
+
+    /**
+     * Start the dispatch thread the first time it's needed.
+     *
+     * @return False after close()
+     */
+    private static synchronized boolean ensureStarted() {
+        if (closed) {
+            return false;
+        }
+        if (dispatchThread != null) {
+            return true;
+        }
+        dispatchThread = new Thread(NotificationDispatcher::dispatchLoop, "NotificationDispatch");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+        return true;
+    }
+
+    /**
+     * Deliver what is queued, stop the dispatch thread and close the
+     * backend. Safe to call more than once.
+     */
+    public static void close() {
+        Thread t;
+        synchronized (NotificationDispatcher.class) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            t = dispatchThread;
+        }
+        if (t == null) {
+            return;
+        }
+        try {
+            if (!queue.offer(STOP, 1, TimeUnit.SECONDS)) {
+                t.interrupt(); // Backend is stuck; give up on the rest of the queue
+            }
+            t.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Main loop of the dispatch thread.
+     */
+    private static void dispatchLoop() {
+        while (true) {
+            Pending p;
+            try {
+                p = queue.poll(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (p == null) {
+                continue;
+            }
+            if (p == STOP) {
+                break;
+            }
+
+            NotificationBackend b = currentBackend();
+            if (b == null) {
+                continue; // Notifications disabled
+            }
+
+            boolean ok = deliver(b, p);
+            long latency = System.nanoTime() - p.queuedAtNanos;
+
+            synchronized (NotificationDispatcher.class) {
+                if (ok) {
+                    dispatchedCount++;
+                    totalLatencyNanos += latency;
+                    if (latency > maxLatencyNanos) {
+                        maxLatencyNanos = latency;
+                    }
+                } else {
+                    failedCount++;
+                }
+            }
+        }
+
+        if (backend != null) {
+            backend.close();
+            backend = null;
+        }
+    }
+
+    /**
+     * Post to the backend, reopening it once if the first attempt fails.
+     *
+     * @param b Backend
+     * @param p Notification to deliver
+     * @return True if delivered
+     */
+    private static boolean deliver(NotificationBackend b, Pending p) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                if (attempt > 0) {
+                    b.open();
+                }
+                b.post(p.title, p.message, p.emergency);
+                return true;
+            } catch (Exception e) {
+                if (attempt > 0) {
+                    System.err.println("[Notify] " + b.getName() + " failed: " + e.getMessage());
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the backend to use, switching it if the user changed the setting.
+     *
+     * @return Backend, or null if notifications are disabled
+     */
+    private static NotificationBackend currentBackend() {
+        NotificationBackend forced = overrideBackend;
+        if (forced != null) {
+            return forced;
+        }
+
+        String choice = AppConfig.current().getNotificationBackend();
+        if (choice.equals(backendChoice)) {
+            return backend; // Unchanged (null when the choice is "None")
+        }
+
+        if (backend != null) {
+            backend.close();
+        }
+        backend = createBackend(choice);
+        backendChoice = choice;
+
+        if (backend != null) {
+            try {
+                backend.open();
+            } catch (Exception e) {
+                System.err.println("[Notify] Could not start " + backend.getName() + ": " + e.getMessage());
+            }
+        }
+        return backend;
+    }
+
+    /**
+     * Create the backend for a settings choice.
+     *
+     * @param choice One of the BACKEND_* names
+     * @return New backend, or null for "None"
+     */
+    static NotificationBackend createBackend(String choice) {
+        if (BACKEND_NONE.equals(choice)) {
+            return null;
+        }
+        if (BACKEND_LOG.equals(choice)) {
+            return new LogNotificationBackend(AppConfig.getDataDirectory().resolve("notifications.log"));
+        }
+
+        // "Desktop" and "Auto" pick the native backend for this OS
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        if (os.contains("mac")) {
+            return new MacNotificationBackend();
+        }
+        if (os.contains("linux") || os.contains("bsd")) {
+            return new LinuxNotificationBackend();
+        }
+
+        // No native backend: "Auto" falls back to the log file
+        if (BACKEND_AUTO.equals(choice)) {
+            return new LogNotificationBackend(AppConfig.getDataDirectory().resolve("notifications.log"));
+        }
+        return null;
+    }
+
+    /**
+     * A notification waiting in the queue.
+     */
+    private static final class Pending {
+        final String title;
+        final String message;
+        final boolean emergency;
+        final long queuedAtNanos;
+
+        Pending(String title, String message, boolean emergency, long queuedAtNanos) {
+            this.title = title;
+            this.message = message;
+            this.emergency = emergency;
+            this.queuedAtNanos = queuedAtNanos;
+        }
+    }
+}
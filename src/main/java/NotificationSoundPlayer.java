@@ -1,20 +1,63 @@
-import java.awt.Toolkit;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Plays notification sounds using the system beep.
+ * Plays notification sounds.
  * Supports different sound patterns for normal and emergency notifications.
- * 
- * Sounds play in a background thread so they don't block the UI.
+ *
+ * Every pattern is synthesized into 16-bit PCM once, when the class loads.
+ * One background "mixer" thread owns a single long-lived SourceDataLine and
+ * writes the PCM to it in small chunks. Between chunks it checks for a new
+ * request, so an emergency sound interrupts a normal chime right away.
+ *
+ * Asking for a sound only stores an int, so nothing is allocated per alert
+ * and overlapping alerts never play on top of each other.
  */
 public final class NotificationSoundPlayer {
 
+    private static final float SAMPLE_RATE = 22050f;
+
+    // ~23 ms of audio per write: this is how quickly a new sound can preempt
+    private static final int CHUNK_BYTES = 1024;
+
+    // Pattern numbers (index into PATTERNS)
+    private static final int SYSTEM_BEEP = 0;
+    private static final int DOUBLE_BEEP = 1;
+    private static final int ALARM_PULSE = 2;
+    private static final int RAPID_BEEPS = 3;
+
+    private static final byte[][] PATTERNS = {
+            synthesizeSystemBeep(),
+            synthesizeDoubleBeep(),
+            synthesizeAlarmPulse(),
+            synthesizeRapidBeeps()
+    };
+
+    // Pending request: (pattern << 1) | emergencyBit, or NO_REQUEST
+    private static final int NO_REQUEST = -1;
+    private static final AtomicInteger request = new AtomicInteger(NO_REQUEST);
+
+    private static Thread mixerThread;
+
     // Private constructor - only static methods
     private NotificationSoundPlayer() {
     }
 
+    /**
+     * Synthesize the patterns and open the output line ahead of time,
+     * so the first notification plays without delay. Safe to call more than once.
+     */
+    public static void prepare() {
+        ensureMixerStarted();
+    }
+
     /**
      * Play a normal notification sound.
-     * 
+     *
      * @param name Sound name ("System beep", "Double beep", etc.)
      */
     public static void play(String name) {
@@ -23,7 +66,7 @@ public final class NotificationSoundPlayer {
 
     /**
      * Play an emergency notification sound (louder/more urgent).
-     * 
+     *
      * @param name Sound name ("Alarm pulse", "Rapid beeps", etc.)
      */
     public static void playEmergency(String name) {
@@ -31,8 +74,8 @@ public final class NotificationSoundPlayer {
     }
 
     /**
-     * Internal method to play a sound in a background thread.
-     * 
+     * Hand a sound to the mixer thread.
+     *
      * @param name      Sound name
      * @param emergency True for emergency sounds, false for normal
      */
@@ -41,74 +84,223 @@ public final class NotificationSoundPlayer {
             return;
         }
 
-        String trimmed = name.trim();
-        if (trimmed.equalsIgnoreCase("None")) {
+        int pattern = patternFor(name.trim(), emergency);
+        if (pattern < 0) {
             return; // User disabled sound
         }
 
-        // Play in background thread so it doesn't block the UI
-        String threadName;
-        if (emergency) {
-            threadName = "EmergencySound";
-        } else {
-            threadName = "NotificationSound";
+        int encoded = (pattern << 1) | (emergency ? 1 : 0);
+        if (!emergency) {
+            // A normal chime never replaces a waiting emergency sound
+            int pending = request.get();
+            if (pending != NO_REQUEST && isEmergencyRequest(pending)) {
+                return;
+            }
         }
+        request.set(encoded);
 
-        Thread soundThread = new Thread(() -> {
-            try {
-                if (emergency) {
-                    playEmergencyPattern(trimmed);
-                } else {
-                    playStandardPattern(trimmed);
+        ensureMixerStarted();
+        LockSupport.unpark(mixerThread);
+    }
+
+    /**
+     * Map a sound name to a pattern number.
+     *
+     * @param name      Sound name (trimmed)
+     * @param emergency True if this is an emergency sound
+     * @return Pattern number, or -1 for "None"
+     */
+    private static int patternFor(String name, boolean emergency) {
+        if (name.equalsIgnoreCase("None")) {
+            return -1;
+        }
+        if (emergency && name.equalsIgnoreCase("Alarm pulse")) {
+            return ALARM_PULSE;
+        }
+        if (emergency && name.equalsIgnoreCase("Rapid beeps")) {
+            return RAPID_BEEPS;
+        }
+        if (name.equalsIgnoreCase("Double beep")) {
+            return DOUBLE_BEEP;
+        }
+        return SYSTEM_BEEP;
+    }
+
+    private static boolean isEmergencyRequest(int encoded) {
+        return (encoded & 1) != 0;
+    }
+
+    /**
+     * Start the mixer thread the first time a sound is played.
+     */
+    private static synchronized void ensureMixerStarted() {
+        if (mixerThread != null) {
+            return;
+        }
+        mixerThread = new Thread(NotificationSoundPlayer::mixerLoop, "SoundMixer");
+        mixerThread.setDaemon(true);
+        mixerThread.start();
+    }
+
+    /**
+     * Main loop of the mixer thread.
+     * Waits for a request, then streams the pattern to the output line
+     * chunk by chunk, switching patterns if a higher-priority request arrives.
+     */
+    private static void mixerLoop() {
+        SourceDataLine line = openLine();
+
+        while (true) {
+            int current = request.getAndSet(NO_REQUEST);
+            if (current == NO_REQUEST) {
+                LockSupport.park();
+                continue;
+            }
+            if (line == null) {
+                continue; // No audio device: drop the request
+            }
+
+            byte[] pcm = PATTERNS[current >> 1];
+            boolean currentEmergency = isEmergencyRequest(current);
+            int off = 0;
+
+            while (off < pcm.length) {
+                int pending = request.get();
+                if (pending != NO_REQUEST) {
+                    if (isEmergencyRequest(pending) || !currentEmergency) {
+                        // Preempt: drop what is still buffered and start the new pattern
+                        line.flush();
+                        break;
+                    }
+                    // Normal chime during an emergency: ignore it
+                    request.compareAndSet(pending, NO_REQUEST);
                 }
-            } catch (Throwable ignored) {
-                // Ignore sound playback errors
+
+                int n = Math.min(CHUNK_BYTES, pcm.length - off);
+                line.write(pcm, off, n);
+                off += n;
             }
-        }, threadName);
+        }
+    }
 
-        soundThread.setDaemon(true);
-        soundThread.start();
+    /**
+     * Open the shared output line once.
+     *
+     * @return Started line, or null if no audio output is available
+     */
+    private static SourceDataLine openLine() {
+        AudioFormat fmt = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        try {
+            DataLine.Info info = new DataLine.Info(SourceDataLine.class, fmt);
+            SourceDataLine line = (SourceDataLine) AudioSystem.getLine(info);
+            // Small buffer keeps preemption latency low
+            line.open(fmt, CHUNK_BYTES * 4);
+            line.start();
+            return line;
+        } catch (Exception e) {
+            System.err.println("[Sound] No audio output available: " + e.getMessage());
+            return null;
+        }
     }
 
+    // ============ PATTERN SYNTHESIS ============
+
     /**
-     * Play a standard notification sound pattern.
-     * 
-     * @param name Sound name
-     * @throws InterruptedException If interrupted while sleeping
+     * A single short beep, like the system beep.
      */
-    private static void playStandardPattern(String name) throws InterruptedException {
-        Toolkit.getDefaultToolkit().beep();
+    private static byte[] synthesizeSystemBeep() {
+        PcmBuilder b = new PcmBuilder();
+        b.tone(880, 150, 0.6);
+        return b.toBytes();
+    }
 
-        if (name.equalsIgnoreCase("Double beep")) {
-            Thread.sleep(130);
-            Toolkit.getDefaultToolkit().beep();
+    /**
+     * Two short beeps.
+     */
+    private static byte[] synthesizeDoubleBeep() {
+        PcmBuilder b = new PcmBuilder();
+        b.tone(880, 100, 0.6);
+        b.silence(60);
+        b.tone(880, 100, 0.6);
+        return b.toBytes();
+    }
+
+    /**
+     * Rapid double-beep pattern (6 times).
+     */
+    private static byte[] synthesizeAlarmPulse() {
+        PcmBuilder b = new PcmBuilder();
+        for (int i = 0; i < 6; i++) {
+            b.tone(1000, 120, 0.9);
+            b.silence(60);
+            b.tone(1000, 120, 0.9);
+            b.silence(100);
         }
+        return b.toBytes();
     }
 
     /**
-     * Play an emergency sound pattern (more urgent).
-     * 
-     * @param name Sound name
-     * @throws InterruptedException If interrupted while sleeping
+     * Fast repeated beeps (12 times).
      */
-    private static void playEmergencyPattern(String name) throws InterruptedException {
-        if (name.equalsIgnoreCase("Alarm pulse")) {
-            // Rapid double-beep pattern (6 times)
-            for (int i = 0; i < 6; i++) {
-                Toolkit.getDefaultToolkit().beep();
-                Thread.sleep(180);
-                Toolkit.getDefaultToolkit().beep();
-                Thread.sleep(220);
+    private static byte[] synthesizeRapidBeeps() {
+        PcmBuilder b = new PcmBuilder();
+        for (int i = 0; i < 12; i++) {
+            b.tone(1200, 70, 0.9);
+            b.silence(50);
+        }
+        return b.toBytes();
+    }
+
+    /**
+     * Small helper that appends tones and silence as 16-bit little-endian PCM.
+     * Only used while building the patterns at startup.
+     */
+    private static final class PcmBuilder {
+        private static final int FADE_MS = 5; // avoids clicks at tone edges
+
+        private byte[] data = new byte[8192];
+        private int size;
+
+        void tone(double freqHz, int millis, double volume) {
+            int samples = samplesFor(millis);
+            int fade = samplesFor(FADE_MS);
+            for (int i = 0; i < samples; i++) {
+                double env = 1.0;
+                if (i < fade) {
+                    env = i / (double) fade;
+                } else if (i > samples - fade) {
+                    env = (samples - i) / (double) fade;
+                }
+                double v = Math.sin(2 * Math.PI * freqHz * i / SAMPLE_RATE) * volume * env;
+                putSample((short) Math.round(v * Short.MAX_VALUE));
             }
-        } else if (name.equalsIgnoreCase("Rapid beeps")) {
-            // Fast repeated beeps (12 times)
-            for (int i = 0; i < 12; i++) {
-                Toolkit.getDefaultToolkit().beep();
-                Thread.sleep(120);
+        }
+
+        void silence(int millis) {
+            int samples = samplesFor(millis);
+            for (int i = 0; i < samples; i++) {
+                putSample((short) 0);
+            }
+        }
+
+        byte[] toBytes() {
+            byte[] out = new byte[size];
+            System.arraycopy(data, 0, out, 0, size);
+            return out;
+        }
+
+        private void putSample(short s) {
+            if (size + 2 > data.length) {
+                byte[] bigger = new byte[data.length * 2];
+                System.arraycopy(data, 0, bigger, 0, size);
+                data = bigger;
             }
-        } else {
-            // Unknown emergency sound, just play standard
-            playStandardPattern(name);
+            data[size++] = (byte) s;
+            data[size++] = (byte) (s >> 8);
+        }
+
+        private static int samplesFor(int millis) {
+            return Math.round(SAMPLE_RATE * millis / 1000f);
         }
     }
 }
@@ -0,0 +1,88 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size ring of the most recent 16-bit PCM audio, kept off the Java heap.
+ *
+ * The capture thread keeps writing; older audio is overwritten. Positions are
+ * counted in bytes since the ring was created, so a reader can ask for any
+ * range that hasn't been overwritten yet.
+ *
+ * Not thread-safe: write and read from the same thread (the mic thread).
+ */
+public final class PcmRing {
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private long written;
+
+    /**
+     * @param capacityBytes Size of the ring (rounded down to whole samples)
+     */
+    public PcmRing(int capacityBytes) {
+        this.capacity = capacityBytes & ~1;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Append audio, overwriting the oldest bytes when full.
+     *
+     * @param pcm 16-bit little-endian samples
+     * @param off Start offset in pcm
+     * @param len Number of bytes
+     */
+    public void write(byte[] pcm, int off, int len) {
+        if (len > capacity) {
+            // Only the newest part fits
+            off += len - capacity;
+            written += len - capacity;
+            len = capacity;
+        }
+        int pos = (int) (written % capacity);
+        int first = Math.min(len, capacity - pos);
+        buffer.put(pos, pcm, off, first);
+        if (first < len) {
+            buffer.put(0, pcm, off + first, len - first);
+        }
+        written += len;
+    }
+
+    /**
+     * Copy a range of past audio.
+     *
+     * @param from Position of the first byte (as returned by getPosition())
+     * @param dst  Destination array
+     * @param off  Start offset in dst
+     * @param len  Number of bytes
+     * @return False if part of the range was already overwritten or not written yet
+     */
+    public boolean read(long from, byte[] dst, int off, int len) {
+        if (from < getOldestPosition() || from + len > written) {
+            return false;
+        }
+        int pos = (int) (from % capacity);
+        int first = Math.min(len, capacity - pos);
+        buffer.get(pos, dst, off, first);
+        if (first < len) {
+            buffer.get(0, dst, off + first, len - first);
+        }
+        return true;
+    }
+
+    /**
+     * @return Total bytes written so far (position of the next byte)
+     */
+    public long getPosition() {
+        return written;
+    }
+
+    /**
+     * @return Position of the oldest byte still in the ring
+     */
+    public long getOldestPosition() {
+        return Math.max(0, written - capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,305 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The other Taptic Desktop computers we have heard from, built from their
+ * heartbeats (see WireEvent), so we can see which rooms are covered and how
+ * fresh each one is.
+ *
+ * A computer is removed when it has been silent for 3 of its own heartbeat
+ * intervals. Expiry runs on System.nanoTime(), so a wall clock change (NTP
+ * step, manual change, suspend) can't expire everyone at once or keep dead
+ * peers forever; the wall clock is only kept for display (first/last seen).
+ * Expiry uses a timer wheel: one slot per second, each holding a
+ * linked list of the peers due to expire in that second. A heartbeat moves
+ * its peer to a later slot, and each tick only looks at one slot, so the
+ * cost doesn't grow with the number of peers.
+ *
+ * Updated by the broadcast processing thread; the list can be read from any
+ * thread with snapshot().
+ */
+public final class PeerTable {
+
+    // Length of one wheel slot
+    public static final long TICK_MS = 1000;
+    // Slots in the wheel (the longest expiry is one lap)
+    private static final int WHEEL_SLOTS = 128;
+    // Silent for this many heartbeat intervals = gone
+    private static final int MISSED_HEARTBEATS = 3;
+    // Most peers kept (heartbeats from more are ignored)
+    public static final int MAX_PEERS = 1024;
+
+    private final Map<Long, Peer> peers = new HashMap<>();
+    private final Peer[] wheel = new Peer[WHEEL_SLOTS];
+    private long currentTick = -1;
+    // Wheel time is nanoTime() since this moment, in ms (never negative)
+    private final long originNanos = System.nanoTime();
+    private int microphoneCount; // peers announcing CAP_MICROPHONE
+
+    /**
+     * Record a heartbeat.
+     *
+     * @param heartbeat  Decoded heartbeat
+     * @param name       Name from the heartbeat
+     * @param address    Sender's IP address
+     * @param nowNanos   System.nanoTime()
+     */
+    public synchronized void heard(WireEvent heartbeat, String name, String address, long nowNanos) {
+        long nowMillis = wheelMillis(nowNanos);
+        long wallMillis = System.currentTimeMillis();
+        Peer p = peers.get(heartbeat.nodeId);
+        if (p == null) {
+            if (peers.size() >= MAX_PEERS) {
+                return;
+            }
+            p = new Peer(heartbeat.nodeId, wallMillis);
+            peers.put(p.nodeId, p);
+            System.out.println("[Peers] Joined: " + name + " (" + address + ")");
+        }
+        p.name = name;
+        p.address = address;
+        p.protocolVersion = heartbeat.protocolVersion;
+        microphoneCount += hasMicrophone(heartbeat.capabilities) - hasMicrophone(p.capabilities);
+        p.capabilities = heartbeat.capabilities;
+        p.load = heartbeat.score;
+        p.intervalMillis = heartbeat.intervalMillis;
+        p.lastSeenMillis = wallMillis;
+        p.lastHeardNanos = nowNanos;
+
+        // Move it to the slot of its new deadline (at most one lap ahead)
+        if (currentTick < 0) {
+            currentTick = nowMillis / TICK_MS;
+        }
+        long expiry = Math.min((long) heartbeat.intervalMillis * MISSED_HEARTBEATS, (WHEEL_SLOTS - 1) * TICK_MS);
+        long tick = Math.max(currentTick + 1, (nowMillis + expiry) / TICK_MS);
+        unlink(p);
+        link(p, tick);
+    }
+
+    /**
+     * Move the wheel forward to the current time and remove silent peers.
+     *
+     * @param nowNanos System.nanoTime()
+     */
+    public synchronized void advance(long nowNanos) {
+        long target = wheelMillis(nowNanos) / TICK_MS;
+        if (currentTick < 0) {
+            currentTick = target;
+            return;
+        }
+        // After a long pause, one lap visits every slot
+        currentTick = Math.max(currentTick, target - WHEEL_SLOTS);
+        while (currentTick < target) {
+            currentTick++;
+            Peer p = wheel[(int) (currentTick % WHEEL_SLOTS)];
+            while (p != null) {
+                Peer next = p.next;
+                if (p.deadlineTick <= currentTick) {
+                    unlink(p);
+                    peers.remove(p.nodeId);
+                    microphoneCount -= hasMicrophone(p.capabilities);
+                    System.out.println("[Peers] Lost: " + p.name + " (" + p.address + "), silent for "
+                            + (nowNanos - p.lastHeardNanos) / 1_000_000_000L + " s");
+                }
+                p = next;
+            }
+        }
+    }
+
+    private long wheelMillis(long nowNanos) {
+        return Math.max(0, (nowNanos - originNanos) / 1_000_000);
+    }
+
+    private static int hasMicrophone(int capabilities) {
+        return (capabilities & WireEvent.CAP_MICROPHONE) != 0 ? 1 : 0;
+    }
+
+    private void link(Peer p, long tick) {
+        int slot = (int) (tick % WHEEL_SLOTS);
+        p.deadlineTick = tick;
+        p.prev = null;
+        p.next = wheel[slot];
+        if (p.next != null) {
+            p.next.prev = p;
+        }
+        wheel[slot] = p;
+        p.linked = true;
+    }
+
+    private void unlink(Peer p) {
+        if (!p.linked) {
+            return;
+        }
+        if (p.prev != null) {
+            p.prev.next = p.next;
+        } else {
+            wheel[(int) (p.deadlineTick % WHEEL_SLOTS)] = p.next;
+        }
+        if (p.next != null) {
+            p.next.prev = p.prev;
+        }
+        p.prev = null;
+        p.next = null;
+        p.linked = false;
+    }
+
+    // ============ READING ============
+
+    /**
+     * @return Number of peers currently present
+     */
+    public synchronized int size() {
+        return peers.size();
+    }
+
+    /**
+     * @return Number of present peers with a microphone
+     */
+    public synchronized int getMicrophoneCount() {
+        return microphoneCount;
+    }
+
+    /**
+     * @param nodeId Node id of a peer
+     * @return Its name from its heartbeats, or null if it isn't present
+     */
+    public synchronized String nameOf(long nodeId) {
+        Peer p = peers.get(nodeId);
+        return p != null ? p.name : null;
+    }
+
+    /**
+     * Copy the node ids of the peers announcing a capability, without
+     * allocating (used by the sender thread for each reliable emergency).
+     *
+     * @param capability WireEvent.CAP_* bit
+     * @param into       Gets the node ids (MAX_PEERS long is always enough)
+     * @return Number of node ids copied
+     */
+    public synchronized int copyNodeIds(int capability, long[] into) {
+        int n = 0;
+        for (Peer p : peers.values()) {
+            if ((p.capabilities & capability) != 0 && n < into.length) {
+                into[n++] = p.nodeId;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return Copies of all present peers, most recently heard first
+     */
+    public synchronized List<Peer> snapshot() {
+        List<Peer> list = new ArrayList<>(peers.size());
+        for (Peer p : peers.values()) {
+            list.add(p.copy());
+        }
+        list.sort((a, b) -> Long.signum(b.lastHeardNanos - a.lastHeardNanos));
+        return list;
+    }
+
+    /**
+     * @param nowNanos System.nanoTime()
+     * @return One line per peer, for the log
+     */
+    public String describe(long nowNanos) {
+        StringBuilder sb = new StringBuilder();
+        for (Peer p : snapshot()) {
+            sb.append(String.format("%s (%s) heard %d s ago, load %.2f, caps %d%n",
+                    p.name, p.address, p.getSilentMillis(nowNanos) / 1000, p.load, p.capabilities));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One computer heard through heartbeats.
+     */
+    public static final class Peer {
+        private final long nodeId;
+        private final long firstSeenMillis;
+        private String name;
+        private String address;
+        private int protocolVersion;
+        private int capabilities;
+        private float load;
+        private int intervalMillis;
+        private long lastSeenMillis;
+        private long lastHeardNanos;
+
+        // Timer wheel links (live entries only)
+        private Peer prev;
+        private Peer next;
+        private long deadlineTick;
+        private boolean linked;
+
+        private Peer(long nodeId, long firstSeenMillis) {
+            this.nodeId = nodeId;
+            this.firstSeenMillis = firstSeenMillis;
+        }
+
+        private Peer copy() {
+            Peer c = new Peer(nodeId, firstSeenMillis);
+            c.name = name;
+            c.address = address;
+            c.protocolVersion = protocolVersion;
+            c.capabilities = capabilities;
+            c.load = load;
+            c.intervalMillis = intervalMillis;
+            c.lastSeenMillis = lastSeenMillis;
+            c.lastHeardNanos = lastHeardNanos;
+            return c;
+        }
+
+        public long getNodeId() {
+            return nodeId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public int getProtocolVersion() {
+            return protocolVersion;
+        }
+
+        /**
+         * @return WireEvent.CAP_* bits
+         */
+        public int getCapabilities() {
+            return capabilities;
+        }
+
+        /**
+         * @return Load average per CPU (-1 if the peer doesn't know)
+         */
+        public float getLoad() {
+            return load;
+        }
+
+        public int getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public long getFirstSeenMillis() {
+            return firstSeenMillis;
+        }
+
+        /**
+         * @param nowNanos System.nanoTime()
+         * @return Time since its last heartbeat (not affected by clock changes)
+         */
+        public long getSilentMillis(long nowNanos) {
+            return (nowNanos - lastHeardNanos) / 1_000_000;
+        }
+
+        public long getLastSeenMillis() {
+            return lastSeenMillis;
+        }
+    }
+}
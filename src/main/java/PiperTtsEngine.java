@@ -0,0 +1,193 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Linux text-to-speech using one long-lived Piper process.
+ *
+ * Piper is started once with "--output_dir". For every line written to its
+ * stdin it writes a WAV file and prints the file's path on stdout, so we pay
+ * the model load and process start-up cost only once per session.
+ *
+ * Voices are Piper ".onnx" model files. The voice name is the model file name
+ * without extension, looked up in ~/.taptic-desktop/voices.
+ *
+ * Piper's output is read by a small "Piper-Output" thread, so synthesize()
+ * can wait for the file name with a time limit. If Piper doesn't answer in
+ * time (it hung), it is killed and started again, and the request fails
+ * instead of blocking speech forever.
+ */
+public final class PiperTtsEngine implements TtsEngine {
+
+    // Time allowed per utterance: a base plus a little per character
+    private static final long TIMEOUT_BASE_MS = 10_000;
+    private static final long TIMEOUT_PER_CHAR_MS = 50;
+    // Put in the output queue when Piper's stdout ends
+    private static final String EOF = new String("EOF");
+
+    private final Path defaultModel;
+    private final Path outputDir;
+
+    private Process piper;
+    private Path piperModel;
+    private BufferedWriter piperInput;
+    private BlockingQueue<String> piperLines;
+
+    /**
+     * Create an engine that uses the given model when no voice is requested.
+     *
+     * @param defaultModel Piper .onnx model file
+     * @throws IOException If the scratch folder can't be created
+     */
+    public PiperTtsEngine(Path defaultModel) throws IOException {
+        this.defaultModel = defaultModel;
+        this.outputDir = Files.createTempDirectory("taptic-piper");
+        this.outputDir.toFile().deleteOnExit();
+    }
+
+    /**
+     * Find a Piper model to use as the default voice.
+     * Uses the "taptic.piperModel" system property, or the first .onnx file
+     * in the voices folder.
+     *
+     * @return Model path, or null if none is installed
+     */
+    public static Path findDefaultModel() {
+        String custom = System.getProperty("taptic.piperModel");
+        if (custom != null && !custom.isBlank()) {
+            Path p = Paths.get(custom);
+            return Files.isRegularFile(p) ? p : null;
+        }
+
+        Path voices = voicesDirectory();
+        if (!Files.isDirectory(voices)) {
+            return null;
+        }
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(voices, "*.onnx")) {
+            for (Path p : ds) {
+                return p;
+            }
+        } catch (IOException ignored) {
+        }
+        return null;
+    }
+
+    private static Path voicesDirectory() {
+        return AppConfig.getDataDirectory().resolve("voices");
+    }
+
+    @Override
+    public String getName() {
+        return "Piper";
+    }
+
+    @Override
+    public SpeechAudio synthesize(String text, String voice) throws IOException {
+        Path model = defaultModel;
+        if (voice != null && !voice.isBlank()) {
+            Path requested = voicesDirectory().resolve(voice + ".onnx");
+            if (Files.isRegularFile(requested)) {
+                model = requested;
+            }
+        }
+
+        // Switching voices means restarting Piper with the other model
+        if (piper == null || !piper.isAlive() || !model.equals(piperModel)) {
+            start(model);
+        }
+
+        piperInput.write(text.replace('\n', ' ').replace('\r', ' '));
+        piperInput.newLine();
+        piperInput.flush();
+
+        String wavPath;
+        long timeout = TIMEOUT_BASE_MS + TIMEOUT_PER_CHAR_MS * text.length();
+        try {
+            wavPath = piperLines.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for Piper");
+        }
+        if (wavPath == null) {
+            // Hung: kill it and start a fresh one for the next request
+            System.err.println("[TTS] Piper did not answer in " + timeout + " ms, restarting it");
+            piper.destroyForcibly();
+            start(model);
+            throw new IOException("Piper timed out");
+        }
+        if (wavPath == EOF) {
+            close();
+            throw new IOException("Piper exited");
+        }
+
+        Path wav = Paths.get(wavPath.trim());
+        try {
+            return SpeechAudio.fromFile(wav);
+        } finally {
+            Files.deleteIfExists(wav);
+        }
+    }
+
+    private void start(Path model) throws IOException {
+        close();
+        ProcessBuilder pb = new ProcessBuilder(
+                "piper",
+                "--model", model.toString(),
+                "--output_dir", outputDir.toString());
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        piper = pb.start();
+        piperModel = model;
+        piperInput = new BufferedWriter(
+                new OutputStreamWriter(piper.getOutputStream(), StandardCharsets.UTF_8));
+        BufferedReader output = new BufferedReader(
+                new InputStreamReader(piper.getInputStream(), StandardCharsets.UTF_8));
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        piperLines = lines;
+        Thread reader = new Thread(() -> readLines(output, lines), "Piper-Output");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Copy Piper's output lines into a queue until the process ends
+     * ("Piper-Output" thread, one per process).
+     */
+    private static void readLines(BufferedReader output, BlockingQueue<String> lines) {
+        try {
+            String line;
+            while ((line = output.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException ignored) {
+            // Process killed or closed
+        }
+        lines.add(EOF);
+    }
+
+    @Override
+    public void close() {
+        if (piperInput != null) {
+            try {
+                piperInput.close();
+            } catch (IOException ignored) {
+            }
+            piperInput = null;
+        }
+        if (piper != null) {
+            piper.destroy();
+            piper = null;
+        }
+        piperLines = null;
+        piperModel = null;
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory stand-in backend for tests and benchmarks.
+ * Keeps the most recent notifications instead of showing them.
+ */
+public final class RecordingNotificationBackend implements NotificationBackend {
+
+    private static final int MAX_KEPT = 1000;
+
+    private final List<String> posted = new ArrayList<>();
+
+    @Override
+    public String getName() {
+        return "Recording (stand-in)";
+    }
+
+    @Override
+    public void open() {
+        // Nothing to open
+    }
+
+    @Override
+    public synchronized void post(String title, String message, boolean emergency) {
+        if (posted.size() >= MAX_KEPT) {
+            posted.remove(0);
+        }
+        posted.add((emergency ? "[EMERGENCY] " : "") + title + ": " + message);
+    }
+
+    /**
+     * Get a copy of the notifications posted so far (oldest first).
+     *
+     * @return Posted notifications as "title: message" strings
+     */
+    public synchronized List<String> getPosted() {
+        return new ArrayList<>(posted);
+    }
+
+    /**
+     * Forget all recorded notifications.
+     */
+    public synchronized void clear() {
+        posted.clear();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close
+    }
+}
@@ -0,0 +1,351 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This computer's connection to a RelayHub, for reaching computers on
+ * other subnets. Set with -Dtaptic.relay=HOST:PORT (a computer running the
+ * hub itself connects to it automatically).
+ *
+ * Everything the BroadcastSender sends over UDP is also sent to the hub,
+ * and every datagram from the hub goes to the BroadcastListener as if it
+ * had arrived over UDP (same own-message check, rate limit and dedup, so a
+ * computer that gets an event both ways shows it once). ACKs for events
+ * that came through the hub go back through the hub.
+ *
+ * send() only copies the datagram into a fixed-size outbox and never
+ * waits for the network. The "RelayClient" thread does all reading and
+ * writing with a non-blocking channel, sends a keep-alive when nothing
+ * else was sent for a while, and reconnects after 1, 2, 4 ... 30 seconds
+ * if the connection is lost. While disconnected, datagrams for the hub are
+ * dropped (UDP still works as before).
+ */
+public final class RelayClient implements Closeable, Runnable {
+
+    // System property: hub to connect to, "host" or "host:port"
+    public static final String HUB_PROPERTY = "taptic.relay";
+    public static final int DEFAULT_PORT = 50001;
+
+    // Bytes waiting for the hub; more datagrams are dropped
+    private static final int OUTBOX_SIZE = 64 * 1024;
+    // Send a keep-alive when nothing else was sent for this long
+    private static final long KEEPALIVE_MS = 20_000;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long RECONNECT_MIN_MS = 1000;
+    private static final long RECONNECT_MAX_MS = 30_000;
+
+    private final String host;
+    private final int port;
+    private final BroadcastListener listener;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    // Shared with send(), guarded by outLock
+    private final Object outLock = new Object();
+    private final ByteBuffer outbox = ByteBuffer.allocateDirect(OUTBOX_SIZE);
+    private boolean connected;
+    private long lastSentMillis;
+
+    // Client thread only
+    private volatile Selector selector;
+    private SocketChannel channel;
+    private final ByteBuffer inbox = ByteBuffer.allocateDirect(2 * RelayHub.MAX_FRAME);
+    private byte[] lastOrigin = new byte[0];
+    private InetSocketAddress lastOriginAddress;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong connectCount = new AtomicLong();
+
+    /**
+     * @param host     Hub's host name or address
+     * @param port     Hub's TCP port
+     * @param listener Gets the datagrams from the hub
+     */
+    public RelayClient(String host, int port, BroadcastListener listener) {
+        this.host = host;
+        this.port = port;
+        this.listener = listener;
+    }
+
+    /**
+     * Connect to the hub in -Dtaptic.relay, or to our own hub if we run one.
+     *
+     * @param listener Gets the datagrams from the hub
+     * @param localHub Hub running in this process, or null
+     * @return Running client, or null if there is no hub to connect to
+     */
+    public static RelayClient startFromProperties(BroadcastListener listener, RelayHub localHub) {
+        String hub = System.getProperty(HUB_PROPERTY);
+        String host;
+        int hubPort;
+        if (hub == null || hub.isBlank()) {
+            if (localHub == null) {
+                return null;
+            }
+            host = "127.0.0.1";
+            hubPort = localHub.getPort();
+        } else {
+            hub = hub.trim();
+            // "host", "host:port" or "[v6 address]:port"
+            int colon = hub.lastIndexOf(':');
+            boolean hasPort = colon > 0 && (hub.startsWith("[") ? hub.charAt(colon - 1) == ']' : hub.indexOf(':') == colon);
+            host = hasPort ? hub.substring(0, colon) : hub;
+            host = host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host;
+            try {
+                hubPort = hasPort ? Integer.parseInt(hub.substring(colon + 1)) : DEFAULT_PORT;
+            } catch (NumberFormatException e) {
+                System.err.println("[Relay] Bad " + HUB_PROPERTY + " \"" + hub + "\"");
+                return null;
+            }
+        }
+        RelayClient client = new RelayClient(host, hubPort, listener);
+        client.thread = new Thread(client, "RelayClient");
+        client.thread.setDaemon(true);
+        client.thread.start();
+        return client;
+    }
+
+    /**
+     * Queue one datagram for the hub. Never blocks.
+     *
+     * @param datagram Bytes from its position to its limit (the position is moved to the limit)
+     * @return False if not connected or the outbox is full
+     */
+    public boolean send(ByteBuffer datagram) {
+        int n = datagram.remaining();
+        if (n == 0 || n > RelayHub.MAX_DATAGRAM) {
+            return false;
+        }
+        boolean wasEmpty;
+        synchronized (outLock) {
+            if (!connected) {
+                return false;
+            }
+            if (outbox.remaining() < RelayHub.HEADER_SIZE + n) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+            wasEmpty = outbox.position() == 0;
+            outbox.putShort((short) (1 + n));
+            outbox.put((byte) 0); // The hub fills in our address
+            outbox.put(datagram);
+            lastSentMillis = System.currentTimeMillis();
+        }
+        sentCount.incrementAndGet();
+        Selector s = selector;
+        if (wasEmpty && s != null) {
+            s.wakeup();
+        }
+        return true;
+    }
+
+    // ============ CLIENT THREAD ============
+
+    /**
+     * Connect, serve until the connection drops, wait, and try again.
+     */
+    @Override
+    public void run() {
+        long backoff = RECONNECT_MIN_MS;
+        while (running) {
+            try {
+                connect();
+                backoff = RECONNECT_MIN_MS;
+                serve();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("[Relay] Hub " + host + ":" + port + ": " + e.getMessage());
+                }
+            } finally {
+                disconnect();
+            }
+            if (!running) {
+                break;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(backoff * 2, RECONNECT_MAX_MS);
+        }
+    }
+
+    private void connect() throws IOException {
+        InetSocketAddress address = new InetSocketAddress(host, port); // Looked up again every time
+        if (address.isUnresolved()) {
+            throw new IOException("unknown host");
+        }
+        channel = SocketChannel.open();
+        channel.socket().connect(address, CONNECT_TIMEOUT_MS);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        inbox.clear();
+        synchronized (outLock) {
+            outbox.clear();
+            connected = true;
+            lastSentMillis = System.currentTimeMillis();
+        }
+        connectCount.incrementAndGet();
+        System.out.println("[Relay] Connected to hub " + host + ":" + port);
+    }
+
+    private void serve() throws IOException {
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        while (running) {
+            boolean pending;
+            synchronized (outLock) {
+                long now = System.currentTimeMillis();
+                if (now - lastSentMillis >= KEEPALIVE_MS && outbox.remaining() >= RelayHub.HEADER_SIZE) {
+                    outbox.putShort((short) 1);
+                    outbox.put((byte) 0);
+                    lastSentMillis = now;
+                }
+                pending = outbox.position() > 0;
+            }
+            key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            selector.select(1000);
+            selector.selectedKeys().clear();
+            if (key.isReadable()) {
+                readFrames();
+            }
+            if (key.isWritable()) {
+                synchronized (outLock) {
+                    outbox.flip();
+                    channel.write(outbox);
+                    outbox.compact();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read from the hub and hand every complete datagram to the listener.
+     */
+    private void readFrames() throws IOException {
+        if (channel.read(inbox) < 0) {
+            throw new IOException("hub closed the connection");
+        }
+        inbox.flip();
+        while (inbox.remaining() >= RelayHub.HEADER_SIZE) {
+            int start = inbox.position();
+            int length = inbox.getShort(start) & 0xFFFF;
+            if (length < 1 || length > RelayHub.MAX_FRAME - 2) {
+                throw new IOException("bad frame length " + length);
+            }
+            if (inbox.remaining() < 2 + length) {
+                break;
+            }
+            int addressLength = inbox.get(start + 2) & 0xFF;
+            int datagram = length - 1 - addressLength;
+            if ((addressLength != 0 && addressLength != 4 && addressLength != 16)
+                    || datagram < 0 || datagram > RelayHub.MAX_DATAGRAM) {
+                throw new IOException("bad frame");
+            }
+            if (datagram > 0) {
+                receivedCount.incrementAndGet();
+                listener.receiveRelayed(inbox, start + RelayHub.HEADER_SIZE + addressLength, datagram,
+                        origin(start + RelayHub.HEADER_SIZE, addressLength));
+            }
+            inbox.position(start + 2 + length);
+        }
+        inbox.compact();
+    }
+
+    /**
+     * @return Origin address of a frame (the last one is reused, as most come from a few computers)
+     */
+    private InetSocketAddress origin(int offset, int length) {
+        if (length == 0) {
+            return null;
+        }
+        boolean same = lastOrigin.length == length;
+        for (int i = 0; same && i < length; i++) {
+            same = lastOrigin[i] == inbox.get(offset + i);
+        }
+        if (!same) {
+            byte[] bytes = new byte[length];
+            inbox.get(offset, bytes);
+            try {
+                lastOriginAddress = new InetSocketAddress(InetAddress.getByAddress(bytes), 0);
+                lastOrigin = bytes;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return lastOriginAddress;
+    }
+
+    private void disconnect() {
+        boolean was;
+        synchronized (outLock) {
+            was = connected;
+            connected = false;
+            outbox.clear();
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            System.err.println("[Relay] " + e.getMessage());
+        }
+        channel = null;
+        selector = null;
+        if (was && running) {
+            System.err.println("[Relay] Lost connection to hub " + host + ":" + port);
+        }
+    }
+
+    // ============ STATUS ============
+
+    /**
+     * @return True while connected to the hub
+     */
+    public boolean isConnected() {
+        synchronized (outLock) {
+            return connected;
+        }
+    }
+
+    /**
+     * @return One-line summary for the log
+     */
+    public String getStatsSummary() {
+        return String.format("hub %s:%d, %d datagrams sent, %d received, %d dropped, %d connections",
+                host, port, sentCount.get(), receivedCount.get(), droppedCount.get(), connectCount.get());
+    }
+
+    /**
+     * Disconnect and stop reconnecting.
+     */
+    @Override
+    public void close() {
+        running = false;
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,415 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes broadcast datagrams between computers that UDP broadcast can't
+ * reach (other subnets, VLANs, VPN). Any computer can run one with
+ * -Dtaptic.relayHub=PORT, including the headless build; the others connect
+ * to it with RelayClient.
+ *
+ * Every connected computer keeps one TCP connection. Each datagram a
+ * computer sends through it is copied to every other connection, so
+ * events and heartbeats work the same as on one network.
+ *
+ * ACKs are the exception: they are only meant for the computer that sent
+ * the emergency, so copying them to hundreds of others would multiply the
+ * hub's traffic for nothing. The hub learns each connection's node id from
+ * the heartbeats it passes on, and a datagram that is a single ACK goes only
+ * to the connection of the node id it is addressed to. If that node hasn't
+ * sent a heartbeat through the hub yet, the ACK is copied to everyone as
+ * before (the other computers ignore ACKs that aren't theirs).
+ *
+ * Frames on the connection (both directions):
+ * - 2 bytes: length of the rest of the frame (big-endian)
+ * - 1 byte:  length of the origin address (0, 4 or 16)
+ * - origin address: filled in by the hub with the sender's IP address
+ * - the datagram, exactly as it would be sent over UDP
+ * A frame with no datagram is a keep-alive and is not passed on.
+ *
+ * One thread does everything with a Selector and non-blocking channels,
+ * so hundreds of connections don't need hundreds of threads. Each
+ * connection has a fixed-size outbox (OUTBOX_SIZE). A computer that reads
+ * so slowly that its outbox fills up is disconnected (it reconnects and
+ * carries on) instead of holding up everyone else or using more memory.
+ * Connections silent for IDLE_TIMEOUT_MS are closed too.
+ */
+public final class RelayHub implements Closeable, Runnable {
+
+    // System property: run a hub on this TCP port
+    public static final String PORT_PROPERTY = "taptic.relayHub";
+
+    // Largest datagram passed on (the sender never makes them larger than 1400 bytes)
+    public static final int MAX_DATAGRAM = 2048;
+    // Frame header: length (2) + address length (1)
+    public static final int HEADER_SIZE = 3;
+    // Longest frame: header + IPv6 address + datagram
+    public static final int MAX_FRAME = HEADER_SIZE + 16 + MAX_DATAGRAM;
+    // Bytes waiting for one slow connection before it is dropped
+    private static final int OUTBOX_SIZE = 64 * 1024;
+    // Computers send a heartbeat or keep-alive every 10-20 s
+    private static final long IDLE_TIMEOUT_MS = 60_000;
+    private static final int MAX_CONNECTIONS = 1024;
+
+    private final int port;
+    private volatile boolean running = true;
+    private ServerSocketChannel server;
+    private Selector selector;
+    private int connectionCount; // hub thread only
+    private long lastSweep; // hub thread only
+    private final Map<Long, Connection> byNodeId = new HashMap<>(); // hub thread only
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong framesInCount = new AtomicLong();
+    private final AtomicLong framesOutCount = new AtomicLong();
+    private final AtomicLong routedAckCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile int currentConnections;
+
+    /**
+     * @param port TCP port to accept connections on
+     */
+    public RelayHub(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Start a hub if -Dtaptic.relayHub=PORT is set.
+     *
+     * @return Running hub, or null if not configured
+     * @throws IOException If the port can't be opened
+     */
+    public static RelayHub startFromProperties() throws IOException {
+        Integer hubPort = Integer.getInteger(PORT_PROPERTY);
+        if (hubPort == null) {
+            return null;
+        }
+        RelayHub hub = new RelayHub(hubPort);
+        hub.open();
+        Thread thread = new Thread(hub, "RelayHub");
+        thread.setDaemon(true);
+        thread.start();
+        return hub;
+    }
+
+    /**
+     * Bind the port (before run(), so errors are reported to the caller).
+     */
+    public void open() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(new InetSocketAddress(port), 128);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        System.out.println("[Relay] Hub listening on TCP port " + port);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Hub thread: accept, read, pass on and write until close().
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(1000);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptAll();
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(c);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(c);
+                    }
+                }
+                closeIdle(System.currentTimeMillis());
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[Relay] Hub stopped: " + e.getMessage());
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("[Relay] " + e.getMessage());
+            }
+        }
+    }
+
+    private void acceptAll() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            if (connectionCount >= MAX_CONNECTIONS) {
+                rejectedCount.incrementAndGet();
+                ch.close();
+                continue;
+            }
+            ch.configureBlocking(false);
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection c = new Connection();
+            if (ch.getRemoteAddress() instanceof InetSocketAddress inet && inet.getAddress() != null) {
+                c.address = inet.getAddress().getAddress();
+                c.name = inet.getAddress().getHostAddress();
+            } else {
+                c.address = new byte[0];
+                c.name = "?";
+            }
+            c.channel = ch;
+            c.lastHeardMillis = System.currentTimeMillis();
+            c.key = ch.register(selector, SelectionKey.OP_READ, c);
+            connectionCount++;
+            currentConnections = connectionCount;
+            acceptedCount.incrementAndGet();
+            System.out.println("[Relay] Connected: " + c.name + " (" + connectionCount + " total)");
+        }
+    }
+
+    // ============ READING AND FAN-OUT ============
+
+    /**
+     * Read what a connection sent and pass every complete frame on.
+     */
+    private void read(Connection c) {
+        ByteBuffer in = c.inbox;
+        int n;
+        try {
+            n = c.channel.read(in);
+        } catch (IOException e) {
+            disconnect(c, e.getMessage());
+            return;
+        }
+        if (n < 0) {
+            disconnect(c, "closed");
+            return;
+        }
+        c.lastHeardMillis = System.currentTimeMillis();
+
+        in.flip();
+        while (in.remaining() >= HEADER_SIZE) {
+            int start = in.position();
+            int length = in.getShort(start) & 0xFFFF;
+            if (length < 1 || length > MAX_FRAME - 2) {
+                in.clear();
+                disconnect(c, "bad frame length " + length);
+                return;
+            }
+            if (in.remaining() < 2 + length) {
+                break; // Rest of the frame hasn't arrived yet
+            }
+            int addressLength = in.get(start + 2) & 0xFF;
+            int datagram = length - 1 - addressLength;
+            if (datagram < 0 || datagram > MAX_DATAGRAM) {
+                in.clear();
+                disconnect(c, "bad frame");
+                return;
+            }
+            if (datagram > 0) {
+                framesInCount.incrementAndGet();
+                route(c, in, start + 2 + 1 + addressLength, datagram);
+            }
+            in.position(start + 2 + length);
+        }
+        in.compact();
+    }
+
+    /**
+     * Pass one datagram on: a single ACK to the node it is for (if known),
+     * anything else to every other connection. Heartbeats also tell us the
+     * node id of the connection they came from.
+     */
+    private void route(Connection from, ByteBuffer in, int offset, int datagram) {
+        int end = offset + datagram;
+        int length = WireEvent.recordLength(in, offset, end);
+        if (length > 0) {
+            int flags = WireEvent.peekFlags(in, offset);
+            if ((flags & WireEvent.FLAG_HEARTBEAT) != 0) {
+                learnNodeId(from, WireEvent.peekNodeId(in, offset));
+            } else if ((flags & WireEvent.FLAG_ACK) != 0 && length >= WireEvent.ACK_SIZE && length == datagram) {
+                Connection to = byNodeId.get(WireEvent.peekAckTarget(in, offset));
+                if (to != null && to != from && to.key.isValid()) {
+                    routedAckCount.incrementAndGet();
+                    enqueue(from, to, in, offset, datagram);
+                    return;
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection to && to != from && key.isValid()) {
+                enqueue(from, to, in, offset, datagram);
+            }
+        }
+    }
+
+    private void learnNodeId(Connection c, long nodeId) {
+        if (c.nodeId == nodeId) {
+            return;
+        }
+        if (c.nodeId != 0 && byNodeId.get(c.nodeId) == c) {
+            byNodeId.remove(c.nodeId);
+        }
+        c.nodeId = nodeId;
+        // The newest connection wins (the old one is usually a dead connection after a reconnect)
+        byNodeId.put(nodeId, c);
+    }
+
+    /**
+     * Copy one datagram into a connection's outbox, with the origin's address in front.
+     */
+    private void enqueue(Connection from, Connection to, ByteBuffer in, int offset, int datagram) {
+        int frameLength = 1 + from.address.length + datagram;
+        ByteBuffer out = to.outbox;
+        if (out.remaining() < 2 + frameLength) {
+            // Can't keep up: drop it rather than buffer without limit
+            evictedCount.incrementAndGet();
+            disconnect(to, "too slow, " + out.position() + " bytes waiting");
+            return;
+        }
+        boolean wasEmpty = out.position() == 0;
+        out.putShort((short) frameLength);
+        out.put((byte) from.address.length);
+        out.put(from.address);
+        out.put(out.position(), in, offset, datagram);
+        out.position(out.position() + datagram);
+        framesOutCount.incrementAndGet();
+        if (wasEmpty) {
+            to.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Write as much of a connection's outbox as the socket takes.
+     */
+    private void write(Connection c) {
+        ByteBuffer out = c.outbox;
+        out.flip();
+        try {
+            c.channel.write(out);
+        } catch (IOException e) {
+            out.clear();
+            disconnect(c, e.getMessage());
+            return;
+        }
+        out.compact();
+        if (out.position() == 0) {
+            c.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Close connections that have been silent too long (checked once a second).
+     */
+    private void closeIdle(long now) {
+        if (now - lastSweep < 1000) {
+            return;
+        }
+        lastSweep = now;
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection c && key.isValid()
+                    && now - c.lastHeardMillis > IDLE_TIMEOUT_MS) {
+                disconnect(c, "silent for " + (now - c.lastHeardMillis) / 1000 + " s");
+            }
+        }
+    }
+
+    private void disconnect(Connection c, String reason) {
+        if (!c.key.isValid()) {
+            return;
+        }
+        closeQuietly(c.key);
+        if (c.nodeId != 0 && byNodeId.get(c.nodeId) == c) {
+            byNodeId.remove(c.nodeId);
+        }
+        connectionCount--;
+        currentConnections = connectionCount;
+        System.out.println("[Relay] Disconnected " + c.name + ": " + reason);
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    // ============ STATUS ============
+
+    /**
+     * @return Computers connected right now
+     */
+    public int getConnectionCount() {
+        return currentConnections;
+    }
+
+    /**
+     * @return One-line summary for the log
+     */
+    public String getStatsSummary() {
+        return String.format("%d connected (%d accepted, %d rejected), %d datagrams in, %d out, "
+                + "%d ACKs sent to their target only, %d slow evicted",
+                currentConnections, acceptedCount.get(), rejectedCount.get(),
+                framesInCount.get(), framesOutCount.get(), routedAckCount.get(), evictedCount.get());
+    }
+
+    /**
+     * Stop the hub; the hub thread closes every connection.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("[Relay] " + e.getMessage());
+            }
+        }
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * One connected computer.
+     */
+    private static final class Connection {
+        SocketChannel channel;
+        SelectionKey key;
+        byte[] address; // origin address put in front of its datagrams
+        String name;
+        long nodeId; // from its heartbeats, 0 until the first one
+        long lastHeardMillis;
+        final ByteBuffer inbox = ByteBuffer.allocateDirect(2 * MAX_FRAME);
+        final ByteBuffer outbox = ByteBuffer.allocateDirect(OUTBOX_SIZE);
+    }
+}
@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * macOS text-to-speech using the built-in "say" command.
+ *
+ * "say" renders the utterance to a WAV file instead of the speakers, so the
+ * result can be cached by SpeechService and replayed without running "say" again.
+ */
+public final class SayTtsEngine implements TtsEngine {
+
+    @Override
+    public String getName() {
+        return "macOS say";
+    }
+
+    @Override
+    public SpeechAudio synthesize(String text, String voice) throws IOException {
+        Path wav = Files.createTempFile("taptic-say", ".wav");
+        try {
+            ProcessBuilder pb;
+            if (voice != null && !voice.isBlank()) {
+                pb = new ProcessBuilder("say", "-r", "240", "-v", voice,
+                        "--file-format=WAVE", "--data-format=LEI16@22050",
+                        "-o", wav.toString(), "--", text);
+            } else {
+                pb = new ProcessBuilder("say", "-r", "240",
+                        "--file-format=WAVE", "--data-format=LEI16@22050",
+                        "-o", wav.toString(), "--", text);
+            }
+            pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+            Process p = pb.start();
+            try {
+                if (p.waitFor() != 0) {
+                    throw new IOException("say exited with " + p.exitValue());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                p.destroy();
+                throw new IOException("Interrupted while running say", e);
+            }
+            return SpeechAudio.fromFile(wav);
+        } finally {
+            Files.deleteIfExists(wav);
+        }
+    }
+
+    @Override
+    public void close() {
+        // No long-lived process
+    }
+}
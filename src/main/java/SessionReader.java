@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a session file written by SessionRecorder, one record at a time.
+ *
+ * The file is memory-mapped, so several readers (or copies made with
+ * duplicate()) can walk different parts of it at the same time. One mapping
+ * can't be larger than 2 GB, so the file is mapped in regions of REGION_SIZE
+ * that overlap by MAX_RECORD: a record that starts in one region always
+ * ends inside it too, and offsets (position(), seek()) are longs.
+ *
+ * Every kind of scores record (all scores or only the top N, as floats or
+ * half floats) is read with isScores() and readScores().
+ *
+ * Usage:
+ * <pre>
+ * SessionReader r = SessionReader.open(path);
+ * while (r.next()) {
+ *     if (r.isScores()) { r.readScores(scores); }
+ * }
+ * </pre>
+ */
+public final class SessionReader {
+
+    // Start of each mapped region (1 GB apart)
+    static final long REGION_SIZE = 1L << 30;
+    // Largest record that can be read (regions overlap by this much)
+    static final int MAX_RECORD = 16 * 1024 * 1024;
+
+    // Shared between duplicates; only read with absolute gets
+    private final ByteBuffer[] regions;
+    private final long size;
+    private final int sampleRate;
+    private final int hopBytes;
+    private final int classCount;
+    private final long startMillis;
+
+    private long position;
+
+    // Current record
+    private byte type;
+    private long timeMillis;
+    private ByteBuffer data; // region holding the current record
+    private int payloadStart;
+    private int payloadLength;
+
+    private SessionReader(ByteBuffer[] regions, long size, int sampleRate, int hopBytes, int classCount,
+            long startMillis) {
+        this.regions = regions;
+        this.size = size;
+        this.sampleRate = sampleRate;
+        this.hopBytes = hopBytes;
+        this.classCount = classCount;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Open a session file and check its header.
+     *
+     * @param file Session file
+     * @return Reader positioned before the first record
+     * @throws IOException If the file can't be read or isn't a session file
+     */
+    public static SessionReader open(Path file) throws IOException {
+        ByteBuffer[] regions;
+        long size;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = ch.size();
+            regions = new ByteBuffer[(int) Math.max(1, (size + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = i * REGION_SIZE;
+                long length = Math.min(REGION_SIZE + MAX_RECORD, size - start);
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+                regions[i] = map.order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        ByteBuffer head = regions[0];
+        int version = head.limit() >= SessionRecorder.HEADER_SIZE ? head.getInt(4) : 0;
+        if (head.limit() < SessionRecorder.HEADER_SIZE
+                || head.getInt(0) != SessionRecorder.MAGIC
+                || version < 1 || version > SessionRecorder.FORMAT_VERSION) {
+            throw new IOException("Not a session file: " + file);
+        }
+        SessionReader r = new SessionReader(regions, size, head.getInt(8), head.getInt(12),
+                head.getInt(16), head.getLong(20));
+        r.seek(SessionRecorder.HEADER_SIZE);
+        return r;
+    }
+
+    /**
+     * Make an independent reader over the same file, at the same position.
+     *
+     * @return New reader
+     */
+    public SessionReader duplicate() {
+        SessionReader r = new SessionReader(regions, size, sampleRate, hopBytes, classCount, startMillis);
+        r.position = position;
+        return r;
+    }
+
+    /**
+     * Move to the next record.
+     *
+     * @return False at the end of the file (or at a record cut off by a crash)
+     */
+    public boolean next() {
+        if (size - position < SessionRecorder.RECORD_HEADER_SIZE) {
+            return false;
+        }
+        int region = (int) (position / REGION_SIZE);
+        ByteBuffer b = regions[region];
+        int pos = (int) (position - region * REGION_SIZE);
+        int len = b.getInt(pos + 9);
+        int start = pos + SessionRecorder.RECORD_HEADER_SIZE;
+        if (len < 0 || len > b.limit() - start) {
+            return false;
+        }
+        type = b.get(pos);
+        timeMillis = b.getLong(pos + 1);
+        data = b;
+        payloadStart = start;
+        payloadLength = len;
+        position += SessionRecorder.RECORD_HEADER_SIZE + len;
+        return true;
+    }
+
+    /**
+     * @return Byte offset of the next record (for seek())
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Continue reading from a byte offset returned by position().
+     *
+     * @param offset Start of a record
+     */
+    public void seek(long offset) {
+        position = offset;
+    }
+
+    // ============ CURRENT RECORD ============
+
+    /**
+     * @return SessionRecorder.TYPE_CONFIG, TYPE_HOP or one of the TYPE_SCORES types
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * @return True for any kind of scores record
+     */
+    public boolean isScores() {
+        return type == SessionRecorder.TYPE_SCORES || type == SessionRecorder.TYPE_SCORES_HALF
+                || type == SessionRecorder.TYPE_SCORES_TOP || type == SessionRecorder.TYPE_SCORES_TOP_HALF;
+    }
+
+    /**
+     * @return False if the scores record only has the highest scores (the rest read as 0)
+     */
+    public boolean hasAllScores() {
+        return type != SessionRecorder.TYPE_SCORES_TOP && type != SessionRecorder.TYPE_SCORES_TOP_HALF;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return Settings JSON of a CONFIG record
+     */
+    public String readConfigJson() {
+        byte[] bytes = new byte[payloadLength];
+        data.get(payloadStart, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Hop number of a HOP record (gaps mean hops were dropped)
+     */
+    public int getHopNumber() {
+        return data.getInt(payloadStart);
+    }
+
+    /**
+     * Decode the audio of a HOP record.
+     *
+     * @return 16-bit little-endian PCM
+     */
+    public byte[] readPcm() {
+        byte[] encoded = new byte[payloadLength - 4];
+        data.get(payloadStart + 4, encoded);
+        return ClipCodec.decodeToPcm(encoded);
+    }
+
+    /**
+     * @return RMS level of a SCORES record
+     */
+    public float getRms() {
+        return data.getFloat(payloadStart);
+    }
+
+    /**
+     * Copy the scores of a scores record.
+     *
+     * @param out Destination (at least getClassCount() long)
+     */
+    public void readScores(float[] out) {
+        int off = payloadStart + 4;
+        if (type == SessionRecorder.TYPE_SCORES) {
+            int n = Math.min(out.length, (payloadLength - 4) / 4);
+            for (int i = 0; i < n; i++, off += 4) {
+                out[i] = data.getFloat(off);
+            }
+        } else if (type == SessionRecorder.TYPE_SCORES_HALF) {
+            int n = Math.min(out.length, (payloadLength - 4) / 2);
+            for (int i = 0; i < n; i++, off += 2) {
+                out[i] = Float.float16ToFloat(data.getShort(off));
+            }
+        } else if (type == SessionRecorder.TYPE_SCORES_TOP) {
+            Arrays.fill(out, 0f);
+            int n = Math.min(data.getShort(off) & 0xFFFF, (payloadLength - 6) / 6);
+            off += 2;
+            for (int i = 0; i < n; i++, off += 6) {
+                int classId = data.getShort(off) & 0xFFFF;
+                if (classId < out.length) {
+                    out[classId] = data.getFloat(off + 2);
+                }
+            }
+        } else {
+            Arrays.fill(out, 0f);
+            int n = Math.min(data.getShort(off) & 0xFFFF, (payloadLength - 6) / 4);
+            off += 2;
+            for (int i = 0; i < n; i++, off += 4) {
+                int classId = data.getShort(off) & 0xFFFF;
+                if (classId < out.length) {
+                    out[classId] = Float.float16ToFloat(data.getShort(off + 2));
+                }
+            }
+        }
+    }
+
+    // ============ HEADER ============
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getHopBytes() {
+        return hopBytes;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+}
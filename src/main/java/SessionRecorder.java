@@ -0,0 +1,519 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records a listening session so a missed or wrong alert can be reproduced.
+ *
+ * Every hop of raw microphone audio, the model scores for it and every
+ * settings change are written, in order, into session files. SessionReplay
+ * can later feed them back through YamnetMic and the Interpreter.
+ *
+ * A recording is split into segments of taptic.sessionSegmentMB (default
+ * 64): "session.tps", then "session-001.tps", "session-002.tps" and so on.
+ * Each segment has its own header and starts with the current settings, so
+ * it can be read on its own. When all segments together would pass
+ * taptic.sessionMaxMB, the oldest one is deleted, so a recording can run
+ * for weeks in a fixed amount of disk space.
+ *
+ * File layout (little-endian):
+ * - Header: magic "TPSS", version, sample rate, hop bytes, class count, start time
+ * - Records: type (byte), time (long, epoch ms), payload length (int), payload
+ *   - CONFIG:      settings JSON (UTF-8) with the calibrated thresholds,
+ *                  written whenever the snapshot changes
+ *   - HOP:         hop number (int) + audio compressed with ClipCodec (optional)
+ *   - SCORES:      RMS level (float) + one float per class
+ *   - SCORES_HALF: RMS level (float) + one half-precision float per class
+ *   - SCORES_TOP_HALF: RMS level (float) + count (short) + that many
+ *                  class id (short) / half-precision score (short) pairs;
+ *                  every other class scored 0
+ *   - SCORES_TOP:  RMS level (float) + count (short) + that many
+ *                  class id (short) / score (float) pairs;
+ *                  every other class scored 0
+ *
+ * Which scores record is written is set with taptic.sessionScores:
+ * "top16" (the default; any "topN" works), "float", or either of them with
+ * "half" appended ("top16half", "half"). The Interpreter only looks at the
+ * 3 highest scores of a frame, so top16 gives exactly the same notifications
+ * in SessionReplay and WhatIfEvaluator at about 120 bytes per frame instead
+ * of 2 KB. Half precision is opt-in: it shrinks the records further but only
+ * keeps about 3 significant digits, so a score within 0.1% of a threshold
+ * may land on the other side of it.
+ *
+ * The mic thread only copies into one of a few reusable frames; the
+ * "SessionWriter" thread compresses and writes. If the writer falls behind,
+ * hops are dropped (and counted) rather than slowing down listening.
+ */
+public final class SessionRecorder implements AutoCloseable {
+
+    static final int MAGIC = 0x54505353; // "TPSS"
+    static final int FORMAT_VERSION = 3; // 1 = only SCORES records, 2 = no float SCORES_TOP
+    static final int HEADER_SIZE = 28;
+    static final int RECORD_HEADER_SIZE = 13;
+
+    static final byte TYPE_CONFIG = 1;
+    static final byte TYPE_HOP = 2;
+    static final byte TYPE_SCORES = 3;
+    static final byte TYPE_SCORES_HALF = 4;
+    static final byte TYPE_SCORES_TOP_HALF = 5;
+    static final byte TYPE_SCORES_TOP = 6;
+
+    // Default segment size and scores format
+    private static final long DEFAULT_SEGMENT_MB = 64;
+    private static final int DEFAULT_TOP_SCORES = 16;
+
+    // Frame buffers (and so the length of the writer queue)
+    private static final int FRAME_BUFFERS = 16;
+
+    private final Path file;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final int classCount;
+    private final boolean saveAudio;
+    private final byte scoresType;
+    private final int topCount;
+
+    private final BlockingQueue<Frame> freeFrames = new ArrayBlockingQueue<>(FRAME_BUFFERS);
+    private final BlockingQueue<Frame> toWrite = new ArrayBlockingQueue<>(FRAME_BUFFERS + 1);
+    private static final Frame STOP = new Frame(0, 0);
+
+    // Mic thread only
+    private ConfigSnapshot lastConfig;
+    private int hopNumber;
+
+    // Writer thread only
+    private ByteBuffer out = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel channel;
+    private int segmentNumber;
+    private long segmentWritten;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long keptBytes; // size of the finished segments still on disk
+    private byte[] lastConfigJson;
+    private final int[] topIds;
+    private final float[] topScores;
+
+    private volatile boolean stopped;
+    private volatile long written;
+    private final AtomicLong hopCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong deletedSegments = new AtomicLong();
+
+    private final Thread writer;
+
+    /**
+     * Start a new session.
+     *
+     * @param file         First segment to create (replaced if it exists)
+     * @param classCount   Number of scores per frame
+     * @param maxBytes     All segments together stay below this size (oldest deleted first)
+     * @param segmentBytes Start a new segment when one reaches this size
+     * @param saveAudio    False to keep only scores and settings (much smaller,
+     *                     enough for WhatIfEvaluator and score replays)
+     * @param topCount     Keep only this many highest scores per frame; 0 = every score
+     * @param half         True to store the scores in half precision instead of as floats
+     * @throws IOException If the file can't be created
+     */
+    public SessionRecorder(Path file, int classCount, long maxBytes, long segmentBytes,
+            boolean saveAudio, int topCount, boolean half) throws IOException {
+        this.file = file;
+        this.classCount = classCount;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = Math.min(segmentBytes, maxBytes);
+        this.saveAudio = saveAudio;
+        this.topCount = Math.min(topCount, classCount);
+        if (this.topCount <= 0) {
+            this.scoresType = half ? TYPE_SCORES_HALF : TYPE_SCORES;
+        } else {
+            this.scoresType = half ? TYPE_SCORES_TOP_HALF : TYPE_SCORES_TOP;
+        }
+        this.topIds = new int[Math.max(0, this.topCount)];
+        this.topScores = new float[Math.max(0, this.topCount)];
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        openSegment(file, System.currentTimeMillis());
+
+        for (int i = 0; i < FRAME_BUFFERS; i++) {
+            freeFrames.add(new Frame(YamnetMic.HOP_BYTES, classCount));
+        }
+
+        writer = new Thread(this::writeLoop, "SessionWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Start recording if the "taptic.recordSession" system property is set.
+     * "true" records into the sessions folder of the data directory; any other
+     * value is used as the file path. The size limit can be changed with
+     * "taptic.sessionMaxMB" (default 1024) and the segment size with
+     * "taptic.sessionSegmentMB" (default 64); "taptic.sessionAudio=false"
+     * records scores and settings only, and "taptic.sessionScores" picks the
+     * scores format ("top16", "float", "top16half" or "half").
+     *
+     * @param classCount Number of scores per frame
+     * @return New recorder, or null if recording wasn't asked for
+     * @throws IOException If the file can't be created
+     */
+    public static SessionRecorder createFromProperties(int classCount) throws IOException {
+        String target = System.getProperty("taptic.recordSession");
+        if (target == null || target.isBlank() || target.equalsIgnoreCase("false")) {
+            return null;
+        }
+        Path path;
+        if (target.equalsIgnoreCase("true")) {
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            path = AppConfig.getDataDirectory().resolve("sessions").resolve("session-" + stamp + ".tps");
+        } else {
+            path = Paths.get(target);
+        }
+        long maxMb = Long.getLong("taptic.sessionMaxMB", 1024);
+        long segmentMb = Math.max(1, Long.getLong("taptic.sessionSegmentMB", DEFAULT_SEGMENT_MB));
+        boolean audio = !"false".equalsIgnoreCase(System.getProperty("taptic.sessionAudio"));
+        String format = System.getProperty("taptic.sessionScores", "top" + DEFAULT_TOP_SCORES)
+                .trim().toLowerCase(Locale.ROOT);
+        boolean half = format.endsWith("half");
+        int top = parseTopCount(half ? format.substring(0, format.length() - 4) : format);
+        return new SessionRecorder(path, classCount, maxMb * 1024 * 1024, segmentMb * 1024 * 1024,
+                audio, top, half);
+    }
+
+    /**
+     * @param format "topN" or "float" ("" also means every score, as in plain "half")
+     * @return Top count for the constructor (0 = every score)
+     */
+    private static int parseTopCount(String format) {
+        if (format.isEmpty() || format.equals("float")) {
+            return 0;
+        }
+        if (format.startsWith("top")) {
+            try {
+                return Math.max(3, Integer.parseInt(format.substring(3)));
+            } catch (NumberFormatException e) {
+                // Fall through
+            }
+        }
+        System.err.println("[Session] Unknown taptic.sessionScores \"" + format + "\", using top"
+                + DEFAULT_TOP_SCORES);
+        return DEFAULT_TOP_SCORES;
+    }
+
+    // ============ MIC THREAD ============
+
+    /**
+     * Record one hop. Called by YamnetMic for every hop.
+     *
+     * @param timeMillis When the hop was captured
+     * @param pcm        16-bit little-endian mono audio
+     * @param len        Number of bytes
+     * @param scores     Model scores for the window ending with this hop (null if none yet)
+     * @param rms        RMS level of that window
+     */
+    public void record(long timeMillis, byte[] pcm, int len, float[] scores, double rms) {
+        int number = hopNumber++;
+        if (stopped) {
+            return;
+        }
+        Frame f = freeFrames.poll();
+        if (f == null) {
+            droppedCount.incrementAndGet(); // Writer is behind
+            return;
+        }
+
+        // Settings are only written when they changed since the last frame
+        ConfigSnapshot cfg = AppConfig.current();
+        f.config = cfg != lastConfig ? cfg : null;
+        lastConfig = cfg;
+
+        f.timeMillis = timeMillis;
+        f.hopNumber = number;
+        f.pcmLength = Math.min(len, f.pcm.length);
+        if (saveAudio) {
+            System.arraycopy(pcm, 0, f.pcm, 0, f.pcmLength);
+        }
+        f.hasScores = scores != null;
+        if (scores != null) {
+            System.arraycopy(scores, 0, f.scores, 0, Math.min(classCount, scores.length));
+            f.rms = (float) rms;
+        }
+        toWrite.offer(f); // Never full: there are only FRAME_BUFFERS frames
+    }
+
+    // ============ WRITER THREAD ============
+
+    private void writeLoop() {
+        while (true) {
+            Frame f;
+            try {
+                f = toWrite.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (f == STOP) {
+                break;
+            }
+            try {
+                write(f);
+                hopCount.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("[Session] Write failed, recording stopped: " + e.getMessage());
+                stopped = true;
+            } finally {
+                freeFrames.offer(f);
+            }
+        }
+    }
+
+    private void write(Frame f) throws IOException {
+        if (stopped) {
+            return;
+        }
+        if (segmentWritten >= segmentBytes) {
+            nextSegment(f.timeMillis);
+        }
+        if (f.config != null) {
+            lastConfigJson = AppConfig.toSessionJson(f.config).toString().getBytes(StandardCharsets.UTF_8);
+            writeConfig(f.timeMillis);
+        }
+
+        if (saveAudio) {
+            byte[] audio = ClipCodec.encode(f.pcm, f.pcmLength, ClipRecorder.SAMPLE_RATE);
+            startRecord(TYPE_HOP, f.timeMillis, 4 + audio.length);
+            out.putInt(f.hopNumber);
+            out.put(audio);
+        }
+
+        if (f.hasScores) {
+            writeScores(f);
+        }
+        flush();
+    }
+
+    private void writeConfig(long timeMillis) {
+        startRecord(TYPE_CONFIG, timeMillis, lastConfigJson.length);
+        out.put(lastConfigJson);
+    }
+
+    private void writeScores(Frame f) {
+        if (scoresType == TYPE_SCORES) {
+            startRecord(TYPE_SCORES, f.timeMillis, 4 + 4 * classCount);
+            out.putFloat(f.rms);
+            for (int i = 0; i < classCount; i++) {
+                out.putFloat(f.scores[i]);
+            }
+        } else if (scoresType == TYPE_SCORES_HALF) {
+            startRecord(TYPE_SCORES_HALF, f.timeMillis, 4 + 2 * classCount);
+            out.putFloat(f.rms);
+            for (int i = 0; i < classCount; i++) {
+                out.putShort(Float.floatToFloat16(f.scores[i]));
+            }
+        } else if (scoresType == TYPE_SCORES_TOP) {
+            int n = selectTop(f.scores);
+            startRecord(TYPE_SCORES_TOP, f.timeMillis, 4 + 2 + 6 * n);
+            out.putFloat(f.rms);
+            out.putShort((short) n);
+            for (int i = 0; i < n; i++) {
+                out.putShort((short) topIds[i]);
+                out.putFloat(topScores[i]);
+            }
+        } else {
+            int n = selectTop(f.scores);
+            startRecord(TYPE_SCORES_TOP_HALF, f.timeMillis, 4 + 2 + 4 * n);
+            out.putFloat(f.rms);
+            out.putShort((short) n);
+            for (int i = 0; i < n; i++) {
+                out.putShort((short) topIds[i]);
+                out.putShort(Float.floatToFloat16(topScores[i]));
+            }
+        }
+    }
+
+    /**
+     * Find the topCount highest scores (insertion into a short sorted list).
+     *
+     * @return Number found (topCount unless there are fewer classes)
+     */
+    private int selectTop(float[] scores) {
+        int n = 0;
+        for (int i = 0; i < classCount; i++) {
+            float s = scores[i];
+            if (n == topCount && s <= topScores[n - 1]) {
+                continue;
+            }
+            int j = n < topCount ? n++ : n - 1;
+            while (j > 0 && topScores[j - 1] < s) {
+                topScores[j] = topScores[j - 1];
+                topIds[j] = topIds[j - 1];
+                j--;
+            }
+            topScores[j] = s;
+            topIds[j] = i;
+        }
+        return n;
+    }
+
+    // ============ SEGMENTS ============
+
+    /**
+     * Create a segment file and write its header.
+     */
+    private void openSegment(Path path, long startMillis) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        segments.addLast(new Segment(path));
+        segmentWritten = 0;
+
+        out.clear();
+        out.putInt(MAGIC);
+        out.putInt(FORMAT_VERSION);
+        out.putInt(ClipRecorder.SAMPLE_RATE);
+        out.putInt(YamnetMic.HOP_BYTES);
+        out.putInt(classCount);
+        out.putLong(startMillis);
+        flush();
+    }
+
+    /**
+     * Close the current segment, make room for the next one and start it
+     * with the settings in force.
+     */
+    private void nextSegment(long timeMillis) throws IOException {
+        channel.close();
+        Segment finished = segments.peekLast();
+        finished.bytes = segmentWritten;
+        keptBytes += segmentWritten;
+
+        while (!segments.isEmpty() && keptBytes + segmentBytes > maxBytes) {
+            Segment oldest = segments.removeFirst();
+            keptBytes -= oldest.bytes;
+            Files.deleteIfExists(oldest.path);
+            deletedSegments.incrementAndGet();
+        }
+
+        segmentNumber++;
+        openSegment(segmentPath(segmentNumber), timeMillis);
+        if (lastConfigJson != null) {
+            writeConfig(timeMillis);
+        }
+    }
+
+    /**
+     * @return "name.tps" for segment 0, "name-001.tps" and so on after that
+     */
+    private Path segmentPath(int number) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        return file.resolveSibling(String.format(Locale.ROOT, "%s-%03d%s", base, number, extension));
+    }
+
+    /**
+     * Write a record header, making sure the payload will fit in the buffer.
+     */
+    private void startRecord(byte type, long timeMillis, int payloadLength) {
+        int need = RECORD_HEADER_SIZE + payloadLength;
+        if (out.remaining() < need) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + need))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+        out.put(type);
+        out.putLong(timeMillis);
+        out.putInt(payloadLength);
+    }
+
+    private void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            int n = channel.write(out);
+            segmentWritten += n;
+            written += n;
+        }
+        out.clear();
+    }
+
+    // ============ STATUS ============
+
+    /**
+     * @return First segment of the session
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return One-line summary for the log
+     */
+    public String getStatsSummary() {
+        return String.format("session %s: %d hops, %d dropped, %.1f MB written, %d old segments deleted",
+                file.getFileName(), hopCount.get(), droppedCount.get(), written / (1024.0 * 1024.0),
+                deletedSegments.get());
+    }
+
+    /**
+     * Write what is queued and close the file.
+     */
+    @Override
+    public void close() {
+        toWrite.offer(STOP);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("[Session] Close failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One segment file still on disk.
+     */
+    private static final class Segment {
+        final Path path;
+        long bytes;
+
+        Segment(Path path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * One reusable hop buffer.
+     */
+    private static final class Frame {
+        final byte[] pcm;
+        final float[] scores;
+        long timeMillis;
+        int hopNumber;
+        int pcmLength;
+        boolean hasScores;
+        float rms;
+        ConfigSnapshot config; // null = unchanged
+
+        Frame(int pcmCapacity, int classCount) {
+            this.pcm = new byte[pcmCapacity];
+            this.scores = new float[classCount];
+        }
+    }
+}
@@ -0,0 +1,309 @@
+import org.json.JSONObject;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Plays a recorded session (see SessionRecorder) back through the same code
+ * that runs live, to reproduce a missed or wrong alert.
+ *
+ * A ManualClock is set to each frame's recorded time, so cooldowns and
+ * smoothing behave exactly as they did live, while frames are processed as
+ * fast as the CPU allows. Settings changes (including the calibrated
+ * thresholds recorded with them) are applied at the moment they happened. Nothing is broadcast, journaled or shown: notifications are
+ * collected in the result.
+ *
+ * Two modes:
+ * - model:  recorded audio goes through YamnetMic again (checks the model too)
+ * - scores: recorded scores go straight to the Interpreter (much faster)
+ *
+ * The segments of one recording (see SessionRecorder) can be given
+ * together; they are played in the order they were recorded.
+ *
+ * Uses the Interpreter's shared state, so run it in its own process:
+ * java SessionReplay session.tps [session-001.tps ...] [--scores]
+ */
+public final class SessionReplay {
+
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    // Private constructor - only static methods
+    private SessionReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean useModel = true;
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--scores")) {
+                useModel = false;
+            } else {
+                files.add(Paths.get(arg));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: SessionReplay <session.tps>... [--scores]");
+            System.exit(2);
+        }
+
+        Result result = replay(files, useModel);
+        for (String line : result.getNotifications()) {
+            System.out.println(line);
+        }
+        System.out.println("[Replay] " + result.getSummary());
+    }
+
+    /**
+     * Replay a session file.
+     *
+     * @param file     Session file
+     * @param useModel True to run the recorded audio through the model again,
+     *                 false to use the recorded scores
+     * @return What happened during the replay
+     * @throws Exception If the file can't be read or the model can't be loaded
+     */
+    public static Result replay(Path file, boolean useModel) throws Exception {
+        return replay(List.of(file), useModel);
+    }
+
+    /**
+     * Replay the segments of one recording as one session.
+     *
+     * @param files    Segment files (sorted by their start time here)
+     * @param useModel True to run the recorded audio through the model again,
+     *                 false to use the recorded scores
+     * @return What happened during the replay
+     * @throws Exception If a file can't be read or the model can't be loaded
+     */
+    public static Result replay(List<Path> files, boolean useModel) throws Exception {
+        List<SessionReader> readers = new ArrayList<>();
+        for (Path p : files) {
+            readers.add(SessionReader.open(p));
+        }
+        readers.sort(Comparator.comparingLong(SessionReader::getStartMillis));
+        SessionReader first = readers.get(0);
+        String[] labels = YamnetMic.getLabels();
+        float[] recorded = new float[first.getClassCount()];
+
+        ManualClock clock = new ManualClock(first.getStartMillis());
+        Result result = new Result(useModel);
+        ReplaySink sink = new ReplaySink(clock, result);
+
+        AppConfig.registerLabels(labels);
+        Interpreter.resetState();
+        Interpreter.setClock(clock);
+        Interpreter.init(null, sink, labels);
+
+        YamnetMic mic = useModel ? new YamnetMic() : null;
+        long started = System.nanoTime();
+        try {
+            if (mic != null) {
+                mic.setClock(clock);
+            }
+            float[] inferred = null;
+            int expectedHop = 0;
+            long firstTime = -1;
+
+            for (SessionReader reader : readers) {
+                while (reader.next()) {
+                    long time = reader.getTimeMillis();
+                    if (firstTime < 0) {
+                        firstTime = time;
+                    }
+                    result.sessionMillis = time - firstTime;
+                    clock.setMillis(time);
+
+                    switch (reader.getType()) {
+                        case SessionRecorder.TYPE_CONFIG:
+                            AppConfig.loadJson(new JSONObject(reader.readConfigJson()));
+                            result.configChanges++;
+                            break;
+
+                        case SessionRecorder.TYPE_HOP:
+                            int hop = reader.getHopNumber();
+                            if (hop != expectedHop) {
+                                result.droppedHops += Math.max(0, hop - expectedHop);
+                            }
+                            expectedHop = hop + 1;
+                            result.hops++;
+                            if (mic != null) {
+                                byte[] pcm = reader.readPcm();
+                                if (pcm.length != YamnetMic.HOP_BYTES) {
+                                    byte[] padded = new byte[YamnetMic.HOP_BYTES];
+                                    System.arraycopy(pcm, 0, padded, 0, Math.min(pcm.length, padded.length));
+                                    pcm = padded;
+                                }
+                                inferred = mic.processHop(pcm);
+                            }
+                            break;
+
+                        case SessionRecorder.TYPE_SCORES:
+                        case SessionRecorder.TYPE_SCORES_HALF:
+                        case SessionRecorder.TYPE_SCORES_TOP:
+                        case SessionRecorder.TYPE_SCORES_TOP_HALF:
+                            result.frames++;
+                            reader.readScores(recorded);
+                            if (mic == null) {
+                                Interpreter.onFrame(recorded, labels, YamnetMic.meterLevel(reader.getRms()));
+                            } else if (inferred != null) {
+                                // How far the model is from what it said live (only the recorded classes)
+                                boolean all = reader.hasAllScores();
+                                int n = Math.min(inferred.length, recorded.length);
+                                for (int i = 0; i < n; i++) {
+                                    if (!all && recorded[i] == 0f) {
+                                        continue;
+                                    }
+                                    double diff = Math.abs(inferred[i] - recorded[i]);
+                                    if (diff > result.maxScoreDifference) {
+                                        result.maxScoreDifference = diff;
+                                    }
+                                }
+                            }
+                            break;
+
+                        default:
+                            // Unknown record from a newer version: skip it
+                            break;
+                    }
+                }
+            }
+        } finally {
+            result.wallMillis = (System.nanoTime() - started) / 1_000_000;
+            Interpreter.init(null, null, null);
+            Interpreter.setClock(Clock.systemUTC());
+            if (mic != null) {
+                mic.close();
+            }
+        }
+        return result;
+    }
+
+    // ============ RESULT ============
+
+    /**
+     * What a replay produced.
+     */
+    public static final class Result {
+        private final boolean modelMode;
+        private final List<String> notifications = new ArrayList<>();
+        private int emergencies;
+        private long hops;
+        private long frames;
+        private long droppedHops;
+        private int configChanges;
+        private double maxScoreDifference;
+        private long sessionMillis;
+        private long wallMillis;
+
+        private Result(boolean modelMode) {
+            this.modelMode = modelMode;
+        }
+
+        /**
+         * @return One line per notification, in order
+         */
+        public List<String> getNotifications() {
+            return Collections.unmodifiableList(notifications);
+        }
+
+        public int getNotificationCount() {
+            return notifications.size();
+        }
+
+        public int getEmergencyCount() {
+            return emergencies;
+        }
+
+        public long getFrameCount() {
+            return frames;
+        }
+
+        public long getDroppedHops() {
+            return droppedHops;
+        }
+
+        /**
+         * @return Largest score difference between the replayed model and the
+         *         recording (model mode only; 0 means identical)
+         */
+        public double getMaxScoreDifference() {
+            return maxScoreDifference;
+        }
+
+        /**
+         * @return One-line summary for the log
+         */
+        public String getSummary() {
+            double speed = wallMillis > 0 ? sessionMillis / (double) wallMillis : 0;
+            String s = String.format("%d notifications (%d emergency), %d frames, %d hops"
+                            + " (%d dropped while recording), %d settings changes, %.1f s of audio in %d ms (%.0fx)",
+                    notifications.size(), emergencies, frames, hops, droppedHops,
+                    configChanges, sessionMillis / 1000.0, wallMillis, speed);
+            if (modelMode) {
+                s += String.format(", max score difference %.6f", maxScoreDifference);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Collects notifications instead of showing them.
+     */
+    private static final class ReplaySink implements DetectionSink {
+        private final ManualClock clock;
+        private final Result result;
+
+        ReplaySink(ManualClock clock, Result result) {
+            this.clock = clock;
+            this.result = result;
+        }
+
+        private String now() {
+            return TIME_FMT.format(Instant.ofEpochMilli(clock.millis()).atZone(ZoneId.systemDefault()));
+        }
+
+        @Override
+        public void initMonitoredLists(String[] allLabels) {
+        }
+
+        @Override
+        public void updateSoundLevel(double level) {
+        }
+
+        @Override
+        public void updateTop3(String l1, double s1, String l2, double s2, String l3, double s3) {
+        }
+
+        @Override
+        public void addHistory(String label, double score, boolean emergency, boolean local, String host,
+                boolean important, long eventId) {
+        }
+
+        @Override
+        public void handleNotification(String label, double score, boolean emergency) {
+            if (emergency) {
+                result.emergencies++;
+            }
+            result.notifications.add(String.format("%s  %s (%d%%)%s", now(), label,
+                    Math.round(score * 100.0), emergency ? " EMERGENCY" : ""));
+        }
+
+        @Override
+        public void handleRemoteNotification(String label, String host, boolean emergency) {
+            // Sessions only contain local audio
+        }
+
+        @Override
+        public void showMicError(String msg) {
+            System.err.println("[Replay] " + msg);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves AppConfig to disk and keeps it in sync with the file.
+ *
+ * - Settings live in one JSON file (settings.json in the data directory),
+ *   read with a single read at startup.
+ * - Every save gets a new revision number and is written to a temp file,
+ *   synced, then renamed over the old file, so readers never see a half
+ *   written file. The last few revisions are kept as snapshots.
+ * - A WatchService thread reloads the file when something else replaces it
+ *   (for example a config push to many machines), without a restart. The
+ *   file is compared by a SHA-256 of its bytes, not by revision: a pushed
+ *   file usually carries the pusher's revision, which can be the same number
+ *   as ours. Only our own save (same bytes) is skipped.
+ */
+public final class SettingsStore {
+
+    public static final int SCHEMA_VERSION = 1;
+
+    private static final String FILE_NAME = "settings.json";
+    private static final String HISTORY_DIR = "settings-history";
+    private static final int KEEP_SNAPSHOTS = 10;
+    private static final long SAVE_CHECK_MS = 500;
+
+    private static Path dir;
+    private static Path file;
+
+    // Revision currently applied to AppConfig
+    private static long revision;
+    // SHA-256 of the file as we last wrote or read it
+    private static byte[] fileDigest;
+    // True while the file couldn't be read: never write over it
+    private static boolean readOnly;
+    // AppConfig modification count at the last save or load
+    private static long savedModificationCount = -1;
+
+    private static ScheduledExecutorService saver;
+    private static WatchService watchService;
+    private static Thread watchThread;
+
+    private static final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+    // Private constructor - only static methods
+    private SettingsStore() {
+    }
+
+    /**
+     * Load settings at startup.
+     * If there is no settings file yet, the defaults for the given labels are
+     * applied and saved as revision 1. A file that isn't valid JSON is first
+     * renamed to settings.json.bad-TIME so it can be recovered by hand. If the
+     * file exists but can't be read (permissions, locked by another program),
+     * the defaults are used without saving anything, so the file is never
+     * overwritten; saving starts again once the watcher reloads it.
+     *
+     * @param allLabels All labels known to the model (for defaults)
+     */
+    public static synchronized void load(String[] allLabels) {
+        dir = AppConfig.getDataDirectory();
+        file = dir.resolve(FILE_NAME);
+        AppConfig.registerLabels(allLabels);
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            System.out.println("[Settings] No saved settings, using defaults");
+            AppConfig.applyDefaults(allLabels);
+            saveNow();
+            return;
+        } catch (IOException e) {
+            System.err.println("[Settings] Could not read " + file + ": " + e.getMessage()
+                    + "; using defaults, not saving");
+            useDefaultsWithoutSaving(allLabels);
+            return;
+        }
+
+        try {
+            apply(parse(bytes));
+            fileDigest = digest(bytes);
+            System.out.println("[Settings] Loaded revision " + revision + " from " + file);
+            return;
+        } catch (JSONException e) {
+            System.err.println("[Settings] " + file + " is damaged: " + e.getMessage());
+        }
+
+        Path bad = dir.resolve(FILE_NAME + ".bad-" + System.currentTimeMillis());
+        try {
+            Files.move(file, bad);
+            System.err.println("[Settings] Kept the damaged file as " + bad.getFileName());
+        } catch (IOException e) {
+            System.err.println("[Settings] Could not rename the damaged file: " + e.getMessage()
+                    + "; using defaults, not saving");
+            useDefaultsWithoutSaving(allLabels);
+            return;
+        }
+        AppConfig.applyDefaults(allLabels);
+        saveNow();
+    }
+
+    private static void useDefaultsWithoutSaving(String[] allLabels) {
+        AppConfig.applyDefaults(allLabels);
+        savedModificationCount = AppConfig.getModificationCount();
+        readOnly = true;
+    }
+
+    /**
+     * Start saving changes automatically and watching the file for outside changes.
+     */
+    public static synchronized void start() {
+        if (saver != null || dir == null) {
+            return;
+        }
+
+        saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SettingsStore");
+            t.setDaemon(true);
+            return t;
+        });
+        saver.scheduleWithFixedDelay(SettingsStore::saveIfChanged,
+                SAVE_CHECK_MS, SAVE_CHECK_MS, TimeUnit.MILLISECONDS);
+
+        try {
+            Files.createDirectories(dir);
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watchThread = new Thread(SettingsStore::watchLoop, "SettingsWatcher");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        } catch (IOException e) {
+            System.err.println("[Settings] Hot reload disabled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Register code to run after settings were reloaded from disk.
+     * Listeners run on the watcher thread.
+     *
+     * @param listener Callback
+     */
+    public static void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Get the revision of the settings currently in use.
+     *
+     * @return Revision number (0 if nothing was loaded or saved yet)
+     */
+    public static synchronized long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Save any pending changes and stop the background threads.
+     */
+    public static synchronized void close() {
+        saveIfChanged();
+        if (saver != null) {
+            saver.shutdownNow();
+            saver = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+            watchService = null;
+        }
+    }
+
+    // ============ SAVING ============
+
+    private static synchronized void saveIfChanged() {
+        if (file != null && AppConfig.getModificationCount() != savedModificationCount) {
+            saveNow();
+        }
+    }
+
+    /**
+     * Write the current settings as a new revision (temp file + atomic rename).
+     */
+    public static synchronized void saveNow() {
+        if (file == null || readOnly) {
+            return;
+        }
+
+        long modCount = AppConfig.getModificationCount();
+        long newRevision = revision + 1;
+
+        JSONObject json = AppConfig.toJson();
+        json.put("schema", SCHEMA_VERSION);
+        json.put("revision", newRevision);
+        json.put("savedAt", System.currentTimeMillis());
+        byte[] bytes = json.toString(2).getBytes(StandardCharsets.UTF_8);
+
+        try {
+            Files.createDirectories(dir);
+            Path tmp = dir.resolve(FILE_NAME + ".tmp");
+            writeSynced(tmp, bytes);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            revision = newRevision;
+            savedModificationCount = modCount;
+            fileDigest = digest(bytes);
+            writeSnapshot(newRevision, bytes);
+        } catch (IOException e) {
+            System.err.println("[Settings] Could not save: " + e.getMessage());
+        }
+    }
+
+    private static void writeSynced(Path path, byte[] bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+    }
+
+    /**
+     * Keep a copy of this revision and delete the oldest copies.
+     */
+    private static void writeSnapshot(long rev, byte[] bytes) {
+        Path historyDir = dir.resolve(HISTORY_DIR);
+        try {
+            Files.createDirectories(historyDir);
+            Files.write(historyDir.resolve(String.format("settings-%08d.json", rev)), bytes);
+
+            List<Path> snapshots = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(historyDir, "settings-*.json")) {
+                for (Path p : ds) {
+                    snapshots.add(p);
+                }
+            }
+            snapshots.sort(null); // zero-padded names sort by revision
+            for (int i = 0; i < snapshots.size() - KEEP_SNAPSHOTS; i++) {
+                Files.deleteIfExists(snapshots.get(i));
+            }
+        } catch (IOException e) {
+            System.err.println("[Settings] Could not write snapshot: " + e.getMessage());
+        }
+    }
+
+    // ============ LOADING ============
+
+    private static JSONObject parse(byte[] bytes) {
+        return new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JVM has SHA-256
+        }
+    }
+
+    private static void apply(JSONObject json) {
+        int schema = json.optInt("schema", SCHEMA_VERSION);
+        if (schema > SCHEMA_VERSION) {
+            System.err.println("[Settings] File uses newer schema " + schema
+                    + "; unknown fields are ignored");
+        }
+        AppConfig.loadJson(json);
+        revision = json.optLong("revision", revision);
+        savedModificationCount = AppConfig.getModificationCount();
+    }
+
+    /**
+     * Main loop of the watcher thread.
+     */
+    private static void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean settingsChanged = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                Object ctx = event.context();
+                if (ctx instanceof Path && FILE_NAME.equals(ctx.toString())) {
+                    settingsChanged = true;
+                }
+            }
+            key.reset();
+
+            if (settingsChanged) {
+                reloadFromDisk();
+            }
+        }
+    }
+
+    /**
+     * Reload the file if its contents differ from what we last wrote or read.
+     */
+    private static void reloadFromDisk() {
+        synchronized (SettingsStore.class) {
+            try {
+                byte[] bytes = Files.readAllBytes(file);
+                byte[] d = digest(bytes);
+                if (Arrays.equals(d, fileDigest)) {
+                    return; // Our own save, or touched without a change
+                }
+                apply(parse(bytes));
+                fileDigest = d;
+                readOnly = false;
+                System.out.println("[Settings] Reloaded revision " + revision);
+            } catch (IOException | JSONException e) {
+                // Half-written by a non-atomic writer; the next event will retry
+                return;
+            }
+        }
+
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                System.err.println("[Settings] Reload listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
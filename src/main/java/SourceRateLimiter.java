@@ -0,0 +1,174 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A token bucket per sender, so one misbehaving computer (or a broadcast
+ * storm) can't make every machine on the network pop notifications.
+ *
+ * Each source may send a burst of `burst` datagrams and then `ratePerSecond`
+ * per second. Datagrams over budget are dropped before they are decoded.
+ * Sources are keyed by the IP address the operating system reports (for
+ * relayed datagrams, the one the hub saw), never by the node id inside the
+ * packet: a storm that changes its id in every packet would otherwise get
+ * a fresh bucket each time. The node id is only shown in reports.
+ *
+ * Buckets live in plain arrays with open addressing (no objects per
+ * source). When the table is full, the bucket idle for the longest time in
+ * the probe range is reused. Dropped datagrams are counted per source so
+ * the worst offenders can be reported.
+ */
+public final class SourceRateLimiter {
+
+    // Probe this many slots before reusing one
+    private static final int MAX_PROBE = 16;
+    // Token amounts are kept in thousandths of a datagram
+    private static final long MILLI = 1000;
+    // Log a throttled source at most this often
+    private static final long LOG_INTERVAL_NANOS = 60_000_000_000L;
+
+    private final long[] keys; // 0 = empty
+    private final long[] tokens; // thousandths of a datagram
+    private final long[] lastRefill; // System.nanoTime()
+    private final long[] dropped;
+    private final long[] lastLogged;
+    private final String[] labels; // how to name a source in reports
+    private final int mask;
+    private final long ratePerSecond;
+    private final long burst;
+
+    private long throttledSources; // sources that went over budget at least once
+
+    /**
+     * @param capacity      Number of sources to track (rounded up to a power of two)
+     * @param ratePerSecond Datagrams per second each source may send
+     * @param burst         Datagrams a quiet source may send at once
+     */
+    public SourceRateLimiter(int capacity, int ratePerSecond, int burst) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        keys = new long[size];
+        tokens = new long[size];
+        lastRefill = new long[size];
+        dropped = new long[size];
+        lastLogged = new long[size];
+        labels = new String[size];
+        mask = size - 1;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst * MILLI;
+    }
+
+    /**
+     * Take one datagram from a source's budget.
+     *
+     * @param from     Sender's address as reported by the socket (null if unknown)
+     * @param node     Node id in the datagram, for reports only (0 if none)
+     * @param nowNanos System.nanoTime()
+     * @return False if the source is over budget (drop the datagram)
+     */
+    public synchronized boolean allow(InetSocketAddress from, long node, long nowNanos) {
+        InetAddress address = from != null ? from.getAddress() : null;
+        long key = address != null ? addressKey(address) : ADDRESS_TAG;
+        int s = slotFor(key, address, node, nowNanos);
+        long elapsed = nowNanos - lastRefill[s];
+        if (elapsed > 0) {
+            // Elapsed time is capped so the multiplication can't overflow
+            long add = Math.min(elapsed, 3_600_000_000_000L) * ratePerSecond / 1_000_000;
+            tokens[s] = Math.min(burst, tokens[s] + add);
+            lastRefill[s] = nowNanos;
+        }
+        if (tokens[s] >= MILLI) {
+            tokens[s] -= MILLI;
+            return true;
+        }
+        if (dropped[s]++ == 0) {
+            throttledSources++;
+        }
+        if (nowNanos - lastLogged[s] >= LOG_INTERVAL_NANOS || lastLogged[s] == 0) {
+            lastLogged[s] = nowNanos;
+            System.err.println("[Listener] Throttling " + labels[s] + ": over " + ratePerSecond
+                    + " datagrams/s (" + dropped[s] + " dropped so far)");
+        }
+        return false;
+    }
+
+    private int slotFor(long key, InetAddress address, long node, long nowNanos) {
+        int home = (int) (mix(key) & mask);
+        int oldest = home;
+        for (int i = 0; i < MAX_PROBE; i++) {
+            int s = (home + i) & mask;
+            if (keys[s] == key) {
+                return s;
+            }
+            if (keys[s] == 0) {
+                oldest = s;
+                break;
+            }
+            if (lastRefill[s] - lastRefill[oldest] < 0) {
+                oldest = s;
+            }
+        }
+        // New source: starts with a full bucket
+        keys[oldest] = key;
+        tokens[oldest] = burst;
+        lastRefill[oldest] = nowNanos;
+        dropped[oldest] = 0;
+        lastLogged[oldest] = 0;
+        String name = address != null ? address.getHostAddress() : "?";
+        labels[oldest] = node != 0 ? name + " (node " + NodeIdentity.toHex(node) + ")" : name;
+        return oldest;
+    }
+
+    // Top 32 bits of every key, so a key is never 0 (0 = empty slot)
+    private static final long ADDRESS_TAG = 0x4144445200000000L;
+
+    /**
+     * Make the key for a sender's IP address (no allocation: for IPv4 the
+     * hash code is the address itself).
+     *
+     * @param address Sender's address
+     * @return Key (never 0)
+     */
+    private static long addressKey(InetAddress address) {
+        return ADDRESS_TAG | (address.hashCode() & 0xFFFFFFFFL);
+    }
+
+    // ============ STATUS ============
+
+    /**
+     * @return Number of sources that went over budget at least once
+     */
+    public synchronized long getThrottledSources() {
+        return throttledSources;
+    }
+
+    /**
+     * @param max Most sources to list
+     * @return The sources with the most dropped datagrams, e.g. "10.0.0.7 (node 3fa2...) (1200)"
+     */
+    public synchronized String describeOffenders(int max) {
+        List<Integer> slots = new ArrayList<>();
+        for (int s = 0; s <= mask; s++) {
+            if (keys[s] != 0 && dropped[s] > 0) {
+                slots.add(s);
+            }
+        }
+        slots.sort((a, b) -> Long.compare(dropped[b], dropped[a]));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Math.min(max, slots.size()); i++) {
+            int s = slots.get(i);
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(labels[s]).append(" (").append(dropped[s]).append(')');
+        }
+        return sb.toString();
+    }
+
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        return x;
+    }
+}
@@ -0,0 +1,90 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A synthesized utterance: raw PCM samples plus their audio format.
+ * Immutable, so it can be cached and played from any thread.
+ */
+public final class SpeechAudio {
+
+    private final AudioFormat format;
+    private final byte[] pcm;
+
+    /**
+     * Create speech audio from raw PCM.
+     *
+     * @param format PCM format
+     * @param pcm    PCM bytes (not copied)
+     */
+    public SpeechAudio(AudioFormat format, byte[] pcm) {
+        this.format = format;
+        this.pcm = pcm;
+    }
+
+    /**
+     * Decode a WAV/AIFF file produced by a TTS engine.
+     *
+     * @param file Audio file
+     * @return Decoded audio
+     * @throws IOException If the file can't be read or decoded
+     */
+    public static SpeechAudio fromFile(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return fromStream(in);
+        }
+    }
+
+    /**
+     * Decode WAV bytes produced by a TTS engine.
+     *
+     * @param wav WAV file contents
+     * @return Decoded audio
+     * @throws IOException If the bytes can't be decoded
+     */
+    public static SpeechAudio fromWavBytes(byte[] wav) throws IOException {
+        return fromStream(new ByteArrayInputStream(wav));
+    }
+
+    private static SpeechAudio fromStream(InputStream in) throws IOException {
+        try (AudioInputStream ais = AudioSystem.getAudioInputStream(in)) {
+            return new SpeechAudio(ais.getFormat(), ais.readAllBytes());
+        } catch (UnsupportedAudioFileException e) {
+            throw new IOException("Unsupported TTS audio: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the PCM format.
+     *
+     * @return Audio format
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Get the PCM bytes. Callers must not modify the array.
+     *
+     * @return PCM data
+     */
+    public byte[] getPcm() {
+        return pcm;
+    }
+
+    /**
+     * Get the memory used by the samples (for cache accounting).
+     *
+     * @return Size in bytes
+     */
+    public int sizeBytes() {
+        return pcm.length;
+    }
+}
@@ -0,0 +1,294 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Speaks caption replies out loud.
+ *
+ * - One TtsEngine synthesizes audio on a single background thread.
+ * - Synthesized audio is kept in an LRU cache keyed by voice + text, so
+ *   common replies ("Yes", "One moment please") play instantly.
+ * - One playback thread owns a long-lived SourceDataLine. A new request
+ *   stops the utterance that is currently playing.
+ */
+public final class SpeechService implements AutoCloseable {
+
+    // Replies that are synthesized ahead of time
+    public static final List<String> COMMON_REPLIES = List.of(
+            "Yes", "No", "One moment please", "Thank you", "Please repeat that");
+
+    private static final long MAX_CACHE_BYTES = 16L * 1024 * 1024;
+    private static final int CHUNK_BYTES = 2048;
+
+    // Marker that tells the playback thread to just stop
+    private static final SpeechAudio STOP = new SpeechAudio(null, new byte[0]);
+
+    private final TtsEngine engine;
+
+    private final LinkedHashMap<String, SpeechAudio> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cacheBytes;
+    private long cacheHits;
+    private long cacheMisses;
+    private long prewarmed;
+
+    private final ExecutorService synthExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "TTS");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Only the newest request is allowed to start playing
+    private final AtomicLong requestCounter = new AtomicLong();
+
+    private final AtomicReference<SpeechAudio> pending = new AtomicReference<>();
+    private final Thread playbackThread;
+    private volatile boolean running = true;
+
+    /**
+     * Create a speech service on top of an engine.
+     *
+     * @param engine Engine used for cache misses
+     */
+    public SpeechService(TtsEngine engine) {
+        this.engine = engine;
+        playbackThread = new Thread(this::playbackLoop, "TTS-Playback");
+        playbackThread.setDaemon(true);
+        playbackThread.start();
+    }
+
+    /**
+     * Pick the best engine for this operating system.
+     * macOS uses "say"; Linux uses a persistent Piper process if a voice
+     * model is installed, otherwise espeak-ng.
+     *
+     * @return New engine
+     */
+    public static TtsEngine createDefaultEngine() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        if (os.contains("mac")) {
+            return new SayTtsEngine();
+        }
+
+        Path model = PiperTtsEngine.findDefaultModel();
+        if (model != null) {
+            try {
+                return new PiperTtsEngine(model);
+            } catch (IOException e) {
+                System.err.println("[TTS] Piper unavailable: " + e.getMessage());
+            }
+        }
+        return new EspeakTtsEngine();
+    }
+
+    /**
+     * Speak text with the configured voice, interrupting anything already playing.
+     *
+     * @param text Text to speak
+     */
+    public void speak(String text) {
+        if (text == null || text.isBlank()) {
+            return;
+        }
+        String voice = AppConfig.current().getTtsVoice();
+        String key = cacheKey(text, voice);
+        long request = requestCounter.incrementAndGet();
+
+        SpeechAudio cached = getCached(key);
+        if (cached != null) {
+            play(cached);
+            return;
+        }
+
+        // Stop the previous utterance right away, like killing the old "say"
+        play(STOP);
+        synthExecutor.submit(() -> {
+            SpeechAudio audio = synthesizeAndCache(key, text, voice);
+            if (audio != null && request == requestCounter.get()) {
+                play(audio);
+            }
+        });
+    }
+
+    /**
+     * Synthesize phrases in the background so they play instantly later.
+     * Not counted as cache hits or misses (those are for real requests).
+     *
+     * @param phrases Phrases to prepare
+     */
+    public void prewarm(List<String> phrases) {
+        String voice = AppConfig.current().getTtsVoice();
+        for (String text : phrases) {
+            String key = cacheKey(text, voice);
+            synthExecutor.submit(() -> {
+                if (!isCached(key) && synthesizeAndCache(key, text, voice) != null) {
+                    countPrewarmed();
+                }
+            });
+        }
+    }
+
+    /**
+     * Get a one-line summary of the cache statistics for logs.
+     *
+     * @return Statistics summary
+     */
+    public synchronized String getStatsSummary() {
+        return String.format(Locale.ROOT, "TTS (%s): %d cached, %d KB, %d hits, %d misses, %d prewarmed",
+                engine.getName(), cache.size(), cacheBytes / 1024, cacheHits, cacheMisses, prewarmed);
+    }
+
+    // ============ CACHE ============
+
+    private static String cacheKey(String text, String voice) {
+        return (voice == null ? "" : voice) + '\n' + text.trim();
+    }
+
+    private synchronized SpeechAudio getCached(String key) {
+        SpeechAudio audio = cache.get(key);
+        if (audio != null) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+        return audio;
+    }
+
+    /**
+     * Check for an entry without counting it or changing the LRU order.
+     */
+    private synchronized boolean isCached(String key) {
+        return cache.containsKey(key);
+    }
+
+    private synchronized void countPrewarmed() {
+        prewarmed++;
+    }
+
+    private synchronized void putCached(String key, SpeechAudio audio) {
+        SpeechAudio old = cache.put(key, audio);
+        if (old != null) {
+            cacheBytes -= old.sizeBytes();
+        }
+        cacheBytes += audio.sizeBytes();
+
+        // Evict least recently used entries until we fit again
+        Iterator<Map.Entry<String, SpeechAudio>> it = cache.entrySet().iterator();
+        while (cacheBytes > MAX_CACHE_BYTES && it.hasNext()) {
+            Map.Entry<String, SpeechAudio> eldest = it.next();
+            if (eldest.getValue() == audio) {
+                break; // Never evict the entry we just added
+            }
+            cacheBytes -= eldest.getValue().sizeBytes();
+            it.remove();
+        }
+    }
+
+    /**
+     * Run the engine for one utterance (synthesis thread only).
+     *
+     * @return Audio, or null if the engine failed
+     */
+    private SpeechAudio synthesizeAndCache(String key, String text, String voice) {
+        try {
+            SpeechAudio audio = engine.synthesize(text.trim(), voice);
+            putCached(key, audio);
+            return audio;
+        } catch (IOException e) {
+            System.err.println("[TTS] " + engine.getName() + " failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // ============ PLAYBACK ============
+
+    private void play(SpeechAudio audio) {
+        pending.set(audio);
+        LockSupport.unpark(playbackThread);
+    }
+
+    /**
+     * Main loop of the playback thread.
+     */
+    private void playbackLoop() {
+        SourceDataLine line = null;
+        AudioFormat lineFormat = null;
+
+        while (running) {
+            SpeechAudio audio = pending.getAndSet(null);
+            if (audio == null) {
+                LockSupport.park();
+                continue;
+            }
+            if (audio == STOP) {
+                if (line != null) {
+                    line.flush();
+                }
+                continue;
+            }
+
+            // Reopen the line only if the engine produced a different format
+            if (line == null || !audio.getFormat().matches(lineFormat)) {
+                if (line != null) {
+                    line.close();
+                }
+                line = openLine(audio.getFormat());
+                lineFormat = audio.getFormat();
+                if (line == null) {
+                    continue;
+                }
+            }
+
+            byte[] pcm = audio.getPcm();
+            int frame = Math.max(1, lineFormat.getFrameSize());
+            int chunk = CHUNK_BYTES - (CHUNK_BYTES % frame);
+            int off = 0;
+            while (off < pcm.length && running) {
+                if (pending.get() != null) {
+                    line.flush(); // Interrupted by a newer request
+                    break;
+                }
+                int n = Math.min(chunk, pcm.length - off);
+                line.write(pcm, off, n);
+                off += n;
+            }
+        }
+
+        if (line != null) {
+            line.close();
+        }
+    }
+
+    private static SourceDataLine openLine(AudioFormat fmt) {
+        try {
+            DataLine.Info info = new DataLine.Info(SourceDataLine.class, fmt);
+            SourceDataLine line = (SourceDataLine) AudioSystem.getLine(info);
+            line.open(fmt);
+            line.start();
+            return line;
+        } catch (Exception e) {
+            System.err.println("[TTS] No audio output available: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(playbackThread);
+        synthExecutor.shutdownNow();
+        engine.close();
+    }
+}
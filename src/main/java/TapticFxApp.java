@@ -1,4 +1,5 @@
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -25,11 +26,8 @@ public class TapticFxApp extends Application {
     private Label bubbleLabel;
     private Image appIcon;
 
-    private YamnetMic yamnetMic;
-    private BroadcastListener broadcastListener;
-    private BroadcastSender broadcastSender;
-
-    private static final int PORT = 50000;
+    // Audio, rules, network and storage (shared with HeadlessMain)
+    private TapticServices services;
 
     public TapticFxApp() {
         INSTANCE = this;
@@ -43,6 +41,11 @@ public class TapticFxApp extends Application {
     public void start(Stage stage) throws Exception {
         this.primaryStage = stage;
 
+        // ----- SETTINGS (one read; hot reload when the file is replaced) -----
+        SettingsStore.load(YamnetMic.getLabels());
+        SettingsStore.addReloadListener(() -> Platform.runLater(this::onSettingsReloaded));
+        SettingsStore.start();
+
         // ----- MAIN VIEW -----
         URL mainFxml = findResource(
                 "/fxml/MainView.fxml",
@@ -124,33 +127,19 @@ public class TapticFxApp extends Application {
     }
 
     private void startAudioAndNetwork() {
-        // Broadcast sender / listener
-        try {
-            broadcastSender = new BroadcastSender(PORT);
-            broadcastListener = new BroadcastListener(PORT);
-            Thread listenerThread = new Thread(broadcastListener, "BroadcastListener");
-            listenerThread.setDaemon(true);
-            listenerThread.start();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Interpreter hooks: controller + broadcast sender + labels
-        try {
-            yamnetMic = new YamnetMic();
-            Interpreter.init(broadcastSender, mainController, YamnetMic.getLabels());
+        NotificationSoundPlayer.prepare();
 
-            Thread micThread = new Thread(yamnetMic, "YamnetMic");
-            micThread.setDaemon(true);
-            micThread.start();
+        services = TapticServices.start(mainController);
 
-            if (mainController != null) {
-                mainController.setStatusText("Listening… say something loud near the mic.");
+        if (mainController != null) {
+            DetectionJournal journal = services.getJournal();
+            if (journal != null) {
+                mainController.setCalibrator(services.getCalibrator());
+                mainController.showJournalHistory(journal.latest(100));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            if (mainController != null) {
-                mainController.showMicError(e.getMessage());
+            mainController.setPeers(services.getPeers());
+            if (services.isListening()) {
+                mainController.setStatusText("Listening… say something loud near the mic.");
             }
         }
     }
@@ -203,6 +192,14 @@ public class TapticFxApp extends Application {
         }
     }
 
+    // Settings file changed on disk: refresh whatever UI is showing them
+    private void onSettingsReloaded() {
+        LabelSettingsModel.getInstance().reloadAll();
+        if (settingsController != null) {
+            settingsController.reloadFromConfig();
+        }
+    }
+
     public void showMainView() {
         if (mainScene != null) {
             primaryStage.setScene(mainScene);
@@ -228,14 +225,19 @@ public class TapticFxApp extends Application {
     public void stop() throws Exception {
         super.stop();
         // Clean up audio + network
-        if (yamnetMic != null) {
-            yamnetMic.stopListening();
-            yamnetMic.close();
+        if (mainController != null) {
+            mainController.setCalibrator(null);
+            mainController.setPeers(null);
+        }
+        if (services != null) {
+            services.close();
         }
-        if (broadcastListener != null) {
-            broadcastListener.stopListening();
-            broadcastListener.close();
+        if (mainController != null) {
+            mainController.shutdown();
         }
+        SettingsStore.close();
+        NotificationDispatcher.close();
+        System.out.println("[Notify] " + NotificationDispatcher.getStatsSummary());
         hideBubble();
     }
 
@@ -0,0 +1,230 @@
+import java.io.IOException;
+
+/**
+ * Everything that listens, decides and stores, without any user interface:
+ * microphone + model, Interpreter rules, LAN broadcast, detection journal,
+ * feedback calibration, audio clips, score history and session recording.
+ *
+ * TapticFxApp starts it with the main window as the DetectionSink;
+ * HeadlessMain starts it with a JSON Lines sink. Settings must already be
+ * loaded (SettingsStore.load) before start() is called.
+ */
+public final class TapticServices implements AutoCloseable {
+
+    public static final int PORT = 50000;
+
+    private YamnetMic yamnetMic;
+    private BroadcastListener broadcastListener;
+    private BroadcastSender broadcastSender;
+    private RelayHub relayHub;
+    private RelayClient relayClient;
+    private DetectionJournal journal;
+    private ThresholdCalibrator calibrator;
+    private ClipRecorder clipRecorder;
+    private TimeSeriesStore timeSeries;
+    private SessionRecorder sessionRecorder;
+
+    private TapticServices() {
+    }
+
+    /**
+     * Start all services. Parts that fail to start (no network, no mic, no
+     * disk) are logged and left out; the rest keeps running.
+     *
+     * @param sink Where detections go
+     * @return Running services (close() to stop)
+     */
+    public static TapticServices start(DetectionSink sink) {
+        TapticServices s = new TapticServices();
+        s.startNetwork();
+        s.startJournal();
+        s.startAudio(sink);
+        if (s.broadcastSender != null) {
+            // Announced in heartbeats, so other computers can see what this one covers
+            s.broadcastSender.setCapabilities((s.yamnetMic != null ? WireEvent.CAP_MICROPHONE : 0)
+                    | (s.journal != null ? WireEvent.CAP_JOURNAL : 0));
+        }
+        return s;
+    }
+
+    private void startNetwork() {
+        // Broadcast sender / listener
+        try {
+            // Same id across restarts; peers and this listener recognize our messages by it
+            long nodeId = NodeIdentity.load(AppConfig.getDataDirectory().resolve(NodeIdentity.FILE_NAME));
+            BroadcastTransport transport = BroadcastTransport.fromProperties(PORT);
+            System.out.println("[Transport] Using " + transport);
+            broadcastSender = new BroadcastSender(transport, nodeId);
+            broadcastListener = new BroadcastListener(transport, nodeId);
+            broadcastListener.setAckReceiver(broadcastSender);
+            broadcastSender.setPeers(broadcastListener.getPeers());
+            Thread listenerThread = new Thread(broadcastListener, "BroadcastListener");
+            listenerThread.setDaemon(true);
+            listenerThread.start();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        // Relay hub for other subnets (-Dtaptic.relayHub=PORT), and the
+        // connection to one (-Dtaptic.relay=HOST:PORT, or our own hub)
+        try {
+            relayHub = RelayHub.startFromProperties();
+        } catch (IOException e) {
+            System.err.println("[Relay] Hub disabled: " + e.getMessage());
+        }
+        if (broadcastListener != null) {
+            relayClient = RelayClient.startFromProperties(broadcastListener, relayHub);
+            if (relayClient != null) {
+                broadcastListener.setRelay(relayClient);
+                broadcastSender.setRelay(relayClient);
+            }
+        }
+    }
+
+    private void startJournal() {
+        // Detection journal: every notification is kept on disk
+        try {
+            journal = DetectionJournal.open(AppConfig.getDataDirectory().resolve("journal"));
+            Interpreter.setJournal(journal);
+            // Per-sound thresholds learned from correct / wrong feedback
+            calibrator = new ThresholdCalibrator(journal);
+            calibrator.start();
+        } catch (IOException e) {
+            System.err.println("[Journal] Disabled: " + e.getMessage());
+        }
+    }
+
+    private void startAudio(DetectionSink sink) {
+        // Interpreter hooks: sink + broadcast sender + labels
+        try {
+            yamnetMic = new YamnetMic();
+            Interpreter.init(broadcastSender, sink, YamnetMic.getLabels());
+
+            // Audio clips around notifications (needs journal event ids)
+            if (journal != null) {
+                try {
+                    clipRecorder = ClipRecorder.createDefault();
+                    yamnetMic.setClipRecorder(clipRecorder);
+                    Interpreter.setClipRecorder(clipRecorder);
+                } catch (IOException e) {
+                    System.err.println("[Clips] Disabled: " + e.getMessage());
+                }
+            }
+
+            // Per-class score history (1 s / 1 min / 1 h) for charts
+            try {
+                timeSeries = new TimeSeriesStore(
+                        AppConfig.getDataDirectory().resolve("timeseries"),
+                        YamnetMic.getLabels().length);
+                yamnetMic.setTimeSeries(timeSeries);
+            } catch (IOException e) {
+                System.err.println("[TimeSeries] Disabled: " + e.getMessage());
+            }
+
+            // Optional session recording for reproducing alerts (-Dtaptic.recordSession=true)
+            try {
+                sessionRecorder = SessionRecorder.createFromProperties(YamnetMic.getLabels().length);
+                if (sessionRecorder != null) {
+                    yamnetMic.setSessionRecorder(sessionRecorder);
+                    System.out.println("[Session] Recording to " + sessionRecorder.getFile());
+                }
+            } catch (IOException e) {
+                System.err.println("[Session] Disabled: " + e.getMessage());
+            }
+
+            Thread micThread = new Thread(yamnetMic, "YamnetMic");
+            micThread.setDaemon(true);
+            micThread.start();
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (sink != null) {
+                sink.showMicError(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return True if the microphone pipeline was started
+     */
+    public boolean isListening() {
+        return yamnetMic != null;
+    }
+
+    /**
+     * @return Computers heard from on the network, or null without a network
+     */
+    public PeerTable getPeers() {
+        return broadcastListener != null ? broadcastListener.getPeers() : null;
+    }
+
+    /**
+     * @return Open journal, or null if it couldn't be opened
+     */
+    public DetectionJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return Feedback calibrator, or null without a journal
+     */
+    public ThresholdCalibrator getCalibrator() {
+        return calibrator;
+    }
+
+    /**
+     * Stop listening and close everything, newest first.
+     */
+    @Override
+    public void close() {
+        if (yamnetMic != null) {
+            yamnetMic.stopListening();
+            yamnetMic.close();
+        }
+        if (relayClient != null) {
+            broadcastSender.setRelay(null);
+            broadcastListener.setRelay(null);
+            relayClient.close();
+            System.out.println("[Relay] " + relayClient.getStatsSummary());
+        }
+        if (broadcastListener != null) {
+            broadcastListener.stopListening();
+            broadcastListener.close();
+            System.out.println("[Listener] " + broadcastListener.getStatsSummary());
+            String peers = broadcastListener.getPeers().describe(System.nanoTime());
+            if (!peers.isEmpty()) {
+                System.out.print("[Peers] Present at shutdown:" + System.lineSeparator() + peers);
+            }
+        }
+        if (broadcastSender != null) {
+            broadcastSender.close();
+            System.out.println("[Broadcast] " + broadcastSender.getStatsSummary());
+        }
+        if (relayHub != null) {
+            relayHub.close();
+            System.out.println("[Relay] Hub: " + relayHub.getStatsSummary());
+        }
+        if (sessionRecorder != null) {
+            yamnetMic.setSessionRecorder(null);
+            sessionRecorder.close();
+            System.out.println("[Session] " + sessionRecorder.getStatsSummary());
+        }
+        if (timeSeries != null) {
+            yamnetMic.setTimeSeries(null);
+            timeSeries.close();
+        }
+        if (clipRecorder != null) {
+            Interpreter.setClipRecorder(null);
+            clipRecorder.close();
+            System.out.println("[Clips] " + clipRecorder.getStatsSummary());
+        }
+        if (calibrator != null) {
+            calibrator.close();
+        }
+        if (journal != null) {
+            Interpreter.setJournal(null);
+            journal.close();
+        }
+        // Ends the notification helper process (no-op if nothing was posted)
+        NotificationDispatcher.close();
+    }
+}
@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Learns per-sound notify thresholds from the user's "correct" / "wrong"
+ * feedback in the history drawer.
+ *
+ * Verdicts are stored in the DetectionJournal together with the event. A
+ * background job reads all verdicts, and for every sound with enough of them
+ * picks the threshold that best separates correct from wrong notifications.
+ * Missing a real sound counts more than a false alert (much more for
+ * emergency sounds). The thresholds are published in one settings snapshot,
+ * so the Interpreter starts using them on its next frame, with no extra
+ * per-frame work.
+ *
+ * Feedback only exists for sounds that did notify, so calibration can only
+ * make a sound stricter than the global threshold, never looser.
+ */
+public final class ThresholdCalibrator implements AutoCloseable {
+
+    // A sound needs this many verdicts (with at least one "wrong") to be calibrated
+    static final int MIN_VERDICTS = 5;
+    // How much worse a missed real sound is than a false alert
+    static final double MISS_COST = 2.0;
+    static final double EMERGENCY_MISS_COST = 10.0;
+
+    private static final long LOOKBACK_MS = TimeUnit.DAYS.toMillis(90);
+    private static final int MAX_VERDICTS = 100_000;
+    // Wait for a burst of clicks to end before recalculating
+    private static final long DEBOUNCE_MS = 2000;
+
+    private final DetectionJournal journal;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> pending; // guarded by this
+
+    /**
+     * @param journal Journal holding the events and verdicts
+     */
+    public ThresholdCalibrator(DetectionJournal journal) {
+        this.journal = journal;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Calibration");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Calculate thresholds from the verdicts already in the journal.
+     * Called once at startup.
+     */
+    public void start() {
+        executor.execute(this::recalibrate);
+    }
+
+    /**
+     * Store a verdict for an event and recalculate soon.
+     * Safe to call from the FX thread (the disk write happens in the background).
+     *
+     * @param eventId Journal event id
+     * @param verdict DetectionEvent.FLAG_CORRECT, FLAG_WRONG, or 0 to clear
+     */
+    public void markVerdict(long eventId, int verdict) {
+        executor.execute(() -> {
+            if (!journal.setVerdict(eventId, verdict)) {
+                System.err.println("[Calibration] Event " + eventId + " is no longer in the journal");
+            }
+        });
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            pending = executor.schedule(this::recalibrate, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // ============ BACKGROUND JOB ============
+
+    private void recalibrate() {
+        long started = System.nanoTime();
+        long now = System.currentTimeMillis();
+        List<DetectionEvent> events = journal.queryVerdicts(now - LOOKBACK_MS, Long.MAX_VALUE,
+                DetectionJournal.LOCAL_HOST, MAX_VERDICTS);
+
+        // Group scores by sound
+        Map<String, List<DetectionEvent>> byLabel = new HashMap<>();
+        for (DetectionEvent e : events) {
+            byLabel.computeIfAbsent(e.getLabel(), k -> new ArrayList<>()).add(e);
+        }
+
+        ConfigSnapshot cfg = AppConfig.current();
+        Map<String, Float> thresholds = new HashMap<>();
+        for (Map.Entry<String, List<DetectionEvent>> entry : byLabel.entrySet()) {
+            List<DetectionEvent> list = entry.getValue();
+            float[] scores = new float[list.size()];
+            boolean[] correct = new boolean[list.size()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = list.get(i).getScore();
+                correct[i] = list.get(i).getVerdict() == DetectionEvent.FLAG_CORRECT;
+            }
+            double missCost = cfg.isEmergency(entry.getKey()) ? EMERGENCY_MISS_COST : MISS_COST;
+            float t = fitThreshold(scores, correct, cfg.getNotifyThreshold(), missCost);
+            if (!Float.isNaN(t)) {
+                thresholds.put(entry.getKey(), t);
+            }
+        }
+
+        if (!thresholds.equals(cfg.getCalibratedThresholds())) {
+            AppConfig.setCalibratedThresholds(thresholds);
+        }
+        System.out.printf("[Calibration] %d sounds calibrated from %d verdicts in %d ms%n",
+                thresholds.size(), events.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Find the threshold with the lowest cost for one sound:
+     * (wrong alerts still above it) + missCost * (correct alerts now below it).
+     *
+     * @param scores          Scores of the judged notifications
+     * @param correct         Verdict per notification
+     * @param globalThreshold Threshold in force (the lowest allowed result)
+     * @param missCost        Cost of losing one correct notification
+     * @return Best threshold, or NaN if there isn't enough feedback to change anything
+     */
+    static float fitThreshold(float[] scores, boolean[] correct, double globalThreshold, double missCost) {
+        int n = scores.length;
+        int wrong = 0;
+        for (boolean c : correct) {
+            if (!c) {
+                wrong++;
+            }
+        }
+        if (n < MIN_VERDICTS || wrong == 0) {
+            return Float.NaN;
+        }
+
+        // Sort by score (index sort keeps the verdicts attached)
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(scores[a], scores[b]));
+
+        // Threshold at the global value: nothing is cut
+        double bestCost = wrong;
+        float best = (float) globalThreshold;
+        int correctBelow = 0;
+        int wrongBelow = 0;
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            if (correct[i]) {
+                correctBelow++;
+            } else {
+                wrongBelow++;
+            }
+            // Candidate: just above this score (skip ties, they move together)
+            if (k + 1 < n && scores[order[k + 1]] == scores[i]) {
+                continue;
+            }
+            float candidate = Math.nextUp(scores[i]);
+            if (candidate <= globalThreshold) {
+                continue;
+            }
+            double cost = (wrong - wrongBelow) + missCost * correctBelow;
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = candidate;
+            }
+        }
+        return best > globalThreshold ? best : Float.NaN;
+    }
+
+    /**
+     * Stop the background job.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
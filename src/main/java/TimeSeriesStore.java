@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps how often and how loudly every sound class occurred, for charts.
+ *
+ * Every model frame (about two per second) is added to three rolling
+ * resolutions: 1 second, 1 minute and 1 hour. Each resolution is a fixed
+ * ring of buckets in a memory-mapped file, so memory and disk use never grow.
+ * A bucket holds, per class, the highest score and the sum of scores (for
+ * the mean), plus the RMS sound level.
+ *
+ * The files are accessed through FFM MemorySegments: a frame update is a
+ * few thousand float writes into mapped memory, and a year-long heatmap of
+ * all classes is a straight read of the hourly file.
+ *
+ * One thread writes (the mic thread); charts may read at any time and can
+ * see a bucket that is being updated.
+ */
+public final class TimeSeriesStore implements AutoCloseable {
+
+    /** A rolling resolution: bucket length and how many buckets are kept. */
+    public enum Resolution {
+        SECOND(1000L, 3600, "scores-1s.bin"), // last hour
+        MINUTE(60_000L, 2 * 24 * 60, "scores-1m.bin"), // last two days
+        HOUR(3_600_000L, 366 * 24, "scores-1h.bin"); // last year
+
+        final long millis;
+        final int buckets;
+        final String fileName;
+
+        Resolution(long millis, int buckets, String fileName) {
+            this.millis = millis;
+            this.buckets = buckets;
+            this.fileName = fileName;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public int getBucketCount() {
+            return buckets;
+        }
+    }
+
+    // File header
+    private static final int MAGIC = 0x54505453; // "TPTS"
+    private static final int FORMAT_VERSION = 1;
+    private static final long HEADER_SIZE = 64;
+    private static final long H_MAGIC = 0;
+    private static final long H_VERSION = 4;
+    private static final long H_CLASSES = 8;
+    private static final long H_BUCKETS = 12;
+    private static final long H_MILLIS = 16;
+
+    // Bucket layout: header, then (max, sum) per class
+    private static final long B_INDEX = 0; // long: bucket number since 1970 (0 = empty)
+    private static final long B_FRAMES = 8; // int: frames added
+    private static final long B_RMS_SUM = 12; // float
+    private static final long B_RMS_MAX = 16; // float
+    private static final long B_CLASSES = 24;
+
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+    private static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED;
+
+    private final int classCount;
+    private final long bucketSize;
+    private final Arena arena;
+    private final MemorySegment[] files = new MemorySegment[Resolution.values().length];
+
+    /**
+     * Open (or create) the store.
+     *
+     * @param dir        Folder for the files
+     * @param classCount Number of model classes (scores per frame)
+     * @throws IOException If the files can't be created or mapped
+     */
+    public TimeSeriesStore(Path dir, int classCount) throws IOException {
+        this.classCount = classCount;
+        this.bucketSize = B_CLASSES + 8L * classCount;
+        this.arena = Arena.ofShared();
+
+        Files.createDirectories(dir);
+        try {
+            for (Resolution r : Resolution.values()) {
+                files[r.ordinal()] = map(dir.resolve(r.fileName), r);
+            }
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map one resolution's file, starting it fresh if it doesn't match.
+     */
+    private MemorySegment map(Path file, Resolution r) throws IOException {
+        long size = HEADER_SIZE + bucketSize * r.buckets;
+        boolean fresh = !Files.exists(file) || Files.size(file) != size;
+
+        MemorySegment seg;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (fresh) {
+                ch.truncate(0);
+            }
+            seg = ch.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+        }
+
+        if (!fresh && (seg.get(INT, H_MAGIC) != MAGIC
+                || seg.get(INT, H_VERSION) != FORMAT_VERSION
+                || seg.get(INT, H_CLASSES) != classCount
+                || seg.get(LONG, H_MILLIS) != r.millis)) {
+            System.err.println("[TimeSeries] " + file.getFileName() + " has another layout, starting over");
+            fresh = true;
+        }
+        if (fresh) {
+            seg.fill((byte) 0);
+            seg.set(INT, H_MAGIC, MAGIC);
+            seg.set(INT, H_VERSION, FORMAT_VERSION);
+            seg.set(INT, H_CLASSES, classCount);
+            seg.set(INT, H_BUCKETS, r.buckets);
+            seg.set(LONG, H_MILLIS, r.millis);
+        }
+        return seg;
+    }
+
+    // ============ WRITING ============
+
+    /**
+     * Add one model frame to every resolution.
+     *
+     * @param timeMillis When the frame was heard (epoch milliseconds)
+     * @param scores     Score per class
+     * @param rms        RMS level of the audio window (0.0 to 1.0)
+     */
+    public void record(long timeMillis, float[] scores, double rms) {
+        int n = Math.min(classCount, scores.length);
+        for (Resolution r : Resolution.values()) {
+            MemorySegment seg = files[r.ordinal()];
+            long index = timeMillis / r.millis + 1; // +1 so 0 can mean "empty"
+            long base = bucketOffset(r, index);
+
+            if (seg.get(LONG, base + B_INDEX) != index) {
+                // Bucket still holds an old period: start it over
+                seg.asSlice(base, bucketSize).fill((byte) 0);
+                seg.set(LONG, base + B_INDEX, index);
+            }
+
+            seg.set(INT, base + B_FRAMES, seg.get(INT, base + B_FRAMES) + 1);
+            float level = (float) rms;
+            seg.set(FLOAT, base + B_RMS_SUM, seg.get(FLOAT, base + B_RMS_SUM) + level);
+            if (level > seg.get(FLOAT, base + B_RMS_MAX)) {
+                seg.set(FLOAT, base + B_RMS_MAX, level);
+            }
+
+            long off = base + B_CLASSES;
+            for (int c = 0; c < n; c++, off += 8) {
+                float s = scores[c];
+                if (s > seg.get(FLOAT, off)) {
+                    seg.set(FLOAT, off, s);
+                }
+                seg.set(FLOAT, off + 4, seg.get(FLOAT, off + 4) + s);
+            }
+        }
+    }
+
+    private long bucketOffset(Resolution r, long index) {
+        return HEADER_SIZE + bucketSize * Math.floorMod(index, (long) r.buckets);
+    }
+
+    // ============ QUERIES ============
+
+    /**
+     * Build a heatmap of all classes.
+     * Buckets with no data (or already overwritten) are 0.
+     *
+     * @param r          Resolution to read
+     * @param fromMillis Start time (rounded down to a bucket)
+     * @param buckets    Number of buckets (columns)
+     * @param useMax     True for the highest score, false for the mean score
+     * @return Values as out[classId * buckets + column]
+     */
+    public float[] heatmap(Resolution r, long fromMillis, int buckets, boolean useMax) {
+        float[] out = new float[classCount * buckets];
+        MemorySegment seg = files[r.ordinal()];
+        long first = fromMillis / r.millis + 1;
+        for (int b = 0; b < buckets; b++) {
+            long index = first + b;
+            long base = bucketOffset(r, index);
+            if (seg.get(LONG, base + B_INDEX) != index) {
+                continue;
+            }
+            int frames = seg.get(INT, base + B_FRAMES);
+            long off = base + B_CLASSES + (useMax ? 0 : 4);
+            for (int c = 0; c < classCount; c++, off += 8) {
+                float v = seg.get(FLOAT, off);
+                out[c * buckets + b] = useMax ? v : (frames > 0 ? v / frames : 0f);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Get one class over time.
+     *
+     * @param r          Resolution to read
+     * @param classId    Class id (index in the model's labels)
+     * @param fromMillis Start time
+     * @param buckets    Number of buckets
+     * @param useMax     True for the highest score, false for the mean score
+     * @return One value per bucket (0 where there is no data)
+     */
+    public float[] classSeries(Resolution r, int classId, long fromMillis, int buckets, boolean useMax) {
+        float[] out = new float[buckets];
+        if (classId < 0 || classId >= classCount) {
+            return out;
+        }
+        MemorySegment seg = files[r.ordinal()];
+        long first = fromMillis / r.millis + 1;
+        for (int b = 0; b < buckets; b++) {
+            long index = first + b;
+            long base = bucketOffset(r, index);
+            if (seg.get(LONG, base + B_INDEX) != index) {
+                continue;
+            }
+            long off = base + B_CLASSES + 8L * classId;
+            if (useMax) {
+                out[b] = seg.get(FLOAT, off);
+            } else {
+                int frames = seg.get(INT, base + B_FRAMES);
+                out[b] = frames > 0 ? seg.get(FLOAT, off + 4) / frames : 0f;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Get the sound level over time.
+     *
+     * @param r          Resolution to read
+     * @param fromMillis Start time
+     * @param buckets    Number of buckets
+     * @param useMax     True for the loudest frame, false for the mean
+     * @return RMS level per bucket (0 where there is no data)
+     */
+    public float[] levelSeries(Resolution r, long fromMillis, int buckets, boolean useMax) {
+        float[] out = new float[buckets];
+        MemorySegment seg = files[r.ordinal()];
+        long first = fromMillis / r.millis + 1;
+        for (int b = 0; b < buckets; b++) {
+            long index = first + b;
+            long base = bucketOffset(r, index);
+            if (seg.get(LONG, base + B_INDEX) != index) {
+                continue;
+            }
+            if (useMax) {
+                out[b] = seg.get(FLOAT, base + B_RMS_MAX);
+            } else {
+                int frames = seg.get(INT, base + B_FRAMES);
+                out[b] = frames > 0 ? seg.get(FLOAT, base + B_RMS_SUM) / frames : 0f;
+            }
+        }
+        return out;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Write everything to disk and unmap the files.
+     * No other method may be called afterwards.
+     */
+    @Override
+    public void close() {
+        for (MemorySegment seg : files) {
+            if (seg != null) {
+                seg.force();
+            }
+        }
+        arena.close();
+    }
+}
@@ -0,0 +1,35 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A text-to-speech synthesizer.
+ *
+ * Engines turn text into audio but do not play it; SpeechService caches
+ * the audio and plays it. Engines are only called from the single
+ * SpeechService synthesis thread, so they do not need to be thread-safe.
+ */
+public interface TtsEngine extends Closeable {
+
+    /**
+     * Get a short human-readable name for this engine.
+     *
+     * @return Engine name, e.g. "Piper"
+     */
+    String getName();
+
+    /**
+     * Synthesize one utterance.
+     *
+     * @param text  Text to speak
+     * @param voice Voice name (engine-specific), or empty for the default voice
+     * @return Synthesized audio
+     * @throws IOException If the engine is missing or failed
+     */
+    SpeechAudio synthesize(String text, String voice) throws IOException;
+
+    /**
+     * Stop any helper process. Safe to call more than once.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,529 @@
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers "what if I had used these settings?" from recorded score history.
+ *
+ * Takes the per-frame scores stored in session files (see SessionRecorder)
+ * and runs the Interpreter's decision rules (same top-3 choice, same
+ * threshold/monitored/notify/emergency/broadcast checks, cooldown) once with
+ * the current settings and once with a candidate, then reports how many
+ * notifications, broadcasts and emergencies each would have produced. The
+ * current settings are settings.json plus the calibrated thresholds of the
+ * newest recorded CONFIG record (they are not in settings.json).
+ *
+ * Frames are split into time shards that are evaluated in parallel, each
+ * as if no cooldown were running at its start. A shard also keeps, per sound,
+ * the notify-worthy frames up to the first gap of at least one cooldown
+ * between two of them (its "head"): after such a gap the sound notifies
+ * whatever happened before, so only the head can depend on earlier shards.
+ * Once all shards are done, the heads are walked again in time order with
+ * the cooldowns carried over from the shard before, and the counts are
+ * corrected. The result is exactly what one pass would give, whatever the
+ * number of threads.
+ *
+ * Usage: java WhatIfEvaluator candidate.json session.tps... [--cooldown-ms N] [--threads N]
+ */
+public final class WhatIfEvaluator {
+
+    // Shards per thread, so uneven shards still keep every thread busy
+    private static final int SHARDS_PER_THREAD = 4;
+
+    // Private constructor - only static methods
+    private WhatIfEvaluator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Path> sessions = new ArrayList<>();
+        Path candidateFile = null;
+        long cooldown = Interpreter.COOLDOWN_MS;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--cooldown-ms") && i + 1 < args.length) {
+                cooldown = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (candidateFile == null) {
+                candidateFile = Paths.get(args[i]);
+            } else {
+                sessions.add(Paths.get(args[i]));
+            }
+        }
+        if (candidateFile == null || sessions.isEmpty()) {
+            System.err.println("Usage: WhatIfEvaluator <candidate.json> <session.tps>... "
+                    + "[--cooldown-ms N] [--threads N]");
+            System.exit(2);
+        }
+
+        // Current settings: the saved settings file, or defaults
+        String[] labels = YamnetMic.getLabels();
+        AppConfig.registerLabels(labels);
+        Path saved = AppConfig.getDataDirectory().resolve("settings.json");
+        if (Files.exists(saved)) {
+            AppConfig.loadJson(readJson(saved));
+        } else {
+            AppConfig.applyDefaults(labels);
+        }
+        // Calibrated thresholds aren't in the settings file: use the newest ones recorded
+        JSONObject calibrated = newestCalibration(sessions);
+        if (calibrated != null) {
+            AppConfig.loadJson(new JSONObject().put("calibratedThresholds", calibrated));
+        }
+        ConfigSnapshot current = AppConfig.current();
+        // The candidate keeps these calibrations unless it has its own "calibratedThresholds"
+        ConfigSnapshot candidate = AppConfig.snapshotFromJson(readJson(candidateFile));
+
+        Report report = evaluate(sessions, labels, current, candidate, cooldown, threads);
+        System.out.print(report.format(labels, 10));
+    }
+
+    private static JSONObject readJson(Path file) throws IOException {
+        return new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Calibrated thresholds of the most recent CONFIG record, or null if none has them
+     */
+    private static JSONObject newestCalibration(List<Path> sessions) throws IOException {
+        JSONObject newest = null;
+        long newestTime = Long.MIN_VALUE;
+        for (Path p : sessions) {
+            SessionReader r = SessionReader.open(p);
+            while (r.next()) {
+                if (r.getType() == SessionRecorder.TYPE_CONFIG && r.getTimeMillis() >= newestTime) {
+                    JSONObject calibrated = new JSONObject(r.readConfigJson()).optJSONObject("calibratedThresholds");
+                    if (calibrated != null) {
+                        newest = calibrated;
+                        newestTime = r.getTimeMillis();
+                    }
+                }
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Evaluate a candidate configuration against the current one.
+     *
+     * @param sessions          Session files with recorded scores
+     * @param labels            Model labels (class id = index)
+     * @param current           Settings in force today
+     * @param candidate         Settings to try
+     * @param candidateCooldown Cooldown to try, in ms (the current one is Interpreter.COOLDOWN_MS)
+     * @param threads           Number of worker threads
+     * @return Counts for both configurations
+     * @throws IOException If a session file can't be read
+     */
+    public static Report evaluate(List<Path> sessions, String[] labels,
+            ConfigSnapshot current, ConfigSnapshot candidate,
+            long candidateCooldown, int threads) throws IOException {
+        long started = System.nanoTime();
+
+        // Open sessions, oldest first
+        List<SessionReader> readers = new ArrayList<>();
+        for (Path p : sessions) {
+            readers.add(SessionReader.open(p));
+        }
+        readers.sort(Comparator.comparingLong(SessionReader::getStartMillis));
+
+        FrameIndex index = FrameIndex.build(readers);
+        String[] names = new String[labels.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = Interpreter.getLabelAt(labels, i);
+        }
+
+        Rules[] rules = {
+                new Rules(current, Interpreter.COOLDOWN_MS),
+                new Rules(candidate, candidateCooldown)
+        };
+
+        // Split into contiguous shards of frames
+        int shardCount = threads <= 1 ? 1 : Math.max(1, Math.min(index.size, threads * SHARDS_PER_THREAD));
+        List<Callable<Shard>> tasks = new ArrayList<>();
+        for (int s = 0; s < shardCount; s++) {
+            int from = (int) ((long) index.size * s / shardCount);
+            int to = (int) ((long) index.size * (s + 1) / shardCount);
+            tasks.add(() -> runShard(index, readers, names, rules, from, to));
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "WhatIf-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        List<Shard> shards = new ArrayList<>();
+        try {
+            for (Future<Shard> f : pool.invokeAll(tasks)) {
+                shards.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Evaluation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Evaluation failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Report report = new Report(labels.length);
+        Counts[] total = {report.current, report.candidate};
+        joinShards(shards, rules, names.length, total);
+
+        report.frames = index.size;
+        report.spanMillis = index.size > 0 ? index.times[index.size - 1] - index.times[0] : 0;
+        report.threads = threads;
+        report.elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        return report;
+    }
+
+    /**
+     * Evaluate frames [from, to) as if no cooldown were running before them.
+     */
+    private static Shard runShard(FrameIndex index, List<SessionReader> sharedReaders, String[] names,
+            Rules[] rules, int from, int to) {
+        // Each shard reads through its own views of the files
+        SessionReader[] readers = new SessionReader[sharedReaders.size()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = sharedReaders.get(i).duplicate();
+        }
+
+        Shard shard = new Shard(rules.length, names.length);
+        long[][] lastHit = new long[rules.length][names.length];
+        for (int r = 0; r < rules.length; r++) {
+            Arrays.fill(shard.lastNotify[r], Long.MIN_VALUE);
+            // The shard start stands in for an earlier hit: a sound that first
+            // qualifies a cooldown after it can't be held back by earlier shards
+            Arrays.fill(lastHit[r], from < to ? index.times[from] : 0);
+        }
+
+        float[] scores = new float[sharedReaders.get(0).getClassCount()];
+        int[] best = new int[3];
+        for (int i = from; i < to; i++) {
+            SessionReader reader = readers[index.files[i]];
+            reader.seek(index.offsets[i]);
+            reader.next();
+            reader.readScores(scores);
+            long now = index.times[i];
+
+            Interpreter.findTop3(scores, best);
+            for (int k = 0; k < 3; k++) {
+                int classId = best[k];
+                if (classId >= names.length) {
+                    continue;
+                }
+                for (int r = 0; r < rules.length; r++) {
+                    int decision = Interpreter.decide(rules[r].config, classId, names[classId], scores[classId], true);
+                    if ((decision & Interpreter.DECISION_NOTIFY) == 0) {
+                        continue;
+                    }
+                    long cooldown = rules[r].cooldownMillis;
+                    Head head = shard.heads[r][classId];
+                    if (head == null) {
+                        head = new Head();
+                        shard.heads[r][classId] = head;
+                        head.open = now - lastHit[r][classId] < cooldown;
+                    } else if (head.open && now - lastHit[r][classId] >= cooldown) {
+                        head.open = false;
+                    }
+                    if (head.open) {
+                        head.add(now, decision);
+                    }
+                    lastHit[r][classId] = now;
+
+                    long last = shard.lastNotify[r][classId];
+                    if (last != Long.MIN_VALUE && now - last < cooldown) {
+                        continue;
+                    }
+                    shard.lastNotify[r][classId] = now;
+                    shard.counts[r].record(classId, decision, 1);
+                }
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Add up the shards in time order, fixing each head with the cooldowns
+     * left running by the shards before it.
+     */
+    private static void joinShards(List<Shard> shards, Rules[] rules, int classCount, Counts[] total) {
+        long[][] carried = new long[rules.length][classCount];
+        for (long[] row : carried) {
+            Arrays.fill(row, Long.MIN_VALUE);
+        }
+
+        for (Shard shard : shards) {
+            for (int r = 0; r < rules.length; r++) {
+                total[r].add(shard.counts[r]);
+                long cooldown = rules[r].cooldownMillis;
+                for (int c = 0; c < classCount; c++) {
+                    Head head = shard.heads[r][c];
+                    if (head == null) {
+                        continue; // never qualified: whatever was running keeps running
+                    }
+
+                    // Walk the head twice at once: as the shard did, and as one pass would
+                    long real = carried[r][c];
+                    long fresh = Long.MIN_VALUE;
+                    for (int h = 0; h < head.size; h++) {
+                        long t = head.times[h];
+                        boolean realNotifies = real == Long.MIN_VALUE || t - real >= cooldown;
+                        boolean freshNotifies = fresh == Long.MIN_VALUE || t - fresh >= cooldown;
+                        if (realNotifies) {
+                            real = t;
+                        }
+                        if (freshNotifies) {
+                            fresh = t;
+                        }
+                        if (realNotifies != freshNotifies) {
+                            total[r].record(c, head.decisions[h], realNotifies ? 1 : -1);
+                        }
+                    }
+                    // After the head both agree; if it never ended, the one-pass value carries on
+                    carried[r][c] = head.open ? real : shard.lastNotify[r][c];
+                }
+            }
+        }
+    }
+
+    // ============ HELPERS ============
+
+    /**
+     * Where every scores record is, in time order.
+     */
+    private static final class FrameIndex {
+        long[] times = new long[1024];
+        long[] offsets = new long[1024];
+        int[] files = new int[1024];
+        int size;
+
+        static FrameIndex build(List<SessionReader> readers) {
+            FrameIndex index = new FrameIndex();
+            for (int f = 0; f < readers.size(); f++) {
+                SessionReader r = readers.get(f).duplicate();
+                long pos = r.position();
+                while (r.next()) {
+                    if (r.isScores()) {
+                        index.add(r.getTimeMillis(), pos, f);
+                    }
+                    pos = r.position();
+                }
+            }
+            return index;
+        }
+
+        private void add(long time, long offset, int file) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+                files = Arrays.copyOf(files, size * 2);
+            }
+            times[size] = time;
+            offsets[size] = offset;
+            files[size] = file;
+            size++;
+        }
+    }
+
+    /**
+     * What one shard found, before it is joined with the others.
+     */
+    private static final class Shard {
+        final Counts[] counts;
+        final long[][] lastNotify;
+        final Head[][] heads; // null where the sound never qualified in this shard
+
+        Shard(int ruleCount, int classCount) {
+            counts = new Counts[ruleCount];
+            for (int r = 0; r < ruleCount; r++) {
+                counts[r] = new Counts(classCount);
+            }
+            lastNotify = new long[ruleCount][classCount];
+            heads = new Head[ruleCount][classCount];
+        }
+    }
+
+    /**
+     * Notify-worthy frames of one sound from the start of a shard up to the
+     * first gap of at least one cooldown.
+     */
+    private static final class Head {
+        long[] times = new long[4];
+        int[] decisions = new int[4];
+        int size;
+        boolean open; // no such gap yet (the head may run to the end of the shard)
+
+        void add(long time, int decision) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                decisions = Arrays.copyOf(decisions, size * 2);
+            }
+            times[size] = time;
+            decisions[size] = decision;
+            size++;
+        }
+    }
+
+    /**
+     * One configuration to evaluate.
+     */
+    private static final class Rules {
+        final ConfigSnapshot config;
+        final long cooldownMillis;
+
+        Rules(ConfigSnapshot config, long cooldownMillis) {
+            this.config = config;
+            this.cooldownMillis = cooldownMillis;
+        }
+    }
+
+    /**
+     * What one configuration would have done.
+     */
+    public static final class Counts {
+        private long notifications;
+        private long broadcasts;
+        private long emergencies;
+        private final int[] perClass;
+
+        Counts(int classCount) {
+            this.perClass = new int[classCount];
+        }
+
+        /**
+         * @param delta 1 to count a notification, -1 to take one back
+         */
+        void record(int classId, int decision, int delta) {
+            notifications += delta;
+            perClass[classId] += delta;
+            if ((decision & Interpreter.DECISION_BROADCAST) != 0) {
+                broadcasts += delta;
+            }
+            if ((decision & Interpreter.DECISION_EMERGENCY) != 0) {
+                emergencies += delta;
+            }
+        }
+
+        void add(Counts other) {
+            notifications += other.notifications;
+            broadcasts += other.broadcasts;
+            emergencies += other.emergencies;
+            for (int i = 0; i < perClass.length; i++) {
+                perClass[i] += other.perClass[i];
+            }
+        }
+
+        public long getNotifications() {
+            return notifications;
+        }
+
+        public long getBroadcasts() {
+            return broadcasts;
+        }
+
+        public long getEmergencies() {
+            return emergencies;
+        }
+
+        /**
+         * @param classId Class id
+         * @return Notifications for that sound
+         */
+        public int getNotifications(int classId) {
+            return perClass[classId];
+        }
+    }
+
+    /**
+     * Results for the current and the candidate configuration.
+     */
+    public static final class Report {
+        private final Counts current;
+        private final Counts candidate;
+        private long frames;
+        private long spanMillis;
+        private int threads;
+        private long elapsedMillis;
+
+        Report(int classCount) {
+            this.current = new Counts(classCount);
+            this.candidate = new Counts(classCount);
+        }
+
+        public Counts getCurrent() {
+            return current;
+        }
+
+        public Counts getCandidate() {
+            return candidate;
+        }
+
+        public long getFrameCount() {
+            return frames;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Format as a small table, with the sounds that changed the most.
+         *
+         * @param labels  Model labels
+         * @param topN    How many changed sounds to list
+         * @return Text for the console
+         */
+        public String format(String[] labels, int topN) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "%d frames (%.1f days) evaluated in %d ms on %d threads%n",
+                    frames, spanMillis / 86_400_000.0, elapsedMillis, threads));
+            sb.append(String.format(Locale.ROOT, "%-14s %10s %10s %10s%n", "", "current", "candidate", "change"));
+            row(sb, "notifications", current.notifications, candidate.notifications);
+            row(sb, "broadcasts", current.broadcasts, candidate.broadcasts);
+            row(sb, "emergencies", current.emergencies, candidate.emergencies);
+
+            Integer[] ids = new Integer[current.perClass.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = i;
+            }
+            Arrays.sort(ids, Comparator.comparingInt(
+                    (Integer i) -> -Math.abs(candidate.perClass[i] - current.perClass[i])));
+            boolean header = false;
+            for (int n = 0; n < Math.min(topN, ids.length); n++) {
+                int id = ids[n];
+                if (candidate.perClass[id] == current.perClass[id]) {
+                    break;
+                }
+                if (!header) {
+                    sb.append(String.format("Biggest changes:%n"));
+                    header = true;
+                }
+                sb.append(String.format(Locale.ROOT, "  %-30s %6d -> %d%n",
+                        Interpreter.getLabelAt(labels, id), current.perClass[id], candidate.perClass[id]));
+            }
+            return sb.toString();
+        }
+
+        private static void row(StringBuilder sb, String name, long a, long b) {
+            sb.append(String.format(Locale.ROOT, "%-14s %10d %10d %+10d%n", name, a, b, b - a));
+        }
+    }
+}
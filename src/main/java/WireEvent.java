@@ -0,0 +1,334 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary format of one broadcast sound event, and a reusable holder for a
+ * decoded one.
+ *
+ * Each event is a fixed 36-byte record (big-endian). A datagram carries one
+ * or more records back to back:
+ *
+ *   offset  size  field
+ *   0       4     magic "TPEV"
+ *   4       1     version (1)
+ *   5       1     record length in bytes (36 for version 1)
+ *   6       1     flags (FLAG_*)
+ *   7       1     reserved (0)
+ *   8       8     node id of the sender
+ *   16      8     detection time (epoch milliseconds)
+ *   24      4     sequence number (per sender, wraps around)
+ *   28      4     class id (index into the model's label list)
+ *   32      4     score (float, 0.0 to 1.0)
+ *
+ * Newer versions may make records longer; readers skip by the length byte,
+ * so old readers keep working as long as the fields above stay put.
+ *
+ * Emergency events can ask for an acknowledgement (FLAG_RELIABLE). The ACK
+ * is a 44-byte record sent straight back to the sender: FLAG_ACK, the
+ * acknowledging node's id, the acknowledged sequence number, class id -1
+ * (so versions without ACKs ignore it) and, at offset 36, the 8-byte node id
+ * of the event's sender.
+ *
+ * Every node also sends a heartbeat (FLAG_HEARTBEAT) every few seconds: an
+ * 80-byte record with class id -1 and the sender's load (load average per
+ * CPU, -1 if unknown) in the score field, followed by:
+ *
+ *   36      4     protocol version of the sender
+ *   40      4     capabilities (CAP_*)
+ *   44      4     heartbeat interval in ms (silent for 3 of these = gone)
+ *   48      1     name length in bytes (up to 31)
+ *   49      31    name (UTF-8, normally the hostname)
+ *
+ * encode() and decode() only use absolute get/put calls on the buffer, so
+ * they don't allocate and work on direct buffers straight from a channel.
+ * The older JSON text format is still understood (see BroadcastListener).
+ * Current versions start each JSON message with the node id,
+ * {"node":"<16 hex digits>", ... so it can be read without parsing the JSON.
+ */
+public final class WireEvent {
+
+    public static final int MAGIC = 0x54504556; // "TPEV"
+    public static final int VERSION = 1;
+    public static final int SIZE = 36;
+
+    public static final int ACK_SIZE = 44;
+    public static final int HEARTBEAT_SIZE = 80;
+    public static final int MAX_NAME_BYTES = 31;
+
+    // Sender marked the sound as an emergency
+    public static final int FLAG_EMERGENCY = 1;
+    // Sender wants an ACK and will send the event again until it gets one
+    public static final int FLAG_RELIABLE = 1 << 1;
+    // This record acknowledges an event (it is not an event itself)
+    public static final int FLAG_ACK = 1 << 2;
+    // This record says "I'm here" (it is not an event itself)
+    public static final int FLAG_HEARTBEAT = 1 << 3;
+
+    // Heartbeat capabilities
+    public static final int CAP_MICROPHONE = 1; // listens with a microphone
+    public static final int CAP_RELIABLE = 1 << 1; // sends reliable emergencies
+    public static final int CAP_JOURNAL = 1 << 2; // keeps a detection journal
+
+    // Start of a JSON message from a current version (followed by 16 hex digits and '"')
+    public static final String JSON_NODE_PREFIX = "{\"node\":\"";
+    private static final int JSON_NODE_DIGITS = 16;
+
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_LENGTH = 5;
+    private static final int OFF_FLAGS = 6;
+    private static final int OFF_NODE = 8;
+    private static final int OFF_TIME = 16;
+    private static final int OFF_SEQ = 24;
+    private static final int OFF_CLASS = 28;
+    private static final int OFF_SCORE = 32;
+    private static final int OFF_TARGET = 36;
+    private static final int OFF_PROTOCOL = 36;
+    private static final int OFF_CAPS = 40;
+    private static final int OFF_INTERVAL = 44;
+    private static final int OFF_NAME_LENGTH = 48;
+    private static final int OFF_NAME = 49;
+
+    // Decoded fields (valid after a successful decode())
+    public long nodeId;
+    public long timeMillis;
+    public int seq;
+    public int classId;
+    public float score;
+    public int flags;
+    public long targetNodeId; // ACKs only: whose event is acknowledged
+    public int protocolVersion; // heartbeats only
+    public int capabilities; // heartbeats only
+    public int intervalMillis; // heartbeats only
+    private int nameOffset; // heartbeats only: where the name is in the buffer
+    private int nameLength;
+
+    /**
+     * Append one record at the buffer's position and move the position past it.
+     *
+     * @return False (nothing written) if fewer than SIZE bytes remain
+     */
+    public static boolean encode(ByteBuffer buf, long nodeId, int seq, long timeMillis, int classId, float score,
+            int flags) {
+        int p = buf.position();
+        if (buf.limit() - p < SIZE) {
+            return false;
+        }
+        buf.putInt(p, MAGIC);
+        buf.put(p + OFF_VERSION, (byte) VERSION);
+        buf.put(p + OFF_LENGTH, (byte) SIZE);
+        buf.put(p + OFF_FLAGS, (byte) flags);
+        buf.put(p + OFF_FLAGS + 1, (byte) 0);
+        buf.putLong(p + OFF_NODE, nodeId);
+        buf.putLong(p + OFF_TIME, timeMillis);
+        buf.putInt(p + OFF_SEQ, seq);
+        buf.putInt(p + OFF_CLASS, classId);
+        buf.putFloat(p + OFF_SCORE, score);
+        buf.position(p + SIZE);
+        return true;
+    }
+
+    /**
+     * Append one ACK record at the buffer's position and move the position past it.
+     *
+     * @param ackerNodeId  Node id of the computer that received the event
+     * @param targetNodeId Node id of the event's sender
+     * @param seq          Sequence number of the event
+     * @param timeMillis   When the ACK was made
+     * @return False (nothing written) if fewer than ACK_SIZE bytes remain
+     */
+    public static boolean encodeAck(ByteBuffer buf, long ackerNodeId, long targetNodeId, int seq, long timeMillis) {
+        int p = buf.position();
+        if (buf.limit() - p < ACK_SIZE) {
+            return false;
+        }
+        buf.putInt(p, MAGIC);
+        buf.put(p + OFF_VERSION, (byte) VERSION);
+        buf.put(p + OFF_LENGTH, (byte) ACK_SIZE);
+        buf.put(p + OFF_FLAGS, (byte) FLAG_ACK);
+        buf.put(p + OFF_FLAGS + 1, (byte) 0);
+        buf.putLong(p + OFF_NODE, ackerNodeId);
+        buf.putLong(p + OFF_TIME, timeMillis);
+        buf.putInt(p + OFF_SEQ, seq);
+        buf.putInt(p + OFF_CLASS, -1);
+        buf.putFloat(p + OFF_SCORE, 0.0f);
+        buf.putLong(p + OFF_TARGET, targetNodeId);
+        buf.position(p + ACK_SIZE);
+        return true;
+    }
+
+    /**
+     * Append one heartbeat record at the buffer's position and move the position past it.
+     *
+     * @param nodeId         This computer's node id
+     * @param seq            Heartbeat counter
+     * @param timeMillis     Current time
+     * @param load           Load average per CPU (-1 if unknown)
+     * @param capabilities   CAP_* bits
+     * @param intervalMillis Time until the next heartbeat
+     * @param name           Name as UTF-8, at most MAX_NAME_BYTES long
+     * @return False (nothing written) if fewer than HEARTBEAT_SIZE bytes remain
+     */
+    public static boolean encodeHeartbeat(ByteBuffer buf, long nodeId, int seq, long timeMillis, float load,
+            int capabilities, int intervalMillis, byte[] name) {
+        int p = buf.position();
+        if (buf.limit() - p < HEARTBEAT_SIZE) {
+            return false;
+        }
+        buf.putInt(p, MAGIC);
+        buf.put(p + OFF_VERSION, (byte) VERSION);
+        buf.put(p + OFF_LENGTH, (byte) HEARTBEAT_SIZE);
+        buf.put(p + OFF_FLAGS, (byte) FLAG_HEARTBEAT);
+        buf.put(p + OFF_FLAGS + 1, (byte) 0);
+        buf.putLong(p + OFF_NODE, nodeId);
+        buf.putLong(p + OFF_TIME, timeMillis);
+        buf.putInt(p + OFF_SEQ, seq);
+        buf.putInt(p + OFF_CLASS, -1);
+        buf.putFloat(p + OFF_SCORE, load);
+        buf.putInt(p + OFF_PROTOCOL, VERSION);
+        buf.putInt(p + OFF_CAPS, capabilities);
+        buf.putInt(p + OFF_INTERVAL, intervalMillis);
+        int n = Math.min(name.length, MAX_NAME_BYTES);
+        buf.put(p + OFF_NAME_LENGTH, (byte) n);
+        for (int i = 0; i < MAX_NAME_BYTES; i++) {
+            buf.put(p + OFF_NAME + i, i < n ? name[i] : 0);
+        }
+        buf.position(p + HEARTBEAT_SIZE);
+        return true;
+    }
+
+    /**
+     * @return True if the last decoded record is a heartbeat
+     */
+    public boolean isHeartbeat() {
+        return (flags & FLAG_HEARTBEAT) != 0;
+    }
+
+    /**
+     * Read the name of the last decoded heartbeat (allocates a String).
+     *
+     * @param buf The buffer it was decoded from
+     * @return Name, empty if none was sent
+     */
+    public String readName(ByteBuffer buf) {
+        byte[] bytes = new byte[nameLength];
+        buf.get(nameOffset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return True if the last decoded record is an ACK
+     */
+    public boolean isAck() {
+        return (flags & FLAG_ACK) != 0;
+    }
+
+    /**
+     * Check whether a record starts at an offset (magic number and a sane length).
+     *
+     * @param buf    Received bytes
+     * @param offset Start of the record
+     * @param end    End of the received bytes
+     * @return Length of the record, or 0 if this isn't a binary record
+     */
+    public static int recordLength(ByteBuffer buf, int offset, int end) {
+        if (end - offset < SIZE || buf.getInt(offset) != MAGIC) {
+            return 0;
+        }
+        int length = buf.get(offset + OFF_LENGTH) & 0xFF;
+        if (buf.get(offset + OFF_VERSION) < 1 || length < SIZE || length > end - offset) {
+            return 0;
+        }
+        return length;
+    }
+
+    /**
+     * Read the sender's node id without decoding the rest.
+     * Only valid after recordLength() returned more than 0.
+     */
+    public static long peekNodeId(ByteBuffer buf, int offset) {
+        return buf.getLong(offset + OFF_NODE);
+    }
+
+    /**
+     * Read a record's flags without decoding the rest.
+     * Only valid after recordLength() returned more than 0.
+     */
+    public static int peekFlags(ByteBuffer buf, int offset) {
+        return buf.get(offset + OFF_FLAGS) & 0xFF;
+    }
+
+    /**
+     * Read the node id an ACK is meant for, without decoding the rest.
+     * Only valid for a record of ACK_SIZE or more with FLAG_ACK set.
+     */
+    public static long peekAckTarget(ByteBuffer buf, int offset) {
+        return buf.getLong(offset + OFF_TARGET);
+    }
+
+    /**
+     * Read the node id at the start of a JSON message, without parsing it.
+     *
+     * @param buf    Received bytes
+     * @param offset Start of the message
+     * @param end    End of the received bytes
+     * @return Node id, or 0 if the message doesn't start with one (older versions)
+     */
+    public static long peekJsonNodeId(ByteBuffer buf, int offset, int end) {
+        int prefix = JSON_NODE_PREFIX.length();
+        if (end - offset < prefix + JSON_NODE_DIGITS + 1) {
+            return 0;
+        }
+        for (int i = 0; i < prefix; i++) {
+            if (buf.get(offset + i) != JSON_NODE_PREFIX.charAt(i)) {
+                return 0;
+            }
+        }
+        long id = 0;
+        for (int i = 0; i < JSON_NODE_DIGITS; i++) {
+            int digit = Character.digit(buf.get(offset + prefix + i), 16);
+            if (digit < 0) {
+                return 0;
+            }
+            id = (id << 4) | digit;
+        }
+        return buf.get(offset + prefix + JSON_NODE_DIGITS) == '"' ? id : 0;
+    }
+
+    /**
+     * Read one record into this holder.
+     * Only valid after recordLength() returned more than 0.
+     *
+     * @param buf    Received bytes
+     * @param offset Start of the record
+     * @param length Record length (from recordLength())
+     * @return False if a field is out of range (the record should be ignored)
+     */
+    public boolean decode(ByteBuffer buf, int offset, int length) {
+        nodeId = buf.getLong(offset + OFF_NODE);
+        timeMillis = buf.getLong(offset + OFF_TIME);
+        seq = buf.getInt(offset + OFF_SEQ);
+        classId = buf.getInt(offset + OFF_CLASS);
+        score = buf.getFloat(offset + OFF_SCORE);
+        flags = buf.get(offset + OFF_FLAGS) & 0xFF;
+        if (isAck()) {
+            if (length < ACK_SIZE) {
+                return false;
+            }
+            targetNodeId = buf.getLong(offset + OFF_TARGET);
+            return true;
+        }
+        if (isHeartbeat()) {
+            if (length < HEARTBEAT_SIZE) {
+                return false;
+            }
+            protocolVersion = buf.getInt(offset + OFF_PROTOCOL);
+            capabilities = buf.getInt(offset + OFF_CAPS);
+            intervalMillis = buf.getInt(offset + OFF_INTERVAL);
+            nameOffset = offset + OFF_NAME;
+            nameLength = Math.min(buf.get(offset + OFF_NAME_LENGTH) & 0xFF, MAX_NAME_BYTES);
+            return intervalMillis > 0;
+        }
+        targetNodeId = 0;
+        return classId >= 0 && score >= 0.0f && score <= 1.0f;
+    }
+}
@@ -10,6 +10,7 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,11 +25,22 @@ public class YamnetMic implements AutoCloseable, Runnable {
     private static final int HOP_SAMPLES = 7800;
     private static final int NUM_CLASSES = 521;
 
+    /** Bytes of 16-bit audio in one hop (what processHop expects). */
+    public static final int HOP_BYTES = HOP_SAMPLES * 2;
+
     private final TfLiteModel model;
     private final TfLiteInterpreterOptions options;
     private final TfLiteInterpreter interpreter;
     private volatile boolean running = true;
     private TargetDataLine micLine;
+    private volatile ClipRecorder clipRecorder; // null = no clips
+    private volatile TimeSeriesStore timeSeries; // null = no score history
+    private volatile SessionRecorder sessionRecorder; // null = not recording
+    private volatile Clock clock = Clock.systemUTC();
+
+    // Audio window fed to the model (mic thread only)
+    private final float[] ring = new float[WIN_SAMPLES];
+    private int fill;
 
     private static final String[] LABELS =
             loadLabels("/models/yamnet_class_map.csv");
@@ -70,6 +82,42 @@ public class YamnetMic implements AutoCloseable, Runnable {
         return LABELS;
     }
 
+    /**
+     * Send every hop of raw audio to a clip recorder (for notification clips).
+     *
+     * @param recorder Recorder, or null to stop
+     */
+    public void setClipRecorder(ClipRecorder recorder) {
+        clipRecorder = recorder;
+    }
+
+    /**
+     * Add every frame's scores and sound level to a time-series store (for charts).
+     *
+     * @param store Store, or null to stop
+     */
+    public void setTimeSeries(TimeSeriesStore store) {
+        timeSeries = store;
+    }
+
+    /**
+     * Record raw audio, scores and settings changes into a session file.
+     *
+     * @param recorder Recorder, or null to stop
+     */
+    public void setSessionRecorder(SessionRecorder recorder) {
+        sessionRecorder = recorder;
+    }
+
+    /**
+     * Replace the clock used to timestamp frames.
+     *
+     * @param c New clock (Clock.systemUTC() for live use)
+     */
+    public void setClock(Clock c) {
+        clock = c;
+    }
+
     public void stopListening() {
         running = false;
     }
@@ -99,46 +147,84 @@ public class YamnetMic implements AutoCloseable, Runnable {
 
         micLine.start();
 
-        byte[] hopBytes = new byte[HOP_SAMPLES * 2];
-        float[] ring = new float[WIN_SAMPLES];
-        int fill = 0;
-
+        byte[] hopBytes = new byte[HOP_BYTES];
         while (running) {
             readFully(micLine, hopBytes);
+            processHop(hopBytes);
+        }
+    }
 
-            ByteBuffer bb = ByteBuffer.wrap(hopBytes)
-                    .order(ByteOrder.LITTLE_ENDIAN);
-            // Slide new samples into the 0.975s window
-            for (int i = 0; i < HOP_SAMPLES; i++) {
-                short s = bb.getShort();
-                float v = s / 32768f;
-                if (fill < WIN_SAMPLES) {
-                    ring[fill++] = v;
-                } else {
-                    System.arraycopy(
-                            ring, HOP_SAMPLES,
-                            ring, 0,
-                            WIN_SAMPLES - HOP_SAMPLES);
-                    ring[WIN_SAMPLES - HOP_SAMPLES + i] = v;
-                }
-            }
-            if (fill < WIN_SAMPLES) {
-                continue;
-            }
+    /**
+     * Run one hop of audio through the whole pipeline: clips, the model,
+     * the score history, the session recorder and the Interpreter.
+     * Called by the mic loop, or by SessionReplay with recorded audio.
+     *
+     * @param hopBytes HOP_BYTES of 16-bit little-endian mono audio at 16 kHz
+     * @return Model scores, or null while the first window is still filling
+     */
+    float[] processHop(byte[] hopBytes) {
+        long now = clock.millis();
+
+        // Keep the raw audio for notification clips (memory copy only)
+        ClipRecorder clips = clipRecorder;
+        if (clips != null) {
+            clips.onAudio(hopBytes, hopBytes.length);
+        }
+
+        // Slide the 0.975s window by one hop, then append the new samples
+        if (fill == WIN_SAMPLES) {
+            System.arraycopy(ring, HOP_SAMPLES, ring, 0, WIN_SAMPLES - HOP_SAMPLES);
+            fill = WIN_SAMPLES - HOP_SAMPLES;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(hopBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < HOP_SAMPLES; i++) {
+            ring[fill++] = bb.getShort() / 32768f;
+        }
 
-            // Simple RMS level for the UI meter
-            double sumSq = 0.0;
-            for (int i = 0; i < WIN_SAMPLES; i++) {
-                double v = ring[i];
-                sumSq += v * v;
+        SessionRecorder session = sessionRecorder;
+        if (fill < WIN_SAMPLES) {
+            if (session != null) {
+                session.record(now, hopBytes, hopBytes.length, null, 0.0);
             }
-            double rms = Math.sqrt(sumSq / WIN_SAMPLES); // 0..~1
-            double boosted = Math.pow(rms * 16.0, 0.65); // more responsive meter
-            double level = Math.min(1.0, Math.max(0.02, boosted));
+            return null;
+        }
 
-            float[] scores = infer(ring);
-            Interpreter.onFrame(scores, LABELS, level);
+        // Simple RMS level for the UI meter
+        double sumSq = 0.0;
+        for (int i = 0; i < WIN_SAMPLES; i++) {
+            double v = ring[i];
+            sumSq += v * v;
         }
+        double rms = Math.sqrt(sumSq / WIN_SAMPLES); // 0..~1
+
+        float[] scores = infer(ring);
+
+        TimeSeriesStore series = timeSeries;
+        if (series != null) {
+            try {
+                series.record(now, scores, rms);
+            } catch (IllegalStateException e) {
+                timeSeries = null; // store was closed during shutdown
+            }
+        }
+        if (session != null) {
+            session.record(now, hopBytes, hopBytes.length, scores, rms);
+        }
+
+        Interpreter.onFrame(scores, LABELS, meterLevel(rms));
+        return scores;
+    }
+
+    /**
+     * Turn an RMS value into the level shown on the meter.
+     *
+     * @param rms RMS of the audio window (0..~1)
+     * @return Meter level (0.02 to 1.0)
+     */
+    static double meterLevel(double rms) {
+        double boosted = Math.pow(rms * 16.0, 0.65); // more responsive meter
+        return Math.min(1.0, Math.max(0.02, boosted));
     }
 
     private static void readFully(TargetDataLine line, byte[] buf) throws IOException {